@@ -0,0 +1,67 @@
+package org.opencb.biodata.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.sf.samtools.SAMRecord;
+import org.opencb.biodata.formats.alignment.AlignmentConverter;
+import org.opencb.biodata.models.alignment.Alignment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of SAM records into alignments, with and without comparing
+ * their bases against the reference sequence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AlignmentConverterBenchmark {
+
+    private static final int NUM_RECORDS = 4096;
+    private static final int READ_LENGTH = 100;
+
+    private SAMRecord[] records;
+    private String[] references;
+    private int next;
+
+    @Setup
+    public void setup() {
+        SyntheticData data = new SyntheticData();
+        String reference = data.referenceSequence(1000000);
+        List<SAMRecord> recordList = data.samRecords(data.samHeader(), reference, NUM_RECORDS, READ_LENGTH);
+        records = recordList.toArray(new SAMRecord[NUM_RECORDS]);
+
+        // The reference of every read starts at its unclipped start
+        references = new String[NUM_RECORDS];
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            int start = records[i].getUnclippedStart() - 1;
+            references[i] = reference.substring(start, start + 2 * READ_LENGTH);
+        }
+    }
+
+    @Benchmark
+    public Alignment buildAlignment() {
+        SAMRecord record = records[next];
+        next = (next + 1) % NUM_RECORDS;
+        return AlignmentConverter.buildAlignment(record);
+    }
+
+    @Benchmark
+    public Alignment buildAlignmentWithReference() {
+        int i = next;
+        next = (next + 1) % NUM_RECORDS;
+        return AlignmentConverter.buildAlignment(records[i], references[i]);
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.opencb.biodata.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+import org.opencb.biodata.formats.sequence.fastq.FastQSlice;
+import org.opencb.biodata.formats.sequence.fastq.io.FastQSliceReader;
+import org.opencb.biodata.formats.sequence.fastq.io.FastaQReader;
+import org.opencb.biodata.formats.sequence.fastq.io.ParallelFastQReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading of a whole FASTQ file, one read at a time, and the average quality of every read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FastaQReaderBenchmark {
+
+    private static final int NUM_READS = 50000;
+
+    @Param({"100", "250"})
+    public int readLength;
+
+    private Path directory;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("biodata-benchmark");
+        file = directory.resolve("reads.fastq");
+        new SyntheticData().writeFastq(file, NUM_READS, readLength);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int read() throws IOException, FileFormatException {
+        FastaQReader reader = new FastaQReader(file);
+        int count = 0;
+        while (reader.read() != null) {
+            count++;
+        }
+        reader.close();
+        return count;
+    }
+
+    @Benchmark
+    public double readAverageQuality() throws IOException, FileFormatException {
+        FastaQReader reader = new FastaQReader(file);
+        double total = 0;
+        FastQ read;
+        while ((read = reader.read()) != null) {
+            total += read.getAverageQuality();
+        }
+        reader.close();
+        return total;
+    }
+
+    @Benchmark
+    public double readSlicesAverageQuality() throws IOException, FileFormatException {
+        FastQSliceReader reader = new FastQSliceReader(file);
+        double total = 0;
+        FastQSlice read;
+        while ((read = reader.read()) != null) {
+            total += read.getAverageQuality();
+        }
+        reader.close();
+        return total;
+    }
+
+    @Benchmark
+    public double readParallelAverageQuality() throws IOException, FileFormatException {
+        ParallelFastQReader reader = new ParallelFastQReader(file);
+        double total = 0;
+        for (FastQSlice read : reader.readAll()) {
+            total += read.getAverageQuality();
+        }
+        reader.close();
+        return total;
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.opencb.biodata.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.opencb.biodata.models.feature.Genotype;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of the GT field of a sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GenotypeBenchmark {
+
+    private static final int NUM_GENOTYPES = 4096;
+
+    private String[] genotypes;
+    private int next;
+
+    @Setup
+    public void setup() {
+        genotypes = new SyntheticData().genotypes(NUM_GENOTYPES);
+    }
+
+    @Benchmark
+    public Genotype parse() {
+        String genotype = genotypes[next];
+        next = (next + 1) % NUM_GENOTYPES;
+        return new Genotype(genotype, "A", "C");
+    }
+
+}
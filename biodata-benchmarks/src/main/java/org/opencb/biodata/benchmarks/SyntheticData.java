@@ -0,0 +1,289 @@
+package org.opencb.biodata.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import net.sf.samtools.SAMFileHeader;
+import net.sf.samtools.SAMRecord;
+import net.sf.samtools.SAMSequenceDictionary;
+import net.sf.samtools.SAMSequenceRecord;
+
+/**
+ * Generators of random but well-formed input for the benchmarks. A fixed seed
+ * is always used, so every run measures exactly the same data.
+ */
+public class SyntheticData {
+
+    public static final long SEED = 20150101L;
+
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+    private static final String[] GENOTYPES = {"0/0", "0/0", "0/0", "0/1", "0/1", "1/1", "0|1", "./."};
+    private static final String[] CONSEQUENCE_TYPES = {"intron_variant", "missense_variant",
+            "synonymous_variant", "upstream_gene_variant", "intergenic_variant", "3_prime_UTR_variant"};
+
+    private final Random random;
+
+    public SyntheticData() {
+        this(SEED);
+    }
+
+    public SyntheticData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @return The header of a VCF file with the given number of samples
+     */
+    public String vcfHeader(int numSamples) {
+        StringBuilder header = new StringBuilder();
+        header.append("##fileformat=VCFv4.1\n");
+        header.append("##INFO=<ID=AC,Number=A,Type=Integer,Description=\"Allele count\">\n");
+        header.append("##INFO=<ID=AF,Number=A,Type=Float,Description=\"Allele frequency\">\n");
+        header.append("##INFO=<ID=DP,Number=1,Type=Integer,Description=\"Total depth\">\n");
+        header.append("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n");
+        header.append("##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n");
+        header.append("##FORMAT=<ID=GQ,Number=1,Type=Integer,Description=\"Genotype quality\">\n");
+        header.append("##contig=<ID=1,length=249250621>\n");
+        header.append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT");
+        for (int i = 0; i < numSamples; i++) {
+            header.append("\tS").append(i);
+        }
+        return header.append('\n').toString();
+    }
+
+    /**
+     * @return A VCF data line without the trailing new line. Most lines are SNVs,
+     * the rest are short indels and multiallelic sites.
+     */
+    public String vcfLine(int position, int numSamples) {
+        StringBuilder line = new StringBuilder(64 + numSamples * 12);
+        char reference = base();
+        line.append("1\t").append(position).append('\t');
+        line.append(random.nextInt(4) == 0 ? "rs" + random.nextInt(100000000) : ".").append('\t');
+
+        int kind = random.nextInt(10);
+        int numAlternates = 1;
+        if (kind < 7) {
+            line.append(reference).append('\t').append(otherBase(reference));
+        } else if (kind == 7) {
+            line.append(reference).append(sequence(1 + random.nextInt(5))).append('\t').append(reference);
+        } else if (kind == 8) {
+            line.append(reference).append('\t').append(reference).append(sequence(1 + random.nextInt(5)));
+        } else {
+            char alternate = otherBase(reference);
+            char secondAlternate;
+            do {
+                secondAlternate = otherBase(alternate);
+            } while (secondAlternate == reference);
+            line.append(reference).append('\t').append(alternate).append(',').append(secondAlternate);
+            numAlternates = 2;
+        }
+
+        line.append('\t').append(10 + random.nextInt(90)).append("\tPASS\t");
+        line.append("AC=").append(random.nextInt(numSamples * 2 + 1));
+        for (int i = 1; i < numAlternates; i++) {
+            line.append(',').append(random.nextInt(numSamples * 2 + 1));
+        }
+        line.append(";AF=").append(random.nextInt(1000) / 1000.0);
+        for (int i = 1; i < numAlternates; i++) {
+            line.append(',').append(random.nextInt(1000) / 1000.0);
+        }
+        line.append(";DP=").append(random.nextInt(numSamples * 30 + 1));
+        line.append("\tGT:DP:GQ");
+        for (int i = 0; i < numSamples; i++) {
+            line.append('\t').append(genotype()).append(':').append(random.nextInt(60)).append(':').append(random.nextInt(100));
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return Sorted VCF data lines, without header
+     */
+    public List<String> vcfLines(int numLines, int numSamples) {
+        List<String> lines = new ArrayList<>(numLines);
+        int position = 10000;
+        for (int i = 0; i < numLines; i++) {
+            position += 1 + random.nextInt(200);
+            lines.add(vcfLine(position, numSamples));
+        }
+        return lines;
+    }
+
+    /**
+     * Writes a VCF file, compressed with gzip if the name ends with .gz
+     */
+    public void writeVcf(Path path, int numLines, int numSamples) throws IOException {
+        try (Writer writer = newWriter(path)) {
+            writer.write(vcfHeader(numSamples));
+            for (String line : vcfLines(numLines, numSamples)) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * @return Genotypes as they appear in the GT field of a VCF file
+     */
+    public String[] genotypes(int numGenotypes) {
+        String[] genotypes = new String[numGenotypes];
+        for (int i = 0; i < numGenotypes; i++) {
+            genotypes[i] = genotype();
+        }
+        return genotypes;
+    }
+
+    /**
+     * Writes a FASTQ file with Sanger qualities
+     */
+    public void writeFastq(Path path, int numReads, int readLength) throws IOException {
+        try (Writer writer = newWriter(path)) {
+            char[] quality = new char[readLength];
+            for (int i = 0; i < numReads; i++) {
+                writer.write("@read" + i + "/1\n");
+                writer.write(sequence(readLength));
+                writer.write("\n+\n");
+                for (int j = 0; j < readLength; j++) {
+                    quality[j] = (char) ('!' + 2 + random.nextInt(39));
+                }
+                writer.write(quality);
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Writes a tab-separated file in the format of the Variant Effect Predictor
+     */
+    public void writeVep(Path path, int numLines) throws IOException {
+        try (Writer writer = newWriter(path)) {
+            writer.write("## ENSEMBL VARIANT EFFECT PREDICTOR v81\n");
+            writer.write("#Uploaded_variation\tLocation\tAllele\tGene\tFeature\tFeature_type\tConsequence\t"
+                    + "cDNA_position\tCDS_position\tProtein_position\tAmino_acids\tCodons\tExisting_variation\tExtra\n");
+            int position = 10000;
+            for (int i = 0; i < numLines; i++) {
+                if (random.nextInt(3) == 0) {
+                    position += 1 + random.nextInt(200);
+                }
+                char reference = base();
+                char alternate = otherBase(reference);
+                int gene = position / 10000;
+                writer.write("1_" + position + "_" + reference + "/" + alternate + "\t1:" + position + "\t" + alternate
+                        + "\tENSG" + gene + "\tENST" + gene + random.nextInt(5) + "\tTranscript\t"
+                        + CONSEQUENCE_TYPES[random.nextInt(CONSEQUENCE_TYPES.length)]
+                        + "\t" + (100 + random.nextInt(900)) + "\t" + (50 + random.nextInt(500)) + "\t" + (20 + random.nextInt(150))
+                        + "\tA/T\tgCa/gTa\t-\tIMPACT=MODIFIER;STRAND=1;SYMBOL=GENE" + gene
+                        + ";BIOTYPE=protein_coding;SIFT=tolerated(0.3);PolyPhen=benign(0.01)\n");
+            }
+        }
+    }
+
+    /**
+     * @return A SAM header with a single 10 Mb chromosome called 1
+     */
+    public SAMFileHeader samHeader() {
+        SAMSequenceDictionary dictionary = new SAMSequenceDictionary();
+        dictionary.addSequence(new SAMSequenceRecord("1", 10000000));
+        SAMFileHeader header = new SAMFileHeader();
+        header.setSequenceDictionary(dictionary);
+        return header;
+    }
+
+    /**
+     * @return A reference sequence for the chromosome of samHeader, starting at position 1
+     */
+    public String referenceSequence(int length) {
+        return sequence(length);
+    }
+
+    /**
+     * Creates reads aligned against a reference sequence, most of them with
+     * mismatches and some with soft clipping, insertions or deletions.
+     */
+    public List<SAMRecord> samRecords(SAMFileHeader header, String reference, int numRecords, int readLength) {
+        List<SAMRecord> records = new ArrayList<>(numRecords);
+        for (int i = 0; i < numRecords; i++) {
+            int start = 1 + readLength + random.nextInt(reference.length() - 3 * readLength);
+            StringBuilder read = new StringBuilder(reference.substring(start - 1, start - 1 + readLength));
+            String cigar;
+            switch (random.nextInt(4)) {
+                case 0:
+                    cigar = "10S" + (readLength - 10) + "M";
+                    read.replace(0, 10, sequence(10));
+                    break;
+                case 1:
+                    cigar = (readLength / 2) + "M2I" + (readLength - readLength / 2 - 2) + "M";
+                    break;
+                case 2:
+                    cigar = (readLength / 2) + "M3D" + (readLength - readLength / 2) + "M";
+                    read = new StringBuilder(reference.substring(start - 1, start - 1 + readLength / 2)
+                            + reference.substring(start + 2 + readLength / 2, start + 2 + readLength));
+                    break;
+                default:
+                    cigar = readLength + "M";
+            }
+            for (int j = random.nextInt(3); j > 0; j--) {
+                int mismatch = random.nextInt(readLength);
+                read.setCharAt(mismatch, otherBase(read.charAt(mismatch)));
+            }
+
+            SAMRecord record = new SAMRecord(header);
+            record.setReadName("read" + i);
+            record.setReferenceName("1");
+            record.setAlignmentStart(start);
+            record.setCigarString(cigar);
+            record.setReadString(read.toString());
+            char[] quality = new char[readLength];
+            for (int j = 0; j < readLength; j++) {
+                quality[j] = (char) ('!' + 2 + random.nextInt(39));
+            }
+            record.setBaseQualityString(new String(quality));
+            record.setMappingQuality(random.nextInt(61));
+            record.setFlags(random.nextBoolean() ? 0 : 16);
+            record.setAttribute("NM", random.nextInt(4));
+            records.add(record);
+        }
+        return records;
+    }
+
+    private String genotype() {
+        return GENOTYPES[random.nextInt(GENOTYPES.length)];
+    }
+
+    private char base() {
+        return BASES[random.nextInt(BASES.length)];
+    }
+
+    private char otherBase(char base) {
+        char other;
+        do {
+            other = base();
+        } while (other == base);
+        return other;
+    }
+
+    private String sequence(int length) {
+        char[] sequence = new char[length];
+        for (int i = 0; i < length; i++) {
+            sequence[i] = base();
+        }
+        return new String(sequence);
+    }
+
+    private static Writer newWriter(Path path) throws IOException {
+        if (path.getFileName().toString().endsWith(".gz")) {
+            return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(path)),
+                    StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.opencb.biodata.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+import org.opencb.biodata.models.variant.VariantVcfFactory;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calculation of the statistics of a variant from the data of its samples.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VariantStatsBenchmark {
+
+    private static final int NUM_LINES = 256;
+
+    @Param({"10", "100", "1000"})
+    public int numSamples;
+
+    private List<Variant> variants;
+    private int next;
+
+    @Setup
+    public void setup() {
+        VariantSource source = new VariantSource("benchmark.vcf", "benchmark", "benchmark", "Benchmark");
+        List<String> samples = new ArrayList<>(numSamples);
+        for (int i = 0; i < numSamples; i++) {
+            samples.add("S" + i);
+        }
+        source.setSamples(samples);
+
+        VariantVcfFactory factory = new VariantVcfFactory();
+        variants = new ArrayList<>();
+        for (String line : new SyntheticData().vcfLines(NUM_LINES, numSamples)) {
+            variants.addAll(factory.create(source, line));
+        }
+    }
+
+    @Benchmark
+    public VariantStats calculate() {
+        Variant variant = variants.get(next);
+        next = (next + 1) % variants.size();
+        VariantSourceEntry file = variant.getSourceEntries().values().iterator().next();
+        return new VariantStats(variant).calculate(file.getSamplesData(), file.getAttributes(), null);
+    }
+
+}
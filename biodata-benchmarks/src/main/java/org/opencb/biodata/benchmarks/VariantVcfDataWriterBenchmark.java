@@ -0,0 +1,87 @@
+package org.opencb.biodata.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.formats.variant.io.VariantWriter;
+import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfDataWriter;
+import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing of already parsed variants to a VCF file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VariantVcfDataWriterBenchmark {
+
+    private static final int NUM_LINES = 10000;
+
+    @Param({"10", "100"})
+    public int numSamples;
+
+    private Path directory;
+    private Path output;
+    private VariantReader reader;
+    private List<Variant> variants;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("biodata-benchmark");
+        Path input = directory.resolve("variants.vcf");
+        output = directory.resolve("output.vcf");
+        new SyntheticData().writeVcf(input, NUM_LINES, numSamples);
+
+        // The writer takes the header from the reader
+        reader = new VariantVcfReader(new VariantSource(input.toString(), "benchmark", "benchmark", "Benchmark"), input.toString());
+        reader.open();
+        reader.pre();
+        variants = new ArrayList<>();
+        List<Variant> batch;
+        while (!(batch = reader.read(1000)).isEmpty()) {
+            variants.addAll(batch);
+        }
+        reader.post();
+        reader.close();
+        Files.delete(input);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public boolean write() {
+        VariantWriter writer = new VariantVcfDataWriter(reader, output.toString());
+        writer.open();
+        writer.pre();
+        boolean written = writer.write(variants);
+        writer.post();
+        writer.close();
+        return written;
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.opencb.biodata.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantVcfFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of single VCF lines into variants, from narrow lines with one
+ * sample to wide ones with thousands.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VariantVcfFactoryBenchmark {
+
+    private static final int NUM_LINES = 1024;
+
+    @Param({"1", "100", "1000"})
+    public int numSamples;
+
+    private VariantVcfFactory factory;
+    private VariantSource source;
+    private String[] lines;
+    private int next;
+
+    @Setup
+    public void setup() {
+        factory = new VariantVcfFactory();
+        source = new VariantSource("benchmark.vcf", "benchmark", "benchmark", "Benchmark");
+        List<String> samples = new ArrayList<>(numSamples);
+        for (int i = 0; i < numSamples; i++) {
+            samples.add("S" + i);
+        }
+        source.setSamples(samples);
+        lines = new SyntheticData().vcfLines(NUM_LINES, numSamples).toArray(new String[NUM_LINES]);
+    }
+
+    @Benchmark
+    public List<Variant> create() {
+        String line = lines[next];
+        next = (next + 1) % NUM_LINES;
+        return factory.create(source, line);
+    }
+
+}
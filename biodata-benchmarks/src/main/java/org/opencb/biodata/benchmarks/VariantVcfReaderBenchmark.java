@@ -0,0 +1,77 @@
+package org.opencb.biodata.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading of a whole VCF file in batches, plain and compressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VariantVcfReaderBenchmark {
+
+    private static final int NUM_LINES = 10000;
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    @Param({"10", "100"})
+    public int numSamples;
+
+    private Path directory;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("biodata-benchmark");
+        file = directory.resolve(compressed ? "variants.vcf.gz" : "variants.vcf");
+        new SyntheticData().writeVcf(file, NUM_LINES, numSamples);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int readBatches() {
+        VariantSource source = new VariantSource(file.toString(), "benchmark", "benchmark", "Benchmark");
+        VariantReader reader = new VariantVcfReader(source, file.toString());
+        reader.open();
+        reader.pre();
+        int count = 0;
+        List<Variant> batch;
+        while (!(batch = reader.read(BATCH_SIZE)).isEmpty()) {
+            count += batch.size();
+        }
+        reader.post();
+        reader.close();
+        return count;
+    }
+
+}
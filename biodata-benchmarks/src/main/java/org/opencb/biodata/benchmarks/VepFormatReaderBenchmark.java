@@ -0,0 +1,66 @@
+package org.opencb.biodata.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.opencb.biodata.formats.annotation.io.VepFormatReader;
+import org.opencb.biodata.models.variant.annotation.VariantAnnotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading of a whole file in the output format of the Variant Effect Predictor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VepFormatReaderBenchmark {
+
+    private static final int NUM_LINES = 20000;
+
+    private Path directory;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("biodata-benchmark");
+        file = directory.resolve("annotation.vep.gz");
+        new SyntheticData().writeVep(file, NUM_LINES);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int readBatches() {
+        VepFormatReader reader = new VepFormatReader(file.toString());
+        reader.open();
+        reader.pre();
+        int count = 0;
+        List<VariantAnnotation> batch;
+        while (!(batch = reader.read(1000)).isEmpty()) {
+            count += batch.size();
+        }
+        reader.post();
+        reader.close();
+        return count;
+    }
+
+}
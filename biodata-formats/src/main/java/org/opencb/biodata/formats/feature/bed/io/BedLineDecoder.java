@@ -0,0 +1,25 @@
+package org.opencb.biodata.formats.feature.bed.io;
+
+import org.opencb.biodata.formats.feature.bed.Bed;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineDecoder;
+import org.opencb.biodata.formats.io.LineTokenizer;
+
+/**
+ * Decodes BED lines with 3 to 12 columns. Missing optional columns get the
+ * same default values as in Bed(chromosome, start, end).
+ */
+public class BedLineDecoder implements LineDecoder<Bed> {
+
+    @Override
+    public Bed decode(LineTokenizer fields) throws FileFormatException {
+        if (fields.getNumFields() < 3) {
+            throw new FileFormatException("BED lines must have at least 3 columns: " + fields.getLine());
+        }
+        return new Bed(fields.getString(0), fields.getInt(1), fields.getInt(2),
+                fields.getString(3, ""), fields.getInt(4, 0), fields.getString(5, ""),
+                fields.getInt(6, 0), fields.getInt(7, 0), fields.getString(8, ""),
+                fields.getInt(9, 0), fields.getString(10, ""), fields.getString(11, ""));
+    }
+
+}
@@ -7,12 +7,12 @@ import java.nio.file.Paths;
 import java.util.List;
 import org.opencb.biodata.formats.feature.bed.Bed;
 import org.opencb.biodata.formats.io.AbstractFormatReader;
-import org.opencb.biodata.formats.io.BeanReader;
 import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineDecoderReader;
 
 public class BedReader extends AbstractFormatReader<Bed> {
 
-    private BeanReader<Bed> beanReader;
+    private LineDecoderReader<Bed> reader;
 
     public BedReader(String filename) throws IOException, SecurityException, NoSuchMethodException {
         this(Paths.get(filename));
@@ -20,14 +20,14 @@ public class BedReader extends AbstractFormatReader<Bed> {
 
     public BedReader(Path file) throws IOException, SecurityException, NoSuchMethodException {
         super(file);
-        beanReader = new BeanReader<>(file, Bed.class);
+        reader = new LineDecoderReader<>(file, new BedLineDecoder());
     }
 
     @Override
     public Bed read() throws FileFormatException {
         try {
-            return beanReader.read();
-        } catch (Exception e) {
+            return reader.read();
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -35,8 +35,8 @@ public class BedReader extends AbstractFormatReader<Bed> {
     @Override
     public Bed read(String pattern) throws FileFormatException {
         try {
-            return beanReader.read(pattern);
-        } catch (Exception e) {
+            return reader.read(pattern);
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -44,8 +44,8 @@ public class BedReader extends AbstractFormatReader<Bed> {
     @Override
     public List<Bed> read(int number) throws FileFormatException {
         try {
-            return beanReader.read(number);
-        } catch (Exception e) {
+            return reader.read(number);
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -53,8 +53,8 @@ public class BedReader extends AbstractFormatReader<Bed> {
     @Override
     public List<Bed> readAll() throws FileFormatException {
         try {
-            return beanReader.readAll();
-        } catch (Exception e) {
+            return reader.readAll();
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -62,8 +62,8 @@ public class BedReader extends AbstractFormatReader<Bed> {
     @Override
     public List<Bed> readAll(String pattern) throws FileFormatException {
         try {
-            return beanReader.readAll(pattern);
-        } catch (Exception e) {
+            return reader.readAll(pattern);
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -77,7 +77,7 @@ public class BedReader extends AbstractFormatReader<Bed> {
 
     @Override
     public void close() throws IOException {
-        beanReader.close();
+        reader.close();
     }
 
 }
@@ -0,0 +1,23 @@
+package org.opencb.biodata.formats.feature.gff.io;
+
+import org.opencb.biodata.formats.feature.gff.Gff2;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineDecoder;
+import org.opencb.biodata.formats.io.LineTokenizer;
+
+/**
+ * Decodes GFF2 lines. The attribute column is optional and defaults to an empty String.
+ */
+public class Gff2LineDecoder implements LineDecoder<Gff2> {
+
+    @Override
+    public Gff2 decode(LineTokenizer fields) throws FileFormatException {
+        if (fields.getNumFields() < 8) {
+            throw new FileFormatException("GFF2 lines must have at least 8 columns: " + fields.getLine());
+        }
+        return new Gff2(fields.getString(0), fields.getString(1), fields.getString(2),
+                fields.getInt(3), fields.getInt(4), fields.getString(5), fields.getString(6),
+                fields.getString(7), fields.getString(8, ""));
+    }
+
+}
@@ -7,12 +7,12 @@ import java.nio.file.Paths;
 import java.util.List;
 import org.opencb.biodata.formats.feature.gff.Gff2;
 import org.opencb.biodata.formats.io.AbstractFormatReader;
-import org.opencb.biodata.formats.io.BeanReader;
 import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineDecoderReader;
 
 public class Gff2Reader extends AbstractFormatReader<Gff2> {
 
-    private BeanReader<Gff2> beanReader;
+    private LineDecoderReader<Gff2> reader;
 
     public Gff2Reader(String filename) throws IOException, SecurityException, NoSuchMethodException {
         this(Paths.get(filename));
@@ -20,14 +20,14 @@ public class Gff2Reader extends AbstractFormatReader<Gff2> {
 
     public Gff2Reader(Path path) throws IOException, SecurityException, NoSuchMethodException {
         super(path);
-        beanReader = new BeanReader<Gff2>(path, Gff2.class);
+        reader = new LineDecoderReader<>(path, new Gff2LineDecoder());
     }
 
     @Override
     public Gff2 read() throws FileFormatException {
         try {
-            return beanReader.read();
-        } catch (Exception e) {
+            return reader.read();
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -35,8 +35,8 @@ public class Gff2Reader extends AbstractFormatReader<Gff2> {
     @Override
     public Gff2 read(String pattern) throws FileFormatException {
         try {
-            return beanReader.read(pattern);
-        } catch (Exception e) {
+            return reader.read(pattern);
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -44,8 +44,8 @@ public class Gff2Reader extends AbstractFormatReader<Gff2> {
     @Override
     public List<Gff2> read(int numberLines) throws FileFormatException {
         try {
-            return beanReader.read(numberLines);
-        } catch (Exception e) {
+            return reader.read(numberLines);
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -53,8 +53,8 @@ public class Gff2Reader extends AbstractFormatReader<Gff2> {
     @Override
     public List<Gff2> readAll() throws FileFormatException {
         try {
-            return beanReader.readAll();
-        } catch (Exception e) {
+            return reader.readAll();
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -62,8 +62,8 @@ public class Gff2Reader extends AbstractFormatReader<Gff2> {
     @Override
     public List<Gff2> readAll(String pattern) throws FileFormatException {
         try {
-            return beanReader.readAll(pattern);
-        } catch (Exception e) {
+            return reader.readAll(pattern);
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -77,6 +77,6 @@ public class Gff2Reader extends AbstractFormatReader<Gff2> {
 
     @Override
     public void close() throws IOException {
-        beanReader.close();
+        reader.close();
     }
 }
@@ -0,0 +1,23 @@
+package org.opencb.biodata.formats.feature.gff.io;
+
+import org.opencb.biodata.formats.feature.gff.Gff;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineDecoder;
+import org.opencb.biodata.formats.io.LineTokenizer;
+
+/**
+ * Decodes GFF lines. The group column is optional and defaults to an empty String.
+ */
+public class GffLineDecoder implements LineDecoder<Gff> {
+
+    @Override
+    public Gff decode(LineTokenizer fields) throws FileFormatException {
+        if (fields.getNumFields() < 8) {
+            throw new FileFormatException("GFF lines must have at least 8 columns: " + fields.getLine());
+        }
+        return new Gff(fields.getString(0), fields.getString(1), fields.getString(2),
+                fields.getInt(3), fields.getInt(4), fields.getString(5), fields.getString(6),
+                fields.getString(7), fields.getString(8, ""));
+    }
+
+}
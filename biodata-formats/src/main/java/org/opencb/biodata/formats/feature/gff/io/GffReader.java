@@ -7,12 +7,12 @@ import java.nio.file.Paths;
 import java.util.List;
 import org.opencb.biodata.formats.feature.gff.Gff;
 import org.opencb.biodata.formats.io.AbstractFormatReader;
-import org.opencb.biodata.formats.io.BeanReader;
 import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineDecoderReader;
 
 public class GffReader extends AbstractFormatReader<Gff> {
 
-    private BeanReader<Gff> beanReader;
+    private LineDecoderReader<Gff> reader;
 
     public GffReader(String filename) throws IOException, SecurityException, NoSuchMethodException {
         this(Paths.get(filename));
@@ -20,14 +20,14 @@ public class GffReader extends AbstractFormatReader<Gff> {
 
     public GffReader(Path path) throws IOException, SecurityException, NoSuchMethodException {
         super(path);
-        beanReader = new BeanReader<>(path, Gff.class);
+        reader = new LineDecoderReader<>(path, new GffLineDecoder());
     }
 
     @Override
     public Gff read() throws FileFormatException {
         try {
-            return beanReader.read();
-        } catch (Exception e) {
+            return reader.read();
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -35,8 +35,8 @@ public class GffReader extends AbstractFormatReader<Gff> {
     @Override
     public Gff read(String pattern) throws FileFormatException {
         try {
-            return beanReader.read(pattern);
-        } catch (Exception e) {
+            return reader.read(pattern);
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -44,8 +44,8 @@ public class GffReader extends AbstractFormatReader<Gff> {
     @Override
     public List<Gff> read(int numberLines) throws FileFormatException {
         try {
-            return beanReader.read(numberLines);
-        } catch (Exception e) {
+            return reader.read(numberLines);
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -53,8 +53,8 @@ public class GffReader extends AbstractFormatReader<Gff> {
     @Override
     public List<Gff> readAll() throws FileFormatException {
         try {
-            return beanReader.readAll();
-        } catch (Exception e) {
+            return reader.readAll();
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -62,8 +62,8 @@ public class GffReader extends AbstractFormatReader<Gff> {
     @Override
     public List<Gff> readAll(String pattern) throws FileFormatException {
         try {
-            return beanReader.readAll(pattern);
-        } catch (Exception e) {
+            return reader.readAll(pattern);
+        } catch (IOException e) {
             throw new FileFormatException(e);
         }
     }
@@ -77,7 +77,7 @@ public class GffReader extends AbstractFormatReader<Gff> {
 
     @Override
     public void close() throws IOException {
-        beanReader.close();
+        reader.close();
     }
 
 }
@@ -0,0 +1,175 @@
+package org.opencb.biodata.formats.feature.gtf;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.opencb.biodata.formats.io.StringInterner;
+
+/**
+ * Attributes of a GTF line, parsed from the text of the column only when they
+ * are used. Looking up a few attributes, like gene_id or transcript_id, just
+ * scans the column, and the map with all of them is created the first time
+ * it is iterated or modified.
+ *
+ * Values are unquoted, and the values of repeated attributes, like tag, are
+ * joined with commas. Instances are not thread-safe.
+ */
+public class GtfAttributes extends AbstractMap<String, String> {
+
+    private static final Logger logger = Logger.getLogger(GtfAttributes.class.getName());
+
+    private final String column;
+    private final StringInterner interner;
+    private final Set<String> internedValues;
+    private Map<String, String> attributes;
+
+    public GtfAttributes(String column) {
+        this(column, null, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param column Text of the attributes column
+     * @param interner Pool for the keys and the values of the attributes in internedValues, may be null
+     * @param internedValues Attributes with few different values, like biotypes
+     */
+    public GtfAttributes(String column, StringInterner interner, Set<String> internedValues) {
+        this.column = column;
+        this.interner = interner;
+        this.internedValues = internedValues;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public boolean isParsed() {
+        return attributes != null;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (attributes != null) {
+            return attributes.get(key);
+        }
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String name = (String) key;
+        String value = null;
+        int[] bounds = new int[4];
+        int position = 0;
+        while ((position = nextAttribute(position, bounds)) >= 0) {
+            if (bounds[2] >= 0 && bounds[1] - bounds[0] == name.length()
+                    && column.regionMatches(bounds[0], name, 0, name.length())) {
+                String found = value(name, bounds);
+                value = value == null ? found : value + "," + found;
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return parse().entrySet();
+    }
+
+    @Override
+    public int size() {
+        return parse().size();
+    }
+
+    @Override
+    public String put(String key, String value) {
+        return parse().put(key, value);
+    }
+
+    @Override
+    public String remove(Object key) {
+        return parse().remove(key);
+    }
+
+    private Map<String, String> parse() {
+        if (attributes == null) {
+            Map<String, String> parsed = new LinkedHashMap<>();
+            int[] bounds = new int[4];
+            int position = 0;
+            while ((position = nextAttribute(position, bounds)) >= 0) {
+                if (bounds[2] < 0) {
+                    logger.fine("GTF attribute '" + column.substring(bounds[0], bounds[1]) + "' without value in: " + column);
+                    continue;
+                }
+                String key = interner != null ? interner.intern(column, bounds[0], bounds[1]) : column.substring(bounds[0], bounds[1]);
+                String value = value(key, bounds);
+                String previous = parsed.get(key);
+                parsed.put(key, previous == null ? value : previous + "," + value);
+            }
+            attributes = parsed;
+        }
+        return attributes;
+    }
+
+    private String value(String key, int[] bounds) {
+        if (interner != null && internedValues.contains(key)) {
+            return interner.intern(column, bounds[2], bounds[3]);
+        }
+        return column.substring(bounds[2], bounds[3]);
+    }
+
+    /**
+     * Finds the next attribute of the column, separated by semicolons that are not quoted.
+     *
+     * @param position Where the search starts
+     * @param bounds Filled with the start and end of the key and the value, which are -1 if there is no value
+     * @return The position after the attribute, or -1 if there are no more attributes
+     */
+    private int nextAttribute(int position, int[] bounds) {
+        int length = column.length();
+        while (position < length && (column.charAt(position) == ';' || Character.isWhitespace(column.charAt(position)))) {
+            position++;
+        }
+        if (position == length) {
+            return -1;
+        }
+
+        bounds[0] = position;
+        while (position < length && column.charAt(position) != ';' && !Character.isWhitespace(column.charAt(position))) {
+            position++;
+        }
+        bounds[1] = position;
+        while (position < length && (column.charAt(position) == ' ' || column.charAt(position) == '\t')) {
+            position++;
+        }
+
+        int valueStart = position;
+        boolean quoted = false;
+        while (position < length && (quoted || column.charAt(position) != ';')) {
+            if (column.charAt(position) == '"') {
+                quoted = !quoted;
+            }
+            position++;
+        }
+        int valueEnd = position;
+        while (valueEnd > valueStart && Character.isWhitespace(column.charAt(valueEnd - 1))) {
+            valueEnd--;
+        }
+        if (valueEnd == valueStart) {
+            bounds[2] = bounds[3] = -1;
+        } else if (valueEnd - valueStart >= 2 && column.charAt(valueStart) == '"' && column.charAt(valueEnd - 1) == '"') {
+            bounds[2] = valueStart + 1;
+            bounds[3] = valueEnd - 1;
+        } else {
+            bounds[2] = valueStart;
+            bounds[3] = valueEnd;
+        }
+        return position;
+    }
+
+}
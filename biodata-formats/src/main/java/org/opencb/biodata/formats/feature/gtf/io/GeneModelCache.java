@@ -0,0 +1,342 @@
+package org.opencb.biodata.formats.feature.gtf.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.models.core.Exon;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+
+/**
+ * Binary file with the genes built from a GTF file, which is read much faster
+ * than the GTF itself. Strings are written once and then referenced by their
+ * number, so chromosomes, biotypes or sources take 4 bytes per gene.
+ *
+ * Only the fields filled by GtfGeneReader are stored: xrefs, TFBS, miRNA and
+ * protein and cDNA sequences are not. Null strings, transcripts and exons,
+ * and null lists of them, are kept as null.
+ */
+public final class GeneModelCache {
+
+    public static final String EXTENSION = ".genes";
+
+    private static final int MAGIC = 0x42474d43;
+    private static final int VERSION = 2;
+    private static final int NULL = -1;
+
+    private GeneModelCache() {
+    }
+
+    /**
+     * Reads the genes of a GTF file from its cache, next to it, if it is newer
+     * than the GTF. Otherwise, or if the cache can't be read, the genes are
+     * built and the cache is written.
+     */
+    public static List<Gene> load(Path gtf) throws IOException, FileFormatException {
+        Path cache = gtf.resolveSibling(gtf.getFileName() + EXTENSION);
+        if (Files.exists(cache) && Files.getLastModifiedTime(cache).compareTo(Files.getLastModifiedTime(gtf)) >= 0) {
+            try {
+                return read(cache);
+            } catch (IOException | FileFormatException e) {
+                Logger.getLogger(GeneModelCache.class.getName()).log(Level.WARNING,
+                        "Gene model cache " + cache + " can't be read, it will be built again", e);
+            }
+        }
+        GtfGeneReader reader = new GtfGeneReader(gtf);
+        List<Gene> genes;
+        try {
+            genes = reader.readAll();
+        } finally {
+            reader.close();
+        }
+        try {
+            write(cache, genes);
+        } catch (IOException e) {
+            Logger.getLogger(GeneModelCache.class.getName()).log(Level.WARNING,
+                    "Gene model cache " + cache + " can't be written, it will be built again next time", e);
+        }
+        return genes;
+    }
+
+    public static List<Gene> read(Path cache) throws IOException, FileFormatException {
+        try (Reader reader = new Reader(cache)) {
+            return reader.readAll();
+        }
+    }
+
+    /**
+     * Writes a cache, replacing the previous one only when it is complete. The
+     * temporary file is removed if the cache can't be written.
+     */
+    public static void write(Path cache, Iterable<Gene> genes) throws IOException {
+        Path temporary = cache.resolveSibling(cache.getFileName() + ".tmp");
+        boolean written = false;
+        try {
+            try (Writer writer = new Writer(temporary)) {
+                for (Gene gene : genes) {
+                    writer.write(gene);
+                }
+            }
+            Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING);
+            written = true;
+        } finally {
+            if (!written) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    /**
+     * Writes genes one by one, so they can be stored while they are built.
+     */
+    public static class Writer implements Closeable {
+
+        private final DataOutputStream output;
+        private final Map<String, Integer> strings;
+
+        public Writer(Path cache) throws IOException {
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(cache), 64 * 1024));
+            this.strings = new HashMap<>();
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+        }
+
+        public void write(Gene gene) throws IOException {
+            output.writeBoolean(true);
+            writeString(gene.getId());
+            writeString(gene.getName());
+            writeString(gene.getBiotype());
+            writeString(gene.getStatus());
+            writeString(gene.getChromosome());
+            output.writeInt(gene.getStart());
+            output.writeInt(gene.getEnd());
+            writeString(gene.getStrand());
+            writeString(gene.getSource());
+            writeString(gene.getDescription());
+
+            List<Transcript> transcripts = gene.getTranscripts();
+            output.writeInt(transcripts != null ? transcripts.size() : NULL);
+            if (transcripts != null) {
+                for (Transcript transcript : transcripts) {
+                    write(transcript);
+                }
+            }
+        }
+
+        private void write(Transcript transcript) throws IOException {
+            output.writeBoolean(transcript != null);
+            if (transcript == null) {
+                return;
+            }
+            writeString(transcript.getId());
+            writeString(transcript.getName());
+            writeString(transcript.getBiotype());
+            writeString(transcript.getStatus());
+            writeString(transcript.getChromosome());
+            output.writeInt(transcript.getStart());
+            output.writeInt(transcript.getEnd());
+            writeString(transcript.getStrand());
+            output.writeInt(transcript.getGenomicCodingStart());
+            output.writeInt(transcript.getGenomicCodingEnd());
+            output.writeInt(transcript.getCdnaCodingStart());
+            output.writeInt(transcript.getCdnaCodingEnd());
+            output.writeInt(transcript.getCdsLength());
+            writeString(transcript.getProteinID());
+            writeString(transcript.getDescription());
+
+            Set<String> flags = transcript.getAnnotationFlags();
+            output.writeInt(flags != null ? flags.size() : NULL);
+            if (flags != null) {
+                for (String flag : flags) {
+                    writeString(flag);
+                }
+            }
+
+            List<Exon> exons = transcript.getExons();
+            output.writeInt(exons != null ? exons.size() : NULL);
+            if (exons == null) {
+                return;
+            }
+            for (Exon exon : exons) {
+                output.writeBoolean(exon != null);
+                if (exon == null) {
+                    continue;
+                }
+                writeString(exon.getId());
+                writeString(exon.getChromosome());
+                output.writeInt(exon.getStart());
+                output.writeInt(exon.getEnd());
+                writeString(exon.getStrand());
+                output.writeInt(exon.getGenomicCodingStart());
+                output.writeInt(exon.getGenomicCodingEnd());
+                output.writeInt(exon.getCdnaCodingStart());
+                output.writeInt(exon.getCdnaCodingEnd());
+                output.writeInt(exon.getCdsStart());
+                output.writeInt(exon.getCdsEnd());
+                output.writeInt(exon.getPhase());
+                output.writeInt(exon.getExonNumber());
+                writeString(exon.getSequence());
+            }
+        }
+
+        /**
+         * Writes the number of a String, followed by the String itself the
+         * first time, as the length and the bytes of its UTF-8 encoding.
+         */
+        private void writeString(String string) throws IOException {
+            if (string == null) {
+                output.writeInt(NULL);
+                return;
+            }
+            Integer number = strings.get(string);
+            if (number != null) {
+                output.writeInt(number);
+            } else {
+                output.writeInt(strings.size());
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+                strings.put(string, strings.size());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.writeBoolean(false);
+            output.close();
+        }
+
+    }
+
+    public static class Reader implements Closeable {
+
+        private final Path path;
+        private final DataInputStream input;
+        private final List<String> strings;
+        private boolean end;
+
+        public Reader(Path cache) throws IOException, FileFormatException {
+            this.path = cache;
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache), 64 * 1024));
+            this.strings = new ArrayList<>();
+            if (input.readInt() != MAGIC) {
+                input.close();
+                throw new FileFormatException("Not a gene model cache: " + cache);
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                input.close();
+                throw new FileFormatException("Unsupported gene model cache version " + version + ": " + cache);
+            }
+        }
+
+        /**
+         * @return The next gene, or null at the end of the cache
+         */
+        public Gene read() throws IOException, FileFormatException {
+            try {
+                if (end || !input.readBoolean()) {
+                    end = true;
+                    return null;
+                }
+                Gene gene = new Gene(readString(), readString(), readString(), readString(), readString(),
+                        input.readInt(), input.readInt(), readString(), readString(), readString(), null, null);
+                int numTranscripts = input.readInt();
+                if (numTranscripts != NULL) {
+                    List<Transcript> transcripts = new ArrayList<>(numTranscripts);
+                    for (int i = 0; i < numTranscripts; i++) {
+                        transcripts.add(input.readBoolean() ? readTranscript() : null);
+                    }
+                    gene.setTranscripts(transcripts);
+                }
+                return gene;
+            } catch (EOFException e) {
+                throw new FileFormatException("Incomplete gene model cache: " + path);
+            }
+        }
+
+        public List<Gene> readAll() throws IOException, FileFormatException {
+            List<Gene> genes = new ArrayList<>();
+            Gene gene;
+            while ((gene = read()) != null) {
+                genes.add(gene);
+            }
+            return genes;
+        }
+
+        private Transcript readTranscript() throws IOException, FileFormatException {
+            Transcript transcript = new Transcript(readString(), readString(), readString(), readString(), readString(),
+                    input.readInt(), input.readInt(), readString(), input.readInt(), input.readInt(), input.readInt(),
+                    input.readInt(), input.readInt(), readString(), readString(), null, null, null);
+
+            int numFlags = input.readInt();
+            if (numFlags != NULL) {
+                Set<String> flags = new HashSet<>();
+                for (int i = 0; i < numFlags; i++) {
+                    flags.add(readString());
+                }
+                transcript.setAnnotationFlags(flags);
+            }
+
+            int numExons = input.readInt();
+            if (numExons == NULL) {
+                return transcript;
+            }
+            List<Exon> exons = new ArrayList<>(numExons);
+            for (int i = 0; i < numExons; i++) {
+                if (!input.readBoolean()) {
+                    exons.add(null);
+                    continue;
+                }
+                exons.add(new Exon(readString(), readString(), input.readInt(), input.readInt(), readString(),
+                        input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt(),
+                        input.readInt(), input.readInt(), input.readInt(), readString()));
+            }
+            transcript.setExons(exons);
+            return transcript;
+        }
+
+        private String readString() throws IOException, FileFormatException {
+            int number = input.readInt();
+            if (number == NULL) {
+                return null;
+            }
+            if (number == strings.size()) {
+                int length = input.readInt();
+                if (length < 0) {
+                    throw new FileFormatException("Corrupted gene model cache: " + path);
+                }
+                byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                strings.add(new String(bytes, StandardCharsets.UTF_8));
+            } else if (number > strings.size() || number < 0) {
+                throw new FileFormatException("Corrupted gene model cache: " + path);
+            }
+            return strings.get(number);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+
+    }
+
+}
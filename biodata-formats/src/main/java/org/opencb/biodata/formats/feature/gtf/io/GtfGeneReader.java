@@ -0,0 +1,407 @@
+package org.opencb.biodata.formats.feature.gtf.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import org.opencb.biodata.formats.feature.gtf.Gtf;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.models.core.Exon;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+
+/**
+ * Builds the genes of a GTF file, with their transcripts and exons, while the
+ * file is read. Records are grouped by gene_id and transcript_id, and a gene
+ * is returned as soon as a record starting after the end of its "gene" line,
+ * or on another sequence, is read. Only the genes overlapping the current
+ * position are kept in memory.
+ *
+ * The file must be sorted by position, like Ensembl and GENCODE files. Genes
+ * are returned in the order of their first record, except the ones without a
+ * "gene" line: their end is not known until the end of their sequence, so
+ * they are returned then, and the genes after them are not held back.
+ *
+ * Coding coordinates are calculated from the CDS and stop_codon records, so
+ * the coding region of transcripts includes the stop codon. Positions of
+ * cDNA and CDS are 1-based and follow the strand of the transcript. The phase
+ * of exons is the frame of their CDS record, or -1 if they are not coding.
+ */
+public class GtfGeneReader {
+
+    private static final Comparator<Gtf> BY_START = new Comparator<Gtf>() {
+        @Override
+        public int compare(Gtf gtf1, Gtf gtf2) {
+            return Integer.compare(gtf1.getStart(), gtf2.getStart());
+        }
+    };
+
+    private interface Source {
+        Gtf read() throws FileFormatException;
+
+        void close() throws IOException;
+    }
+
+    private final Source source;
+    private final Map<String, GeneBuilder> openGenes;
+    private final Queue<Gene> genes;
+    private String chromosome;
+    private boolean endOfFile;
+
+    public GtfGeneReader(Path path) throws IOException {
+        this(new GtfReader(path, new GtfLineDecoder()));
+    }
+
+    public GtfGeneReader(final GtfReader reader) {
+        this(new Source() {
+            @Override
+            public Gtf read() throws FileFormatException {
+                return reader.read();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        });
+    }
+
+    /**
+     * Builds the genes while the next chunks of lines are decoded in parallel.
+     */
+    public GtfGeneReader(final ParallelGtfReader reader) {
+        this(new Source() {
+            @Override
+            public Gtf read() throws FileFormatException {
+                return reader.read();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        });
+    }
+
+    private GtfGeneReader(Source source) {
+        this.source = source;
+        this.openGenes = new LinkedHashMap<>();
+        this.genes = new ArrayDeque<>();
+    }
+
+    /**
+     * @return The next gene, or null at the end of the file
+     */
+    public Gene read() throws FileFormatException {
+        while (genes.isEmpty() && !endOfFile) {
+            Gtf gtf = source.read();
+            if (gtf == null) {
+                endOfFile = true;
+                closeGenes(Integer.MAX_VALUE);
+            } else {
+                add(gtf);
+            }
+        }
+        return genes.poll();
+    }
+
+    public List<Gene> read(int numberGenes) throws FileFormatException {
+        List<Gene> list = new ArrayList<>(numberGenes);
+        Gene gene;
+        while (list.size() < numberGenes && (gene = read()) != null) {
+            list.add(gene);
+        }
+        return list;
+    }
+
+    public List<Gene> readAll() throws FileFormatException {
+        List<Gene> list = new ArrayList<>();
+        Gene gene;
+        while ((gene = read()) != null) {
+            list.add(gene);
+        }
+        return list;
+    }
+
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private void add(Gtf gtf) throws FileFormatException {
+        if (!gtf.getSequenceName().equals(chromosome)) {
+            closeGenes(Integer.MAX_VALUE);
+            chromosome = gtf.getSequenceName();
+        } else {
+            closeGenes(gtf.getStart());
+        }
+
+        String geneId = gtf.getAttributes().get("gene_id");
+        if (geneId == null) {
+            throw new FileFormatException("GTF record without gene_id: " + gtf);
+        }
+        GeneBuilder gene = openGenes.get(geneId);
+        if (gene == null) {
+            gene = new GeneBuilder(geneId, gtf);
+            openGenes.put(geneId, gene);
+        }
+        gene.add(gtf);
+    }
+
+    /**
+     * Builds the genes ending before a position, keeping the order of the
+     * genes still open before them. Genes without a "gene" line don't keep
+     * the ones after them open.
+     */
+    private void closeGenes(int position) throws FileFormatException {
+        for (GeneBuilder gene : openGenes.values()) {
+            if (position == Integer.MAX_VALUE || gene.spanKnown && gene.end < position) {
+                gene.closed = true;
+            }
+        }
+        Iterator<GeneBuilder> iterator = openGenes.values().iterator();
+        while (iterator.hasNext()) {
+            GeneBuilder gene = iterator.next();
+            if (gene.closed) {
+                genes.add(gene.build());
+                iterator.remove();
+            } else if (gene.spanKnown) {
+                break;
+            }
+        }
+    }
+
+    private static String attribute(Gtf gtf, String key, String alternativeKey) {
+        String value = gtf.getAttributes().get(key);
+        return value != null ? value : gtf.getAttributes().get(alternativeKey);
+    }
+
+    private static boolean isReverse(String strand) {
+        return "-".equals(strand);
+    }
+
+    private static final class GeneBuilder {
+
+        private final String id;
+        private final String chromosome;
+        private final String strand;
+        private final Map<String, TranscriptBuilder> transcripts;
+        private String source;
+        private String name;
+        private String biotype;
+        private String status;
+        private int start;
+        private int end;
+        private boolean spanKnown;
+        private boolean closed;
+
+        GeneBuilder(String id, Gtf first) {
+            this.id = id;
+            this.chromosome = first.getSequenceName();
+            this.strand = first.getStrand();
+            this.source = first.getSource();
+            this.transcripts = new LinkedHashMap<>();
+            this.start = first.getStart();
+            this.end = first.getEnd();
+        }
+
+        void add(Gtf gtf) throws FileFormatException {
+            if ("gene".equals(gtf.getFeature())) {
+                start = gtf.getStart();
+                end = gtf.getEnd();
+                spanKnown = true;
+                source = gtf.getSource();
+                name = gtf.getAttributes().get("gene_name");
+                biotype = attribute(gtf, "gene_biotype", "gene_type");
+                status = gtf.getAttributes().get("gene_status");
+                return;
+            }
+
+            if (!spanKnown) {
+                start = Math.min(start, gtf.getStart());
+                end = Math.max(end, gtf.getEnd());
+            }
+            // Files without gene lines repeat the gene attributes in every line
+            if (name == null) {
+                name = gtf.getAttributes().get("gene_name");
+            }
+            if (biotype == null) {
+                biotype = attribute(gtf, "gene_biotype", "gene_type");
+            }
+            if (status == null) {
+                status = gtf.getAttributes().get("gene_status");
+            }
+
+            String transcriptId = gtf.getAttributes().get("transcript_id");
+            if (transcriptId == null) {
+                throw new FileFormatException("GTF record without transcript_id: " + gtf);
+            }
+            TranscriptBuilder transcript = transcripts.get(transcriptId);
+            if (transcript == null) {
+                transcript = new TranscriptBuilder(transcriptId, gtf);
+                transcripts.put(transcriptId, transcript);
+            }
+            transcript.add(gtf);
+        }
+
+        Gene build() {
+            List<Transcript> transcriptList = new ArrayList<>(transcripts.size());
+            for (TranscriptBuilder transcript : transcripts.values()) {
+                transcriptList.add(transcript.build());
+            }
+            return new Gene(id, name, biotype, status, chromosome, start, end, strand, source, null,
+                    transcriptList, null);
+        }
+
+    }
+
+    private static final class TranscriptBuilder {
+
+        private final String id;
+        private final String chromosome;
+        private final String strand;
+        private final List<Gtf> exons;
+        private final List<Gtf> coding;
+        private String name;
+        private String biotype;
+        private String status;
+        private String proteinId;
+        private String tags;
+        private int start;
+        private int end;
+        private boolean spanKnown;
+
+        TranscriptBuilder(String id, Gtf first) {
+            this.id = id;
+            this.chromosome = first.getSequenceName();
+            this.strand = first.getStrand();
+            this.exons = new ArrayList<>();
+            this.coding = new ArrayList<>();
+            this.start = first.getStart();
+            this.end = first.getEnd();
+        }
+
+        void add(Gtf gtf) {
+            String feature = gtf.getFeature();
+            if ("transcript".equals(feature)) {
+                start = gtf.getStart();
+                end = gtf.getEnd();
+                spanKnown = true;
+            } else if (!spanKnown) {
+                start = Math.min(start, gtf.getStart());
+                end = Math.max(end, gtf.getEnd());
+            }
+
+            if (name == null) {
+                name = gtf.getAttributes().get("transcript_name");
+            }
+            if (biotype == null) {
+                biotype = attribute(gtf, "transcript_biotype", "transcript_type");
+            }
+            if (status == null) {
+                status = gtf.getAttributes().get("transcript_status");
+            }
+            if (tags == null) {
+                tags = gtf.getAttributes().get("tag");
+            }
+
+            if ("exon".equals(feature)) {
+                exons.add(gtf);
+            } else if ("CDS".equals(feature) || "stop_codon".equals(feature)) {
+                coding.add(gtf);
+                if (proteinId == null) {
+                    proteinId = gtf.getAttributes().get("protein_id");
+                }
+            }
+        }
+
+        Transcript build() {
+            boolean reverse = isReverse(strand);
+            Collections.sort(exons, BY_START);
+            if (reverse) {
+                Collections.reverse(exons);
+            }
+
+            ArrayList<Exon> exonList = new ArrayList<>(exons.size());
+            int cdnaLength = 0;
+            int cdsLength = 0;
+            int codingStart = Integer.MAX_VALUE;
+            int codingEnd = Integer.MIN_VALUE;
+            int cdnaCodingStart = 0;
+            int cdnaCodingEnd = 0;
+            for (int i = 0; i < exons.size(); i++) {
+                Gtf record = exons.get(i);
+                Exon exon = new Exon(record.getAttributes().get("exon_id"), chromosome, record.getStart(), record.getEnd(),
+                        strand, 0, 0, 0, 0, 0, 0, -1, exonNumber(record, i + 1), null);
+
+                int exonCodingStart = Integer.MAX_VALUE;
+                int exonCodingEnd = Integer.MIN_VALUE;
+                for (Gtf part : coding) {
+                    if (part.getStart() <= exon.getEnd() && part.getEnd() >= exon.getStart()) {
+                        exonCodingStart = Math.min(exonCodingStart, Math.max(part.getStart(), exon.getStart()));
+                        exonCodingEnd = Math.max(exonCodingEnd, Math.min(part.getEnd(), exon.getEnd()));
+                        if (exon.getPhase() < 0 && "CDS".equals(part.getFeature())) {
+                            exon.setPhase(phase(part.getFrame()));
+                        }
+                    }
+                }
+
+                if (exonCodingStart <= exonCodingEnd) {
+                    int cdnaStart = cdnaLength + 1
+                            + (reverse ? exon.getEnd() - exonCodingEnd : exonCodingStart - exon.getStart());
+                    int cdnaEnd = cdnaStart + exonCodingEnd - exonCodingStart;
+                    exon.setGenomicCodingStart(exonCodingStart);
+                    exon.setGenomicCodingEnd(exonCodingEnd);
+                    exon.setCdnaCodingStart(cdnaStart);
+                    exon.setCdnaCodingEnd(cdnaEnd);
+                    exon.setCdsStart(cdsLength + 1);
+                    cdsLength += exonCodingEnd - exonCodingStart + 1;
+                    exon.setCdsEnd(cdsLength);
+
+                    codingStart = Math.min(codingStart, exonCodingStart);
+                    codingEnd = Math.max(codingEnd, exonCodingEnd);
+                    if (cdnaCodingStart == 0) {
+                        cdnaCodingStart = cdnaStart;
+                    }
+                    cdnaCodingEnd = cdnaEnd;
+                }
+                cdnaLength += exon.getEnd() - exon.getStart() + 1;
+                exonList.add(exon);
+            }
+
+            boolean isCoding = cdsLength > 0;
+            Transcript transcript = new Transcript(id, name, biotype, status, chromosome, start, end, strand,
+                    isCoding ? codingStart : 0, isCoding ? codingEnd : 0, cdnaCodingStart, cdnaCodingEnd, cdsLength,
+                    proteinId, null, null, exonList, null);
+            if (tags != null) {
+                Set<String> flags = new HashSet<>();
+                Collections.addAll(flags, tags.split(","));
+                transcript.setAnnotationFlags(flags);
+            }
+            return transcript;
+        }
+
+        private static int exonNumber(Gtf exon, int defaultNumber) {
+            String number = exon.getAttributes().get("exon_number");
+            try {
+                return number != null ? Integer.parseInt(number) : defaultNumber;
+            } catch (NumberFormatException e) {
+                return defaultNumber;
+            }
+        }
+
+        private static int phase(String frame) {
+            return frame.length() == 1 && frame.charAt(0) >= '0' && frame.charAt(0) <= '2' ? frame.charAt(0) - '0' : -1;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.opencb.biodata.formats.feature.gtf.io;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.opencb.biodata.formats.feature.gtf.Gtf;
+import org.opencb.biodata.formats.feature.gtf.GtfAttributes;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineDecoder;
+import org.opencb.biodata.formats.io.LineTokenizer;
+import org.opencb.biodata.formats.io.StringInterner;
+
+/**
+ * Decodes GTF lines. The sequence name, source, feature, score, strand and
+ * frame, which are repeated in most lines, are interned, and so are the
+ * attribute names and the values of the attributes with few different
+ * values. The attributes are parsed when they are used, see GtfAttributes.
+ *
+ * The decoder can be shared by several threads, each one with its own
+ * tokenizer.
+ */
+public class GtfLineDecoder implements LineDecoder<Gtf> {
+
+    /**
+     * Attributes of Ensembl and GENCODE files whose values are interned.
+     */
+    public static final Set<String> DEFAULT_INTERNED_VALUES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "gene_biotype", "gene_type", "gene_source", "transcript_biotype", "transcript_type", "transcript_source",
+            "exon_number", "level", "tag", "transcript_support_level")));
+
+    private final StringInterner interner;
+    private final Set<String> internedValues;
+
+    public GtfLineDecoder() {
+        this(new StringInterner(), DEFAULT_INTERNED_VALUES);
+    }
+
+    public GtfLineDecoder(StringInterner interner, Set<String> internedValues) {
+        this.interner = interner;
+        this.internedValues = internedValues;
+    }
+
+    @Override
+    public Gtf decode(LineTokenizer fields) throws FileFormatException {
+        if (fields.getNumFields() < 8) {
+            throw new FileFormatException("GTF lines must have at least 8 columns: " + fields.getLine());
+        }
+        return new Gtf(intern(fields, 0), intern(fields, 1), intern(fields, 2), fields.getInt(3), fields.getInt(4),
+                intern(fields, 5), intern(fields, 6), intern(fields, 7),
+                new GtfAttributes(fields.getString(8, ""), interner, internedValues));
+    }
+
+    public StringInterner getInterner() {
+        return interner;
+    }
+
+    private String intern(LineTokenizer fields, int field) {
+        return interner.intern(fields.getString(field));
+    }
+
+}
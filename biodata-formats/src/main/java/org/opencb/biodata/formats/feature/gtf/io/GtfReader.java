@@ -3,61 +3,52 @@ package org.opencb.biodata.formats.feature.gtf.io;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import org.opencb.biodata.formats.feature.gtf.Gtf;
 import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineTokenizer;
 import org.opencb.commons.utils.FileUtils;
 
 
+/**
+ * Reads GTF files line by line. Repeated Strings are interned and the
+ * attributes are parsed only when they are used, see GtfLineDecoder. Large
+ * files can be decoded in parallel with ParallelGtfReader.
+ */
 public class GtfReader {
 
     private BufferedReader bufferedReader;
     private File file;
+    private final LineTokenizer tokenizer;
+    private final GtfLineDecoder decoder;
 
     public GtfReader(Path path) throws IOException, SecurityException, NoSuchMethodException {
-        Files.exists(path);
-        this.file = file;
+        this(path, new GtfLineDecoder());
+    }
+
+    public GtfReader(Path path, GtfLineDecoder decoder) throws IOException {
+        this.file = path.toFile();
+        this.tokenizer = new LineTokenizer();
+        this.decoder = decoder;
         bufferedReader = FileUtils.newBufferedReader(path);
 //        bufferedReader = new BufferedReader(new FileReader(file));
     }
 
     public Gtf read() throws FileFormatException {
         try {
-            String line = "";
-            while ((line = bufferedReader.readLine()) != null && (line.trim().equals("") || line.startsWith("#"))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null && (line.trim().isEmpty() || line.startsWith("#"))) {
                 ;
             }
             if (line != null) {
-                String[] fields = line.split("\t");
-                Map<String, String> attributes = new HashMap<String, String>();
-                String[] attrFields = fields[8].split(";");
-                String attr, k, v;
-                String[] kv;
-                for (int i = 0; i < attrFields.length; i++) {
-                    attr = attrFields[i].trim();
-                    kv = attr.split(" ");
-                    if(kv.length == 2) {
-                        k = kv[0].replace("\"", "");
-                        v = kv[1].replace("\"", "");
-                        if(attributes.containsKey(k)) {
-                            attributes.put(k, attributes.get(k)+","+v);
-                        } else {
-                            attributes.put(k, v);
-                        }
-                    }else {
-                        System.out.println("GTF attribute '"+attr+"' size must be 2. At line:\n\t"+line);
-                    }
-                }
-                return new Gtf(fields[0], fields[1], fields[2], Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), fields[5], fields[6], fields[7], attributes);
+                tokenizer.tokenize(line, 9);
+                return decoder.decode(tokenizer);
             } else {
                 return null;
             }
-        } catch (Exception e) {
+        } catch (IOException | RuntimeException e) {
             throw new FileFormatException(e);
         }
     }
@@ -67,7 +58,7 @@ public class GtfReader {
         try {
             int cont = 0;
             Gtf gtf;
-            while ((gtf = read()) != null && cont < numberLines) {
+            while (cont < numberLines && (gtf = read()) != null) {
                 records.add(gtf);
                 cont++;
             }
@@ -0,0 +1,191 @@
+package org.opencb.biodata.formats.feature.gtf.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.opencb.biodata.formats.feature.gtf.Gtf;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineTokenizer;
+import org.opencb.commons.utils.FileUtils;
+
+/**
+ * Reads GTF files in chunks of lines that are decoded in parallel, returning
+ * the records in the same order as the file. The lines of the next chunks are
+ * read and submitted every time a chunk is consumed, so at most chunksAhead
+ * chunks are kept in memory.
+ *
+ * All the chunks are decoded with the same GtfLineDecoder, so they share its
+ * interned Strings.
+ */
+public class ParallelGtfReader {
+
+    public static final int DEFAULT_CHUNK_LINES = 10000;
+
+    private final BufferedReader bufferedReader;
+    private final GtfLineDecoder decoder;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int chunksAhead;
+    private final int chunkLines;
+    private final Queue<Future<List<Gtf>>> chunks;
+
+    private List<Gtf> current;
+    private int next;
+    private boolean endOfFile;
+
+    /**
+     * @param path GTF file, compressed with gzip if its name ends with .gz
+     * @param numThreads Threads decoding chunks, which are closed with the reader
+     */
+    public ParallelGtfReader(Path path, int numThreads) throws IOException {
+        this(path, new GtfLineDecoder(), newExecutor(numThreads), true, numThreads, DEFAULT_CHUNK_LINES);
+    }
+
+    /**
+     * @param path GTF file, compressed with gzip if its name ends with .gz
+     * @param decoder Decoder of the lines, which is shared by all the chunks
+     * @param executor Executor decoding chunks, which is not shut down with the reader so it can be shared
+     * @param chunksAhead Chunks decoded while the records of the current one are returned
+     * @param chunkLines Lines of every chunk
+     */
+    public ParallelGtfReader(Path path, GtfLineDecoder decoder, ExecutorService executor, int chunksAhead,
+                             int chunkLines) throws IOException {
+        this(path, decoder, executor, false, chunksAhead, chunkLines);
+    }
+
+    private ParallelGtfReader(Path path, GtfLineDecoder decoder, ExecutorService executor, boolean ownExecutor,
+                              int chunksAhead, int chunkLines) throws IOException {
+        this.bufferedReader = FileUtils.newBufferedReader(path);
+        this.decoder = decoder;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.chunksAhead = Math.max(1, chunksAhead);
+        this.chunkLines = chunkLines;
+        this.chunks = new ArrayDeque<>(this.chunksAhead);
+        this.current = Collections.emptyList();
+    }
+
+    private static ExecutorService newExecutor(int numThreads) {
+        return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gtf-decoder-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public Gtf read() throws FileFormatException {
+        if (next == current.size() && !nextChunk()) {
+            return null;
+        }
+        return current.get(next++);
+    }
+
+    public List<Gtf> read(int numberLines) throws FileFormatException {
+        List<Gtf> records = new ArrayList<>(numberLines);
+        while (records.size() < numberLines && (next < current.size() || nextChunk())) {
+            int copied = Math.min(numberLines - records.size(), current.size() - next);
+            records.addAll(current.subList(next, next + copied));
+            next += copied;
+        }
+        return records;
+    }
+
+    public List<Gtf> readAll() throws FileFormatException {
+        List<Gtf> records = new ArrayList<>();
+        while (next < current.size() || nextChunk()) {
+            records.addAll(current.subList(next, current.size()));
+            next = current.size();
+        }
+        return records;
+    }
+
+    public void close() throws IOException {
+        for (Future<List<Gtf>> chunk : chunks) {
+            chunk.cancel(true);
+        }
+        chunks.clear();
+        if (ownExecutor) {
+            executor.shutdownNow();
+        }
+        bufferedReader.close();
+    }
+
+    /**
+     * Submits new chunks until there are chunksAhead of them, and waits for the first one.
+     *
+     * @return Whether there was another chunk
+     */
+    private boolean nextChunk() throws FileFormatException {
+        try {
+            while (!endOfFile && chunks.size() < chunksAhead) {
+                submitChunk();
+            }
+        } catch (IOException e) {
+            throw new FileFormatException(e);
+        }
+        Future<List<Gtf>> chunk = chunks.poll();
+        if (chunk == null) {
+            current = Collections.emptyList();
+            next = 0;
+            return false;
+        }
+        try {
+            current = chunk.get();
+            next = 0;
+            // Empty chunks only happen at the end of the file, after comments
+            return !current.isEmpty() || nextChunk();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileFormatException("Interrupted while decoding GTF lines", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FileFormatException) {
+                throw (FileFormatException) e.getCause();
+            }
+            throw new FileFormatException(e);
+        }
+    }
+
+    private void submitChunk() throws IOException {
+        final List<String> lines = new ArrayList<>(chunkLines);
+        String line;
+        while (lines.size() < chunkLines && (line = bufferedReader.readLine()) != null) {
+            if (!line.startsWith("#") && !line.trim().isEmpty()) {
+                lines.add(line);
+            }
+        }
+        endOfFile = lines.size() < chunkLines;
+        chunks.add(executor.submit(new Callable<List<Gtf>>() {
+            @Override
+            public List<Gtf> call() throws FileFormatException {
+                LineTokenizer tokenizer = new LineTokenizer();
+                List<Gtf> records = new ArrayList<>(lines.size());
+                for (String line : lines) {
+                    tokenizer.tokenize(line, 9);
+                    try {
+                        records.add(decoder.decode(tokenizer));
+                    } catch (RuntimeException e) {
+                        throw new FileFormatException("Error in GTF line: " + line, e);
+                    }
+                }
+                return records;
+            }
+        }));
+    }
+
+}
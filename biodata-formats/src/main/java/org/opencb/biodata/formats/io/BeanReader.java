@@ -11,7 +11,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
-
+/**
+ * Reads delimited text files building the records by reflection, using the
+ * constructor of the bean class whose number of parameters matches the number
+ * of fields in the file.
+ *
+ * Readers of formats with a known layout should rather use a LineDecoderReader
+ * with a specific LineDecoder, which avoids the reflective calls per field.
+ */
 public class BeanReader<T> {
 
     private BufferedReader bufferedReader;
@@ -91,11 +98,10 @@ public class BeanReader<T> {
     public List<T> read(int number) throws IllegalArgumentException, InstantiationException, IllegalAccessException, InvocationTargetException, IOException {
         List<T> records = new ArrayList<T>(number);
         T t = null;
-        int cont = 0;
-        // read() method already avoids empty and commentLines
-        while ((t = read()) != null && cont < number) {
+        // read() method already avoids empty and commentLines. The limit is checked
+        // first, otherwise the record read when the limit is reached would be lost
+        while (records.size() < number && (t = read()) != null) {
             records.add(t);
-            cont++;
         }
         return records;
     }
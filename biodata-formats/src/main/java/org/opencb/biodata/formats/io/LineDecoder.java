@@ -0,0 +1,17 @@
+package org.opencb.biodata.formats.io;
+
+/**
+ * Builds an object from the fields of a tokenized line.
+ *
+ * @param <T> Type of the objects decoded
+ */
+public interface LineDecoder<T> {
+
+    /**
+     * @param fields Tokenizer containing the fields of the current line
+     * @return The decoded object
+     * @throws FileFormatException If the fields do not represent a valid object
+     */
+    T decode(LineTokenizer fields) throws FileFormatException;
+
+}
@@ -0,0 +1,98 @@
+package org.opencb.biodata.formats.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Reads delimited text files using a LineDecoder specific for the type of the
+ * records, instead of building them by reflection like BeanReader does.
+ *
+ * Empty lines and lines starting with the comment prefix are skipped.
+ *
+ * @param <T> Type of the records read
+ */
+public class LineDecoderReader<T> {
+
+    private final BufferedReader bufferedReader;
+    private final LineDecoder<T> decoder;
+    private final LineTokenizer tokenizer;
+    private final String comment;
+    private long lineNumber;
+
+    public LineDecoderReader(Path path, LineDecoder<T> decoder) throws IOException {
+        this(path, decoder, '\t', "#");
+    }
+
+    public LineDecoderReader(Path path, LineDecoder<T> decoder, char separator, String comment) throws IOException {
+        this.bufferedReader = Files.newBufferedReader(path, Charset.defaultCharset());
+        this.decoder = decoder;
+        this.tokenizer = new LineTokenizer(separator);
+        this.comment = comment;
+        this.lineNumber = 0;
+    }
+
+    public T read() throws IOException, FileFormatException {
+        return read((Pattern) null);
+    }
+
+    public T read(String pattern) throws IOException, FileFormatException {
+        return read(Pattern.compile(pattern));
+    }
+
+    public List<T> read(int number) throws IOException, FileFormatException {
+        List<T> records = new ArrayList<>(number);
+        T t;
+        while (records.size() < number && (t = read()) != null) {
+            records.add(t);
+        }
+        return records;
+    }
+
+    public List<T> readAll() throws IOException, FileFormatException {
+        List<T> records = new ArrayList<>();
+        T t;
+        while ((t = read()) != null) {
+            records.add(t);
+        }
+        return records;
+    }
+
+    public List<T> readAll(String pattern) throws IOException, FileFormatException {
+        List<T> records = new ArrayList<>();
+        Pattern pat = Pattern.compile(pattern);
+        T t;
+        while ((t = read(pat)) != null) {
+            records.add(t);
+        }
+        return records;
+    }
+
+    public void close() throws IOException {
+        bufferedReader.close();
+    }
+
+    private T read(Pattern pat) throws IOException, FileFormatException {
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty() || line.startsWith(comment) || line.trim().isEmpty()
+                    || (pat != null && !pat.matcher(line).matches())) {
+                continue;
+            }
+            tokenizer.tokenize(line);
+            try {
+                return decoder.decode(tokenizer);
+            } catch (RuntimeException e) {
+                throw new FileFormatException("Error in line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,168 @@
+package org.opencb.biodata.formats.io;
+
+import java.util.Arrays;
+
+/**
+ * Splits delimited lines into fields without regular expressions.
+ *
+ * Only the boundaries of the fields are stored, in arrays that are reused
+ * between lines, so substrings are created just for the fields actually
+ * requested and numeric fields are parsed straight from the line.
+ *
+ * Instances are not thread-safe.
+ */
+public class LineTokenizer {
+
+    private final char separator;
+    private String line;
+    private int numFields;
+    private int[] starts;
+    private int[] ends;
+
+    public LineTokenizer() {
+        this('\t');
+    }
+
+    public LineTokenizer(char separator) {
+        this.separator = separator;
+        this.starts = new int[16];
+        this.ends = new int[16];
+    }
+
+    /**
+     * Splits a line, keeping trailing empty fields like String.split(separator, -1).
+     *
+     * @param line Line to split
+     * @return The number of fields in the line
+     */
+    public int tokenize(String line) {
+        return tokenize(line, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Splits only the beginning of a line, so the rest of it is not scanned.
+     * The last field contains the rest of the line, separators included.
+     *
+     * @param line Line to split
+     * @param maxFields Maximum number of fields to split the line into
+     * @return The number of fields in the line, at most maxFields
+     */
+    public int tokenize(String line, int maxFields) {
+        this.line = line;
+        numFields = 0;
+        int start = 0;
+        int length = line.length();
+        for (int i = 0; i <= length; i++) {
+            if (numFields == maxFields - 1) {
+                i = length;
+            }
+            if (i == length || line.charAt(i) == separator) {
+                if (numFields == starts.length) {
+                    starts = Arrays.copyOf(starts, numFields * 2);
+                    ends = Arrays.copyOf(ends, numFields * 2);
+                }
+                starts[numFields] = start;
+                ends[numFields] = i;
+                numFields++;
+                start = i + 1;
+            }
+        }
+        return numFields;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public int getNumFields() {
+        return numFields;
+    }
+
+    public String getString(int field) {
+        checkField(field);
+        return line.substring(starts[field], ends[field]);
+    }
+
+    /**
+     * Gets a field as a String, or a default value if the line has not so many fields.
+     */
+    public String getString(int field, String defaultValue) {
+        return field < numFields ? getString(field) : defaultValue;
+    }
+
+    public boolean isEmpty(int field) {
+        checkField(field);
+        return starts[field] == ends[field];
+    }
+
+    /**
+     * Checks whether a field is just one character long and equal to a value,
+     * like the dots used in many formats to represent missing values.
+     */
+    public boolean equals(int field, char value) {
+        checkField(field);
+        return ends[field] - starts[field] == 1 && line.charAt(starts[field]) == value;
+    }
+
+    /**
+     * Parses a field as a decimal integer, without creating any intermediate String.
+     *
+     * @throws NumberFormatException If the field is not a valid integer
+     */
+    public int getInt(int field) {
+        checkField(field);
+        int start = starts[field];
+        int end = ends[field];
+        if (start == end) {
+            throw new NumberFormatException("Empty integer field " + field + " in line: " + line);
+        }
+
+        boolean negative = false;
+        char first = line.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++start == end) {
+                throw new NumberFormatException("Invalid integer field " + field + " in line: " + line);
+            }
+        }
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid integer field " + field + " in line: " + line);
+            }
+            value = value * 10 + (c - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Integer field " + field + " out of range in line: " + line);
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Integer field " + field + " out of range in line: " + line);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a field as an integer, or returns a default value if the line has
+     * not so many fields, or the field is empty or a dot.
+     */
+    public int getInt(int field, int defaultValue) {
+        if (field >= numFields || isEmpty(field) || equals(field, '.')) {
+            return defaultValue;
+        }
+        return getInt(field);
+    }
+
+    public double getDouble(int field) {
+        return Double.parseDouble(getString(field));
+    }
+
+    private void checkField(int field) {
+        if (field < 0 || field >= numFields) {
+            throw new IndexOutOfBoundsException("Field " + field + " not found, the line has " + numFields + " fields: " + line);
+        }
+    }
+
+}
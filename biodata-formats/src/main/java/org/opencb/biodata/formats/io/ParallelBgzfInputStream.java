@@ -0,0 +1,192 @@
+package org.opencb.biodata.formats.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses BGZF files, the gzip variant made of independent blocks of at
+ * most 64 KB used by bgzip, inflating several blocks at the same time.
+ *
+ * The compressed blocks are read by the thread reading this stream, and are
+ * inflated by an executor that is not shut down when the stream is closed.
+ */
+public class ParallelBgzfInputStream extends InputStream {
+
+    private static final int HEADER_SIZE = 18;
+
+    private final InputStream input;
+    private final ExecutorService executor;
+    private final int blocksAhead;
+    private final Queue<Future<byte[]>> pending;
+    private boolean endOfInput;
+
+    private byte[] block;
+    private int position;
+
+    /**
+     * @param input Compressed stream
+     * @param executor Executor where blocks are inflated
+     * @param blocksAhead Number of blocks being inflated while the current one is read
+     */
+    public ParallelBgzfInputStream(InputStream input, ExecutorService executor, int blocksAhead) {
+        this.input = input;
+        this.executor = executor;
+        this.blocksAhead = Math.max(1, blocksAhead);
+        this.pending = new ArrayDeque<>(this.blocksAhead);
+        this.block = new byte[0];
+    }
+
+    /**
+     * @param header First bytes of a file, at least 18
+     * @return Whether they are the header of a BGZF block
+     */
+    public static boolean isBgzf(byte[] header, int length) {
+        return length >= HEADER_SIZE && (header[0] & 0xFF) == 0x1f && (header[1] & 0xFF) == 0x8b && header[2] == 8
+                && (header[3] & 4) != 0 && header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int read = Math.min(length, block.length - position);
+        System.arraycopy(block, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    /**
+     * Makes sure there are bytes left in the current block, waiting for the next ones if needed.
+     *
+     * @return Whether there are bytes left in the stream
+     */
+    private boolean nextBlock() throws IOException {
+        while (position == block.length) {
+            while (pending.size() < blocksAhead && !endOfInput) {
+                submitBlock();
+            }
+            Future<byte[]> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+            try {
+                block = next.get();
+                position = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while inflating BGZF blocks", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next compressed block and starts inflating it.
+     */
+    private void submitBlock() throws IOException {
+        final byte[] header = new byte[HEADER_SIZE];
+        int read = readFully(header, 0, HEADER_SIZE);
+        if (read == 0) {
+            endOfInput = true;
+            return;
+        }
+        if (read < HEADER_SIZE || !isBgzf(header, read)) {
+            throw new IOException("Invalid BGZF block header");
+        }
+        int extraLength = (header[10] & 0xFF) | (header[11] & 0xFF) << 8;
+        int blockSize = ((header[16] & 0xFF) | (header[17] & 0xFF) << 8) + 1;
+        // Other extra subfields may follow BC, they are skipped with the compressed data
+        final byte[] data = new byte[blockSize - HEADER_SIZE];
+        if (readFully(data, 0, data.length) < data.length) {
+            throw new EOFException("Truncated BGZF block");
+        }
+        final int dataStart = extraLength - 6;
+        pending.add(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                return inflate(data, dataStart);
+            }
+        }));
+    }
+
+    private static byte[] inflate(byte[] data, int dataStart) throws IOException {
+        int trailer = data.length - 8;
+        int crc = (data[trailer] & 0xFF) | (data[trailer + 1] & 0xFF) << 8 | (data[trailer + 2] & 0xFF) << 16
+                | (data[trailer + 3] & 0xFF) << 24;
+        int size = (data[trailer + 4] & 0xFF) | (data[trailer + 5] & 0xFF) << 8 | (data[trailer + 6] & 0xFF) << 16
+                | (data[trailer + 7] & 0xFF) << 24;
+        byte[] inflated = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, dataStart, trailer - dataStart);
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int inflatedBytes = inflater.inflate(inflated, length, size - length);
+                if (inflatedBytes == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflatedBytes;
+            }
+            if (length != size) {
+                throw new IOException("Invalid BGZF block: " + length + " bytes inflated instead of " + size);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid BGZF block", e);
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(inflated, 0, size);
+        if ((int) checksum.getValue() != crc) {
+            throw new IOException("Wrong checksum of BGZF block");
+        }
+        return inflated;
+    }
+
+    private int readFully(byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = input.read(buffer, offset + total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        input.close();
+    }
+
+}
@@ -0,0 +1,201 @@
+package org.opencb.biodata.formats.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses in BGZF format, the gzip variant made of independent blocks of
+ * at most 64 KB written by bgzip, deflating several blocks at the same time.
+ * The output can be read by any gzip reader, and in parallel by
+ * ParallelBgzfInputStream.
+ *
+ * Blocks are deflated by an executor that is not shut down when the stream is
+ * closed, and written in order by the thread writing this stream.
+ */
+public class ParallelBgzfOutputStream extends OutputStream {
+
+    /**
+     * Bytes of every block before compressing it, like bgzip, so any block fits in 64 KB after compressing it.
+     */
+    public static final int BLOCK_SIZE = 0xff00;
+
+    private static final int HEADER_SIZE = 18;
+    private static final int TRAILER_SIZE = 8;
+    private static final int MAX_BLOCK_SIZE = 65536;
+    private static final byte[] EMPTY_BLOCK = {
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final OutputStream output;
+    private final ExecutorService executor;
+    private final int blocksAhead;
+    private final int level;
+    private final Queue<Future<byte[]>> pending;
+
+    private byte[] block;
+    private int position;
+    private boolean closed;
+
+    /**
+     * @param output Stream the compressed blocks are written to
+     * @param executor Executor where blocks are deflated
+     * @param blocksAhead Number of blocks being deflated while more bytes are written
+     */
+    public ParallelBgzfOutputStream(OutputStream output, ExecutorService executor, int blocksAhead) {
+        this(output, executor, blocksAhead, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level Compression level, from 0 to 9
+     */
+    public ParallelBgzfOutputStream(OutputStream output, ExecutorService executor, int blocksAhead, int level) {
+        this.output = output;
+        this.executor = executor;
+        this.blocksAhead = Math.max(1, blocksAhead);
+        this.level = level;
+        this.pending = new ArrayDeque<>(this.blocksAhead + 1);
+        this.block = new byte[BLOCK_SIZE];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[position++] = (byte) b;
+        if (position == BLOCK_SIZE) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int copied = Math.min(length, BLOCK_SIZE - position);
+            System.arraycopy(bytes, offset, block, position, copied);
+            position += copied;
+            offset += copied;
+            length -= copied;
+            if (position == BLOCK_SIZE) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compresses the bytes written so far in a block, even if it is not full, and writes all the blocks.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (position > 0) {
+            submitBlock();
+        }
+        while (!pending.isEmpty()) {
+            writeBlock();
+        }
+        output.flush();
+    }
+
+    /**
+     * Writes the pending blocks and the empty block that marks the end of a BGZF file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            output.write(EMPTY_BLOCK);
+        } finally {
+            for (Future<byte[]> future : pending) {
+                future.cancel(true);
+            }
+            output.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] data = block;
+        final int length = position;
+        block = new byte[BLOCK_SIZE];
+        position = 0;
+        pending.add(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return compress(data, length, level);
+            }
+        }));
+        while (pending.size() > blocksAhead) {
+            writeBlock();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        try {
+            output.write(pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while deflating BGZF blocks", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * @return A complete BGZF block with the bytes
+     */
+    static byte[] compress(byte[] data, int length, int level) {
+        byte[] compressed = new byte[MAX_BLOCK_SIZE];
+        int size = deflate(data, length, level, compressed);
+        if (size < 0) {
+            // Data that does not compress is stored as it is, which always fits
+            size = deflate(data, length, Deflater.NO_COMPRESSION, compressed);
+        }
+        int blockSize = HEADER_SIZE + size + TRAILER_SIZE;
+        System.arraycopy(EMPTY_BLOCK, 0, compressed, 0, HEADER_SIZE - 2);
+        compressed[16] = (byte) (blockSize - 1);
+        compressed[17] = (byte) ((blockSize - 1) >>> 8);
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        writeInt(compressed, HEADER_SIZE + size, (int) crc.getValue());
+        writeInt(compressed, HEADER_SIZE + size + 4, length);
+        byte[] result = new byte[blockSize];
+        System.arraycopy(compressed, 0, result, 0, blockSize);
+        return result;
+    }
+
+    /**
+     * @return The size of the deflated data, written after the header, or -1 if it does not fit in a block
+     */
+    private static int deflate(byte[] data, int length, int level, byte[] compressed) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            int limit = MAX_BLOCK_SIZE - TRAILER_SIZE;
+            int size = HEADER_SIZE;
+            while (!deflater.finished() && size < limit) {
+                size += deflater.deflate(compressed, size, limit - size);
+            }
+            return deflater.finished() ? size - HEADER_SIZE : -1;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+
+}
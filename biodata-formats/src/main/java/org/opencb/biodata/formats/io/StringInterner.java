@@ -0,0 +1,67 @@
+package org.opencb.biodata.formats.io;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a single instance of the Strings that are repeated many times in a
+ * file, like chromosome names, sources or biotypes, so the records read share
+ * them instead of keeping a copy each.
+ *
+ * Unlike String.intern, the pool belongs to a reader and it is bounded: once
+ * it is full, new Strings are returned as they are. Instances can be shared
+ * by several threads.
+ */
+public class StringInterner {
+
+    public static final int DEFAULT_MAX_SIZE = 100000;
+
+    private final ConcurrentMap<String, String> pool;
+    private final int maxSize;
+
+    public StringInterner() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize Maximum number of different Strings kept
+     */
+    public StringInterner(int maxSize) {
+        this.maxSize = maxSize;
+        this.pool = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return The instance of the String in the pool, or the String itself if it was not in the pool
+     */
+    public String intern(String string) {
+        if (string == null) {
+            return null;
+        }
+        String interned = pool.get(string);
+        if (interned != null) {
+            return interned;
+        }
+        if (pool.size() >= maxSize) {
+            return string;
+        }
+        interned = pool.putIfAbsent(string, string);
+        return interned != null ? interned : string;
+    }
+
+    /**
+     * Interns a substring, like intern(string.substring(start, end)).
+     */
+    public String intern(String string, int start, int end) {
+        return intern(string.substring(start, end));
+    }
+
+    public int size() {
+        return pool.size();
+    }
+
+    public void clear() {
+        pool.clear();
+    }
+
+}
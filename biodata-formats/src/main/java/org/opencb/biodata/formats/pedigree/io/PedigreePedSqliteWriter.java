@@ -6,16 +6,49 @@ import java.util.Map;
 import org.opencb.biodata.models.pedigree.Individual;
 import org.opencb.biodata.models.pedigree.Pedigree;
 
+/**
+ * Writes the individuals of one or more pedigrees into a SQLite database.
+ *
+ * All rows are inserted in a single transaction, committed in post() or
+ * close(), using JDBC batches of a configurable size. The indexes are created
+ * in post(), after all the rows have been inserted.
+ *
+ * In the optional bulk load mode, journaling and synchronous writes are
+ * relaxed from pre() to post(), so a crash while loading may corrupt the
+ * database. It should only be used to create new databases.
+ */
 public class PedigreePedSqliteWriter implements PedigreeWriter {
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final String INSERT_SQL = "INSERT INTO pedigree (sample, family, father, mother, sex, phenotype) VALUES(?,?,?,?,?,?);";
+
     private String dbName;
     private Connection con;
     private Statement stmt;
     private PreparedStatement pstmt;
 
+    private final int batchSize;
+    private final boolean bulkLoad;
+    private int pendingRows;
+
 
     public PedigreePedSqliteWriter(String dbName) {
+        this(dbName, DEFAULT_BATCH_SIZE, false);
+    }
+
+    /**
+     * @param dbName Path of the database
+     * @param batchSize Rows sent to the database in every JDBC batch
+     * @param bulkLoad Whether to disable journaling and synchronous writes while loading
+     */
+    public PedigreePedSqliteWriter(String dbName, int batchSize, boolean bulkLoad) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than zero");
+        }
         this.dbName = dbName;
+        this.batchSize = batchSize;
+        this.bulkLoad = bulkLoad;
         stmt = null;
         pstmt = null;
     }
@@ -41,6 +74,13 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
     public boolean close() {
 
         try {
+            if (pstmt != null) {
+                // Rows written without calling post() are kept too
+                flush();
+                con.commit();
+                pstmt.close();
+                pstmt = null;
+            }
             con.close();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -70,6 +110,18 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
             stmt.close();
 
             con.commit();
+
+            if (bulkLoad) {
+                // PRAGMAs can't change the journal mode inside a transaction, so they are run in auto-commit mode
+                con.setAutoCommit(true);
+                stmt = con.createStatement();
+                stmt.execute("PRAGMA synchronous = OFF;");
+                stmt.execute("PRAGMA journal_mode = MEMORY;");
+                stmt.execute("PRAGMA temp_store = MEMORY;");
+                stmt.execute("PRAGMA cache_size = 100000;");
+                stmt.close();
+                con.setAutoCommit(false);
+            }
         } catch (SQLException e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
             res = false;
@@ -83,13 +135,27 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
 
         boolean res = true;
         try {
+            if (pstmt != null) {
+                flush();
+                con.commit();
+            }
 
+            // Indexes are built once all the rows are loaded, instead of updating them on every insertion
             stmt = con.createStatement();
-            stmt.execute("CREATE INDEX pedigree_sample_idx ON pedigree(sample);");
-            stmt.execute("CREATE INDEX pedigree_family_idx ON pedigree(family);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS pedigree_sample_idx ON pedigree(sample);");
+            stmt.execute("CREATE INDEX IF NOT EXISTS pedigree_family_idx ON pedigree(family);");
             stmt.close();
             con.commit();
 
+            if (bulkLoad) {
+                con.setAutoCommit(true);
+                stmt = con.createStatement();
+                stmt.execute("PRAGMA journal_mode = DELETE;");
+                stmt.execute("PRAGMA synchronous = FULL;");
+                stmt.close();
+                con.setAutoCommit(false);
+            }
+
         } catch (SQLException e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
             res = false;
@@ -100,8 +166,13 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
     }
 
     @Override
-    public boolean write(List batch) {
-        return false;
+    public boolean write(List<Pedigree> batch) {
+        for (Pedigree pedigree : batch) {
+            if (!write(pedigree)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -111,10 +182,11 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
         Individual ind;
         boolean res = true;
 
-        String sql = "INSERT INTO pedigree (sample, family, father, mother, sex, phenotype) VALUES(?,?,?,?,?,?);";
-
         try {
-            pstmt = con.prepareStatement(sql);
+            if (pstmt == null) {
+                pstmt = con.prepareStatement(INSERT_SQL);
+                pendingRows = 0;
+            }
             for (Map.Entry<String, Individual> entry : individuals.entrySet()) {
                 ind = entry.getValue();
                 pstmt.setString(1, ind.getId());
@@ -125,13 +197,12 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
                 pstmt.setString(5, ind.getSex());
                 pstmt.setString(6, ind.getPhenotype());
 
-                pstmt.execute();
-
+                pstmt.addBatch();
+                if (++pendingRows >= batchSize) {
+                    flush();
+                }
             }
 
-            pstmt.close();
-            con.commit();
-
         } catch (SQLException e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
             res = false;
@@ -140,5 +211,12 @@ public class PedigreePedSqliteWriter implements PedigreeWriter {
         return res;
     }
 
+    private void flush() throws SQLException {
+        if (pendingRows > 0) {
+            pstmt.executeBatch();
+            pstmt.clearBatch();
+            pendingRows = 0;
+        }
+    }
 
 }
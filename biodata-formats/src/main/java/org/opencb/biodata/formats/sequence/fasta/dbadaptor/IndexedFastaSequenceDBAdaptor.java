@@ -0,0 +1,79 @@
+package org.opencb.biodata.formats.sequence.fasta.dbadaptor;
+
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fasta.io.IndexedFastaReader;
+import org.opencb.biodata.models.core.PackedSequence;
+import org.opencb.biodata.models.feature.Region;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads the sequences of regions from a local FASTA file through its .fai index.
+ */
+public class IndexedFastaSequenceDBAdaptor extends SequenceDBAdaptor {
+
+    private final Path fasta;
+    private IndexedFastaReader reader;
+
+    /**
+     * @param fasta FASTA file, not compressed. Its index is created if there is none
+     */
+    public IndexedFastaSequenceDBAdaptor(Path fasta) {
+        this.fasta = fasta;
+    }
+
+    @Override
+    public void open() throws IOException {
+        try {
+            reader = new IndexedFastaReader(fasta);
+        } catch (FileFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    @Override
+    public String getSequence(Region region) throws IOException {
+        try {
+            String sequence = reader.getSubsequence(region.getChromosome(), region.getStart(), region.getEnd());
+            if (sequence == null) {
+                throw new IOException("Sequence " + region.getChromosome() + " not found in " + fasta);
+            }
+            return sequence;
+        } catch (FileFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Packs the bases as they are read, without creating the String of the region.
+     */
+    @Override
+    public PackedSequence getPackedSequence(Region region) throws IOException {
+        try {
+            PackedSequence sequence = reader.getPackedSubsequence(region.getChromosome(), region.getStart(), region.getEnd());
+            if (sequence == null) {
+                throw new IOException("Sequence " + region.getChromosome() + " not found in " + fasta);
+            }
+            return sequence;
+        } catch (FileFormatException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The file contains the sequences of a single species, so it is ignored.
+     */
+    @Override
+    public String getSequence(Region region, String species) throws IOException {
+        return getSequence(region);
+    }
+
+}
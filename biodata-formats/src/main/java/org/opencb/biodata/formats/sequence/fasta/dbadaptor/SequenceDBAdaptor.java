@@ -1,5 +1,6 @@
 package org.opencb.biodata.formats.sequence.fasta.dbadaptor;
 
+import org.opencb.biodata.models.core.PackedSequence;
 import org.opencb.biodata.models.feature.Region;
 import org.opencb.commons.containers.map.QueryOptions;
 
@@ -27,4 +28,11 @@ public abstract class SequenceDBAdaptor {
     abstract public String getSequence(Region region) throws IOException;
     abstract public String getSequence(Region region, String species) throws IOException;
 
+    /**
+     * @return The sequence of a region packed in 2 bits per base
+     */
+    public PackedSequence getPackedSequence(Region region) throws IOException {
+        return PackedSequence.valueOf(getSequence(region));
+    }
+
 }
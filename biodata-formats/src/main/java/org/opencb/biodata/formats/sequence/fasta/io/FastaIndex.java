@@ -0,0 +1,286 @@
+package org.opencb.biodata.formats.sequence.fasta.io;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.opencb.biodata.formats.io.FileFormatException;
+
+/**
+ * Index of a FASTA file in the .fai format of samtools faidx: the length of
+ * every sequence, where it starts in the file, and how many bases and bytes
+ * its lines have, so any position can be found without reading the file.
+ */
+public class FastaIndex {
+
+    public static final String EXTENSION = ".fai";
+
+    private final Map<String, Entry> entries;
+
+    private FastaIndex(List<Entry> entries) throws FileFormatException {
+        this.entries = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            if (this.entries.put(entry.getName(), entry) != null) {
+                throw new FileFormatException("Duplicated sequence name " + entry.getName());
+            }
+        }
+    }
+
+    /**
+     * Reads the .fai index of a FASTA file, or creates it if there is none or
+     * it is older than the file. The index created is written next to the
+     * file if possible.
+     *
+     * @param fasta FASTA file, not compressed
+     * @return The index of the file
+     */
+    public static FastaIndex load(Path fasta) throws IOException, FileFormatException {
+        Path fai = fasta.resolveSibling(fasta.getFileName() + EXTENSION);
+        if (Files.exists(fai) && Files.getLastModifiedTime(fai).compareTo(Files.getLastModifiedTime(fasta)) >= 0) {
+            return read(fai);
+        }
+        FastaIndex index = build(fasta);
+        try {
+            index.write(fai);
+        } catch (IOException e) {
+            // The index is only a cache, it will be created again next time
+        }
+        return index;
+    }
+
+    /**
+     * @param fai File in the .fai format
+     */
+    public static FastaIndex read(Path fai) throws IOException, FileFormatException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(fai, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 5) {
+                    throw new FileFormatException("Incorrect FASTA index line: " + line);
+                }
+                try {
+                    entries.add(new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+                } catch (NumberFormatException e) {
+                    throw new FileFormatException("Incorrect FASTA index line: " + line, e);
+                }
+            }
+        }
+        return new FastaIndex(entries);
+    }
+
+    /**
+     * Indexes a FASTA file reading it once. Every line of a sequence but the
+     * last one must have the same length.
+     *
+     * @param fasta FASTA file, not compressed
+     */
+    public static FastaIndex build(Path fasta) throws IOException, FileFormatException {
+        Builder builder = new Builder();
+        byte[] buffer = new byte[1024 * 1024];
+        try (InputStream input = Files.newInputStream(fasta)) {
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                builder.add(buffer, read);
+            }
+        }
+        return new FastaIndex(builder.finish());
+    }
+
+    public void write(Path fai) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(fai, StandardCharsets.US_ASCII)) {
+            for (Entry entry : entries.values()) {
+                writer.write(entry.getName() + "\t" + entry.getLength() + "\t" + entry.getOffset() + "\t"
+                        + entry.getLineBases() + "\t" + entry.getLineWidth());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * @return The entry of a sequence, or null if there is none with that name
+     */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return The entries of all the sequences, in the order of the file
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Position of a sequence in a FASTA file.
+     */
+    public static class Entry {
+        private final String name;
+        private final long length;
+        private final long offset;
+        private final int lineBases;
+        private final int lineWidth;
+
+        /**
+         * @param name Sequence name, the ID of its header
+         * @param length Number of bases
+         * @param offset Position in the file of the first base
+         * @param lineBases Bases in every line
+         * @param lineWidth Bytes in every line, including the new line chars
+         */
+        public Entry(String name, long length, long offset, int lineBases, int lineWidth) {
+            this.name = name;
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineWidth = lineWidth;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLineBases() {
+            return lineBases;
+        }
+
+        public int getLineWidth() {
+            return lineWidth;
+        }
+
+        /**
+         * @param position Position in the sequence, starting at 0
+         * @return Position of its base in the file
+         */
+        public long offsetOf(long position) {
+            if (lineBases == 0) {
+                return offset;
+            }
+            return offset + position / lineBases * lineWidth + position % lineBases;
+        }
+
+        @Override
+        public String toString() {
+            return name + "\t" + length + "\t" + offset + "\t" + lineBases + "\t" + lineWidth;
+        }
+    }
+
+    /**
+     * Finds the lines of a FASTA file as its bytes are added.
+     */
+    private static class Builder {
+        private final List<Entry> entries = new ArrayList<>();
+
+        private long position;
+        private boolean lineStart = true;
+        private boolean header;
+        private StringBuilder headerLine;
+        private int lineLength;
+        private byte last;
+
+        // Sequence being indexed
+        private String name;
+        private long offset;
+        private long length;
+        private int lineBases = -1;
+        private int lineWidth;
+        private boolean shortLine;
+
+        void add(byte[] buffer, int read) throws FileFormatException {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                position++;
+                if (lineStart) {
+                    lineStart = false;
+                    header = b == '>';
+                    if (header) {
+                        headerLine = new StringBuilder();
+                    }
+                }
+                if (b == '\n') {
+                    endLine(lineLength + 1);
+                    lineStart = true;
+                    lineLength = 0;
+                } else {
+                    if (header) {
+                        headerLine.append((char) b);
+                    }
+                    lineLength++;
+                }
+                last = b;
+            }
+        }
+
+        List<Entry> finish() throws FileFormatException {
+            if (!lineStart) {
+                endLine(lineLength);
+            }
+            finishSequence();
+            return entries;
+        }
+
+        private void endLine(int width) throws FileFormatException {
+            int bases = last == '\r' ? lineLength - 1 : lineLength;
+            if (header) {
+                finishSequence();
+                String[] fields = headerLine.substring(1).trim().split("\\s", 2);
+                name = fields[0];
+                offset = position;
+                length = 0;
+                lineBases = -1;
+                lineWidth = 0;
+                shortLine = false;
+                return;
+            }
+            if (name == null) {
+                if (bases > 0) {
+                    throw new FileFormatException("Sequence found before the first header");
+                }
+                return;
+            }
+            if (lineBases < 0) {
+                lineBases = bases;
+                lineWidth = width;
+            } else if (bases > 0 && (shortLine || bases > lineBases)) {
+                throw new FileFormatException("Sequence " + name + " has lines of different lengths, so it can't be indexed");
+            } else if (bases < lineBases) {
+                shortLine = true;
+            } else if (width != lineWidth && width != lineLength) {
+                throw new FileFormatException("Sequence " + name + " has different new line chars, so it can't be indexed");
+            }
+            length += bases;
+        }
+
+        private void finishSequence() {
+            if (name != null) {
+                entries.add(new Entry(name, length, offset, Math.max(lineBases, 0), lineWidth));
+            }
+        }
+    }
+
+}
@@ -171,8 +171,14 @@ public class FastaReader extends AbstractFormatReader<Fasta> {
 
     @Override
     public List<Fasta> read(int size) throws FileFormatException {
-        // TODO Auto-generated method stub
-        return null;
+        List<Fasta> fastaList = new ArrayList<Fasta>(size);
+
+        Fasta fasta;
+        while (fastaList.size() < size && (fasta = this.read()) != null) {
+            fastaList.add(fasta);
+        }
+
+        return fastaList;
     }
 
 
@@ -0,0 +1,249 @@
+package org.opencb.biodata.formats.sequence.fasta.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.opencb.biodata.formats.io.AbstractFormatReader;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fasta.Fasta;
+import org.opencb.biodata.models.core.PackedSequence;
+
+/**
+ * Reads FASTA files through their .fai index, so any sequence or region of a
+ * sequence is read directly from its position in the file, without reading
+ * the ones before it. The index is created the first time a file is read.
+ *
+ * Only the bytes of the region requested are read, and reads do not change
+ * the position of the reader, so getSequence and getSubsequence can be used
+ * from several threads. Compressed files are not supported.
+ */
+public class IndexedFastaReader extends AbstractFormatReader<Fasta> {
+
+    private static final int PACKED_CHUNK_SIZE = 1024 * 1024;
+
+    private final FastaIndex index;
+    private final FileChannel channel;
+    private final List<FastaIndex.Entry> entries;
+    private int next;
+
+    public IndexedFastaReader(Path path) throws IOException, FileFormatException {
+        this(path, FastaIndex.load(path));
+    }
+
+    public IndexedFastaReader(Path path, FastaIndex index) throws IOException {
+        super(path);
+        if (path.toFile().getName().endsWith(".gz")) {
+            throw new IOException("Compressed FASTA files can't be read by position: " + path);
+        }
+        this.index = index;
+        this.entries = index.getEntries();
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    public FastaIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @param name Sequence name
+     * @return The whole sequence, or null if there is none with that name
+     */
+    public Fasta getSequence(String name) throws FileFormatException {
+        FastaIndex.Entry entry = index.get(name);
+        return entry != null ? read(entry) : null;
+    }
+
+    /**
+     * @param name Sequence name
+     * @param start First position, starting at 1
+     * @param end Last position, included. Positions out of the sequence are ignored
+     * @return The bases between both positions, or null if there is no sequence with that name
+     */
+    public String getSubsequence(String name, long start, long end) throws FileFormatException {
+        FastaIndex.Entry entry = index.get(name);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return readBases(entry, Math.max(start, 1) - 1, Math.min(end, entry.getLength()));
+        } catch (IOException e) {
+            throw new FileFormatException(e);
+        }
+    }
+
+    /**
+     * Reads a region packed in 2 bits per base, a chunk of the file at a time,
+     * so whole chromosomes can be read without creating their Strings.
+     *
+     * @param name Sequence name
+     * @param start First position, starting at 1
+     * @param end Last position, included. Positions out of the sequence are ignored
+     * @return The bases between both positions, or null if there is no sequence with that name
+     */
+    public PackedSequence getPackedSubsequence(String name, long start, long end) throws FileFormatException {
+        FastaIndex.Entry entry = index.get(name);
+        if (entry == null) {
+            return null;
+        }
+        long first = Math.max(start, 1) - 1;
+        long last = Math.min(end, entry.getLength());
+        if (last - first > Integer.MAX_VALUE) {
+            throw new FileFormatException("Region of " + name + " too long to be packed: " + (last - first));
+        }
+        PackedSequence.Builder builder = new PackedSequence.Builder((int) Math.max(0, last - first));
+        try {
+            if (first < last) {
+                long position = entry.offsetOf(first);
+                long fileEnd = entry.offsetOf(last - 1) + 1;
+                while (position < fileEnd) {
+                    byte[] bytes = readBytes(position, (int) Math.min(PACKED_CHUNK_SIZE, fileEnd - position));
+                    builder.append(bytes, 0, bytes.length);
+                    position += bytes.length;
+                }
+            }
+        } catch (IOException e) {
+            throw new FileFormatException(e);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Fasta read() throws FileFormatException {
+        return next < entries.size() ? read(entries.get(next++)) : null;
+    }
+
+    @Override
+    public List<Fasta> read(int size) throws FileFormatException {
+        List<Fasta> fastaList = new ArrayList<Fasta>(Math.min(size, entries.size() - next));
+        Fasta fasta;
+        while (fastaList.size() < size && (fasta = this.read()) != null) {
+            fastaList.add(fasta);
+        }
+        return fastaList;
+    }
+
+    /**
+     * Reads the next sequence whose name matches a regular expression. Only
+     * the names in the index are compared, so the sequences skipped are not
+     * read.
+     */
+    @Override
+    public Fasta read(String regexFilter) throws FileFormatException {
+        while (next < entries.size()) {
+            FastaIndex.Entry entry = entries.get(next++);
+            if (entry.getName().matches(regexFilter)) {
+                return read(entry);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Fasta> readAll() throws FileFormatException {
+        List<Fasta> fastaList = new ArrayList<Fasta>();
+        Fasta fasta;
+        while ((fasta = this.read()) != null) {
+            fastaList.add(fasta);
+        }
+        return fastaList;
+    }
+
+    @Override
+    public List<Fasta> readAll(String regexFilter) throws FileFormatException {
+        List<Fasta> fastaList = new ArrayList<Fasta>();
+        Fasta fasta;
+        while ((fasta = this.read(regexFilter)) != null) {
+            fastaList.add(fasta);
+        }
+        return fastaList;
+    }
+
+    /**
+     * @return The number of sequences in the file, from the index
+     */
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Fasta read(FastaIndex.Entry entry) throws FileFormatException {
+        try {
+            String sequence = readBases(entry, 0, entry.getLength());
+            return new Fasta(entry.getName(), readDescription(entry), sequence);
+        } catch (IOException e) {
+            throw new FileFormatException(e);
+        }
+    }
+
+    /**
+     * Reads the bases in a range of a sequence, skipping the new lines.
+     *
+     * @param start First position, starting at 0
+     * @param end Position after the last one
+     */
+    private String readBases(FastaIndex.Entry entry, long start, long end) throws IOException {
+        if (start >= end) {
+            return "";
+        }
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Region of " + entry.getName() + " too long to be read at once: " + (end - start));
+        }
+        long first = entry.offsetOf(start);
+        long last = entry.offsetOf(end - 1);
+        byte[] bytes = readBytes(first, (int) (last - first + 1));
+
+        // Remove the new lines in place
+        int length = 0;
+        for (byte b : bytes) {
+            if (b != '\n' && b != '\r') {
+                bytes[length++] = b;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads the header of a sequence, which ends right before its first base.
+     */
+    private String readDescription(FastaIndex.Entry entry) throws IOException {
+        long end = entry.getOffset();
+        int size = 256;
+        while (true) {
+            long start = Math.max(0, end - size);
+            byte[] bytes = readBytes(start, (int) (end - start));
+            for (int i = bytes.length - 1; i >= 0; i--) {
+                if (bytes[i] == '>') {
+                    String header = new String(bytes, i + 1, bytes.length - i - 1, StandardCharsets.US_ASCII).trim();
+                    String[] fields = header.split("\\s", 2);
+                    return fields.length > 1 ? fields[1].trim() : "";
+                }
+            }
+            if (start == 0) {
+                return "";
+            }
+            size *= 4;
+        }
+    }
+
+    private byte[] readBytes(long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file reading " + path + ", the index may be outdated");
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -1,7 +1,5 @@
 package org.opencb.biodata.formats.sequence.fastq;
 
-import java.util.HashMap;
-import java.util.Map;
 import org.opencb.biodata.formats.sequence.fasta.Fasta;
 
 public class FastQ extends Fasta {
@@ -12,10 +10,16 @@ public class FastQ extends Fasta {
     private String quality;
 
     /**
-     * Vector contanining PHRED or Solexa (depending on the encoding) quality scores
+     * Vector contanining PHRED or Solexa (depending on the encoding) quality scores,
+     * only created when requested
      */
     private int[] qualityScoresArray;
 
+    /**
+     * Whether the average, minimum and maximum qualities have been calculated
+     */
+    private boolean qualityMarksCalculated;
+
     /**
      * Average quality of the sequence
      */
@@ -87,14 +91,20 @@ public class FastQ extends Fasta {
     private static final String QUALITY_ID_CHAR = "+";
 
     /**
-     * Solexa to Phred Score Map
+     * Phred scores of the Solexa scores from -5 to 9, higher ones are the same in both scales
      */
-    private static Map<Integer, Integer> solexaToPhredMap;
+    private static final int[] SOLEXA_TO_PHRED = {1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 7, 8, 9, 10};
 
     /**
-     * Phred to Solexa Score Map
+     * Solexa scores of the Phred scores from 0 to 9, higher ones are the same in both scales
      */
-    private static Map<Integer, Integer> phredToSolexaMap;
+    private static final int[] PHRED_TO_SOLEXA = {-5, -5, -2, 0, 2, 3, 5, 6, 7, 8};
+
+    /**
+     * Quality characters of every encoding (second index) corresponding to the
+     * quality characters of every other encoding (first index)
+     */
+    private static final byte[][][] CONVERSION_TABLES;
 
     static {
         // Encoding Names
@@ -103,36 +113,12 @@ public class FastQ extends Fasta {
         FastQ.ENCODING_NAMES[FastQ.ILLUMINA_ENCODING] = "Illumina";
         FastQ.ENCODING_NAMES[FastQ.SOLEXA_ENCODING] = "Solexa";
 
-        // Solexa To Phred Score Map Initialization
-        solexaToPhredMap = new HashMap<Integer, Integer>();
-        solexaToPhredMap.put(-5, 1);
-        solexaToPhredMap.put(-4, 1);
-        solexaToPhredMap.put(-3, 2);
-        solexaToPhredMap.put(-2, 2);
-        solexaToPhredMap.put(-1, 3);
-        solexaToPhredMap.put(0, 3);
-        solexaToPhredMap.put(1, 4);
-        solexaToPhredMap.put(2, 4);
-        solexaToPhredMap.put(3, 5);
-        solexaToPhredMap.put(4, 5);
-        solexaToPhredMap.put(5, 6);
-        solexaToPhredMap.put(6, 7);
-        solexaToPhredMap.put(7, 8);
-        solexaToPhredMap.put(8, 9);
-        solexaToPhredMap.put(9, 10);
-
-        // PHRED To Solexa Score Map Initialization
-        phredToSolexaMap = new HashMap<Integer, Integer>();
-        phredToSolexaMap.put(0, -5);
-        phredToSolexaMap.put(1, -5);
-        phredToSolexaMap.put(2, -2);
-        phredToSolexaMap.put(3, 0);
-        phredToSolexaMap.put(4, 2);
-        phredToSolexaMap.put(5, 3);
-        phredToSolexaMap.put(6, 5);
-        phredToSolexaMap.put(7, 6);
-        phredToSolexaMap.put(8, 7);
-        phredToSolexaMap.put(9, 8);
+        CONVERSION_TABLES = new byte[3][3][];
+        for (int from = 0; from < 3; from++) {
+            for (int to = 0; to < 3; to++) {
+                CONVERSION_TABLES[from][to] = createConversionTable(from, to);
+            }
+        }
     }
 
     public FastQ(String id, String description, String sequence, String quality) {
@@ -147,48 +133,74 @@ public class FastQ extends Fasta {
 
     public FastQ(Fasta fasta, int[] qualArray, int encoding) {
         super(fasta.getId(), fasta.getDescription(), fasta.getSeq());
+        this.encoding = encoding;
         this.qualityScoresArray = qualArray;
         this.obtainQualityStringFromQualityScoresArray(encoding);
-        this.obtainQualityMarks();
     }
 
     public String getQuality() {
         return quality;
     }
 
+    /**
+     * Sets the quality string. Scores and quality marks are calculated from it
+     * the first time they are requested.
+     */
     public void setQuality(String quality) {
         this.quality = quality;
-        this.obtainQualityScoresFromQualityString();
+        this.qualityScoresArray = null;
+        this.qualityMarksCalculated = false;
+    }
+
+    public int getEncoding() {
+        return encoding;
     }
 
     public double getAverageQuality() {
+        this.obtainQualityMarks();
         return this.averageQuality;
     }
 
     public void setAverageQuality(int averageQuality) {
+        this.obtainQualityMarks();
         this.averageQuality = averageQuality;
     }
 
     public int getMaximumQuality() {
+        this.obtainQualityMarks();
         return this.maximumQuality;
     }
 
     public void setMaximumQuality(int maximumQuality) {
+        this.obtainQualityMarks();
         this.maximumQuality = maximumQuality;
     }
 
     public int getMinimumQuality() {
+        this.obtainQualityMarks();
         return this.minimumQuality;
     }
 
     public void setMinimumQuality(int minimumQuality) {
+        this.obtainQualityMarks();
         this.minimumQuality = minimumQuality;
     }
 
     public int[] getQualityScoresArray() {
+        if (this.qualityScoresArray == null) {
+            this.obtainQualityScoresFromQualityString();
+        }
         return this.qualityScoresArray;
     }
 
+    /**
+     * @param position - Position in the sequence, starting at 0
+     * @return The PHRED or Solexa (depending on the encoding) quality score of a position
+     */
+    public int getQualityScore(int position) {
+        return this.quality.charAt(position) - FastQ.SCALE_OFFSET[this.encoding];
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(FastQ.SEQ_ID_CHAR).append(this.id);
@@ -222,41 +234,37 @@ public class FastQ extends Fasta {
     }
 
     /**
-     * this method obtains the minimum, maximum, and average quality values from the quality scores array
+     * this method obtains the minimum, maximum, and average quality values straight from the
+     * quality string, if they have not been calculated yet
      */
     private void obtainQualityMarks() {
+        if (this.qualityMarksCalculated) {
+            return;
+        }
         int total = 0;
-        for (int i = 0; i < this.qualityScoresArray.length; i++) {
-            total += this.qualityScoresArray[i];
-            this.maximumQuality = Math.max(this.qualityScoresArray[i], this.maximumQuality);
-            this.minimumQuality = Math.min(this.qualityScoresArray[i], this.minimumQuality);
+        int offset = FastQ.SCALE_OFFSET[this.encoding];
+        this.maximumQuality = Integer.MIN_VALUE;
+        this.minimumQuality = Integer.MAX_VALUE;
+        for (int i = 0; i < this.quality.length(); i++) {
+            int score = this.quality.charAt(i) - offset;
+            total += score;
+            this.maximumQuality = Math.max(score, this.maximumQuality);
+            this.minimumQuality = Math.min(score, this.minimumQuality);
         }
         this.averageQuality = (double) total / this.quality.length();
+        this.qualityMarksCalculated = true;
     }
 
     /**
      * This method obtain the quality scores array corresponding to the quality char sequence,
-     * depending on the sequence's encoding, and calculate sequence's average quality and
-     * maximum and minimum individual quality scores
+     * depending on the sequence's encoding
      */
     private void obtainQualityScoresFromQualityString() {
-        int total = 0;
-        this.maximumQuality = Integer.MIN_VALUE;
-        this.minimumQuality = Integer.MAX_VALUE;
-        // quality int array initialization
+        int offset = FastQ.SCALE_OFFSET[this.encoding];
         qualityScoresArray = new int[this.quality.length()];
-
-        // Transform each character in the quality String into a integer, depending on
-        // the quality scale, and obtain the average, minimum and maximum values
         for (int i = 0; i < this.quality.length(); i++) {
-            char c = this.quality.charAt(i);
-            qualityScoresArray[i] = c - FastQ.SCALE_OFFSET[this.encoding];
-            total += this.qualityScoresArray[i];
-
-            this.maximumQuality = Math.max(this.qualityScoresArray[i], this.maximumQuality);
-            this.minimumQuality = Math.min(this.qualityScoresArray[i], this.minimumQuality);
+            qualityScoresArray[i] = this.quality.charAt(i) - offset;
         }
-        this.averageQuality = (double) total / this.quality.length();
     }
 
     /**
@@ -266,40 +274,61 @@ public class FastQ extends Fasta {
      */
     public void changeEncoding(int newEncoding) {
         if (this.encoding != newEncoding) {
-            int oldEncoding = this.encoding;
-            // Transform the quality scores, if necessary
-            this.transformQualityScoresArray(oldEncoding, newEncoding);
-
-            // Transform the quality string
-            this.obtainQualityStringFromQualityScoresArray(newEncoding);
+            // Transform every quality char with the table of the pair of encodings
+            byte[] table = FastQ.CONVERSION_TABLES[this.encoding][newEncoding];
+            char[] qualityChars = new char[this.quality.length()];
+            for (int i = 0; i < qualityChars.length; i++) {
+                qualityChars[i] = (char) (table[this.quality.charAt(i) & 0xFF] & 0xFF);
+            }
             this.encoding = newEncoding;
+            this.setQuality(new String(qualityChars));
         }
     }
 
+    /**
+     * Returns a table to transform quality chars between encodings, indexed by the
+     * quality char in the old encoding
+     *
+     * @param oldEncoding - old quality encoding type
+     * @param newEncoding - new quality encoding type
+     * @return 256 quality chars in the new encoding
+     */
+    public static byte[] getConversionTable(int oldEncoding, int newEncoding) {
+        return FastQ.CONVERSION_TABLES[oldEncoding][newEncoding].clone();
+    }
+
+    static byte[] conversionTable(int oldEncoding, int newEncoding) {
+        return FastQ.CONVERSION_TABLES[oldEncoding][newEncoding];
+    }
+
+    /**
+     * @return The offset of the quality chars of an encoding, like 33 for Sanger
+     */
+    public static int getScaleOffset(int encoding) {
+        return FastQ.SCALE_OFFSET[encoding];
+    }
 
     /**
-     * Transform the quality scores array if the score types of the encodings are different
+     * Transforms the quality scores if the score types of the encodings are different, and adds
+     * the offset of the new encoding to obtain the quality chars
      *
      * @param oldEncoding - old quality encoding type
      * @param newEncoding - new quality encoding type
      */
-    private void transformQualityScoresArray(int oldEncoding, int newEncoding) {
-        // If the score types of the encodings are different
-        if (FastQ.SCALE_SCORE[oldEncoding] != FastQ.SCALE_SCORE[newEncoding]) {
-            // Score Map selection
-            Map<Integer, Integer> scoreMap;
-            if (FastQ.SCALE_SCORE[oldEncoding] == FastQ.PHRED_SCORE_TYPE) {
-                scoreMap = FastQ.phredToSolexaMap;
-            } else {
-                scoreMap = FastQ.solexaToPhredMap;
-            }
-            // Transform each quality score in the quality scores array
-            for (int i = 0; i < this.qualityScoresArray.length; i++) {
-                if (qualityScoresArray[i] < 10) {
-                    qualityScoresArray[i] = scoreMap.get(qualityScoresArray[i]);
-                }
+    private static byte[] createConversionTable(int oldEncoding, int newEncoding) {
+        byte[] table = new byte[256];
+        for (int c = 0; c < 256; c++) {
+            int score = c - FastQ.SCALE_OFFSET[oldEncoding];
+            if (FastQ.SCALE_SCORE[oldEncoding] == FastQ.PHRED_SCORE_TYPE
+                    && FastQ.SCALE_SCORE[newEncoding] == FastQ.SOLEXA_SCORE_TYPE && score >= 0 && score < 10) {
+                score = FastQ.PHRED_TO_SOLEXA[score];
+            } else if (FastQ.SCALE_SCORE[oldEncoding] == FastQ.SOLEXA_SCORE_TYPE
+                    && FastQ.SCALE_SCORE[newEncoding] == FastQ.PHRED_SCORE_TYPE && score >= -5 && score < 10) {
+                score = FastQ.SOLEXA_TO_PHRED[score + 5];
             }
+            table[c] = (byte) Math.max(0, Math.min(255, score + FastQ.SCALE_OFFSET[newEncoding]));
         }
+        return table;
     }
 
     /**
@@ -308,6 +337,7 @@ public class FastQ extends Fasta {
      * @param encoding - quality encoding
      */
     private void obtainQualityStringFromQualityScoresArray(int encoding) {
+        this.qualityMarksCalculated = false;
         char[] qualityChars = new char[this.qualityScoresArray.length];
         // add the scale offset to each individual score and transform the result to a char
         for (int i = 0; i < this.qualityScoresArray.length; i++) {
@@ -360,7 +390,7 @@ public class FastQ extends Fasta {
             // and divide the result by 'n' to obtain the average value
             int totalTailQuality = 0;
             for (int i = 1; i <= numElements; i++) {
-                totalTailQuality += this.qualityScoresArray[this.size() - i];
+                totalTailQuality += this.getQualityScore(this.size() - i);
             }
             quality = totalTailQuality / numElements;
         }
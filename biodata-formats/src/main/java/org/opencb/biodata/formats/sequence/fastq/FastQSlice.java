@@ -0,0 +1,279 @@
+package org.opencb.biodata.formats.sequence.fastq;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * FastQ sequence that points to the bytes of its header, sequence and quality
+ * in a buffer shared by many sequences, usually the one it was read into.
+ *
+ * Nothing is decoded until requested: Strings are only created by the getters
+ * that return them, and the average, minimum and maximum qualities are
+ * calculated the first time any of them is requested. Quality scores can be
+ * read one by one without creating any array.
+ *
+ * Slices of the same buffer never overlap, so changing the encoding of a
+ * slice only modifies its own quality bytes. Trimming a slice only moves its
+ * limits in the buffer.
+ */
+public class FastQSlice {
+
+    private final byte[] buffer;
+    private final int headerStart;
+    private final int headerEnd;
+    private int sequenceStart;
+    private int qualityStart;
+    private int length;
+    private int encoding;
+
+    private boolean qualityMarksCalculated;
+    private double averageQuality;
+    private int minimumQuality;
+    private int maximumQuality;
+
+    /**
+     * @param buffer Buffer containing the sequence
+     * @param headerStart Position of the first char of the ID, after the '@'
+     * @param headerEnd Position after the last char of the ID line
+     * @param sequenceStart Position of the first base
+     * @param qualityStart Position of the first quality char
+     * @param length Number of bases
+     * @param encoding Quality encoding, like FastQ.SANGER_ENCODING
+     */
+    public FastQSlice(byte[] buffer, int headerStart, int headerEnd, int sequenceStart, int qualityStart,
+                      int length, int encoding) {
+        if (!FastQ.validQualityEncoding(encoding)) {
+            throw new IllegalArgumentException("Invalid quality encoding " + encoding);
+        }
+        this.buffer = buffer;
+        this.headerStart = headerStart;
+        this.headerEnd = headerEnd;
+        this.sequenceStart = sequenceStart;
+        this.qualityStart = qualityStart;
+        this.length = length;
+        this.encoding = encoding;
+    }
+
+    public String getId() {
+        return new String(buffer, headerStart, idEnd() - headerStart, StandardCharsets.US_ASCII);
+    }
+
+    public String getDescription() {
+        return new String(buffer, idEnd(), headerEnd - idEnd(), StandardCharsets.US_ASCII).trim();
+    }
+
+    private int idEnd() {
+        int i = headerStart;
+        while (i < headerEnd && buffer[i] != ' ' && buffer[i] != '\t') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param other Sequence read from the other file of a paired-end run
+     * @return Whether both sequences have the same ID, ignoring a "/1" or "/2" suffix
+     */
+    public boolean isMateOf(FastQSlice other) {
+        int end = mateNameEnd();
+        int otherEnd = other.mateNameEnd();
+        if (end - headerStart != otherEnd - other.headerStart) {
+            return false;
+        }
+        for (int i = headerStart, j = other.headerStart; i < end; i++, j++) {
+            if (buffer[i] != other.buffer[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int mateNameEnd() {
+        int end = idEnd();
+        if (end - headerStart >= 2 && buffer[end - 2] == '/' && (buffer[end - 1] == '1' || buffer[end - 1] == '2')) {
+            return end - 2;
+        }
+        return end;
+    }
+
+    public String getSeq() {
+        return new String(buffer, sequenceStart, length, StandardCharsets.US_ASCII);
+    }
+
+    public String getQuality() {
+        return new String(buffer, qualityStart, length, StandardCharsets.US_ASCII);
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @param position Position in the sequence, starting at 0
+     * @return The base in the position, as an ASCII char
+     */
+    public byte getBase(int position) {
+        checkPosition(position);
+        return buffer[sequenceStart + position];
+    }
+
+    /**
+     * @param position Position in the sequence, starting at 0
+     * @return The PHRED or Solexa (depending on the encoding) quality score of a position
+     */
+    public int getQualityScore(int position) {
+        checkPosition(position);
+        return (buffer[qualityStart + position] & 0xFF) - FastQ.getScaleOffset(encoding);
+    }
+
+    /**
+     * @return The buffer containing this sequence, to be read from getSequenceOffset and getQualityOffset
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getSequenceOffset() {
+        return sequenceStart;
+    }
+
+    public int getQualityOffset() {
+        return qualityStart;
+    }
+
+    public double getAverageQuality() {
+        obtainQualityMarks();
+        return averageQuality;
+    }
+
+    public int getMinimumQuality() {
+        obtainQualityMarks();
+        return minimumQuality;
+    }
+
+    public int getMaximumQuality() {
+        obtainQualityMarks();
+        return maximumQuality;
+    }
+
+    private void obtainQualityMarks() {
+        if (qualityMarksCalculated) {
+            return;
+        }
+        int offset = FastQ.getScaleOffset(encoding);
+        long total = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = qualityStart; i < qualityStart + length; i++) {
+            int score = (buffer[i] & 0xFF) - offset;
+            total += score;
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+        }
+        averageQuality = (double) total / length;
+        minimumQuality = min;
+        maximumQuality = max;
+        qualityMarksCalculated = true;
+    }
+
+    /**
+     * Returns the average quality of the last elements of the sequence
+     *
+     * @param numElements Number of elements whose quality will be returned
+     * @return Average quality of the last elements of the sequence, -1 if the sequence is shorter
+     */
+    public float getSequenceTailAverageQuality(int numElements) {
+        if (length < numElements) {
+            return -1;
+        }
+        int offset = FastQ.getScaleOffset(encoding);
+        int total = 0;
+        for (int i = qualityStart + length - numElements; i < qualityStart + length; i++) {
+            total += (buffer[i] & 0xFF) - offset;
+        }
+        return total / numElements;
+    }
+
+    /**
+     * Changes the encoding of the quality chars in place.
+     *
+     * @param newEncoding New quality encoding
+     */
+    public void changeEncoding(int newEncoding) {
+        if (!FastQ.validQualityEncoding(newEncoding)) {
+            throw new IllegalArgumentException("Invalid quality encoding " + newEncoding);
+        }
+        if (encoding != newEncoding) {
+            byte[] table = FastQ.conversionTable(encoding, newEncoding);
+            for (int i = qualityStart; i < qualityStart + length; i++) {
+                buffer[i] = table[buffer[i] & 0xFF];
+            }
+            encoding = newEncoding;
+            qualityMarksCalculated = false;
+        }
+    }
+
+    /**
+     * Trim the sequence's tail, if it is longer than a determined size
+     *
+     * @param maxSize Maximum size allowed
+     */
+    public void trimSequenceTail(int maxSize) {
+        if (length > maxSize) {
+            rTrim(length - maxSize);
+        }
+    }
+
+    /**
+     * Trim the sequence removing the first 'n' characters
+     *
+     * @param n Number of characters to remove
+     */
+    public void lTrim(int n) {
+        checkTrim(n);
+        sequenceStart += n;
+        qualityStart += n;
+        length -= n;
+        qualityMarksCalculated = false;
+    }
+
+    /**
+     * Trim the sequence removing the last 'n' characters
+     *
+     * @param n Number of characters to remove
+     */
+    public void rTrim(int n) {
+        checkTrim(n);
+        length -= n;
+        qualityMarksCalculated = false;
+    }
+
+    private void checkTrim(int n) {
+        if (n < 0 || n > length) {
+            throw new IndexOutOfBoundsException("Cannot trim " + n + " characters of a sequence of length " + length);
+        }
+    }
+
+    /**
+     * @return A FastQ with the same contents, not linked to the buffer
+     */
+    public FastQ toFastQ() {
+        return new FastQ(getId(), getDescription(), getSeq(), getQuality(), encoding);
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= length) {
+            throw new IndexOutOfBoundsException("Position " + position + " out of a sequence of length " + length);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return '@' + new String(buffer, headerStart, headerEnd - headerStart, StandardCharsets.US_ASCII) + '\n'
+                + getSeq() + "\n+\n" + getQuality();
+    }
+
+}
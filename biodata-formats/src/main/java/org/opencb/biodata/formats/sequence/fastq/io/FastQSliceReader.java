@@ -0,0 +1,323 @@
+package org.opencb.biodata.formats.sequence.fastq.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.opencb.biodata.formats.io.AbstractFormatReader;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+import org.opencb.biodata.formats.sequence.fastq.FastQSlice;
+
+/**
+ * Reads FastQ files into FastQSlice objects that share the buffers the file
+ * is read into, so no Strings or arrays are created for every sequence.
+ *
+ * Every buffer is filled once and never reused, so the sequences returned stay
+ * valid after reading more. A buffer is kept in memory while any sequence in
+ * it is referenced; use FastQSlice.toFastQ to keep a few sequences for longer.
+ *
+ * Sequences and qualities split in several lines are supported, but each of
+ * them is copied into a buffer of its own.
+ */
+public class FastQSliceReader extends AbstractFormatReader<FastQSlice> {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final InputStream input;
+    private final int encoding;
+    private final int bufferSize;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    private final List<FastQSlice> parsed;
+    private int nextParsed;
+
+    public FastQSliceReader(Path path) throws IOException {
+        this(path, FastQ.SANGER_ENCODING);
+    }
+
+    public FastQSliceReader(Path path, int encoding) throws IOException {
+        this(path, encoding, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param path FastQ file, compressed with gzip if its name ends with .gz
+     * @param encoding Quality encoding of the file
+     * @param bufferSize Bytes read at once, they will grow if a sequence does not fit
+     */
+    public FastQSliceReader(Path path, int encoding, int bufferSize) throws IOException {
+        super(path);
+        if (!FastQ.validQualityEncoding(encoding)) {
+            throw new IllegalArgumentException("Invalid quality encoding " + encoding);
+        }
+        InputStream stream = Files.newInputStream(path);
+        if (path.toFile().getName().endsWith(".gz")) {
+            stream = new GZIPInputStream(new BufferedInputStream(stream, 64 * 1024), 64 * 1024);
+        }
+        this.input = stream;
+        this.encoding = encoding;
+        this.bufferSize = bufferSize;
+        this.buffer = new byte[0];
+        this.parsed = new ArrayList<>();
+    }
+
+    @Override
+    public FastQSlice read() throws FileFormatException {
+        try {
+            while (nextParsed == parsed.size()) {
+                parsed.clear();
+                nextParsed = 0;
+                if (!parseBuffer()) {
+                    return null;
+                }
+            }
+            return parsed.get(nextParsed++);
+        } catch (IOException e) {
+            throw new FileFormatException(e);
+        }
+    }
+
+    @Override
+    public List<FastQSlice> read(int size) throws FileFormatException {
+        List<FastQSlice> sequences = new ArrayList<>(size);
+        FastQSlice sequence;
+        while (sequences.size() < size && (sequence = read()) != null) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    @Override
+    public FastQSlice read(String regexFilter) throws FileFormatException {
+        FastQSlice sequence;
+        while ((sequence = read()) != null && !sequence.getId().matches(regexFilter)) {
+        }
+        return sequence;
+    }
+
+    @Override
+    public List<FastQSlice> readAll() throws FileFormatException {
+        List<FastQSlice> sequences = new ArrayList<>();
+        FastQSlice sequence;
+        while ((sequence = read()) != null) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    @Override
+    public List<FastQSlice> readAll(String regexFilter) throws FileFormatException {
+        List<FastQSlice> sequences = new ArrayList<>();
+        FastQSlice sequence;
+        while ((sequence = read(regexFilter)) != null) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    @Override
+    public int size() throws IOException, FileFormatException {
+        int size = 0;
+        while (read() != null) {
+            size++;
+        }
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Parses all the complete sequences in the buffer, reading more of the
+     * file first if there are none.
+     *
+     * @return Whether any sequence was parsed
+     */
+    private boolean parseBuffer() throws IOException, FileFormatException {
+        while (true) {
+            position = parse(buffer, position, limit, endOfInput, encoding, parsed);
+            if (!parsed.isEmpty()) {
+                return true;
+            }
+            if (endOfInput) {
+                return false;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Moves the bytes not parsed yet to a new buffer and reads the file after them.
+     */
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        byte[] next = new byte[Math.max(bufferSize, remaining * 2)];
+        System.arraycopy(buffer, position, next, 0, remaining);
+        buffer = next;
+        position = 0;
+        limit = remaining;
+        while (limit < buffer.length) {
+            int read = input.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+                break;
+            }
+            limit += read;
+        }
+    }
+
+    /**
+     * Parses the complete sequences in a region of a buffer.
+     *
+     * @param buffer Buffer containing FastQ text
+     * @param start First position of the region, at the beginning of a sequence
+     * @param end Position after the region
+     * @param last Whether the region reaches the end of the input, so every sequence in it must be complete
+     * @param encoding Quality encoding
+     * @param sequences List where the sequences are added
+     * @return The position after the last sequence parsed
+     * @throws FileFormatException If the region is not valid FastQ
+     */
+    static int parse(byte[] buffer, int start, int end, boolean last, int encoding, List<FastQSlice> sequences)
+            throws FileFormatException {
+        int position = start;
+        while (true) {
+            // Skip empty lines between sequences
+            while (position < end && (buffer[position] == '\n' || buffer[position] == '\r')) {
+                position++;
+            }
+            if (position == end) {
+                return position;
+            }
+            int next = parseSequence(buffer, position, end, last, encoding, sequences);
+            if (next < 0) {
+                if (last) {
+                    throw new FileFormatException("Incomplete FastQ sequence at the end of the input: "
+                            + new String(buffer, position, Math.min(end - position, 200)));
+                }
+                return position;
+            }
+            position = next;
+        }
+    }
+
+    /**
+     * @return The position after the sequence, or -1 if it does not end before the end of the region
+     */
+    private static int parseSequence(byte[] buffer, int start, int end, boolean last, int encoding,
+                                     List<FastQSlice> sequences) throws FileFormatException {
+        int newLine = newLine(buffer, start, end, last);
+        if (newLine < 0) {
+            return -1;
+        }
+        int headerEnd = contentEnd(buffer, start, newLine);
+        if (buffer[start] != '@') {
+            throw new FileFormatException("Incorrect ID Line: " + new String(buffer, start, headerEnd - start));
+        }
+
+        // Sequence lines, until the one starting with '+'
+        int sequenceStart = newLine + 1;
+        int position = sequenceStart;
+        int sequenceLength = 0;
+        int sequenceLines = 0;
+        while (position < end && buffer[position] != '+') {
+            newLine = newLine(buffer, position, end, last);
+            if (newLine < 0) {
+                return -1;
+            }
+            sequenceLength += contentEnd(buffer, position, newLine) - position;
+            sequenceLines++;
+            position = newLine + 1;
+        }
+        if (position >= end) {
+            return -1;
+        }
+        newLine = newLine(buffer, position, end, last);
+        if (newLine < 0) {
+            return -1;
+        }
+
+        // Quality lines, until they are as long as the sequence
+        int qualityStart = newLine + 1;
+        position = qualityStart;
+        int qualityLength = 0;
+        int qualityLines = 0;
+        while (qualityLength < sequenceLength || qualityLines == 0) {
+            if (position >= end) {
+                if (last && sequenceLength == 0) {
+                    break;
+                }
+                return -1;
+            }
+            newLine = newLine(buffer, position, end, last);
+            if (newLine < 0) {
+                return -1;
+            }
+            qualityLength += contentEnd(buffer, position, newLine) - position;
+            qualityLines++;
+            position = newLine + 1;
+        }
+        if (qualityLength != sequenceLength) {
+            throw new FileFormatException("Quality and Sequence lenghts are different in Fasta "
+                    + new String(buffer, start + 1, headerEnd - start - 1));
+        }
+
+        if (sequenceLines <= 1 && qualityLines <= 1) {
+            sequences.add(new FastQSlice(buffer, start + 1, headerEnd, sequenceStart, qualityStart, sequenceLength, encoding));
+        } else {
+            sequences.add(compact(buffer, start, headerEnd, sequenceStart, sequenceLength, qualityStart, encoding));
+        }
+        return Math.min(position, end);
+    }
+
+    /**
+     * Copies a sequence split in several lines into a buffer of its own.
+     */
+    private static FastQSlice compact(byte[] buffer, int start, int headerEnd, int sequenceStart, int length,
+                                      int qualityStart, int encoding) {
+        int headerLength = headerEnd - start - 1;
+        byte[] copy = new byte[headerLength + 2 * length];
+        System.arraycopy(buffer, start + 1, copy, 0, headerLength);
+        copyLines(buffer, sequenceStart, copy, headerLength, length);
+        copyLines(buffer, qualityStart, copy, headerLength + length, length);
+        return new FastQSlice(copy, 0, headerLength, headerLength, headerLength + length, length, encoding);
+    }
+
+    private static void copyLines(byte[] buffer, int position, byte[] copy, int offset, int length) {
+        int copied = 0;
+        while (copied < length) {
+            byte b = buffer[position++];
+            if (b != '\n' && b != '\r') {
+                copy[offset + copied++] = b;
+            }
+        }
+    }
+
+    /**
+     * @return The position of the new line char ending the line that starts at a position, the end
+     * of the region if it is the last line of the input, or -1 if the line is not complete
+     */
+    private static int newLine(byte[] buffer, int position, int end, boolean last) {
+        while (position < end && buffer[position] != '\n') {
+            position++;
+        }
+        return position < end || last ? position : -1;
+    }
+
+    /**
+     * @return The end of the contents of a line, without the '\r' of Windows new lines
+     */
+    private static int contentEnd(byte[] buffer, int lineStart, int newLine) {
+        return newLine > lineStart && buffer[newLine - 1] == '\r' ? newLine - 1 : newLine;
+    }
+
+}
@@ -206,8 +206,14 @@ public class FastaQReader extends AbstractFormatReader<FastQ> {
 
     @Override
     public List<FastQ> read(int size) throws FileFormatException {
-        // TODO Auto-generated method stub
-        return null;
+        List<FastQ> fastaList = new ArrayList<FastQ>(size);
+
+        FastQ fasta;
+        while (fastaList.size() < size && (fasta = this.read()) != null) {
+            fastaList.add(fasta);
+        }
+
+        return fastaList;
     }
 
 }
@@ -0,0 +1,88 @@
+package org.opencb.biodata.formats.sequence.fastq.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import org.opencb.biodata.formats.io.AbstractFormatReader;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fastq.FastQSlice;
+
+/**
+ * Reads the two files of a paired-end run in lock-step, so the sequences in
+ * the same position of both lists of a batch are mates. Both files must have
+ * the mates in the same order, which is checked comparing their IDs.
+ */
+public class PairedFastQReader implements Closeable {
+
+    private final AbstractFormatReader<FastQSlice> firstReader;
+    private final AbstractFormatReader<FastQSlice> secondReader;
+
+    /**
+     * @param firstReader Reader of the first mates (R1)
+     * @param secondReader Reader of the second mates (R2)
+     */
+    public PairedFastQReader(AbstractFormatReader<FastQSlice> firstReader,
+                             AbstractFormatReader<FastQSlice> secondReader) {
+        this.firstReader = firstReader;
+        this.secondReader = secondReader;
+    }
+
+    /**
+     * @param size Maximum number of pairs
+     * @return The next pairs, an empty batch at the end of the files
+     * @throws FileFormatException If the files have a different number of sequences, or their IDs do not match
+     */
+    public Batch read(int size) throws FileFormatException {
+        List<FastQSlice> first = firstReader.read(size);
+        List<FastQSlice> second = secondReader.read(size);
+        if (first.size() != second.size()) {
+            throw new FileFormatException("Paired-end files have a different number of sequences");
+        }
+        for (int i = 0; i < first.size(); i++) {
+            if (!first.get(i).isMateOf(second.get(i))) {
+                throw new FileFormatException("Paired-end sequences " + first.get(i).getId() + " and "
+                        + second.get(i).getId() + " do not match");
+            }
+        }
+        return new Batch(first, second);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            firstReader.close();
+        } finally {
+            secondReader.close();
+        }
+    }
+
+    /**
+     * Pairs of sequences, where the mate of every sequence in the first list is in the same position of the second.
+     */
+    public static class Batch {
+        private final List<FastQSlice> first;
+        private final List<FastQSlice> second;
+
+        Batch(List<FastQSlice> first, List<FastQSlice> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        public List<FastQSlice> getFirst() {
+            return first;
+        }
+
+        public List<FastQSlice> getSecond() {
+            return second;
+        }
+
+        public int size() {
+            return first.size();
+        }
+
+        public boolean isEmpty() {
+            return first.isEmpty();
+        }
+    }
+
+}
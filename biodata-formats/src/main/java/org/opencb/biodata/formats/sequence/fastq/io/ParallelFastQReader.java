@@ -0,0 +1,378 @@
+package org.opencb.biodata.formats.sequence.fastq.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+import org.opencb.biodata.formats.io.AbstractFormatReader;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.ParallelBgzfInputStream;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+import org.opencb.biodata.formats.sequence.fastq.FastQSlice;
+
+/**
+ * Reads FastQ files splitting them in chunks of complete sequences that are
+ * parsed in parallel. A background thread reads the file, decompressing it if
+ * needed (BGZF blocks are also inflated in parallel), and cuts the chunks,
+ * while the sequences of the previous chunks are parsed by a pool of threads.
+ *
+ * Chunks are cut counting lines, so every sequence must be written in 4
+ * lines: ID, sequence, '+' and quality. Files with sequences split in several
+ * lines must be read with FastQSliceReader.
+ *
+ * Like in FastQSliceReader, the sequences returned share the buffer of their
+ * chunk, and the chunks are never reused.
+ */
+public class ParallelFastQReader extends AbstractFormatReader<FastQSlice> {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final Future<List<FastQSlice>> END = completed(Collections.<FastQSlice>emptyList());
+
+    private final InputStream input;
+    private final int encoding;
+    private final int chunkSize;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final BlockingQueue<Future<List<FastQSlice>>> chunks;
+    private final Thread splitter;
+
+    private List<FastQSlice> current;
+    private int next;
+    private boolean endOfInput;
+
+    public ParallelFastQReader(Path path) throws IOException {
+        this(path, FastQ.SANGER_ENCODING, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param path FastQ file, compressed with gzip or bgzip if its name ends with .gz
+     * @param encoding Quality encoding of the file
+     * @param numThreads Threads parsing chunks, which are closed with the reader
+     */
+    public ParallelFastQReader(Path path, int encoding, int numThreads) throws IOException {
+        this(path, encoding, newExecutor(numThreads), true, numThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param path FastQ file, compressed with gzip or bgzip if its name ends with .gz
+     * @param encoding Quality encoding of the file
+     * @param executor Executor parsing chunks, which is not shut down with the reader so it can be shared
+     * @param chunksAhead Chunks read and parsed while the sequences of the current one are returned
+     * @param chunkSize Bytes of every chunk, they will grow if a sequence does not fit
+     */
+    public ParallelFastQReader(Path path, int encoding, ExecutorService executor, int chunksAhead, int chunkSize)
+            throws IOException {
+        this(path, encoding, executor, false, chunksAhead, chunkSize);
+    }
+
+    private ParallelFastQReader(Path path, int encoding, ExecutorService executor, boolean ownExecutor,
+                                int chunksAhead, int chunkSize) throws IOException {
+        super(path);
+        if (!FastQ.validQualityEncoding(encoding)) {
+            throw new IllegalArgumentException("Invalid quality encoding " + encoding);
+        }
+        this.encoding = encoding;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.input = open(path, executor, chunksAhead);
+        this.chunks = new ArrayBlockingQueue<>(Math.max(1, chunksAhead) + 1);
+        this.current = Collections.emptyList();
+        this.splitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                split();
+            }
+        }, "fastq-splitter-" + path.getFileName());
+        this.splitter.setDaemon(true);
+        this.splitter.start();
+    }
+
+    private static InputStream open(Path path, ExecutorService executor, int blocksAhead) throws IOException {
+        InputStream stream = new BufferedInputStream(Files.newInputStream(path), 64 * 1024);
+        if (!path.toFile().getName().endsWith(".gz")) {
+            return stream;
+        }
+        byte[] header = new byte[18];
+        stream.mark(header.length);
+        int length = 0;
+        int read;
+        while (length < header.length && (read = stream.read(header, length, header.length - length)) >= 0) {
+            length += read;
+        }
+        stream.reset();
+        if (ParallelBgzfInputStream.isBgzf(header, length)) {
+            return new ParallelBgzfInputStream(stream, executor, 2 * Math.max(1, blocksAhead));
+        }
+        return new GZIPInputStream(stream, 64 * 1024);
+    }
+
+    private static ExecutorService newExecutor(int numThreads) {
+        return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "fastq-parser-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public FastQSlice read() throws FileFormatException {
+        if (next == current.size() && !nextChunk()) {
+            return null;
+        }
+        return current.get(next++);
+    }
+
+    @Override
+    public List<FastQSlice> read(int size) throws FileFormatException {
+        List<FastQSlice> sequences = new ArrayList<>(size);
+        while (sequences.size() < size) {
+            if (next == current.size() && !nextChunk()) {
+                break;
+            }
+            int end = Math.min(current.size(), next + size - sequences.size());
+            sequences.addAll(current.subList(next, end));
+            next = end;
+        }
+        return sequences;
+    }
+
+    @Override
+    public FastQSlice read(String regexFilter) throws FileFormatException {
+        FastQSlice sequence;
+        while ((sequence = read()) != null && !sequence.getId().matches(regexFilter)) {
+        }
+        return sequence;
+    }
+
+    @Override
+    public List<FastQSlice> readAll() throws FileFormatException {
+        List<FastQSlice> sequences = new ArrayList<>();
+        while (next < current.size() || nextChunk()) {
+            sequences.addAll(current.subList(next, current.size()));
+            next = current.size();
+        }
+        return sequences;
+    }
+
+    @Override
+    public List<FastQSlice> readAll(String regexFilter) throws FileFormatException {
+        List<FastQSlice> sequences = new ArrayList<>();
+        FastQSlice sequence;
+        while ((sequence = read(regexFilter)) != null) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    @Override
+    public int size() throws IOException, FileFormatException {
+        int size = current.size() - next;
+        next = current.size();
+        while (nextChunk()) {
+            size += current.size();
+            next = current.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        splitter.interrupt();
+        try {
+            splitter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Future<List<FastQSlice>> chunk : chunks) {
+            chunk.cancel(true);
+        }
+        chunks.clear();
+        if (ownExecutor) {
+            executor.shutdownNow();
+        }
+        input.close();
+    }
+
+    /**
+     * Waits for the sequences of the next chunk.
+     *
+     * @return Whether there was another chunk
+     */
+    private boolean nextChunk() throws FileFormatException {
+        while (!endOfInput) {
+            try {
+                Future<List<FastQSlice>> chunk = chunks.take();
+                if (chunk == END) {
+                    endOfInput = true;
+                    break;
+                }
+                current = chunk.get();
+                next = 0;
+                if (!current.isEmpty()) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FileFormatException("Interrupted while reading " + path, e);
+            } catch (ExecutionException e) {
+                endOfInput = true;
+                Throwable cause = e.getCause();
+                if (cause instanceof FileFormatException) {
+                    throw (FileFormatException) cause;
+                }
+                throw new FileFormatException(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+            }
+        }
+        current = Collections.emptyList();
+        next = 0;
+        return false;
+    }
+
+    /**
+     * Reads the file, cutting it into chunks of complete sequences that are
+     * parsed by the executor. Runs in the splitter thread.
+     */
+    private void split() {
+        try {
+            byte[] buffer = new byte[chunkSize];
+            int limit = 0;
+            boolean last = false;
+            while (true) {
+                // Fill the buffer
+                while (limit < buffer.length) {
+                    int read = input.read(buffer, limit, buffer.length - limit);
+                    if (read < 0) {
+                        last = true;
+                        break;
+                    }
+                    limit += read;
+                }
+
+                // The last chunk is checked too, so multi-line files fail whatever their size
+                int end = lastSequenceEnd(buffer, limit);
+                if (last) {
+                    end = limit;
+                }
+                if (end == 0 && !last) {
+                    // A sequence longer than the buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                chunks.put(parse(buffer, end));
+                if (last) {
+                    break;
+                }
+
+                byte[] nextBuffer = new byte[Math.max(chunkSize, limit - end)];
+                System.arraycopy(buffer, end, nextBuffer, 0, limit - end);
+                buffer = nextBuffer;
+                limit -= end;
+            }
+            chunks.put(END);
+        } catch (InterruptedException e) {
+            // Closed by the reader
+        } catch (Exception e) {
+            try {
+                if (!Thread.currentThread().isInterrupted()) {
+                    chunks.put(failed(e));
+                }
+            } catch (InterruptedException interrupted) {
+                // Closed by the reader
+            }
+        }
+    }
+
+    private Future<List<FastQSlice>> parse(final byte[] buffer, final int end) {
+        return executor.submit(new Callable<List<FastQSlice>>() {
+            @Override
+            public List<FastQSlice> call() throws FileFormatException {
+                List<FastQSlice> sequences = new ArrayList<>();
+                FastQSliceReader.parse(buffer, 0, end, true, encoding, sequences);
+                return sequences;
+            }
+        });
+    }
+
+    /**
+     * Finds where the last complete sequence of a buffer ends, counting 4
+     * lines per sequence from its beginning.
+     *
+     * @return The position after the new line of the last complete sequence
+     * @throws FileFormatException If a sequence is not written in 4 lines
+     */
+    static int lastSequenceEnd(byte[] buffer, int limit) throws FileFormatException {
+        int sequenceEnd = 0;
+        int position = 0;
+        while (true) {
+            // Empty lines between sequences are skipped like the parser does
+            while (position < limit && (buffer[position] == '\n' || buffer[position] == '\r')) {
+                position++;
+            }
+            if (position == limit) {
+                return position;
+            }
+            int start = position;
+            for (int line = 0; line < 4; line++) {
+                if (position < limit && line == 2 && buffer[position] != '+') {
+                    throw new FileFormatException("FastQ sequence not written in 4 lines: "
+                            + new String(buffer, start, Math.min(limit - start, 200)));
+                }
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                if (position == limit) {
+                    return sequenceEnd;
+                }
+                position++;
+            }
+            if (buffer[start] != '@') {
+                throw new FileFormatException("Incorrect ID Line: " + new String(buffer, start, Math.min(limit - start, 200)));
+            }
+            sequenceEnd = position;
+        }
+    }
+
+    private static Future<List<FastQSlice>> completed(List<FastQSlice> sequences) {
+        FutureTask<List<FastQSlice>> future = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, sequences);
+        future.run();
+        return future;
+    }
+
+    private static Future<List<FastQSlice>> failed(final Exception cause) {
+        FutureTask<List<FastQSlice>> future = new FutureTask<>(new Callable<List<FastQSlice>>() {
+            @Override
+            public List<FastQSlice> call() throws Exception {
+                throw cause;
+            }
+        });
+        future.run();
+        return future;
+    }
+
+}
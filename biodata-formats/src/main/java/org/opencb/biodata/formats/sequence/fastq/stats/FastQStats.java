@@ -0,0 +1,370 @@
+package org.opencb.biodata.formats.sequence.fastq.stats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.opencb.biodata.formats.io.AbstractFormatReader;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+import org.opencb.biodata.formats.sequence.fastq.FastQSlice;
+
+/**
+ * Quality control statistics of a set of FastQ sequences, calculated in a
+ * single pass: quality scores and bases in every position, GC content, read
+ * lengths, average qualities and the most frequent k-mers.
+ *
+ * Everything is counted in arrays of primitives, and the k-mers in a sketch
+ * of fixed size, so memory only depends on the length of the longest read.
+ * Instances are not thread-safe: every thread should fill its own, and merge
+ * them at the end.
+ */
+public class FastQStats {
+
+    /**
+     * Lowest quality score counted, that of the Solexa scale. Lower scores are counted as this one.
+     */
+    public static final int MIN_QUALITY = -5;
+
+    /**
+     * Highest quality score counted, the highest printable in the Sanger encoding. Higher scores are
+     * counted as this one.
+     */
+    public static final int MAX_QUALITY = 93;
+
+    public static final int DEFAULT_KMER_LENGTH = 7;
+    public static final int DEFAULT_SKETCH_WIDTH = 1 << 16;
+    public static final int DEFAULT_SKETCH_DEPTH = 4;
+    public static final int DEFAULT_TOP_KMERS = 20;
+
+    private static final int QUALITIES = MAX_QUALITY - MIN_QUALITY + 1;
+    private static final String BASES = "ACGTN";
+
+    private long numReads;
+    private long numBases;
+    private int maxLength;
+
+    // Counts by position and quality score / base, one position after another
+    private long[] qualityCounts;
+    private long[] baseCounts;
+
+    private long[] readLengths;
+    private final long[] gcContent;
+    private final long[] averageQualities;
+    private final KmerSketch kmers;
+
+    public FastQStats() {
+        this(new KmerSketch(DEFAULT_KMER_LENGTH, DEFAULT_SKETCH_WIDTH, DEFAULT_SKETCH_DEPTH, DEFAULT_TOP_KMERS));
+    }
+
+    /**
+     * @param kmers Empty sketch where k-mers are counted. Instances to be merged need sketches of the same dimensions
+     */
+    public FastQStats(KmerSketch kmers) {
+        this.kmers = kmers;
+        this.qualityCounts = new long[0];
+        this.baseCounts = new long[0];
+        this.readLengths = new long[1];
+        this.gcContent = new long[101];
+        this.averageQualities = new long[QUALITIES];
+    }
+
+    public void add(FastQSlice sequence) {
+        add(sequence.getBuffer(), sequence.getSequenceOffset(), sequence.getQualityOffset(), sequence.size(),
+                FastQ.getScaleOffset(sequence.getEncoding()));
+    }
+
+    public void add(FastQ sequence) {
+        byte[] bases = sequence.getSeq().getBytes(StandardCharsets.US_ASCII);
+        byte[] qualities = sequence.getQuality().getBytes(StandardCharsets.US_ASCII);
+        add(bases, 0, qualities, 0, bases.length, FastQ.getScaleOffset(sequence.getEncoding()));
+    }
+
+    public void addAll(List<FastQSlice> sequences) {
+        for (FastQSlice sequence : sequences) {
+            add(sequence);
+        }
+    }
+
+    private void add(byte[] buffer, int sequenceOffset, int qualityOffset, int length, int scaleOffset) {
+        add(buffer, sequenceOffset, buffer, qualityOffset, length, scaleOffset);
+    }
+
+    private void add(byte[] bases, int sequenceOffset, byte[] qualities, int qualityOffset, int length,
+                     int scaleOffset) {
+        ensureLength(length);
+        numReads++;
+        numBases += length;
+        readLengths[length]++;
+
+        int gc = 0;
+        long totalQuality = 0;
+        for (int i = 0; i < length; i++) {
+            int base = baseIndex(bases[sequenceOffset + i]);
+            baseCounts[i * BASES.length() + base]++;
+            if (base == 1 || base == 2) {
+                gc++;
+            }
+            int quality = (qualities[qualityOffset + i] & 0xFF) - scaleOffset;
+            totalQuality += quality;
+            qualityCounts[i * QUALITIES + qualityIndex(quality)]++;
+        }
+        if (length > 0) {
+            gcContent[(int) Math.round(100.0 * gc / length)]++;
+            averageQualities[qualityIndex((int) Math.round((double) totalQuality / length))]++;
+        }
+        kmers.add(bases, sequenceOffset, length);
+    }
+
+    private void ensureLength(int length) {
+        if (length <= maxLength) {
+            return;
+        }
+        int capacity = readLengths.length - 1;
+        if (length > capacity) {
+            capacity = Math.max(length, 2 * capacity);
+            qualityCounts = Arrays.copyOf(qualityCounts, capacity * QUALITIES);
+            baseCounts = Arrays.copyOf(baseCounts, capacity * BASES.length());
+            readLengths = Arrays.copyOf(readLengths, capacity + 1);
+        }
+        maxLength = length;
+    }
+
+    /**
+     * Adds the statistics of another instance, whose sketch must have the same dimensions.
+     */
+    public void merge(FastQStats other) {
+        ensureLength(other.maxLength);
+        numReads += other.numReads;
+        numBases += other.numBases;
+        addCounts(qualityCounts, other.qualityCounts, other.maxLength * QUALITIES);
+        addCounts(baseCounts, other.baseCounts, other.maxLength * BASES.length());
+        addCounts(readLengths, other.readLengths, other.maxLength + 1);
+        addCounts(gcContent, other.gcContent, gcContent.length);
+        addCounts(averageQualities, other.averageQualities, averageQualities.length);
+        kmers.merge(other.kmers);
+    }
+
+    private static void addCounts(long[] counts, long[] other, int length) {
+        for (int i = 0; i < length; i++) {
+            counts[i] += other[i];
+        }
+    }
+
+    /**
+     * Calculates the statistics of all the sequences of a reader, adding
+     * batches to one instance per thread and merging them at the end.
+     *
+     * @param reader Reader of the sequences, like a ParallelFastQReader
+     * @param executor Executor where the batches are processed
+     * @param numThreads Number of batches processed at the same time
+     * @param batchSize Number of sequences of every batch
+     * @return The statistics of all the sequences
+     */
+    public static FastQStats calculate(AbstractFormatReader<FastQSlice> reader, ExecutorService executor,
+                                       int numThreads, int batchSize) throws FileFormatException {
+        final BlockingQueue<FastQStats> available = new ArrayBlockingQueue<>(numThreads);
+        List<FastQStats> all = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            FastQStats stats = new FastQStats();
+            all.add(stats);
+            available.add(stats);
+        }
+
+        // Every batch takes one of the instances, so at most numThreads are pending at the same time
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            List<FastQSlice> batch;
+            while (!(batch = reader.read(batchSize)).isEmpty()) {
+                final FastQStats stats = available.take();
+                final List<FastQSlice> sequences = batch;
+                pending.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        try {
+                            stats.addAll(sequences);
+                        } finally {
+                            available.add(stats);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileFormatException("Interrupted while calculating statistics", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new FileFormatException("Error calculating statistics", (Exception) cause);
+        } finally {
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        FastQStats total = all.get(0);
+        for (int i = 1; i < all.size(); i++) {
+            total.merge(all.get(i));
+        }
+        return total;
+    }
+
+    public long getNumReads() {
+        return numReads;
+    }
+
+    public long getNumBases() {
+        return numBases;
+    }
+
+    public int getMaxReadLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return Number of reads of every length, from 0 to getMaxReadLength
+     */
+    public long[] getReadLengthDistribution() {
+        return Arrays.copyOf(readLengths, maxLength + 1);
+    }
+
+    /**
+     * @return Number of reads of every GC percentage, from 0 to 100
+     */
+    public long[] getGcDistribution() {
+        return gcContent.clone();
+    }
+
+    /**
+     * @return Number of reads of every average quality, rounded, from MIN_QUALITY to MAX_QUALITY
+     */
+    public long[] getAverageQualityDistribution() {
+        return averageQualities.clone();
+    }
+
+    /**
+     * @param position Position in the reads, starting at 0
+     * @return Number of bases with every quality score in the position, from MIN_QUALITY to MAX_QUALITY
+     */
+    public long[] getQualityHistogram(int position) {
+        checkPosition(position);
+        return Arrays.copyOfRange(qualityCounts, position * QUALITIES, (position + 1) * QUALITIES);
+    }
+
+    /**
+     * @param position Position in the reads, starting at 0
+     * @return Average quality score in the position, NaN if no read reached it
+     */
+    public double getMeanQuality(int position) {
+        checkPosition(position);
+        long total = 0;
+        long count = 0;
+        for (int i = 0; i < QUALITIES; i++) {
+            long n = qualityCounts[position * QUALITIES + i];
+            total += n * (i + MIN_QUALITY);
+            count += n;
+        }
+        return (double) total / count;
+    }
+
+    /**
+     * @param position Position in the reads, starting at 0
+     * @param quantile Between 0 and 1, like 0.5 for the median
+     * @return The lowest quality score such that the given fraction of the bases in the position are not above it
+     */
+    public int getQualityQuantile(int position, double quantile) {
+        checkPosition(position);
+        long count = 0;
+        for (int i = 0; i < QUALITIES; i++) {
+            count += qualityCounts[position * QUALITIES + i];
+        }
+        long accumulated = 0;
+        for (int i = 0; i < QUALITIES; i++) {
+            accumulated += qualityCounts[position * QUALITIES + i];
+            if (accumulated > 0 && accumulated >= quantile * count) {
+                return i + MIN_QUALITY;
+            }
+        }
+        return MAX_QUALITY;
+    }
+
+    /**
+     * @param position Position in the reads, starting at 0
+     * @param base One of A, C, G, T or N. Any other char is counted as N
+     * @return Number of reads with the base in the position
+     */
+    public long getBaseCount(int position, char base) {
+        checkPosition(position);
+        return baseCounts[position * BASES.length() + baseIndex((byte) base)];
+    }
+
+    /**
+     * @param kmer K-mer of the length of the sketch
+     * @return The approximate number of times it was found
+     */
+    public long getKmerCount(String kmer) {
+        return kmers.getCount(kmer);
+    }
+
+    /**
+     * @return The most frequent k-mers and their approximate counts, from the most frequent
+     */
+    public Map<String, Long> getOverrepresentedKmers() {
+        String[] top = kmers.getTopKmers();
+        long[] counts = kmers.getTopCounts();
+        Map<String, Long> overrepresented = new LinkedHashMap<>();
+        for (int i = 0; i < top.length; i++) {
+            overrepresented.put(top[i], counts[i]);
+        }
+        return overrepresented;
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= maxLength) {
+            throw new IndexOutOfBoundsException("Position " + position + " out of reads of length " + maxLength);
+        }
+    }
+
+    private static int qualityIndex(int quality) {
+        return Math.min(Math.max(quality, MIN_QUALITY), MAX_QUALITY) - MIN_QUALITY;
+    }
+
+    private static int baseIndex(byte base) {
+        switch (base) {
+            case 'A':
+            case 'a':
+                return 0;
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FastQStats{reads=" + numReads + ", bases=" + numBases + ", maxReadLength=" + maxLength + '}';
+    }
+
+}
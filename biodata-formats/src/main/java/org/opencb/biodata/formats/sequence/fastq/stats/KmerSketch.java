@@ -0,0 +1,232 @@
+package org.opencb.biodata.formats.sequence.fastq.stats;
+
+import java.util.Arrays;
+
+/**
+ * Approximate k-mer counts in a count-min sketch of fixed size, and the
+ * k-mers with the highest counts seen so far.
+ *
+ * K-mers are encoded in 2 bits per base, so they can be at most 31 bases
+ * long. Counts are never underestimated, and only overestimated by collisions
+ * in every row of the sketch.
+ */
+public class KmerSketch {
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x94D049BB133111EBL
+    };
+
+    private final int kmerLength;
+    private final int depth;
+    private final int mask;
+    private final long[] counts;
+
+    // Heavy hitters, sorted by their count
+    private final long[] topKmers;
+    private final long[] topCounts;
+    private int topSize;
+
+    /**
+     * @param kmerLength Bases of every k-mer, between 1 and 31
+     * @param width Counters of every row of the sketch, rounded up to a power of 2
+     * @param depth Rows of the sketch, at most 8
+     * @param topSize Number of k-mers with the highest counts that are kept
+     */
+    public KmerSketch(int kmerLength, int width, int depth, int topSize) {
+        if (kmerLength < 1 || kmerLength > 31) {
+            throw new IllegalArgumentException("K-mers must have between 1 and 31 bases, not " + kmerLength);
+        }
+        if (depth < 1 || depth > SEEDS.length || width < 1) {
+            throw new IllegalArgumentException("Invalid sketch of " + depth + " rows of " + width + " counters");
+        }
+        this.kmerLength = kmerLength;
+        this.depth = depth;
+        int rowSize = Integer.highestOneBit(width);
+        if (rowSize < width) {
+            rowSize <<= 1;
+        }
+        this.mask = rowSize - 1;
+        this.counts = new long[depth * rowSize];
+        this.topKmers = new long[topSize];
+        this.topCounts = new long[topSize];
+    }
+
+    public int getKmerLength() {
+        return kmerLength;
+    }
+
+    /**
+     * Counts all the k-mers of a sequence, skipping those with bases other than A, C, G and T.
+     *
+     * @param bases Buffer with the sequence, as ASCII chars
+     * @param offset Position of the first base in the buffer
+     * @param length Number of bases
+     */
+    public void add(byte[] bases, int offset, int length) {
+        long kmerMask = (1L << (2 * kmerLength)) - 1;
+        long kmer = 0;
+        int valid = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int code = encode(bases[i]);
+            if (code < 0) {
+                valid = 0;
+                continue;
+            }
+            kmer = ((kmer << 2) | code) & kmerMask;
+            if (++valid >= kmerLength) {
+                add(kmer);
+            }
+        }
+    }
+
+    private void add(long kmer) {
+        long estimate = Long.MAX_VALUE;
+        int rowSize = mask + 1;
+        for (int row = 0; row < depth; row++) {
+            int index = row * rowSize + hash(kmer, row);
+            long count = ++counts[index];
+            if (count < estimate) {
+                estimate = count;
+            }
+        }
+        offer(kmer, estimate);
+    }
+
+    /**
+     * @param kmer K-mer, as a String of A, C, G and T
+     * @return The approximate number of times it was found
+     */
+    public long getCount(String kmer) {
+        if (kmer.length() != kmerLength) {
+            throw new IllegalArgumentException("K-mers of length " + kmerLength + " expected, not " + kmer);
+        }
+        long code = 0;
+        for (int i = 0; i < kmer.length(); i++) {
+            int base = encode((byte) kmer.charAt(i));
+            if (base < 0) {
+                return 0;
+            }
+            code = (code << 2) | base;
+        }
+        return estimate(code);
+    }
+
+    private long estimate(long kmer) {
+        long estimate = Long.MAX_VALUE;
+        int rowSize = mask + 1;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counts[row * rowSize + hash(kmer, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return The k-mers with the highest counts, from the highest
+     */
+    public String[] getTopKmers() {
+        String[] kmers = new String[topSize];
+        for (int i = 0; i < topSize; i++) {
+            kmers[i] = decode(topKmers[i]);
+        }
+        return kmers;
+    }
+
+    /**
+     * @return The counts of the k-mers returned by getTopKmers
+     */
+    public long[] getTopCounts() {
+        return Arrays.copyOf(topCounts, topSize);
+    }
+
+    /**
+     * Adds the counts of another sketch with the same dimensions.
+     */
+    public void merge(KmerSketch other) {
+        if (other.kmerLength != kmerLength || other.depth != depth || other.mask != mask
+                || other.topKmers.length != topKmers.length) {
+            throw new IllegalArgumentException("Only sketches with the same dimensions can be merged");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+
+        // The heavy hitters of both are estimated again with the merged counts
+        long[] candidates = new long[topSize + other.topSize];
+        System.arraycopy(topKmers, 0, candidates, 0, topSize);
+        System.arraycopy(other.topKmers, 0, candidates, topSize, other.topSize);
+        topSize = 0;
+        for (long kmer : candidates) {
+            offer(kmer, estimate(kmer));
+        }
+    }
+
+    /**
+     * Keeps a k-mer in the heavy hitters if its count is among the highest.
+     */
+    private void offer(long kmer, long count) {
+        int capacity = topKmers.length;
+        if (capacity == 0 || (topSize == capacity && count <= topCounts[topSize - 1])) {
+            return;
+        }
+        int position = -1;
+        for (int i = 0; i < topSize; i++) {
+            if (topKmers[i] == kmer) {
+                position = i;
+                break;
+            }
+        }
+        if (position < 0) {
+            position = topSize < capacity ? topSize++ : topSize - 1;
+            topKmers[position] = kmer;
+        }
+        topCounts[position] = count;
+        // Move it up to keep them sorted
+        while (position > 0 && topCounts[position - 1] < count) {
+            topKmers[position] = topKmers[position - 1];
+            topCounts[position] = topCounts[position - 1];
+            position--;
+            topKmers[position] = kmer;
+            topCounts[position] = count;
+        }
+    }
+
+    private int hash(long kmer, int row) {
+        long h = kmer ^ SEEDS[row];
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static int encode(byte base) {
+        switch (base) {
+            case 'A':
+            case 'a':
+                return 0;
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    private String decode(long kmer) {
+        char[] bases = new char[kmerLength];
+        for (int i = kmerLength - 1; i >= 0; i--) {
+            bases[i] = "ACGT".charAt((int) (kmer & 3));
+            kmer >>>= 2;
+        }
+        return new String(bases);
+    }
+
+}
@@ -0,0 +1,466 @@
+package org.opencb.biodata.formats.sequence.qseq.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.ParallelBgzfInputStream;
+import org.opencb.biodata.formats.io.ParallelBgzfOutputStream;
+import org.opencb.biodata.formats.sequence.fasta.Fasta;
+import org.opencb.biodata.formats.sequence.fasta.io.FastaReader;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+import org.opencb.biodata.formats.sequence.qseq.Qual;
+
+/**
+ * Converts the qseq files of Illumina lanes, and FASTA files with their .qual
+ * files, to FastQ files. Input files are read in chunks that are converted in
+ * parallel, and written in the same order they were read, so memory is
+ * limited to the chunks being converted.
+ *
+ * The FastQ written has 4 lines per sequence, with the IDs built like
+ * Qseq.toFastQ. Output files whose name ends with .gz are compressed in BGZF
+ * format, also in parallel. The executor is not shut down by the converter.
+ */
+public class FastQConverter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    private static final int QSEQ_FIELDS = 11;
+    private static final int MAX_QUAL_SCORE = 93;
+
+    private final ExecutorService executor;
+    private final int chunksAhead;
+
+    private int inputEncoding = FastQ.ILLUMINA_ENCODING;
+    private int outputEncoding = FastQ.SANGER_ENCODING;
+    private boolean passingFilterOnly;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * @param executor Executor converting the chunks and compressing the output
+     * @param chunksAhead Chunks converted at the same time, usually the number of threads of the executor
+     */
+    public FastQConverter(ExecutorService executor, int chunksAhead) {
+        this.executor = executor;
+        this.chunksAhead = Math.max(1, chunksAhead);
+    }
+
+    /**
+     * Converts the qseq files of a lane into a FastQ file. Both reads of a
+     * paired-end run are in different qseq files, so they are converted
+     * calling this method once for the files of every read.
+     *
+     * @param qseqFiles Files converted, one after another, compressed with gzip if their name ends with .gz
+     * @param output FastQ file written
+     * @return The number of sequences written
+     */
+    public long convertQseq(List<Path> qseqFiles, Path output) throws IOException, FileFormatException {
+        final byte[] table = FastQ.getConversionTable(inputEncoding, outputEncoding);
+        final boolean passingFilterOnly = this.passingFilterOnly;
+        try (OutputStream outputStream = create(output)) {
+            Writer writer = new Writer(outputStream);
+            for (Path qseqFile : qseqFiles) {
+                try (InputStream input = open(qseqFile)) {
+                    LineChunks chunks = new LineChunks(input, chunkSize);
+                    byte[] chunk;
+                    while ((chunk = chunks.next()) != null) {
+                        final byte[] lines = chunk;
+                        writer.submit(new Callable<Chunk>() {
+                            @Override
+                            public Chunk call() throws FileFormatException {
+                                return qseqToFastQ(lines, table, passingFilterOnly);
+                            }
+                        });
+                    }
+                }
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Joins the sequences of a FASTA file with the qualities of its .qual
+     * file, which must be in the same order.
+     *
+     * @return The number of sequences written
+     */
+    public long convertQual(Path fasta, Path qual, Path output) throws IOException, FileFormatException {
+        final int encoding = outputEncoding;
+        FastaReader fastaReader = new FastaReader(fasta);
+        QualReader qualReader = null;
+        try (OutputStream outputStream = create(output)) {
+            qualReader = new QualReader(qual);
+            Writer writer = new Writer(outputStream);
+            while (true) {
+                final List<Fasta> sequences = fastaReader.read(batchSize);
+                final List<Qual> qualities = qualReader.read(batchSize);
+                if (sequences.size() != qualities.size()) {
+                    throw new FileFormatException("Different number of sequences in " + fasta + " and " + qual);
+                }
+                if (sequences.isEmpty()) {
+                    break;
+                }
+                writer.submit(new Callable<Chunk>() {
+                    @Override
+                    public Chunk call() throws FileFormatException {
+                        return qualToFastQ(sequences, qualities, encoding);
+                    }
+                });
+            }
+            return writer.finish();
+        } finally {
+            fastaReader.close();
+            if (qualReader != null) {
+                qualReader.close();
+            }
+        }
+    }
+
+    /**
+     * Converts complete qseq lines to FastQ.
+     *
+     * @param table Conversion table of the quality chars, from FastQ.getConversionTable
+     */
+    static Chunk qseqToFastQ(byte[] lines, byte[] table, boolean passingFilterOnly) throws FileFormatException {
+        Chunk chunk = new Chunk(lines.length + lines.length / 8);
+        int[] tabs = new int[QSEQ_FIELDS - 1];
+        int start = 0;
+        while (start < lines.length) {
+            int end = start;
+            int numTabs = 0;
+            while (end < lines.length && lines[end] != '\n') {
+                if (lines[end] == '\t') {
+                    if (numTabs == tabs.length) {
+                        throw incorrectLine(lines, start, end);
+                    }
+                    tabs[numTabs++] = end;
+                }
+                end++;
+            }
+            int next = end + 1;
+            if (end > start && lines[end - 1] == '\r') {
+                end--;
+            }
+            if (end == start) {
+                start = next;
+                continue;
+            }
+            if (numTabs != tabs.length) {
+                throw incorrectLine(lines, start, end);
+            }
+
+            int sequenceStart = tabs[7] + 1;
+            int qualityStart = tabs[8] + 1;
+            int length = tabs[8] - sequenceStart;
+            if (tabs[9] - qualityStart != length) {
+                throw incorrectLine(lines, start, end);
+            }
+            if (passingFilterOnly && end - tabs[9] == 2 && lines[end - 1] == '0') {
+                start = next;
+                continue;
+            }
+
+            // @machine_run:lane:tile:x:y#index/read
+            chunk.append((byte) '@');
+            chunk.append(lines, start, tabs[0] - start);
+            chunk.append((byte) '_');
+            for (int i = 1; i < 8; i++) {
+                // Numbers are written without leading zeros, like Qseq.toFastQ
+                int number = tabs[i - 1] + 1;
+                while (number < tabs[i] - 1 && lines[number] == '0') {
+                    number++;
+                }
+                chunk.append(lines, number, tabs[i] - number);
+                chunk.append(i < 5 ? (byte) ':' : i == 5 ? (byte) '#' : i == 6 ? (byte) '/' : (byte) '\n');
+            }
+
+            chunk.ensureCapacity(2 * length + 4);
+            byte[] bytes = chunk.bytes;
+            int position = chunk.length;
+            for (int i = 0; i < length; i++) {
+                byte base = lines[sequenceStart + i];
+                bytes[position++] = base == '.' ? (byte) 'N' : base;
+            }
+            bytes[position++] = '\n';
+            bytes[position++] = '+';
+            bytes[position++] = '\n';
+            for (int i = 0; i < length; i++) {
+                bytes[position++] = table[lines[qualityStart + i] & 0xff];
+            }
+            bytes[position++] = '\n';
+            chunk.length = position;
+            chunk.sequences++;
+            start = next;
+        }
+        return chunk;
+    }
+
+    static Chunk qualToFastQ(List<Fasta> sequences, List<Qual> qualities, int encoding) throws FileFormatException {
+        // .qual files have Phred scores, like Sanger
+        byte[] table = FastQ.getConversionTable(FastQ.SANGER_ENCODING, encoding);
+        int offset = FastQ.getScaleOffset(FastQ.SANGER_ENCODING);
+        Chunk chunk = new Chunk(1024);
+        for (int i = 0; i < sequences.size(); i++) {
+            Fasta fasta = sequences.get(i);
+            Qual qual = qualities.get(i);
+            if (!fasta.getId().equals(qual.getId())) {
+                throw new FileFormatException("Quality of sequence " + fasta.getId() + " not found, found " + qual.getId());
+            }
+            int[] scores = qual.getQualityArray();
+            if (scores.length != fasta.getSeq().length()) {
+                throw new FileFormatException("Different number of bases and qualities in " + fasta.getId());
+            }
+
+            StringBuilder header = new StringBuilder(fasta.getId().length() + 2).append('@').append(fasta.getId());
+            if (fasta.getDescription() != null && !fasta.getDescription().isEmpty()) {
+                header.append(' ').append(fasta.getDescription());
+            }
+            header.append('\n').append(fasta.getSeq()).append("\n+\n");
+            byte[] bytes = header.toString().getBytes(StandardCharsets.US_ASCII);
+            chunk.append(bytes, 0, bytes.length);
+
+            chunk.ensureCapacity(scores.length + 1);
+            for (int score : scores) {
+                chunk.bytes[chunk.length++] = table[Math.max(0, Math.min(MAX_QUAL_SCORE, score)) + offset];
+            }
+            chunk.bytes[chunk.length++] = '\n';
+            chunk.sequences++;
+        }
+        return chunk;
+    }
+
+    private static FileFormatException incorrectLine(byte[] lines, int start, int end) {
+        return new FileFormatException("Incorrect Qseq line: " + new String(lines, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    private InputStream open(Path path) throws IOException {
+        InputStream stream = new BufferedInputStream(Files.newInputStream(path), 64 * 1024);
+        if (path.toFile().getName().endsWith(".gz")) {
+            byte[] header = new byte[18];
+            stream.mark(header.length);
+            int length = 0;
+            int read;
+            while (length < header.length && (read = stream.read(header, length, header.length - length)) >= 0) {
+                length += read;
+            }
+            stream.reset();
+            stream = ParallelBgzfInputStream.isBgzf(header, length)
+                    ? new ParallelBgzfInputStream(stream, executor, chunksAhead)
+                    : new GZIPInputStream(stream, 64 * 1024);
+        }
+        return stream;
+    }
+
+    private OutputStream create(Path path) throws IOException {
+        OutputStream stream = new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024);
+        if (path.toFile().getName().endsWith(".gz")) {
+            return new ParallelBgzfOutputStream(stream, executor, 2 * chunksAhead);
+        }
+        return stream;
+    }
+
+    public int getInputEncoding() {
+        return inputEncoding;
+    }
+
+    /**
+     * @param inputEncoding Quality encoding of the qseq files, Illumina 1.3+ by default
+     */
+    public FastQConverter setInputEncoding(int inputEncoding) {
+        if (!FastQ.validQualityEncoding(inputEncoding)) {
+            throw new IllegalArgumentException("Invalid quality encoding " + inputEncoding);
+        }
+        this.inputEncoding = inputEncoding;
+        return this;
+    }
+
+    public int getOutputEncoding() {
+        return outputEncoding;
+    }
+
+    /**
+     * @param outputEncoding Quality encoding of the FastQ files written, Sanger by default
+     */
+    public FastQConverter setOutputEncoding(int outputEncoding) {
+        if (!FastQ.validQualityEncoding(outputEncoding)) {
+            throw new IllegalArgumentException("Invalid quality encoding " + outputEncoding);
+        }
+        this.outputEncoding = outputEncoding;
+        return this;
+    }
+
+    public boolean isPassingFilterOnly() {
+        return passingFilterOnly;
+    }
+
+    /**
+     * @param passingFilterOnly Whether the qseq reads that did not pass the filter are skipped
+     */
+    public FastQConverter setPassingFilterOnly(boolean passingFilterOnly) {
+        this.passingFilterOnly = passingFilterOnly;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize Bytes of qseq lines converted together, they will grow if a line does not fit
+     */
+    public FastQConverter setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize Sequences of FASTA and .qual files converted together
+     */
+    public FastQConverter setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Cuts a stream in chunks of complete lines, keeping the last line of
+     * every chunk read for the next one.
+     */
+    private static final class LineChunks {
+
+        private final InputStream input;
+        private final int chunkSize;
+        private byte[] rest = new byte[0];
+
+        LineChunks(InputStream input, int chunkSize) {
+            this.input = input;
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * @return About chunkSize bytes of complete lines, or null at the end of the stream
+         */
+        byte[] next() throws IOException {
+            byte[] buffer = Arrays.copyOf(rest, rest.length < chunkSize ? chunkSize : 2 * rest.length);
+            int length = rest.length;
+            int read;
+            while ((read = input.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+                if (length == buffer.length) {
+                    int lastLine = length - 1;
+                    while (lastLine >= 0 && buffer[lastLine] != '\n') {
+                        lastLine--;
+                    }
+                    if (lastLine >= 0) {
+                        rest = Arrays.copyOfRange(buffer, lastLine + 1, length);
+                        return Arrays.copyOf(buffer, lastLine + 1);
+                    }
+                    // A line longer than the chunk
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                }
+            }
+            rest = new byte[0];
+            return length > 0 ? Arrays.copyOf(buffer, length) : null;
+        }
+
+    }
+
+    /**
+     * FastQ bytes of a chunk.
+     */
+    static final class Chunk {
+
+        byte[] bytes;
+        int length;
+        int sequences;
+
+        Chunk(int capacity) {
+            this.bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void ensureCapacity(int size) {
+            if (length + size > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + size, 2 * bytes.length));
+            }
+        }
+
+        void append(byte b) {
+            ensureCapacity(1);
+            bytes[length++] = b;
+        }
+
+        void append(byte[] source, int offset, int size) {
+            ensureCapacity(size);
+            System.arraycopy(source, offset, bytes, length, size);
+            length += size;
+        }
+
+    }
+
+    /**
+     * Writes the chunks in the order they were submitted, waiting for the
+     * oldest one when there are too many being converted.
+     */
+    private final class Writer {
+
+        private final OutputStream output;
+        private final Queue<Future<Chunk>> pending = new ArrayDeque<>();
+        private long sequences;
+
+        Writer(OutputStream output) {
+            this.output = output;
+        }
+
+        void submit(Callable<Chunk> conversion) throws IOException, FileFormatException {
+            pending.add(executor.submit(conversion));
+            while (pending.size() > chunksAhead) {
+                writeNext();
+            }
+        }
+
+        long finish() throws IOException, FileFormatException {
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            return sequences;
+        }
+
+        private void writeNext() throws IOException, FileFormatException {
+            Chunk chunk;
+            try {
+                chunk = pending.poll().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while converting to FastQ", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof FileFormatException) {
+                    throw (FileFormatException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            output.write(chunk.bytes, 0, chunk.length);
+            sequences += chunk.sequences;
+        }
+
+    }
+
+}
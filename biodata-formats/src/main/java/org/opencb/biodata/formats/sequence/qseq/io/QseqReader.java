@@ -127,8 +127,14 @@ public class QseqReader extends AbstractFormatReader<Qseq> {
 
     @Override
     public List<Qseq> read(int size) throws FileFormatException {
-        // TODO Auto-generated method stub
-        return null;
+        List<Qseq> qseqList = new ArrayList<Qseq>(size);
+
+        Qseq qseq;
+        while (qseqList.size() < size && (qseq = this.read()) != null) {
+            qseqList.add(qseq);
+        }
+
+        return qseqList;
     }
 
 }
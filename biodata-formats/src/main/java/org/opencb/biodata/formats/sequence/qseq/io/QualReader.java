@@ -164,8 +164,14 @@ public class QualReader extends AbstractFormatReader<Qual> {
 
     @Override
     public List<Qual> read(int size) throws FileFormatException {
-        // TODO Auto-generated method stub
-        return null;
+        List<Qual> qualList = new ArrayList<Qual>(size);
+
+        Qual qual;
+        while (qualList.size() < size && (qual = this.read()) != null) {
+            qualList.add(qual);
+        }
+
+        return qualList;
     }
 
 }
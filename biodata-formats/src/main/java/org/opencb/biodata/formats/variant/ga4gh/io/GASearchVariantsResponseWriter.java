@@ -0,0 +1,175 @@
+package org.opencb.biodata.formats.variant.ga4gh.io;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.opencb.biodata.ga4gh.GACall;
+import org.opencb.biodata.ga4gh.GAKeyValue;
+import org.opencb.biodata.ga4gh.GASearchVariantsResponse;
+import org.opencb.biodata.ga4gh.GAVariant;
+
+/**
+ * Serializes pages of GA4GH variants as GASearchVariantsResponse JSON objects.
+ *
+ * Variants are written with a streaming generator as they are taken from an
+ * iterator, so a page never needs to be fully materialized in memory nor
+ * inspected through reflection.
+ */
+public class GASearchVariantsResponseWriter implements Closeable {
+
+    private final JsonGenerator generator;
+
+    public GASearchVariantsResponseWriter(OutputStream outputStream) throws IOException {
+        this(new JsonFactory().createGenerator(outputStream, JsonEncoding.UTF8));
+    }
+
+    public GASearchVariantsResponseWriter(JsonGenerator generator) {
+        this.generator = generator;
+    }
+
+    public void write(GASearchVariantsResponse response) throws IOException {
+        write(response.getVariants().iterator(), Integer.MAX_VALUE, response.getNextPageToken());
+    }
+
+    /**
+     * Writes a page with, at most, pageSize variants taken from an iterator.
+     * Variants not written are left in the iterator for the following pages.
+     *
+     * @param variants Variants to write
+     * @param pageSize Maximum number of variants in the page
+     * @param nextPageToken Token for the following page, null if this is the last one
+     * @return Number of variants written
+     * @throws IOException If the page could not be written
+     */
+    public int write(Iterator<GAVariant> variants, int pageSize, String nextPageToken) throws IOException {
+        int written = 0;
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("variants");
+        while (written < pageSize && variants.hasNext()) {
+            writeVariant(variants.next());
+            written++;
+        }
+        generator.writeEndArray();
+        generator.writeStringField("nextPageToken", nextPageToken);
+        generator.writeEndObject();
+        generator.flush();
+        return written;
+    }
+
+    private void writeVariant(GAVariant variant) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", variant.getId());
+        generator.writeStringField("variantSetId", variant.getVariantSetId());
+        writeStringArray("names", variant.getNames());
+        generator.writeNumberField("created", variant.getCreated());
+        generator.writeNumberField("updated", variant.getUpdated());
+        generator.writeStringField("referenceName", variant.getReferenceName());
+        generator.writeNumberField("start", variant.getStart());
+        generator.writeNumberField("end", variant.getEnd());
+        generator.writeStringField("referenceBases", variant.getReferenceBases());
+        writeStringArray("alternateBases", variant.getAlternateBases());
+
+        generator.writeFieldName("info");
+        if (variant.getInfo() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartObject();
+            // GAVariant declares the values of info as raw Lists
+            for (@SuppressWarnings("rawtypes") Map.Entry<String, List> field : variant.getInfo().entrySet()) {
+                generator.writeFieldName(field.getKey());
+                if (field.getValue() == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeStartArray();
+                    for (Object value : field.getValue()) {
+                        generator.writeObject(value);
+                    }
+                    generator.writeEndArray();
+                }
+            }
+            generator.writeEndObject();
+        }
+
+        generator.writeFieldName("calls");
+        if (variant.getCalls() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (GACall call : variant.getCalls()) {
+                writeCall(call);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeCall(GACall call) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("callSetId", call.getCallSetId());
+        generator.writeStringField("callSetName", call.getCallSetName());
+
+        generator.writeFieldName("genotype");
+        if (call.getGenotype() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (int allele : call.getGenotype()) {
+                generator.writeNumber(allele);
+            }
+            generator.writeEndArray();
+        }
+
+        generator.writeStringField("phaseset", call.getPhaseset());
+
+        generator.writeFieldName("genotypeLikelihood");
+        if (call.getGenotypeLikelihood() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (double likelihood : call.getGenotypeLikelihood()) {
+                generator.writeNumber(likelihood);
+            }
+            generator.writeEndArray();
+        }
+
+        generator.writeFieldName("info");
+        if (call.getInfo() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (GAKeyValue keyValue : call.getInfo()) {
+                generator.writeStartObject();
+                generator.writeStringField("key", keyValue.getKey());
+                generator.writeStringField("value", keyValue.getValue());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeStringArray(String fieldName, String[] values) throws IOException {
+        generator.writeFieldName(fieldName);
+        if (values == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (String value : values) {
+                generator.writeString(value);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+
+}
@@ -1,13 +1,470 @@
 package org.opencb.biodata.formats.variant.gvf.io;
 
-public class GvfReader {
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineTokenizer;
+import org.opencb.biodata.formats.io.StringInterner;
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+/**
+ * Reads variants from GVF files, like the ones of Ensembl Variation.
+ *
+ * Every line creates a variant for each allele of Variant_seq different from
+ * Reference_seq, with the other alleles as secondary alternates, like
+ * multi-allelic VCF lines. A dash in an allele means an empty one, so
+ * insertions and deletions are represented as in VariantVcfFactory. IDs are
+ * taken from Dbxref (rs367896724 from dbSNP_150:rs367896724), or from ID if
+ * there is none. The rest of the attributes, the source and the type are
+ * stored in the VariantSourceEntry of the file.
+ *
+ * Genotype, or Zygosity, is stored as the GT of the individual of the
+ * ##individual-id header selected by the Individual attribute, the first
+ * one by default. Zygosity words are converted to allele indexes.
+ *
+ * Sequence names, sources, types, attribute keys and short alleles are
+ * interned, so records share them.
+ *
+ * Lines that can't be decoded are logged and skipped, and counted by
+ * getMalformedLines.
+ */
+public class GvfReader implements VariantReader {
+
+    private static final int MAX_INTERNED_ALLELE = 4;
+    private static final Set<String> MAPPED_ATTRIBUTES = new HashSet<>(Arrays.asList(
+            "Variant_seq", "Reference_seq", "Genotype", "Zygosity", "Individual", "ID", "Dbxref"));
+
+    private final VariantSource source;
+    private final String filePath;
+    private final StringInterner interner;
+    private final LineTokenizer tokenizer;
+    private final LineTokenizer attributeTokenizer;
+    private final List<String> headerLines;
+    private final List<String> individuals;
+
+    private BufferedReader reader;
+    private String nextLine;
+    private long malformedLines;
+
+    public GvfReader(VariantSource source, String filePath) {
+        this.source = source;
+        this.filePath = filePath;
+        this.interner = new StringInterner();
+        this.tokenizer = new LineTokenizer('\t');
+        this.attributeTokenizer = new LineTokenizer(';');
+        this.headerLines = new ArrayList<>();
+        this.individuals = new ArrayList<>();
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            Path path = Paths.get(filePath);
+            if (path.toFile().getName().endsWith(".gz")) {
+                reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(path.toFile()))));
+            } else {
+                reader = Files.newBufferedReader(path, Charset.defaultCharset());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(GvfReader.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the pragmas at the beginning of the file, and stores them as metadata of the source.
+     */
+    @Override
+    public boolean pre() {
+        Map<String, List<String>> pragmas = new LinkedHashMap<>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null && (line.startsWith("#") || line.trim().isEmpty())) {
+                if (!line.startsWith("##")) {
+                    continue;
+                }
+                headerLines.add(line);
+                String[] fields = line.substring(2).split("\\s+", 2);
+                String value = fields.length > 1 ? fields[1].trim() : "";
+                if (!pragmas.containsKey(fields[0])) {
+                    pragmas.put(fields[0], new ArrayList<String>());
+                }
+                pragmas.get(fields[0]).add(value);
+                if (fields[0].equals("individual-id")) {
+                    individuals.add(individualName(value));
+                }
+            }
+            nextLine = line;
+        } catch (IOException ex) {
+            Logger.getLogger(GvfReader.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+
+        for (Map.Entry<String, List<String>> pragma : pragmas.entrySet()) {
+            source.addMetadata(pragma.getKey(), pragma.getValue().size() == 1 ? pragma.getValue().get(0) : pragma.getValue());
+        }
+        source.setSamples(individuals);
+        return true;
+    }
+
+    /**
+     * @return Number of lines discarded because they could not be decoded
+     */
+    public long getMalformedLines() {
+        return malformedLines;
+    }
 
     /**
-     * @param args
+     * Malformed lines are logged and skipped.
+     *
+     * @return The variants of the next line with at least one alternate allele, or null at the end of the file
      */
-    public static void main(String[] args) {
-        // TODO Auto-generated method stub
+    @Override
+    public List<Variant> read() {
+        try {
+            String line;
+            while ((line = nextLine()) != null) {
+                if (line.startsWith("#") || line.trim().isEmpty()) {
+                    continue;
+                }
+                List<Variant> variants;
+                try {
+                    variants = decode(line);
+                } catch (FileFormatException ex) {
+                    malformedLines++;
+                    Logger.getLogger(GvfReader.class.getName()).log(Level.WARNING, ex.getMessage());
+                    continue;
+                }
+                if (!variants.isEmpty()) {
+                    return variants;
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(GvfReader.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return null;
+    }
+
+    @Override
+    public List<Variant> read(int batchSize) {
+        List<Variant> listRecords = new ArrayList<>(batchSize);
+
+        int i = 0;
+        List<Variant> variants;
+        while ((i < batchSize) && (variants = this.read()) != null) {
+            listRecords.addAll(variants);
+            i += variants.size();
+        }
+
+        return listRecords;
+    }
+
+    @Override
+    public boolean post() {
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        try {
+            reader.close();
+        } catch (IOException ex) {
+            Logger.getLogger(GvfReader.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        return true;
+    }
 
+    @Override
+    public List<String> getSampleNames() {
+        return Collections.unmodifiableList(individuals);
+    }
+
+    @Override
+    public String getHeader() {
+        StringBuilder header = new StringBuilder();
+        for (String line : headerLines) {
+            header.append(line).append('\n');
+        }
+        return header.toString();
+    }
+
+    private String nextLine() throws IOException {
+        if (nextLine != null) {
+            String line = nextLine;
+            nextLine = null;
+            return line;
+        }
+        return reader.readLine();
+    }
+
+    /**
+     * Decodes a GVF line: seqid, source, type, start, end, score, strand, phase and attributes.
+     */
+    List<Variant> decode(String line) throws FileFormatException {
+        if (tokenizer.tokenize(line, 9) < 9) {
+            throw new FileFormatException("GVF lines must have 9 columns: " + line);
+        }
+        String chromosome = interner.intern(tokenizer.getString(0));
+        String gvfSource = interner.intern(tokenizer.getString(1));
+        String type = interner.intern(tokenizer.getString(2));
+        int start;
+        try {
+            start = tokenizer.getInt(3);
+        } catch (NumberFormatException e) {
+            throw new FileFormatException("Invalid start in GVF line: " + line, e);
+        }
+
+        Map<String, String> attributes = new HashMap<>();
+        int numAttributes = attributeTokenizer.tokenize(tokenizer.getString(8));
+        for (int i = 0; i < numAttributes; i++) {
+            String attribute = attributeTokenizer.getString(i);
+            int equals = attribute.indexOf('=');
+            if (equals > 0) {
+                attributes.put(interner.intern(attribute.substring(0, equals).trim()), attribute.substring(equals + 1));
+            }
+        }
+
+        String reference = allele(attributes.get("Reference_seq"));
+        String variantSeq = attributes.get("Variant_seq");
+        if (reference == null || variantSeq == null) {
+            throw new FileFormatException("GVF line without Reference_seq or Variant_seq: " + line);
+        }
+        List<String> alternates = new ArrayList<>();
+        // Allele index of every Variant_seq entry: 0 for the reference, and 1 onwards for the alternates
+        List<Integer> alleleIndexes = new ArrayList<>();
+        boolean carriesReference = false;
+        for (String allele : variantSeq.split(",")) {
+            allele = allele(allele);
+            if (allele.equals(reference)) {
+                carriesReference = true;
+                alleleIndexes.add(0);
+            } else {
+                int index = alternates.indexOf(allele);
+                if (index < 0) {
+                    index = alternates.size();
+                    alternates.add(allele);
+                }
+                alleleIndexes.add(index + 1);
+            }
+        }
+
+        Set<String> ids = ids(attributes);
+        String genotype = genotype(attributes, alternates.size(), carriesReference, alleleIndexes, line);
+        String individual = individual(attributes);
+
+        List<Variant> variants = new ArrayList<>(alternates.size());
+        for (int i = 0; i < alternates.size(); i++) {
+            Variant variant = variant(chromosome, start, reference, alternates.get(i));
+            if (variant == null) {
+                continue;
+            }
+            variant.setIds(new HashSet<>(ids));
+
+            String[] secondaryAlternates = new String[alternates.size() - 1];
+            for (int j = 0, k = 0; j < alternates.size(); j++) {
+                if (j != i) {
+                    secondaryAlternates[k++] = alternates.get(j);
+                }
+            }
+            VariantSourceEntry entry = new VariantSourceEntry(source.getFileId(), source.getStudyId(),
+                    secondaryAlternates, genotype != null ? "GT" : "");
+            entry.addAttribute("source", gvfSource);
+            entry.addAttribute("type", type);
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                if (!MAPPED_ATTRIBUTES.contains(attribute.getKey())) {
+                    entry.addAttribute(attribute.getKey(), attribute.getValue());
+                }
+            }
+            if (genotype != null && individual != null) {
+                Map<String, String> sampleData = new HashMap<>();
+                sampleData.put("GT", genotype(genotype, i));
+                entry.addSampleData(individual, sampleData);
+            }
+            variant.addSourceEntry(entry);
+            variants.add(variant);
+        }
+        return variants;
+    }
+
+    /**
+     * Creates a variant removing the bases shared by both alleles, like VariantVcfFactory.
+     *
+     * @return The variant, or null if both alleles are the same
+     */
+    private Variant variant(String chromosome, int start, String reference, String alternate) {
+        int suffix = 0;
+        while (suffix < reference.length() && suffix < alternate.length()
+                && reference.charAt(reference.length() - 1 - suffix) == alternate.charAt(alternate.length() - 1 - suffix)) {
+            suffix++;
+        }
+        int prefix = 0;
+        while (prefix < reference.length() - suffix && prefix < alternate.length() - suffix
+                && reference.charAt(prefix) == alternate.charAt(prefix)) {
+            prefix++;
+        }
+        String ref = allele(reference.substring(prefix, reference.length() - suffix));
+        String alt = allele(alternate.substring(prefix, alternate.length() - suffix));
+        if (ref.isEmpty() && alt.isEmpty()) {
+            return null;
+        }
+        int position = start + prefix;
+        int end = position + Math.max(ref.length(), alt.length()) - 1;
+        return new Variant(chromosome, position, end, ref, alt);
+    }
+
+    /**
+     * @return The allele, empty for a dash, interned if it is short
+     */
+    private String allele(String allele) {
+        if (allele == null) {
+            return null;
+        }
+        if (allele.equals("-") || allele.equals(".")) {
+            return "";
+        }
+        return allele.length() <= MAX_INTERNED_ALLELE ? interner.intern(allele) : allele;
+    }
+
+    private static Set<String> ids(Map<String, String> attributes) {
+        Set<String> ids = new HashSet<>();
+        String dbxref = attributes.get("Dbxref");
+        if (dbxref != null) {
+            for (String xref : dbxref.split(",")) {
+                int colon = xref.indexOf(':');
+                ids.add(colon >= 0 ? xref.substring(colon + 1) : xref);
+            }
+        } else if (attributes.containsKey("ID")) {
+            ids.add(attributes.get("ID"));
+        }
+        return ids;
+    }
+
+    /**
+     * @param alleleIndexes Allele index of every Variant_seq entry, which numeric genotypes refer to
+     * @return The genotype with allele indexes separated by '/', from Genotype or Zygosity, or null if there is none
+     */
+    private static String genotype(Map<String, String> attributes, int numAlternates, boolean carriesReference,
+                                   List<Integer> alleleIndexes, String line) throws FileFormatException {
+        String genotype = attributes.get("Genotype");
+        if (genotype == null) {
+            genotype = attributes.get("Zygosity");
+        }
+        if (genotype == null) {
+            return null;
+        }
+        switch (genotype.toLowerCase()) {
+            case "homozygous":
+                return "1/1";
+            case "hemizygous":
+                return "1";
+            case "heterozygous":
+                // Both alleles are in Variant_seq, which may include the reference
+                return numAlternates > 1 && !carriesReference ? "1/2" : "0/1";
+            default:
+                return translateGenotype(genotype, alleleIndexes, line);
+        }
+    }
+
+    /**
+     * Translates a genotype like 0:1, whose numbers are positions in Variant_seq, to allele indexes like 1/2.
+     * Missing alleles and phased separators are kept.
+     */
+    private static String translateGenotype(String genotype, List<Integer> alleleIndexes, String line)
+            throws FileFormatException {
+        StringBuilder translated = new StringBuilder(genotype.length());
+        int i = 0;
+        while (i < genotype.length()) {
+            char c = genotype.charAt(i);
+            if (c == ':' || c == '/') {
+                translated.append('/');
+                i++;
+            } else if (Character.isDigit(c)) {
+                int end = i;
+                while (end < genotype.length() && Character.isDigit(genotype.charAt(end))) {
+                    end++;
+                }
+                if (end - i > 9 || Integer.parseInt(genotype.substring(i, end)) >= alleleIndexes.size()) {
+                    throw new FileFormatException("GVF genotype refers to an allele not in Variant_seq: " + line);
+                }
+                translated.append(alleleIndexes.get(Integer.parseInt(genotype.substring(i, end))));
+                i = end;
+            } else {
+                translated.append(c);
+                i++;
+            }
+        }
+        return translated.toString();
+    }
+
+    /**
+     * Renumbers the alleles of a genotype for the variant of an alternate, which is allele 1 in it.
+     */
+    private static String genotype(String genotype, int alternate) {
+        if (alternate == 0) {
+            return genotype;
+        }
+        StringBuilder renumbered = new StringBuilder(genotype.length());
+        for (char c : genotype.toCharArray()) {
+            if (c == '1') {
+                renumbered.append((char) ('1' + alternate));
+            } else if (c == (char) ('1' + alternate)) {
+                renumbered.append('1');
+            } else {
+                renumbered.append(c);
+            }
+        }
+        return renumbered.toString();
+    }
+
+    private String individual(Map<String, String> attributes) {
+        String index = attributes.get("Individual");
+        if (index != null) {
+            try {
+                int i = Integer.parseInt(index.trim());
+                if (i >= 0 && i < individuals.size()) {
+                    return individuals.get(i);
+                }
+            } catch (NumberFormatException e) {
+                return index;
+            }
+        }
+        return individuals.isEmpty() ? null : individuals.get(0);
+    }
+
+    /**
+     * @return The ID in the Dbxref of an ##individual-id pragma, like NA12878 in Coriell:NA12878, or its first word
+     */
+    private static String individualName(String pragma) {
+        for (String attribute : pragma.split(";")) {
+            if (attribute.startsWith("Dbxref=")) {
+                String xref = attribute.substring("Dbxref=".length()).split(",")[0];
+                return xref.substring(xref.indexOf(':') + 1);
+            }
+        }
+        return pragma.split("[\\s;]", 2)[0];
     }
 
 }
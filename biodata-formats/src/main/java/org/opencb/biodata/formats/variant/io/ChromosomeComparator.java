@@ -0,0 +1,119 @@
+package org.opencb.biodata.formats.variant.io;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.opencb.biodata.formats.variant.vcf4.Vcf4;
+
+/**
+ * Sorts chromosome names following the order of the ##contig lines of a VCF
+ * header. Chromosomes not declared in the header are sorted after the declared
+ * ones, in the usual order for the human genome: autosomes numerically, then X,
+ * Y and mitochondrial, then the rest alphabetically. The "chr" prefix is
+ * ignored by this default ordering.
+ */
+public class ChromosomeComparator implements Comparator<String> {
+
+    private final Map<String, Integer> contigs;
+
+    /**
+     * Creates a comparator that only uses the default ordering.
+     */
+    public ChromosomeComparator() {
+        this(Collections.<String>emptyList());
+    }
+
+    /**
+     * @param contigs Chromosome names in the order they must be sorted
+     */
+    public ChromosomeComparator(List<String> contigs) {
+        this.contigs = new HashMap<>(contigs.size() * 2);
+        for (String contig : contigs) {
+            if (!this.contigs.containsKey(contig)) {
+                this.contigs.put(contig, this.contigs.size());
+            }
+        }
+    }
+
+    /**
+     * @param header VCF header, as returned by VariantReader.getHeader
+     * @return a comparator following the order of the ##contig lines in the header
+     */
+    public static ChromosomeComparator fromHeader(String header) {
+        Vcf4 vcf4 = new Vcf4();
+        if (header != null) {
+            for (String line : header.split("\n")) {
+                if (line.startsWith("##contig=")) {
+                    vcf4.addMetaInformation("contig", line.substring("##contig=".length()).trim());
+                }
+            }
+        }
+        return new ChromosomeComparator(vcf4.getContigNames());
+    }
+
+    @Override
+    public int compare(String chromosome1, String chromosome2) {
+        if (chromosome1.equals(chromosome2)) {
+            return 0;
+        }
+
+        Integer index1 = contigs.get(chromosome1);
+        Integer index2 = contigs.get(chromosome2);
+        if (index1 != null && index2 != null) {
+            return Integer.compare(index1, index2);
+        } else if (index1 != null) {
+            return -1;
+        } else if (index2 != null) {
+            return 1;
+        }
+
+        String name1 = stripPrefix(chromosome1);
+        String name2 = stripPrefix(chromosome2);
+        int rank1 = rank(name1);
+        int rank2 = rank(name2);
+        if (rank1 != rank2) {
+            return Integer.compare(rank1, rank2);
+        }
+        int result = rank1 == 0 ? Long.compare(Long.parseLong(name1), Long.parseLong(name2)) : name1.compareTo(name2);
+        return result != 0 ? result : chromosome1.compareTo(chromosome2);
+    }
+
+    private static String stripPrefix(String chromosome) {
+        if (chromosome.length() > 3 && chromosome.regionMatches(true, 0, "chr", 0, 3)) {
+            return chromosome.substring(3);
+        }
+        return chromosome;
+    }
+
+    /**
+     * @return 0 for autosomes, 1 for X, 2 for Y, 3 for mitochondrial and 4 for the rest
+     */
+    private static int rank(String name) {
+        if (isNumber(name)) {
+            return 0;
+        } else if (name.equalsIgnoreCase("X")) {
+            return 1;
+        } else if (name.equalsIgnoreCase("Y")) {
+            return 2;
+        } else if (name.equalsIgnoreCase("M") || name.equalsIgnoreCase("MT")) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static boolean isNumber(String name) {
+        if (name.isEmpty() || name.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,366 @@
+package org.opencb.biodata.formats.variant.io;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineTokenizer;
+import org.opencb.biodata.formats.io.StringInterner;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicate;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicates;
+import org.opencb.biodata.models.feature.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+/**
+ * Reads variants from the consensus calls of a single sample, like the ones
+ * written by MAQ or SOAPsnp: tab-separated lines starting with the sequence
+ * name, the position, the reference base and the consensus genotype as an
+ * IUPAC code.
+ *
+ * Every line creates a variant for each allele of the consensus different
+ * from the reference, with the other one as secondary alternate, and the
+ * genotype as the GT of the sample. Lines whose consensus is the reference
+ * or is ambiguous (N, or codes of three bases) create no variants. The rest
+ * of the columns are decoded by the subclasses.
+ *
+ * Lines are split with a LineTokenizer, and those outside the regions of
+ * interest are discarded before being decoded. Lines that can't be decoded
+ * are logged and skipped.
+ */
+public abstract class ConsensusVariantReader implements VariantReader {
+
+    static final int CHROMOSOME = 0;
+    static final int POSITION = 1;
+    static final int REFERENCE = 2;
+    static final int CONSENSUS = 3;
+
+    protected final VariantSource source;
+    protected final String filePath;
+    protected final StringInterner interner;
+
+    private final String format;
+    private final LineTokenizer tokenizer;
+    private final List<String> headerLines;
+    private final List<VcfLinePredicate> linePredicates;
+    private VcfLinePredicate linePredicate;
+    private long skippedLines;
+    private long malformedLines;
+
+    private String sampleName;
+    private BufferedReader reader;
+    private String nextLine;
+
+    /**
+     * @param source Source of the variants. Its first sample is the one of the file, or the file name if it has none
+     * @param filePath File of consensus calls, compressed with gzip if its name ends with .gz
+     * @param format Fields of the sample data, starting with GT
+     */
+    protected ConsensusVariantReader(VariantSource source, String filePath, String format) {
+        this.source = source;
+        this.filePath = filePath;
+        this.format = format;
+        this.interner = new StringInterner();
+        this.tokenizer = new LineTokenizer('\t');
+        this.headerLines = new ArrayList<>();
+        this.linePredicates = new ArrayList<>();
+    }
+
+    /**
+     * Discards the lines outside the regions. If it is called several times,
+     * only the lines within the regions of every call are kept.
+     *
+     * @param regions Regions of interest, with 1-based inclusive coordinates
+     */
+    public void addRegions(Collection<Region> regions) {
+        // CHROM and POS are the first columns as in VCF, and the 4th one, taken as REF, is always one base long
+        linePredicates.add(VcfLinePredicates.inRegions(regions));
+        linePredicate = VcfLinePredicates.all(linePredicates);
+    }
+
+    /**
+     * @return Number of lines discarded because they are outside the regions
+     */
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * @return Number of lines discarded because they could not be decoded
+     */
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            Path path = Paths.get(filePath);
+            if (path.toFile().getName().endsWith(".gz")) {
+                reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(path.toFile()))));
+            } else {
+                reader = Files.newBufferedReader(path, Charset.defaultCharset());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the comments at the beginning of the file, and sets the sample of the source.
+     */
+    @Override
+    public boolean pre() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null && (line.startsWith("#") || line.trim().isEmpty())) {
+                if (line.startsWith("#")) {
+                    headerLines.add(line);
+                }
+            }
+            nextLine = line;
+        } catch (IOException ex) {
+            Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+
+        if (!source.getSamples().isEmpty()) {
+            sampleName = source.getSamples().get(0);
+        } else {
+            String fileName = Paths.get(filePath).getFileName().toString();
+            if (fileName.endsWith(".gz")) {
+                fileName = fileName.substring(0, fileName.length() - 3);
+            }
+            int dot = fileName.lastIndexOf('.');
+            sampleName = dot > 0 ? fileName.substring(0, dot) : fileName;
+            source.setSamples(Collections.singletonList(sampleName));
+        }
+        return true;
+    }
+
+    /**
+     * @return The variants of the next line with at least one alternate allele, or null at the end of the file
+     */
+    @Override
+    public List<Variant> read() {
+        List<Variant> variants = new ArrayList<>(2);
+        try {
+            while (variants.isEmpty()) {
+                if (!readLine(variants)) {
+                    return null;
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+        return variants;
+    }
+
+    @Override
+    public List<Variant> read(int batchSize) {
+        List<Variant> listRecords = new ArrayList<>(batchSize);
+        try {
+            while (listRecords.size() < batchSize && readLine(listRecords)) {
+                // The variants are added by readLine
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, ex);
+        }
+        return listRecords;
+    }
+
+    @Override
+    public boolean post() {
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        try {
+            reader.close();
+        } catch (IOException ex) {
+            Logger.getLogger(getClass().getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> getSampleNames() {
+        return sampleName != null ? Collections.singletonList(sampleName) : Collections.<String>emptyList();
+    }
+
+    @Override
+    public String getHeader() {
+        StringBuilder header = new StringBuilder();
+        for (String line : headerLines) {
+            header.append(line).append('\n');
+        }
+        return header.toString();
+    }
+
+    /**
+     * @return The minimum number of columns of a line
+     */
+    protected abstract int getNumColumns();
+
+    /**
+     * Stores the columns after the consensus of a line in the entry of every variant it creates.
+     *
+     * @param fields Fields of the line
+     * @param entry Entry of the variant in the file, with its attributes
+     * @param sampleData Data of the sample, which already contains GT
+     */
+    protected abstract void decode(LineTokenizer fields, VariantSourceEntry entry, Map<String, String> sampleData)
+            throws FileFormatException;
+
+    /**
+     * Reads and decodes the next line that is not a comment. If the line is
+     * malformed, it is logged and no variants are added.
+     *
+     * @param variants List where the variants of the line are added
+     * @return False at the end of the file
+     */
+    private boolean readLine(List<Variant> variants) throws IOException {
+        String line = nextLine();
+        while (line != null && (line.startsWith("#") || line.isEmpty())) {
+            line = nextLine();
+        }
+        if (line == null) {
+            return false;
+        }
+        int numVariants = variants.size();
+        try {
+            if (tokenizer.tokenize(line) < getNumColumns()) {
+                throw new FileFormatException(getClass().getSimpleName() + " lines must have at least "
+                        + getNumColumns() + " columns: " + line);
+            }
+            if (linePredicate != null && !linePredicate.accept(tokenizer)) {
+                skippedLines++;
+                return true;
+            }
+            decode(line, variants);
+        } catch (FileFormatException ex) {
+            // Discard the variants of the line decoded before the error
+            variants.subList(numVariants, variants.size()).clear();
+            malformedLines++;
+            Logger.getLogger(getClass().getName()).log(Level.WARNING, ex.getMessage());
+        }
+        return true;
+    }
+
+    private void decode(String line, List<Variant> variants) throws FileFormatException {
+        String reference = tokenizer.getString(REFERENCE).toUpperCase();
+        String consensus = tokenizer.getString(CONSENSUS).toUpperCase();
+        if (reference.length() != 1 || consensus.length() != 1) {
+            throw new FileFormatException("Reference and consensus must be single bases: " + line);
+        }
+        String alleles = alleles(consensus.charAt(0));
+        if (alleles == null) {
+            return;
+        }
+
+        List<String> alternates = new ArrayList<>(2);
+        boolean carriesReference = false;
+        for (int i = 0; i < alleles.length(); i++) {
+            String allele = interner.intern(alleles.substring(i, i + 1));
+            if (allele.equals(reference)) {
+                carriesReference = true;
+            } else {
+                alternates.add(allele);
+            }
+        }
+        if (alternates.isEmpty()) {
+            return;
+        }
+
+        String genotype;
+        if (alternates.size() == 2) {
+            genotype = "1/2";
+        } else {
+            genotype = carriesReference ? "0/1" : "1/1";
+        }
+
+        String chromosome = interner.intern(tokenizer.getString(CHROMOSOME));
+        int position;
+        try {
+            position = tokenizer.getInt(POSITION);
+        } catch (NumberFormatException e) {
+            throw new FileFormatException("Invalid position: " + line, e);
+        }
+        reference = interner.intern(reference);
+
+        for (int i = 0; i < alternates.size(); i++) {
+            Variant variant = new Variant(chromosome, position, position, reference, alternates.get(i));
+            String[] secondaryAlternates = alternates.size() == 2
+                    ? new String[]{alternates.get(1 - i)}
+                    : new String[0];
+            VariantSourceEntry entry = new VariantSourceEntry(source.getFileId(), source.getStudyId(),
+                    secondaryAlternates, format);
+            Map<String, String> sampleData = new HashMap<>();
+            sampleData.put("GT", genotype);
+            decode(tokenizer, entry, sampleData);
+            entry.addSampleData(sampleName, sampleData);
+            variant.addSourceEntry(entry);
+            variants.add(variant);
+        }
+    }
+
+    private String nextLine() throws IOException {
+        if (nextLine != null) {
+            String line = nextLine;
+            nextLine = null;
+            return line;
+        }
+        return reader.readLine();
+    }
+
+    /**
+     * @return The bases of an IUPAC code of one or two bases, or null for the rest
+     */
+    static String alleles(char code) {
+        switch (code) {
+            case 'A':
+                return "A";
+            case 'C':
+                return "C";
+            case 'G':
+                return "G";
+            case 'T':
+                return "T";
+            case 'R':
+                return "AG";
+            case 'Y':
+                return "CT";
+            case 'S':
+                return "CG";
+            case 'W':
+                return "AT";
+            case 'K':
+                return "GT";
+            case 'M':
+                return "AC";
+            default:
+                return null;
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package org.opencb.biodata.formats.variant.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+/**
+ * Reads variants written by a VariantBinaryWriter.
+ */
+public class VariantBinaryReader implements Closeable {
+
+    private final DataInputStream input;
+    private final List<String> dictionary;
+    private byte[] buffer;
+
+    public VariantBinaryReader(InputStream input) {
+        this.input = new DataInputStream(new BufferedInputStream(input, 1 << 16));
+        this.dictionary = new ArrayList<>();
+        this.buffer = new byte[256];
+    }
+
+    /**
+     * @return the next variant in the stream, null if there are no more
+     */
+    public Variant read() throws IOException {
+        int marker = input.read();
+        if (marker <= 0) {
+            return null;
+        } else if (marker > 2) {
+            throw new IOException("Malformed variant stream");
+        }
+        boolean hasStatsAndAnnotations = marker == 2;
+
+        String chromosome = readString();
+        int start = readInt();
+        int end = readInt();
+        String reference = readString();
+        String alternate = readString();
+        Variant variant = new Variant(chromosome, start, end, reference, alternate);
+
+        int numIds = readInt();
+        if (numIds > 0) {
+            Set<String> ids = new LinkedHashSet<>(numIds * 2);
+            for (int i = 1; i < numIds; i++) {
+                ids.add(readString());
+            }
+            variant.setIds(ids);
+        }
+
+        int numHgvs = readInt();
+        Map<String, Set<String>> hgvs = null;
+        if (numHgvs > 0) {
+            hgvs = new HashMap<>(numHgvs * 2);
+            for (int i = 1; i < numHgvs; i++) {
+                String type = readString();
+                int numCodes = readInt();
+                Set<String> codes = new HashSet<>(numCodes * 2);
+                for (int j = 0; j < numCodes; j++) {
+                    codes.add(readString());
+                }
+                hgvs.put(type, codes);
+            }
+        }
+        variant.setHgvs(hgvs);
+
+        int numFiles = readInt();
+        for (int i = 0; i < numFiles; i++) {
+            variant.addSourceEntry(readSourceEntry(hasStatsAndAnnotations));
+        }
+
+        if (hasStatsAndAnnotations) {
+            String annotation = readString();
+            variant.setAnnotation(annotation != null ? VariantBinaryWriter.Json.readAnnotation(annotation) : null);
+        }
+        return variant;
+    }
+
+    private VariantSourceEntry readSourceEntry(boolean hasStats) throws IOException {
+        String fileId = readString();
+        String studyId = readString();
+        String format = readString();
+
+        int numSecondaryAlternates = readInt();
+        String[] secondaryAlternates = null;
+        if (numSecondaryAlternates > 0) {
+            secondaryAlternates = new String[numSecondaryAlternates - 1];
+            for (int i = 0; i < secondaryAlternates.length; i++) {
+                secondaryAlternates[i] = readString();
+            }
+        }
+
+        VariantSourceEntry file = new VariantSourceEntry(fileId, studyId, secondaryAlternates, format);
+        int numAttributes = readInt();
+        for (int i = 0; i < numAttributes; i++) {
+            file.addAttribute(readString(), readString());
+        }
+
+        int numSamples = readInt();
+        for (int i = 0; i < numSamples; i++) {
+            String sampleName = readString();
+            int numFields = readInt();
+            Map<String, String> sampleData = new LinkedHashMap<>(numFields * 2);
+            for (int j = 0; j < numFields; j++) {
+                sampleData.put(readString(), readString());
+            }
+            file.addSampleData(sampleName, sampleData);
+        }
+
+        if (hasStats) {
+            String cohortStats = readString();
+            if (cohortStats != null) {
+                file.setCohortStats(VariantBinaryWriter.Json.readCohortStats(cohortStats));
+            }
+        }
+        return file;
+    }
+
+    private String readString() throws IOException {
+        int header = readInt();
+        if (header == 0) {
+            return null;
+        } else if ((header & 1) != 0) {
+            return dictionary.get(header >>> 1);
+        }
+
+        int length = (header >>> 1) - 1;
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        input.readFully(buffer, 0, length);
+        String value = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        if (VariantBinaryWriter.isCacheable(value, dictionary.size())) {
+            dictionary.add(value);
+        }
+        return value;
+    }
+
+    private int readInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.read();
+            if (b < 0) {
+                throw new EOFException("Truncated variant stream");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variant stream");
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+}
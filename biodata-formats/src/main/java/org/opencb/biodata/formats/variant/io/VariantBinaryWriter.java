@@ -0,0 +1,206 @@
+package org.opencb.biodata.formats.variant.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+import org.opencb.biodata.models.variant.annotation.VariantAnnotation;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+/**
+ * Writes variants in a compact binary encoding, meant for temporary files that
+ * will be read back by a VariantBinaryReader.
+ *
+ * Integers are written as variable-length quantities. Short strings are stored
+ * once per stream and then referenced by their index, so that repeated values
+ * like chromosomes, INFO keys, sample names or genotypes take one or two bytes.
+ *
+ * Coordinates, alleles, IDs, HGVS codes and the source entries (attributes and
+ * samples data) are always written. Statistics and annotations are only
+ * written when requested, encoded as JSON, which needs jackson-databind in the
+ * classpath.
+ */
+public class VariantBinaryWriter implements Closeable {
+
+    static final int MAX_DICTIONARY_SIZE = 1 << 16;
+    static final int MAX_DICTIONARY_STRING_LENGTH = 64;
+
+    private final DataOutputStream output;
+    private final Map<String, Integer> dictionary;
+    private final boolean includeStatsAndAnnotations;
+
+    public VariantBinaryWriter(OutputStream output) {
+        this(output, false);
+    }
+
+    /**
+     * @param output Stream the variants are written to
+     * @param includeStatsAndAnnotations Whether to write the cohort statistics and annotations of the variants
+     */
+    public VariantBinaryWriter(OutputStream output, boolean includeStatsAndAnnotations) {
+        this.output = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+        this.dictionary = new HashMap<>();
+        this.includeStatsAndAnnotations = includeStatsAndAnnotations;
+    }
+
+    public void write(Variant variant) throws IOException {
+        // 1 marks a variant without statistics and annotation, 2 a variant with them
+        output.writeByte(includeStatsAndAnnotations ? 2 : 1);
+        writeString(variant.getChromosome());
+        writeInt(variant.getStart());
+        writeInt(variant.getEnd());
+        writeString(variant.getReference());
+        writeString(variant.getAlternate());
+
+        Set<String> ids = variant.getIds();
+        if (ids == null) {
+            writeInt(0);
+        } else {
+            writeInt(ids.size() + 1);
+            for (String id : ids) {
+                writeString(id);
+            }
+        }
+
+        Map<String, Set<String>> hgvs = variant.getHgvs();
+        if (hgvs == null) {
+            writeInt(0);
+        } else {
+            writeInt(hgvs.size() + 1);
+            for (Map.Entry<String, Set<String>> entry : hgvs.entrySet()) {
+                writeString(entry.getKey());
+                writeInt(entry.getValue().size());
+                for (String code : entry.getValue()) {
+                    writeString(code);
+                }
+            }
+        }
+
+        writeInt(variant.getSourceEntries().size());
+        for (VariantSourceEntry file : variant.getSourceEntries().values()) {
+            writeSourceEntry(file);
+        }
+
+        if (includeStatsAndAnnotations) {
+            VariantAnnotation annotation = variant.getAnnotation();
+            writeString(annotation != null ? Json.write(annotation) : null);
+        }
+    }
+
+    private void writeSourceEntry(VariantSourceEntry file) throws IOException {
+        writeString(file.getFileId());
+        writeString(file.getStudyId());
+        writeString(file.getFormat());
+
+        String[] secondaryAlternates = file.getSecondaryAlternates();
+        if (secondaryAlternates == null) {
+            writeInt(0);
+        } else {
+            writeInt(secondaryAlternates.length + 1);
+            for (String alternate : secondaryAlternates) {
+                writeString(alternate);
+            }
+        }
+
+        writeMap(file.getAttributes());
+
+        Map<String, Map<String, String>> samplesData = file.getSamplesData();
+        writeInt(samplesData.size());
+        for (Map.Entry<String, Map<String, String>> sample : samplesData.entrySet()) {
+            writeString(sample.getKey());
+            writeMap(sample.getValue());
+        }
+
+        if (includeStatsAndAnnotations) {
+            Map<String, VariantStats> cohortStats = file.getCohortStats();
+            writeString(cohortStats != null && !cohortStats.isEmpty() ? Json.write(cohortStats) : null);
+        }
+    }
+
+    private void writeMap(Map<String, String> map) throws IOException {
+        writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(entry.getKey());
+            writeString(entry.getValue());
+        }
+    }
+
+    /**
+     * Strings are written as 0 for null, (index << 1) | 1 for a string already
+     * in the dictionary, or (length + 1) << 1 followed by its UTF-8 bytes.
+     */
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeInt(0);
+            return;
+        }
+
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            writeInt((index << 1) | 1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt((bytes.length + 1) << 1);
+        output.write(bytes);
+        if (isCacheable(value, dictionary.size())) {
+            dictionary.put(value, dictionary.size());
+        }
+    }
+
+    static boolean isCacheable(String value, int dictionarySize) {
+        return dictionarySize < MAX_DICTIONARY_SIZE && value.length() <= MAX_DICTIONARY_STRING_LENGTH;
+    }
+
+    private void writeInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    /**
+     * Marks the end of the stream and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        output.writeByte(0);
+        output.close();
+    }
+
+    /**
+     * JSON encoding of statistics and annotations. It is kept apart so that
+     * Jackson is only loaded when they are written or read.
+     */
+    static class Json {
+
+        private static final ObjectMapper MAPPER = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        static String write(Object value) throws IOException {
+            return MAPPER.writeValueAsString(value);
+        }
+
+        static VariantAnnotation readAnnotation(String json) throws IOException {
+            return MAPPER.readValue(json, VariantAnnotation.class);
+        }
+
+        static Map<String, VariantStats> readCohortStats(String json) throws IOException {
+            return MAPPER.readValue(json, MAPPER.getTypeFactory()
+                    .constructMapType(LinkedHashMap.class, String.class, VariantStats.class));
+        }
+    }
+
+}
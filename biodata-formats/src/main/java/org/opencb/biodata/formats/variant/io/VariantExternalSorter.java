@@ -0,0 +1,494 @@
+package org.opencb.biodata.formats.variant.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+import org.opencb.biodata.models.variant.annotation.VariantAnnotation;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+/**
+ * Sorts the variants of a VariantReader by genomic coordinates, using a
+ * bounded amount of memory, and writes them to a VariantWriter.
+ *
+ * The input is split into runs that fit in the memory budget. Every run is
+ * sorted in a background thread and spilled to a temporary file using a
+ * VariantBinaryWriter, while the next run is being read. The last run is kept
+ * in memory. All runs are then merged through a heap into the writer. When
+ * there are more runs than the maximum merge fan-in, consecutive runs are
+ * first merged into longer ones in as many passes as needed, so the number of
+ * files open at the same time stays bounded. The sort is stable: variants with
+ * the same coordinates and alleles keep their input order.
+ *
+ * Chromosomes are sorted following the ##contig lines of the input header,
+ * when present, and the usual order of the human genome otherwise (see
+ * ChromosomeComparator). Cohort statistics and annotations are kept by
+ * default, which makes spilled runs larger and requires jackson-databind.
+ * They can be discarded from all the variants with
+ * setDiscardStatsAndAnnotations, so the output does not depend on the memory
+ * budget either way.
+ */
+public class VariantExternalSorter {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_MAX_MERGE_FAN_IN = 64;
+
+    private final VariantReader reader;
+    private final VariantWriter writer;
+    private final long memoryBudget;
+    private final Path tempDirectory;
+    private final int numThreads;
+    private int batchSize;
+    private int maxMergeFanIn;
+    private boolean discardStatsAndAnnotations;
+    private Comparator<String> chromosomeComparator;
+
+    public VariantExternalSorter(VariantReader reader, VariantWriter writer) {
+        this(reader, writer, DEFAULT_MEMORY_BUDGET, Paths.get(System.getProperty("java.io.tmpdir")), 1);
+    }
+
+    /**
+     * @param reader Source of the unsorted variants
+     * @param writer Destination of the sorted variants
+     * @param memoryBudget Approximate number of bytes the variants in memory can take
+     * @param tempDirectory Directory where the sorted runs are temporarily stored
+     * @param numThreads Number of threads sorting and spilling runs
+     */
+    public VariantExternalSorter(VariantReader reader, VariantWriter writer, long memoryBudget, Path tempDirectory, int numThreads) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be greater than zero");
+        }
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero");
+        }
+        this.reader = reader;
+        this.writer = writer;
+        this.memoryBudget = memoryBudget;
+        this.tempDirectory = tempDirectory;
+        this.numThreads = numThreads;
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.maxMergeFanIn = DEFAULT_MAX_MERGE_FAN_IN;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxMergeFanIn Maximum number of runs merged at the same time, including the one in memory
+     */
+    public void setMaxMergeFanIn(int maxMergeFanIn) {
+        if (maxMergeFanIn < 2) {
+            throw new IllegalArgumentException("The merge fan-in must be at least 2");
+        }
+        this.maxMergeFanIn = maxMergeFanIn;
+    }
+
+    /**
+     * @param discardStatsAndAnnotations Whether to remove the cohort statistics and annotations of the
+     * variants instead of storing them in the spilled runs
+     */
+    public void setDiscardStatsAndAnnotations(boolean discardStatsAndAnnotations) {
+        this.discardStatsAndAnnotations = discardStatsAndAnnotations;
+    }
+
+    /**
+     * @param chromosomeComparator Order of the chromosomes, instead of the one in the input header
+     */
+    public void setChromosomeComparator(Comparator<String> chromosomeComparator) {
+        this.chromosomeComparator = chromosomeComparator;
+    }
+
+    /**
+     * Reads all the variants from the reader and writes them sorted. Both the
+     * reader and the writer are opened and closed by this method.
+     *
+     * @return the number of variants written
+     * @throws IOException if the reader or writer fail, or the runs could not be spilled
+     */
+    public long sort() throws IOException {
+        if (!reader.open() || !reader.pre()) {
+            throw new IOException("The variant reader could not be initialized");
+        }
+
+        Comparator<Variant> comparator = variantComparator(chromosomeComparator != null
+                ? chromosomeComparator : ChromosomeComparator.fromHeader(reader.getHeader()));
+        List<Path> runFiles = new ArrayList<>();
+        try {
+            List<Variant> lastRun;
+            try {
+                lastRun = splitRuns(comparator, runFiles);
+                reader.post();
+            } finally {
+                reader.close();
+            }
+            // The run in memory takes one of the inputs of the last merge
+            while (runFiles.size() >= maxMergeFanIn) {
+                mergePass(comparator, runFiles);
+            }
+            return merge(comparator, runFiles, lastRun);
+        } finally {
+            for (Path runFile : runFiles) {
+                Files.deleteIfExists(runFile);
+            }
+        }
+    }
+
+    /**
+     * Reads the input into runs, spilling all but the last one to disk.
+     *
+     * @return the last run, sorted
+     */
+    private List<Variant> splitRuns(final Comparator<Variant> comparator, List<Path> runFiles) throws IOException {
+        // The run being filled plus one per thread sorting or spilling
+        long runBudget = Math.max(1, memoryBudget / (numThreads + 1));
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        final Semaphore inFlight = new Semaphore(numThreads);
+        List<Future<Path>> futures = new ArrayList<>();
+
+        try {
+            List<Variant> run = new ArrayList<>();
+            long runSize = 0;
+            List<Variant> batch;
+            while ((batch = reader.read(batchSize)) != null && !batch.isEmpty()) {
+                for (Variant variant : batch) {
+                    if (discardStatsAndAnnotations) {
+                        discardStatsAndAnnotations(variant);
+                    }
+                    run.add(variant);
+                    runSize += estimateSize(variant);
+                    if (runSize >= runBudget) {
+                        inFlight.acquire();
+                        final List<Variant> fullRun = run;
+                        futures.add(executor.submit(new Callable<Path>() {
+                            @Override
+                            public Path call() throws IOException {
+                                try {
+                                    return spill(fullRun, comparator);
+                                } finally {
+                                    inFlight.release();
+                                }
+                            }
+                        }));
+                        run = new ArrayList<>(fullRun.size());
+                        runSize = 0;
+                    }
+                }
+            }
+
+            Collections.sort(run, comparator);
+            for (Future<Path> future : futures) {
+                runFiles.add(future.get());
+            }
+            return run;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sorting variants", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+            if (runFiles.size() < futures.size()) {
+                // Wait for the runs still being spilled after a failure, so their files can be removed
+                runFiles.clear();
+                for (Future<Path> future : futures) {
+                    try {
+                        runFiles.add(future.get());
+                    } catch (InterruptedException | ExecutionException e) {
+                        Logger.getLogger(VariantExternalSorter.class.getName()).log(Level.FINE, null, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the fields VariantBinaryWriter does not store by default,
+     * leaving them as in the variants read by VariantBinaryReader.
+     */
+    private static void discardStatsAndAnnotations(Variant variant) {
+        variant.setAnnotation(new VariantAnnotation(variant.getChromosome(), variant.getStart(), variant.getEnd(),
+                variant.getReference()));
+        for (VariantSourceEntry file : variant.getSourceEntries().values()) {
+            file.setCohortStats(new LinkedHashMap<String, VariantStats>());
+        }
+    }
+
+    private Path spill(List<Variant> run, Comparator<Variant> comparator) throws IOException {
+        Collections.sort(run, comparator);
+        List<RunCursor> cursors = Collections.singletonList(new RunCursor(0, run.iterator()));
+        return writeRun(new RunMerger(cursors, comparator));
+    }
+
+    /**
+     * Writes the merged variants to a new temporary file, which is removed if
+     * anything fails.
+     */
+    private Path writeRun(RunMerger merger) throws IOException {
+        Path runFile = Files.createTempFile(tempDirectory, "variants-", ".run");
+        boolean written = false;
+        try {
+            try (OutputStream output = Files.newOutputStream(runFile);
+                 VariantBinaryWriter runWriter = new VariantBinaryWriter(output, !discardStatsAndAnnotations)) {
+                Variant variant;
+                while ((variant = merger.next()) != null) {
+                    runWriter.write(variant);
+                }
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                Files.deleteIfExists(runFile);
+            }
+        }
+        return runFile;
+    }
+
+    /**
+     * Merges groups of consecutive spilled runs, so that their number goes
+     * down by a factor of the maximum fan-in. Keeping the runs in order keeps
+     * the sort stable.
+     */
+    private void mergePass(Comparator<Variant> comparator, List<Path> runFiles) throws IOException {
+        for (int first = 0; first < runFiles.size(); first++) {
+            List<Path> group = runFiles.subList(first, Math.min(first + maxMergeFanIn, runFiles.size()));
+            if (group.size() == 1) {
+                break;
+            }
+
+            List<RunCursor> cursors = openRuns(group);
+            Path mergedRun;
+            try {
+                mergedRun = writeRun(new RunMerger(cursors, comparator));
+            } finally {
+                closeAll(cursors);
+            }
+            for (Path runFile : group) {
+                Files.deleteIfExists(runFile);
+            }
+            group.clear();
+            runFiles.add(first, mergedRun);
+        }
+    }
+
+    private static List<RunCursor> openRuns(List<Path> runFiles) throws IOException {
+        List<RunCursor> cursors = new ArrayList<>(runFiles.size() + 1);
+        try {
+            for (int i = 0; i < runFiles.size(); i++) {
+                cursors.add(new RunCursor(i, new VariantBinaryReader(Files.newInputStream(runFiles.get(i)))));
+            }
+        } catch (IOException | RuntimeException e) {
+            closeAll(cursors);
+            throw e;
+        }
+        return cursors;
+    }
+
+    private long merge(Comparator<Variant> comparator, List<Path> runFiles, List<Variant> lastRun) throws IOException {
+        List<RunCursor> cursors = openRuns(runFiles);
+        cursors.add(new RunCursor(runFiles.size(), lastRun.iterator()));
+
+        if (!writer.open() || !writer.pre()) {
+            closeAll(cursors);
+            throw new IOException("The variant writer could not be initialized");
+        }
+
+        long count = 0;
+        try {
+            RunMerger merger = new RunMerger(cursors, comparator);
+            List<Variant> batch = new ArrayList<>(batchSize);
+            Variant variant;
+            while ((variant = merger.next()) != null) {
+                batch.add(variant);
+                if (batch.size() >= batchSize) {
+                    writeBatch(batch);
+                    count += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                count += batch.size();
+            }
+        } finally {
+            closeAll(cursors);
+        }
+
+        writer.post();
+        writer.close();
+        return count;
+    }
+
+    private void writeBatch(List<Variant> batch) throws IOException {
+        if (!writer.write(batch)) {
+            throw new IOException("The variant writer failed");
+        }
+    }
+
+    private static void closeAll(List<RunCursor> cursors) {
+        for (RunCursor cursor : cursors) {
+            try {
+                cursor.close();
+            } catch (IOException e) {
+                Logger.getLogger(VariantExternalSorter.class.getName()).log(Level.WARNING, null, e);
+            }
+        }
+    }
+
+    /**
+     * @return a comparator of variants by chromosome, start, end, reference and alternate
+     */
+    public static Comparator<Variant> variantComparator(final Comparator<String> chromosomeComparator) {
+        return new Comparator<Variant>() {
+            @Override
+            public int compare(Variant v1, Variant v2) {
+                int result = chromosomeComparator.compare(v1.getChromosome(), v2.getChromosome());
+                if (result != 0) {
+                    return result;
+                }
+                result = Integer.compare(v1.getStart(), v2.getStart());
+                if (result != 0) {
+                    return result;
+                }
+                result = Integer.compare(v1.getEnd(), v2.getEnd());
+                if (result != 0) {
+                    return result;
+                }
+                result = v1.getReference().compareTo(v2.getReference());
+                return result != 0 ? result : v1.getAlternate().compareTo(v2.getAlternate());
+            }
+        };
+    }
+
+    private static Comparator<RunCursor> cursorComparator(final Comparator<Variant> comparator) {
+        return new Comparator<RunCursor>() {
+            @Override
+            public int compare(RunCursor c1, RunCursor c2) {
+                int result = comparator.compare(c1.current, c2.current);
+                return result != 0 ? result : Integer.compare(c1.index, c2.index);
+            }
+        };
+    }
+
+    /**
+     * Rough number of bytes a variant takes in the heap, counting its strings,
+     * the maps of its source entries and its cohort statistics.
+     */
+    static long estimateSize(Variant variant) {
+        long size = 320 + 2 * (length(variant.getChromosome()) + length(variant.getReference()) + length(variant.getAlternate()));
+        for (VariantSourceEntry file : variant.getSourceEntries().values()) {
+            size += 240 + estimateSize(file.getAttributes());
+            if (file.getCohortStats() != null) {
+                size += 640 * file.getCohortStats().size();
+            }
+            for (Map<String, String> sampleData : file.getSamplesData().values()) {
+                size += 120 + estimateSize(sampleData);
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSize(Map<String, String> map) {
+        long size = 48;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            // Map entry plus both strings, which are often shared between variants
+            size += 56 + 2 * (length(entry.getKey()) + length(entry.getValue()));
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * Merges sorted runs through a heap of their current positions.
+     */
+    private static class RunMerger {
+
+        private final PriorityQueue<RunCursor> heap;
+
+        RunMerger(List<RunCursor> cursors, Comparator<Variant> comparator) throws IOException {
+            heap = new PriorityQueue<>(cursors.size(), cursorComparator(comparator));
+            for (RunCursor cursor : cursors) {
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+        }
+
+        /**
+         * @return the smallest variant left in the runs, null if all of them are exhausted
+         */
+        Variant next() throws IOException {
+            RunCursor cursor = heap.poll();
+            if (cursor == null) {
+                return null;
+            }
+            Variant variant = cursor.current;
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+            return variant;
+        }
+    }
+
+    /**
+     * Current position in a sorted run, either spilled to disk or in memory.
+     */
+    private static class RunCursor {
+
+        private final int index;
+        private final VariantBinaryReader runReader;
+        private final Iterator<Variant> iterator;
+        private Variant current;
+
+        RunCursor(int index, VariantBinaryReader runReader) {
+            this.index = index;
+            this.runReader = runReader;
+            this.iterator = null;
+        }
+
+        RunCursor(int index, Iterator<Variant> iterator) {
+            this.index = index;
+            this.runReader = null;
+            this.iterator = iterator;
+        }
+
+        boolean advance() throws IOException {
+            if (runReader != null) {
+                current = runReader.read();
+            } else {
+                current = iterator.hasNext() ? iterator.next() : null;
+            }
+            return current != null;
+        }
+
+        void close() throws IOException {
+            if (runReader != null) {
+                runReader.close();
+            }
+        }
+    }
+
+}
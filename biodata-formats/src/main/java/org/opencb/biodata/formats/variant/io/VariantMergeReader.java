@@ -0,0 +1,331 @@
+package org.opencb.biodata.formats.variant.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+/**
+ * Reads several coordinate-sorted variant files at the same time, returning a
+ * single Variant for every (chromosome, start, reference, alternate) with the
+ * source entries of all the files it was found in.
+ *
+ * Only a few lines of every file are kept in memory. Normalization may move the
+ * start of a variant a few positions after the one in the file, so the
+ * variants of every file are reordered within a window of positions (1000 by
+ * default), which must be larger than the longest indel in the input.
+ *
+ * When created with more than one thread, the next lines of every file are
+ * parsed in the background while the current ones are merged.
+ *
+ * Chromosomes must be sorted in all the files in the order of the ##contig
+ * lines of the first one, or in the usual order of the human genome when there
+ * are none (see ChromosomeComparator).
+ */
+public class VariantMergeReader implements VariantReader {
+
+    public static final int DEFAULT_WINDOW = 1000;
+    private static final int CHUNK_SIZE = 64;
+
+    private final List<VariantReader> readers;
+    private final int numThreads;
+    private int window;
+    private Comparator<String> chromosomeComparator;
+
+    private Comparator<Variant> variantComparator;
+    private PriorityQueue<FileCursor> heap;
+    private ExecutorService executor;
+
+    public VariantMergeReader(List<VariantReader> readers) {
+        this(readers, 1);
+    }
+
+    /**
+     * @param readers Readers of the files to merge, one per file
+     * @param numThreads Number of threads parsing the files
+     */
+    public VariantMergeReader(List<VariantReader> readers, int numThreads) {
+        if (readers.isEmpty()) {
+            throw new IllegalArgumentException("At least one variant reader is needed");
+        }
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero");
+        }
+        this.readers = readers;
+        this.numThreads = numThreads;
+        this.window = DEFAULT_WINDOW;
+    }
+
+    /**
+     * @param window Maximum distance between the position of a line and the start of its normalized variants
+     */
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    /**
+     * @param chromosomeComparator Order of the chromosomes, instead of the one in the header of the first file
+     */
+    public void setChromosomeComparator(Comparator<String> chromosomeComparator) {
+        this.chromosomeComparator = chromosomeComparator;
+    }
+
+    @Override
+    public boolean open() {
+        for (VariantReader reader : readers) {
+            if (!reader.open()) {
+                return false;
+            }
+        }
+        if (numThreads > 1) {
+            executor = Executors.newFixedThreadPool(numThreads);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean pre() {
+        for (VariantReader reader : readers) {
+            if (!reader.pre()) {
+                return false;
+            }
+        }
+
+        if (chromosomeComparator == null) {
+            chromosomeComparator = ChromosomeComparator.fromHeader(readers.get(0).getHeader());
+        }
+        variantComparator = keyComparator(chromosomeComparator);
+
+        List<FileCursor> cursors = new ArrayList<>(readers.size());
+        for (VariantReader reader : readers) {
+            FileCursor cursor = new FileCursor(reader);
+            cursor.prefetch();
+            cursors.add(cursor);
+        }
+        heap = new PriorityQueue<>(cursors.size(), new Comparator<FileCursor>() {
+            @Override
+            public int compare(FileCursor c1, FileCursor c2) {
+                return variantComparator.compare(c1.buffer.peek(), c2.buffer.peek());
+            }
+        });
+        for (FileCursor cursor : cursors) {
+            if (cursor.fill()) {
+                heap.add(cursor);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<Variant> read() {
+        if (heap.isEmpty()) {
+            return null;
+        }
+
+        FileCursor cursor = heap.poll();
+        Variant merged = cursor.buffer.poll();
+        if (cursor.fill()) {
+            heap.add(cursor);
+        }
+        merged.setSourceEntries(new LinkedHashMap<>(merged.getSourceEntries()));
+
+        while (!heap.isEmpty() && variantComparator.compare(heap.peek().buffer.peek(), merged) == 0) {
+            cursor = heap.poll();
+            merge(merged, cursor.buffer.poll());
+            if (cursor.fill()) {
+                heap.add(cursor);
+            }
+        }
+        return Collections.singletonList(merged);
+    }
+
+    @Override
+    public List<Variant> read(int batchSize) {
+        List<Variant> batch = new ArrayList<>(batchSize);
+        List<Variant> variants;
+        while (batch.size() < batchSize && (variants = read()) != null) {
+            batch.addAll(variants);
+        }
+        return batch;
+    }
+
+    private static void merge(Variant merged, Variant variant) {
+        for (VariantSourceEntry file : variant.getSourceEntries().values()) {
+            merged.addSourceEntry(file);
+        }
+        if (variant.getIds() != null && !variant.getIds().isEmpty()) {
+            Set<String> ids = merged.getIds() != null ? new LinkedHashSet<>(merged.getIds()) : new LinkedHashSet<String>();
+            ids.addAll(variant.getIds());
+            merged.setIds(ids);
+        }
+    }
+
+    /**
+     * @return the names of the samples of all files, in the same order as the readers
+     */
+    @Override
+    public List<String> getSampleNames() {
+        Set<String> sampleNames = new LinkedHashSet<>();
+        for (VariantReader reader : readers) {
+            sampleNames.addAll(reader.getSampleNames());
+        }
+        return new ArrayList<>(sampleNames);
+    }
+
+    /**
+     * @return the header of the first file
+     */
+    @Override
+    public String getHeader() {
+        return readers.get(0).getHeader();
+    }
+
+    @Override
+    public boolean post() {
+        boolean success = true;
+        for (VariantReader reader : readers) {
+            success &= reader.post();
+        }
+        return success;
+    }
+
+    @Override
+    public boolean close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        boolean success = true;
+        for (VariantReader reader : readers) {
+            success &= reader.close();
+        }
+        return success;
+    }
+
+    /**
+     * @return a comparator of variants by chromosome, start, reference and alternate
+     */
+    static Comparator<Variant> keyComparator(final Comparator<String> chromosomeComparator) {
+        return new Comparator<Variant>() {
+            @Override
+            public int compare(Variant v1, Variant v2) {
+                int result = chromosomeComparator.compare(v1.getChromosome(), v2.getChromosome());
+                if (result != 0) {
+                    return result;
+                }
+                result = Integer.compare(v1.getStart(), v2.getStart());
+                if (result != 0) {
+                    return result;
+                }
+                result = v1.getReference().compareTo(v2.getReference());
+                return result != 0 ? result : v1.getAlternate().compareTo(v2.getAlternate());
+            }
+        };
+    }
+
+    /**
+     * Variants of a file that have been read but not merged yet, sorted.
+     */
+    private class FileCursor {
+
+        private final VariantReader reader;
+        private final PriorityQueue<Variant> buffer;
+        private Future<List<Variant>> pending;
+        private String lastChromosome;
+        private int lastStart;
+        private boolean exhausted;
+
+        FileCursor(VariantReader reader) {
+            this.reader = reader;
+            this.buffer = new PriorityQueue<>(CHUNK_SIZE * 2, variantComparator);
+        }
+
+        /**
+         * Reads until the first variant in the buffer can not be preceded by
+         * any variant still in the file.
+         *
+         * @return whether there is any variant left in the buffer
+         */
+        boolean fill() {
+            while (!exhausted && (buffer.isEmpty() || !isSafe(buffer.peek()))) {
+                List<Variant> chunk = nextChunk();
+                if (chunk == null) {
+                    exhausted = true;
+                    break;
+                }
+                for (Variant variant : chunk) {
+                    buffer.add(variant);
+                    lastChromosome = variant.getChromosome();
+                    lastStart = variant.getStart();
+                }
+            }
+            return !buffer.isEmpty();
+        }
+
+        private boolean isSafe(Variant head) {
+            return !head.getChromosome().equals(lastChromosome) || (long) lastStart > (long) head.getStart() + window;
+        }
+
+        /**
+         * Starts parsing the next chunk of the file in the background, if there are threads for it.
+         */
+        void prefetch() {
+            if (executor != null) {
+                pending = executor.submit(new Callable<List<Variant>>() {
+                    @Override
+                    public List<Variant> call() {
+                        return readChunk();
+                    }
+                });
+            }
+        }
+
+        private List<Variant> nextChunk() {
+            if (pending == null) {
+                return readChunk();
+            }
+
+            try {
+                List<Variant> chunk = pending.get();
+                if (chunk != null) {
+                    prefetch();
+                }
+                return chunk;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Logger.getLogger(VariantMergeReader.class.getName()).log(Level.SEVERE, null, e);
+                return null;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        /**
+         * @return the variants in the next lines of the file, null if there are no more lines
+         */
+        private List<Variant> readChunk() {
+            List<Variant> chunk = new ArrayList<>(CHUNK_SIZE);
+            List<Variant> variants = null;
+            int lines = 0;
+            while (lines < CHUNK_SIZE && (variants = reader.read()) != null) {
+                chunk.addAll(variants);
+                lines++;
+            }
+            return variants == null && lines == 0 ? null : chunk;
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package org.opencb.biodata.formats.variant.maq.io;
+
+import java.util.Map;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineTokenizer;
+import org.opencb.biodata.formats.variant.io.ConsensusVariantReader;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+/**
+ * Reads variants from the SNPs of MAQ (maq cns2snp), without creating Maq
+ * objects.
+ *
+ * The consensus quality is stored as QUAL and as the GQ of the sample, and
+ * the read depth as its DP. The average number of hits of the reads, the
+ * highest mapping quality and the minimum consensus quality of the flanking
+ * bases are stored as the attributes HITS, MQ and FLANKQ.
+ */
+public class MaqVariantReader extends ConsensusVariantReader {
+
+    private static final int CONSENSUS_QUALITY = 4;
+    private static final int DEPTH = 5;
+    private static final int AVERAGE_HITS = 6;
+    private static final int MAPPING_QUALITY = 7;
+    private static final int FLANKING_QUALITY = 8;
+
+    public MaqVariantReader(VariantSource source, String filePath) {
+        super(source, filePath, "GT:GQ:DP");
+    }
+
+    @Override
+    protected int getNumColumns() {
+        return FLANKING_QUALITY + 1;
+    }
+
+    @Override
+    protected void decode(LineTokenizer fields, VariantSourceEntry entry, Map<String, String> sampleData)
+            throws FileFormatException {
+        String quality = interner.intern(fields.getString(CONSENSUS_QUALITY));
+        entry.addAttribute("QUAL", quality);
+        entry.addAttribute("HITS", fields.getString(AVERAGE_HITS));
+        entry.addAttribute("MQ", interner.intern(fields.getString(MAPPING_QUALITY)));
+        entry.addAttribute("FLANKQ", interner.intern(fields.getString(FLANKING_QUALITY)));
+        sampleData.put("GQ", quality);
+        sampleData.put("DP", interner.intern(fields.getString(DEPTH)));
+    }
+
+}
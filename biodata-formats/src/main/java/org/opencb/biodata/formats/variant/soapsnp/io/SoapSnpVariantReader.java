@@ -0,0 +1,55 @@
+package org.opencb.biodata.formats.variant.soapsnp.io;
+
+import java.util.Map;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineTokenizer;
+import org.opencb.biodata.formats.variant.io.ConsensusVariantReader;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+/**
+ * Reads variants from the consensus files of SOAPsnp, without creating
+ * SoapSnp objects. Both the 17 column output and the older one of 14
+ * columns, without the best and second best bases and the rank sum test,
+ * are supported.
+ *
+ * The consensus quality is stored as QUAL and as the GQ of the sample, and
+ * the sequencing depth as its DP. The average copy number is stored as the
+ * attribute CN, and the known SNPs have the attribute DB.
+ */
+public class SoapSnpVariantReader extends ConsensusVariantReader {
+
+    private static final int CONSENSUS_QUALITY = 4;
+
+    private static final int DEPTH = 13;
+    private static final int COPY_NUMBER = 15;
+    private static final int DBSNP = 16;
+
+    private static final int OLD_DEPTH = 11;
+    private static final int OLD_COPY_NUMBER = 12;
+    private static final int OLD_DBSNP = 13;
+
+    public SoapSnpVariantReader(VariantSource source, String filePath) {
+        super(source, filePath, "GT:GQ:DP");
+    }
+
+    @Override
+    protected int getNumColumns() {
+        return OLD_DBSNP + 1;
+    }
+
+    @Override
+    protected void decode(LineTokenizer fields, VariantSourceEntry entry, Map<String, String> sampleData)
+            throws FileFormatException {
+        boolean old = fields.getNumFields() <= DBSNP;
+        String quality = interner.intern(fields.getString(CONSENSUS_QUALITY));
+        entry.addAttribute("QUAL", quality);
+        entry.addAttribute("CN", fields.getString(old ? OLD_COPY_NUMBER : COPY_NUMBER));
+        if (fields.equals(old ? OLD_DBSNP : DBSNP, '1')) {
+            entry.addAttribute("DB", "");
+        }
+        sampleData.put("GQ", quality);
+        sampleData.put("DP", interner.intern(fields.getString(old ? OLD_DEPTH : DEPTH)));
+    }
+
+}
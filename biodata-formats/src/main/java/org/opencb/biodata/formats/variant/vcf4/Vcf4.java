@@ -252,4 +252,40 @@ public class Vcf4 {
     public List<String> getSampleNames() {
         return sampleNames;
     }
+
+    /**
+     * @return the IDs of the ##contig lines, in the same order as in the header
+     */
+    public List<String> getContigNames() {
+        List<String> contigs = metaInformation.get("contig");
+        if (contigs == null) {
+            return Collections.emptyList();
+        }
+
+        List<String> names = new ArrayList<>(contigs.size());
+        for (String contig : contigs) {
+            String id = getContigId(contig);
+            if (id != null) {
+                names.add(id);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param contig value of a ##contig line, such as &lt;ID=20,length=62435964&gt;
+     * @return the ID of the contig, null if it is not present
+     */
+    public static String getContigId(String contig) {
+        int start = contig.startsWith("<ID=") ? 0 : contig.indexOf(",ID=");
+        if (start < 0) {
+            return null;
+        }
+        start += 4;
+        int end = start;
+        while (end < contig.length() && contig.charAt(end) != ',' && contig.charAt(end) != '>') {
+            end++;
+        }
+        return contig.substring(start, end).trim();
+    }
 }
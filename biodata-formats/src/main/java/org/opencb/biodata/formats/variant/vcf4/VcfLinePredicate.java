@@ -0,0 +1,20 @@
+package org.opencb.biodata.formats.variant.vcf4;
+
+import org.opencb.biodata.formats.io.LineTokenizer;
+
+/**
+ * Condition on the fixed columns of a VCF data line, checked before the line
+ * is parsed into variants. It must be conservative: a line can only be
+ * rejected if none of the variants it contains would be accepted.
+ *
+ * @see VcfLinePredicates
+ */
+public interface VcfLinePredicate {
+
+    /**
+     * @param fields The first 8 fields of the line (CHROM to INFO), the 9th containing the rest
+     * @return Whether the line may contain any interesting variant
+     */
+    boolean accept(LineTokenizer fields);
+
+}
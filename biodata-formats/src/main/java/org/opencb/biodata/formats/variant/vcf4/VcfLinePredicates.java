@@ -0,0 +1,198 @@
+package org.opencb.biodata.formats.variant.vcf4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.opencb.biodata.formats.io.LineTokenizer;
+import org.opencb.biodata.models.feature.Region;
+
+/**
+ * Predicates on the CHROM, POS, REF, ID, QUAL and FILTER columns of VCF lines.
+ */
+public class VcfLinePredicates {
+
+    static final int CHROM = 0;
+    static final int POS = 1;
+    static final int ID = 2;
+    static final int REF = 3;
+    static final int QUAL = 5;
+    static final int FILTER = 6;
+
+    private VcfLinePredicates() { }
+
+    /**
+     * @return A predicate accepting lines with at least one identifier in the ID column
+     */
+    public static VcfLinePredicate hasId() {
+        return new VcfLinePredicate() {
+            @Override
+            public boolean accept(LineTokenizer fields) {
+                return !fields.isEmpty(ID) && !fields.equals(ID, '.');
+            }
+        };
+    }
+
+    /**
+     * @param minQuality Minimum value of the QUAL column
+     * @return A predicate accepting lines with a known quality of at least minQuality
+     */
+    public static VcfLinePredicate minQuality(final double minQuality) {
+        return new VcfLinePredicate() {
+            @Override
+            public boolean accept(LineTokenizer fields) {
+                if (fields.equals(QUAL, '.')) {
+                    return false;
+                }
+                try {
+                    // Rounded like the QUAL attribute VariantVcfFactory stores, so both give the same result
+                    float quality = Float.parseFloat(fields.getString(QUAL));
+                    return Double.parseDouble(String.valueOf(quality)) >= minQuality;
+                } catch (NumberFormatException e) {
+                    // Let the factory decide what to do with the line
+                    return true;
+                }
+            }
+        };
+    }
+
+    /**
+     * @param values Accepted values of the FILTER column, like PASS
+     * @return A predicate accepting lines whose FILTER column is one of the values
+     */
+    public static VcfLinePredicate filterIn(String... values) {
+        final Set<String> accepted = new HashSet<>(Arrays.asList(values));
+        return new VcfLinePredicate() {
+            @Override
+            public boolean accept(LineTokenizer fields) {
+                return accepted.contains(fields.getString(FILTER));
+            }
+        };
+    }
+
+    /**
+     * @param regions Regions of interest, with 1-based inclusive coordinates
+     * @return A predicate accepting lines that overlap any of the regions
+     */
+    public static RegionPredicate inRegions(Collection<Region> regions) {
+        RegionPredicate predicate = new RegionPredicate();
+        for (Region region : regions) {
+            predicate.add(region.getChromosome(), region.getStart(), region.getEnd());
+        }
+        return predicate;
+    }
+
+    /**
+     * @return A predicate accepting the lines accepted by all the given ones
+     */
+    public static VcfLinePredicate all(final List<VcfLinePredicate> predicates) {
+        if (predicates.size() == 1) {
+            return predicates.get(0);
+        }
+        final VcfLinePredicate[] array = predicates.toArray(new VcfLinePredicate[predicates.size()]);
+        return new VcfLinePredicate() {
+            @Override
+            public boolean accept(LineTokenizer fields) {
+                for (VcfLinePredicate predicate : array) {
+                    if (!predicate.accept(fields)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Accepts lines overlapping any of a set of regions, found by binary search.
+     *
+     * The variants of a line may start after POS once the bases shared by the
+     * alleles are removed, so a line is considered to span from POS to the end
+     * of its reference allele.
+     */
+    public static class RegionPredicate implements VcfLinePredicate {
+
+        private final Map<String, List<long[]>> pending;
+        private Map<String, long[][]> intervals;
+
+        public RegionPredicate() {
+            pending = new HashMap<>();
+        }
+
+        /**
+         * @param chromosome Chromosome of the region
+         * @param start First position of the region, 1-based
+         * @param end Last position of the region, inclusive
+         */
+        public void add(String chromosome, long start, long end) {
+            List<long[]> regions = pending.get(chromosome);
+            if (regions == null) {
+                regions = new ArrayList<>();
+                pending.put(chromosome, regions);
+            }
+            regions.add(new long[]{start, end});
+            intervals = null;
+        }
+
+        @Override
+        public boolean accept(LineTokenizer fields) {
+            if (intervals == null) {
+                intervals = merge(pending);
+            }
+            long[][] chromosomeIntervals = intervals.get(fields.getString(CHROM));
+            if (chromosomeIntervals == null) {
+                return false;
+            }
+            long start = fields.getInt(POS);
+            long end = start + fields.getString(REF).length();
+
+            // Last interval starting at or before the end of the line
+            int low = 0;
+            int high = chromosomeIntervals.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (chromosomeIntervals[middle][0] <= end) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found >= 0 && chromosomeIntervals[found][1] >= start;
+        }
+
+        /**
+         * @return The regions of every chromosome sorted by start, with overlapping ones merged
+         */
+        private static Map<String, long[][]> merge(Map<String, List<long[]>> regions) {
+            Map<String, long[][]> merged = new HashMap<>();
+            for (Map.Entry<String, List<long[]>> entry : regions.entrySet()) {
+                long[][] sorted = entry.getValue().toArray(new long[entry.getValue().size()][]);
+                Arrays.sort(sorted, new Comparator<long[]>() {
+                    @Override
+                    public int compare(long[] r1, long[] r2) {
+                        return Long.compare(r1[0], r2[0]);
+                    }
+                });
+                List<long[]> result = new ArrayList<>(sorted.length);
+                for (long[] region : sorted) {
+                    long[] last = result.isEmpty() ? null : result.get(result.size() - 1);
+                    if (last != null && region[0] <= last[1] + 1) {
+                        last[1] = Math.max(last[1], region[1]);
+                    } else {
+                        result.add(new long[]{region[0], region[1]});
+                    }
+                }
+                merged.put(entry.getKey(), result.toArray(new long[result.size()][]));
+            }
+            return merged;
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package org.opencb.biodata.formats.variant.vcf4.io;
 
 import com.google.common.base.Splitter;
 import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.io.LineTokenizer;
 import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.formats.variant.vcf4.*;
 import org.opencb.biodata.models.variant.VariantVcfFactory;
@@ -37,6 +38,11 @@ public class VariantVcfReader implements VariantReader {
     private VariantSource source;
     private VariantFactory factory;
 
+    private final List<VcfLinePredicate> linePredicates = new ArrayList<>();
+    private VcfLinePredicate linePredicate;
+    private LineTokenizer tokenizer;
+    private long skippedLines;
+
     public VariantVcfReader(VariantSource source, String filePath) {
         this(source, filePath, new VariantVcfFactory());
     }
@@ -47,6 +53,28 @@ public class VariantVcfReader implements VariantReader {
         this.factory = factory;
     }
 
+    /**
+     * Skips the lines rejected by a predicate on their fixed columns, before
+     * they are parsed into variants. All the predicates added must accept a
+     * line for it to be parsed.
+     *
+     * @param predicate Condition on the CHROM, POS, ID, REF, ALT, QUAL, FILTER or INFO columns
+     */
+    public void addLinePredicate(VcfLinePredicate predicate) {
+        linePredicates.add(predicate);
+        linePredicate = VcfLinePredicates.all(linePredicates);
+        if (tokenizer == null) {
+            tokenizer = new LineTokenizer('\t');
+        }
+    }
+
+    /**
+     * @return The number of data lines rejected by the line predicates
+     */
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
     @Override
     public boolean open() {
         try {
@@ -114,7 +142,7 @@ public class VariantVcfReader implements VariantReader {
     public List<Variant> read() {
         String line;
         try {
-            while ((line = reader.readLine()) != null && (line.trim().equals("") || line.startsWith("#"))) ;
+            while ((line = reader.readLine()) != null && (line.trim().equals("") || line.startsWith("#") || !accept(line))) ;
 
             Boolean isReference=true;
             List<Variant> variants = null;
@@ -124,7 +152,7 @@ public class VariantVcfReader implements VariantReader {
                     variants = factory.create(source, line);
                     isReference = false;
                 } catch (NotAVariantException e) {  // This line represents a reference position (alternative = '.')
-                    line = reader.readLine();
+                    while ((line = reader.readLine()) != null && !accept(line)) ;
                 }
             }
             return variants;
@@ -136,6 +164,20 @@ public class VariantVcfReader implements VariantReader {
         return null;
     }
 
+    /**
+     * @return Whether the line passes all the line predicates, which only need its first 8 fields
+     */
+    private boolean accept(String line) {
+        if (linePredicate == null) {
+            return true;
+        }
+        if (tokenizer.tokenize(line, 9) >= 8 && !linePredicate.accept(tokenizer)) {
+            skippedLines++;
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public List<Variant> read(int batchSize) {
         List<Variant> listRecords = new ArrayList<>(batchSize);
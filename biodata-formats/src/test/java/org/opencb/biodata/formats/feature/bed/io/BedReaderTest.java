@@ -0,0 +1,65 @@
+package org.opencb.biodata.formats.feature.bed.io;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.feature.bed.Bed;
+
+public class BedReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        File file = folder.newFile("regions.bed");
+        path = file.toPath();
+        Files.write(path, Arrays.asList(
+                "# comment",
+                "chr1\t100\t200",
+                "",
+                "chr1\t300\t400\tgene1\t500\t+",
+                "chr2\t10\t20\tgene2\t.\t-\t12\t18\t0,0,0\t2\t3,4\t0,6"), Charset.defaultCharset());
+    }
+
+    @Test
+    public void testReadBatches() throws Exception {
+        BedReader reader = new BedReader(path);
+        List<Bed> batch = reader.read(2);
+        assertEquals(2, batch.size());
+        assertEquals(100, batch.get(0).getStart());
+        assertEquals("gene1", batch.get(1).getName());
+        assertEquals(500, batch.get(1).getScore());
+
+        // No record must be lost between batches
+        batch = reader.read(2);
+        assertEquals(1, batch.size());
+        Bed bed = batch.get(0);
+        assertEquals("chr2", bed.getChromosome());
+        assertEquals(0, bed.getScore());
+        assertEquals(18, bed.getThickEnd());
+        assertEquals(2, bed.getBlockCount());
+        assertEquals("0,6", bed.getBlockStarts());
+
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void testReadAllPattern() throws Exception {
+        BedReader reader = new BedReader(path);
+        assertEquals(2, reader.readAll("chr1\t.*").size());
+        reader.close();
+    }
+}
@@ -0,0 +1,276 @@
+package org.opencb.biodata.formats.feature.gtf.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.core.Exon;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GtfGeneReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path gtf;
+
+    @Before
+    public void setUp() throws Exception {
+        String[][] lines = {
+                {"chr1", "gene", "100", "1000", "+", ".", "gene_id \"A\"; gene_name \"GA\"; gene_type \"protein_coding\";"},
+                {"chr1", "transcript", "100", "1000", "+", ".", "gene_id \"A\"; transcript_id \"A1\"; transcript_type \"protein_coding\"; tag \"basic\"; tag \"CCDS\";"},
+                {"chr1", "exon", "100", "200", "+", ".", "gene_id \"A\"; transcript_id \"A1\"; exon_number 1; exon_id \"EA1\";"},
+                {"chr1", "CDS", "150", "199", "+", "0", "gene_id \"A\"; transcript_id \"A1\"; exon_number 1; protein_id \"PA1\";"},
+                {"chr1", "gene", "300", "600", "-", ".", "gene_id \"B\"; gene_name \"GB\"; gene_type \"protein_coding\";"},
+                {"chr1", "transcript", "300", "600", "-", ".", "gene_id \"B\"; transcript_id \"B1\";"},
+                {"chr1", "exon", "300", "350", "-", ".", "gene_id \"B\"; transcript_id \"B1\"; exon_number 2;"},
+                {"chr1", "stop_codon", "327", "329", "-", "0", "gene_id \"B\"; transcript_id \"B1\"; exon_number 2;"},
+                {"chr1", "CDS", "330", "350", "-", "2", "gene_id \"B\"; transcript_id \"B1\"; exon_number 2;"},
+                {"chr1", "exon", "400", "500", "+", ".", "gene_id \"A\"; transcript_id \"A1\"; exon_number 2; exon_id \"EA2\";"},
+                {"chr1", "CDS", "400", "500", "+", "1", "gene_id \"A\"; transcript_id \"A1\"; exon_number 2; protein_id \"PA1\";"},
+                {"chr1", "exon", "550", "600", "-", ".", "gene_id \"B\"; transcript_id \"B1\"; exon_number 1;"},
+                {"chr1", "CDS", "560", "600", "-", "0", "gene_id \"B\"; transcript_id \"B1\"; exon_number 1;"},
+                {"chr1", "exon", "800", "1000", "+", ".", "gene_id \"A\"; transcript_id \"A1\"; exon_number 3; exon_id \"EA3\";"},
+                {"chr1", "CDS", "800", "847", "+", "2", "gene_id \"A\"; transcript_id \"A1\"; exon_number 3; protein_id \"PA1\";"},
+                {"chr1", "stop_codon", "848", "850", "+", "0", "gene_id \"A\"; transcript_id \"A1\"; exon_number 3;"},
+                {"chr2", "exon", "10", "20", "+", ".", "gene_id \"C\"; transcript_id \"C1\"; gene_biotype \"lincRNA\";"},
+                {"chr2", "exon", "30", "40", "+", ".", "gene_id \"C\"; transcript_id \"C1\"; gene_biotype \"lincRNA\";"},
+        };
+        gtf = write("genes.gtf", lines);
+    }
+
+    private Path write(String name, String[][] lines) throws Exception {
+        StringBuilder text = new StringBuilder("#!genome-build test\n");
+        for (String[] line : lines) {
+            text.append(line[0]).append("\tTEST\t").append(line[1]).append('\t').append(line[2]).append('\t')
+                    .append(line[3]).append("\t.\t").append(line[4]).append('\t').append(line[5]).append('\t')
+                    .append(line[6]).append('\n');
+        }
+        Path path = folder.newFile(name).toPath();
+        Files.write(path, text.toString().getBytes(StandardCharsets.US_ASCII));
+        return path;
+    }
+
+    @Test
+    public void read() throws Exception {
+        GtfGeneReader reader = new GtfGeneReader(gtf);
+        List<Gene> genes = reader.readAll();
+        reader.close();
+        assertEquals(3, genes.size());
+
+        Gene a = genes.get(0);
+        assertEquals("A", a.getId());
+        assertEquals("GA", a.getName());
+        assertEquals("protein_coding", a.getBiotype());
+        assertEquals(100, a.getStart());
+        assertEquals(1000, a.getEnd());
+        Transcript a1 = a.getTranscripts().get(0);
+        assertEquals("PA1", a1.getProteinID());
+        assertEquals(150, a1.getGenomicCodingStart());
+        assertEquals(850, a1.getGenomicCodingEnd());
+        assertEquals(51, a1.getCdnaCodingStart());
+        assertEquals(253, a1.getCdnaCodingEnd());
+        assertEquals(202, a1.getCdsLength());
+        assertTrue(a1.getAnnotationFlags().contains("CCDS"));
+        assertExon(a1.getExons().get(0), "EA1", 150, 199, 51, 100, 1, 50, 0);
+        assertExon(a1.getExons().get(1), "EA2", 400, 500, 102, 202, 51, 151, 1);
+        assertExon(a1.getExons().get(2), "EA3", 800, 850, 203, 253, 152, 202, 2);
+
+        // Reverse strand, with the exons in the order of the transcript
+        Transcript b1 = genes.get(1).getTranscripts().get(0);
+        assertEquals(327, b1.getGenomicCodingStart());
+        assertEquals(600, b1.getGenomicCodingEnd());
+        assertEquals(1, b1.getCdnaCodingStart());
+        assertEquals(75, b1.getCdnaCodingEnd());
+        assertEquals(65, b1.getCdsLength());
+        assertExon(b1.getExons().get(0), null, 560, 600, 1, 41, 1, 41, 0);
+        assertExon(b1.getExons().get(1), null, 327, 350, 52, 75, 42, 65, 2);
+
+        // Without gene and transcript lines
+        Gene c = genes.get(2);
+        assertEquals("chr2", c.getChromosome());
+        assertEquals("lincRNA", c.getBiotype());
+        assertEquals(10, c.getStart());
+        assertEquals(40, c.getEnd());
+        Transcript c1 = c.getTranscripts().get(0);
+        assertEquals(0, c1.getCdsLength());
+        assertEquals(0, c1.getGenomicCodingStart());
+        assertNull(c1.getAnnotationFlags());
+        assertEquals(2, c1.getExons().get(1).getExonNumber());
+        assertEquals(-1, c1.getExons().get(1).getPhase());
+    }
+
+    @Test
+    public void readParallel() throws Exception {
+        GtfGeneReader reader = new GtfGeneReader(gtf);
+        List<Gene> expected = reader.readAll();
+        reader.close();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            GtfGeneReader parallelReader = new GtfGeneReader(new ParallelGtfReader(gtf, new GtfLineDecoder(), executor, 2, 3));
+            List<Gene> genes = parallelReader.read(2);
+            genes.addAll(parallelReader.readAll());
+            parallelReader.close();
+            assertEquals(describe(expected), describe(genes));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void genesWithoutGeneLineDoNotHoldBackOthers() throws Exception {
+        Path path = write("unsorted-genes.gtf", new String[][]{
+                {"chr1", "exon", "50", "60", "+", ".", "gene_id \"X\"; transcript_id \"X1\";"},
+                {"chr1", "gene", "100", "200", "+", ".", "gene_id \"Y\";"},
+                {"chr1", "exon", "100", "200", "+", ".", "gene_id \"Y\"; transcript_id \"Y1\";"},
+                {"chr1", "gene", "300", "400", "+", ".", "gene_id \"Z\";"},
+                {"chr1", "exon", "300", "400", "+", ".", "gene_id \"Z\"; transcript_id \"Z1\";"},
+                {"chr1", "exon", "500", "600", "+", ".", "gene_id \"X\"; transcript_id \"X1\";"},
+                {"chr1", "gene", "700", "800", "+", ".", "gene_id \"W\";"},
+                {"chr1", "exon", "700", "800", "+", ".", "gene_id \"W\"; transcript_id \"W1\";"},
+                {"chr2", "gene", "10", "20", "+", ".", "gene_id \"V\";"},
+        });
+        GtfGeneReader reader = new GtfGeneReader(path);
+        try {
+            // Y and Z are returned while the end of X is still unknown
+            assertEquals("Y", reader.read().getId());
+            assertEquals("Z", reader.read().getId());
+            Gene x = reader.read();
+            assertEquals("X", x.getId());
+            assertEquals(50, x.getStart());
+            assertEquals(600, x.getEnd());
+            assertEquals(2, x.getTranscripts().get(0).getExons().size());
+            assertEquals("W", reader.read().getId());
+            assertEquals("V", reader.read().getId());
+            assertNull(reader.read());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void cacheWriteFailure() throws Exception {
+        // A directory where the cache should be makes replacing it fail
+        Path cache = gtf.resolveSibling("genes.gtf" + GeneModelCache.EXTENSION);
+        Files.createDirectory(cache);
+        Files.createFile(cache.resolve("file"));
+
+        List<Gene> genes = GeneModelCache.load(gtf);
+        assertEquals(3, genes.size());
+        assertTrue(Files.isDirectory(cache));
+        assertFalse(Files.exists(cache.resolveSibling(cache.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void cache() throws Exception {
+        List<Gene> genes = GeneModelCache.load(gtf);
+        Path cache = gtf.resolveSibling("genes.gtf" + GeneModelCache.EXTENSION);
+        assertTrue(Files.exists(cache));
+        assertEquals(describe(genes), describe(GeneModelCache.read(cache)));
+        assertEquals(describe(genes), describe(GeneModelCache.load(gtf)));
+    }
+
+    @Test
+    public void cacheLongStringsAndNulls() throws Exception {
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sequence.append("ACGT".charAt(i % 4));
+        }
+        Exon exon = new Exon("E1", "1", 100, 100099, "+", 0, 0, 0, 0, 0, 0, -1, 1, sequence.toString());
+        Transcript withExons = new Transcript("T1", null, "protein_coding", null, "1", 100, 100099, "+", 0, 0, 0, 0, 0,
+                null, null, null, new ArrayList<>(Arrays.asList(exon, null)), null);
+        Transcript withoutExons = new Transcript("T2", "T2-001", null, null, "1", 100, 200, "+", 0, 0, 0, 0, 0,
+                null, "\u00e9t\u00e9", null, null, null);
+        Gene gene = new Gene("G1", null, "protein_coding", null, "1", 100, 100099, "+", null, null,
+                new ArrayList<>(Arrays.asList(withExons, withoutExons, null)), null);
+        Gene withoutTranscripts = new Gene("G2", "G2", null, null, "2", 1, 10, "-", null, null, null, null);
+
+        Path cache = folder.getRoot().toPath().resolve("genes" + GeneModelCache.EXTENSION);
+        GeneModelCache.write(cache, Arrays.asList(gene, withoutTranscripts));
+        List<Gene> genes = GeneModelCache.read(cache);
+
+        assertEquals(2, genes.size());
+        assertNull(genes.get(0).getName());
+        assertNull(genes.get(0).getSource());
+        List<Transcript> transcripts = genes.get(0).getTranscripts();
+        assertEquals(3, transcripts.size());
+        assertNull(transcripts.get(2));
+        assertNull(transcripts.get(0).getName());
+        assertEquals(2, transcripts.get(0).getExons().size());
+        assertEquals(sequence.toString(), transcripts.get(0).getExons().get(0).getSequence());
+        assertNull(transcripts.get(0).getExons().get(1));
+        assertNull(transcripts.get(1).getExons());
+        assertEquals("\u00e9t\u00e9", transcripts.get(1).getDescription());
+        assertNull(genes.get(1).getTranscripts());
+    }
+
+    @Test
+    public void corruptCacheIsRebuilt() throws Exception {
+        List<Gene> genes = GeneModelCache.load(gtf);
+        Path cache = gtf.resolveSibling("genes.gtf" + GeneModelCache.EXTENSION);
+        byte[] bytes = Files.readAllBytes(cache);
+        Files.write(cache, Arrays.copyOf(bytes, bytes.length / 2));
+        assertEquals(describe(genes), describe(GeneModelCache.load(gtf)));
+        assertEquals(describe(genes), describe(GeneModelCache.read(cache)));
+    }
+
+    private static void assertExon(Exon exon, String id, int codingStart, int codingEnd, int cdnaStart, int cdnaEnd,
+                                   int cdsStart, int cdsEnd, int phase) {
+        assertEquals(id, exon.getId());
+        assertEquals(codingStart, exon.getGenomicCodingStart());
+        assertEquals(codingEnd, exon.getGenomicCodingEnd());
+        assertEquals(cdnaStart, exon.getCdnaCodingStart());
+        assertEquals(cdnaEnd, exon.getCdnaCodingEnd());
+        assertEquals(cdsStart, exon.getCdsStart());
+        assertEquals(cdsEnd, exon.getCdsEnd());
+        assertEquals(phase, exon.getPhase());
+    }
+
+    private static String describe(List<Gene> genes) {
+        StringBuilder text = new StringBuilder();
+        for (Gene gene : genes) {
+            text.append(gene.getId()).append(' ').append(gene.getName()).append(' ').append(gene.getBiotype()).append(' ')
+                    .append(gene.getStatus()).append(' ').append(gene.getChromosome()).append(' ').append(gene.getStart())
+                    .append(' ').append(gene.getEnd()).append(' ').append(gene.getStrand()).append(' ')
+                    .append(gene.getSource()).append('\n');
+            for (Transcript transcript : gene.getTranscripts()) {
+                text.append(' ').append(transcript.getId()).append(' ').append(transcript.getBiotype()).append(' ')
+                        .append(transcript.getStart()).append(' ').append(transcript.getEnd()).append(' ')
+                        .append(transcript.getGenomicCodingStart()).append(' ').append(transcript.getGenomicCodingEnd())
+                        .append(' ').append(transcript.getCdnaCodingStart()).append(' ')
+                        .append(transcript.getCdnaCodingEnd()).append(' ').append(transcript.getCdsLength()).append(' ')
+                        .append(transcript.getProteinID()).append(' ')
+                        .append(transcript.getAnnotationFlags() != null ? new TreeSet<>(transcript.getAnnotationFlags()) : Collections.emptySet())
+                        .append('\n');
+                for (Exon exon : transcript.getExons()) {
+                    text.append("  ").append(exon.getId()).append(' ').append(exon.getStart()).append(' ')
+                            .append(exon.getEnd()).append(' ').append(exon.getGenomicCodingStart()).append(' ')
+                            .append(exon.getGenomicCodingEnd()).append(' ').append(exon.getCdnaCodingStart()).append(' ')
+                            .append(exon.getCdnaCodingEnd()).append(' ').append(exon.getCdsStart()).append(' ')
+                            .append(exon.getCdsEnd()).append(' ').append(exon.getPhase()).append(' ')
+                            .append(exon.getExonNumber()).append('\n');
+                }
+            }
+        }
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.opencb.biodata.formats.feature.gtf.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.feature.gtf.Gtf;
+import org.opencb.biodata.formats.feature.gtf.GtfAttributes;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GtfReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void read() throws Exception {
+        Path path = gtf(3);
+        GtfReader reader = new GtfReader(path);
+        List<Gtf> records = reader.read(2);
+        assertEquals(2, records.size());
+        records.addAll(reader.readAll());
+        reader.close();
+        assertEquals(15, records.size());
+
+        Gtf gene = records.get(0);
+        assertEquals("chr1", gene.getSequenceName());
+        assertEquals("gene", gene.getFeature());
+        assertEquals(1000, gene.getStart());
+        assertEquals(5000, gene.getEnd());
+        assertEquals("+", gene.getStrand());
+
+        GtfAttributes attributes = (GtfAttributes) records.get(1).getAttributes();
+        assertEquals("ENSG0", attributes.get("gene_id"));
+        assertEquals("ENST0", attributes.get("transcript_id"));
+        assertEquals("basic,CCDS", attributes.get("tag"));
+        assertEquals("my gene", attributes.get("gene_name"));
+        assertNull(attributes.get("exon_id"));
+        assertFalse(attributes.isParsed());
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("gene_id", "ENSG0");
+        expected.put("transcript_id", "ENST0");
+        expected.put("gene_type", "protein_coding");
+        expected.put("gene_name", "my gene");
+        expected.put("tag", "basic,CCDS");
+        expected.put("note", "a;b");
+        assertEquals(expected, attributes);
+        assertTrue(attributes.isParsed());
+
+        // Repeated values are shared
+        assertSame(records.get(0).getSource(), records.get(10).getSource());
+        assertSame(records.get(1).getAttributes().get("gene_type"), records.get(11).getAttributes().get("gene_type"));
+    }
+
+    @Test
+    public void readParallel() throws Exception {
+        Path path = gtf(200);
+        GtfReader reader = new GtfReader(path);
+        List<Gtf> expected = reader.readAll();
+        reader.close();
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            ParallelGtfReader parallelReader = new ParallelGtfReader(path, new GtfLineDecoder(), executor, 3, 7);
+            List<Gtf> records = parallelReader.read(10);
+            assertEquals(10, records.size());
+            records.add(parallelReader.read());
+            records.addAll(parallelReader.readAll());
+            assertNull(parallelReader.read());
+            parallelReader.close();
+
+            assertEquals(expected.size(), records.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).toString(), records.get(i).toString());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Path gtf(int genes) throws Exception {
+        StringBuilder text = new StringBuilder("##description: test\n");
+        for (int i = 0; i < genes; i++) {
+            String gene = "gene_id \"ENSG" + i + "\"; ";
+            String transcript = gene + "transcript_id \"ENST" + i + "\"; gene_type \"protein_coding\"; ";
+            int start = 1000 + i * 10000;
+            text.append("chr1\tHAVANA\tgene\t").append(start).append('\t').append(start + 4000)
+                    .append("\t.\t+\t.\t").append(gene).append("gene_type \"protein_coding\";\n");
+            text.append("chr1\tHAVANA\ttranscript\t").append(start).append('\t').append(start + 4000)
+                    .append("\t.\t+\t.\t").append(transcript)
+                    .append("gene_name \"my gene\"; tag \"basic\"; tag \"CCDS\"; note \"a;b\";\n");
+            text.append("chr1\tHAVANA\texon\t").append(start).append('\t').append(start + 100)
+                    .append("\t.\t+\t.\t").append(transcript).append("exon_number 1;\n");
+            text.append("\n");
+            text.append("chr1\tHAVANA\tCDS\t").append(start + 50).append('\t').append(start + 100)
+                    .append("\t.\t+\t0\t").append(transcript).append("exon_number 1;\n");
+            text.append("chr1\tHAVANA\texon\t").append(start + 3000).append('\t').append(start + 4000)
+                    .append("\t.\t+\t.\t").append(transcript).append("exon_number 2;\n");
+        }
+        Path path = folder.newFile("genes.gtf").toPath();
+        Files.write(path, text.toString().getBytes(StandardCharsets.US_ASCII));
+        return path;
+    }
+
+}
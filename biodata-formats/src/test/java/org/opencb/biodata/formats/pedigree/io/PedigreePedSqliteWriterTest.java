@@ -0,0 +1,100 @@
+package org.opencb.biodata.formats.pedigree.io;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.pedigree.Individual;
+import org.opencb.biodata.models.pedigree.Pedigree;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PedigreePedSqliteWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String dbName;
+
+    @Before
+    public void setUp() throws Exception {
+        dbName = folder.getRoot().toPath().resolve("pedigree.db").toString();
+    }
+
+    @Test
+    public void writeAndReadBack() throws Exception {
+        for (boolean bulkLoad : Arrays.asList(false, true)) {
+            folder.getRoot().toPath().resolve("pedigree.db").toFile().delete();
+            PedigreePedSqliteWriter writer = new PedigreePedSqliteWriter(dbName, 2, bulkLoad);
+            assertTrue(writer.open());
+            assertTrue(writer.pre());
+            assertTrue(writer.write(Arrays.asList(family("FAM1", "NA001", "NA002", "NA003"),
+                    family("FAM2", "NA011", "NA012", "NA013"))));
+            // Several JDBC batches have been sent, but all of them belong to the same transaction
+            assertTrue(readRows().isEmpty());
+            assertTrue(writer.post());
+            assertTrue(writer.close());
+
+            assertEquals(Arrays.asList(
+                    "NA001 FAM1 0 0 1 1", "NA002 FAM1 0 0 2 1", "NA003 FAM1 NA001 NA002 1 2",
+                    "NA011 FAM2 0 0 1 1", "NA012 FAM2 0 0 2 1", "NA013 FAM2 NA011 NA012 1 2"), readRows());
+        }
+    }
+
+    @Test
+    public void writeWithoutPreAndPost() throws Exception {
+        PedigreePedSqliteWriter writer = new PedigreePedSqliteWriter(dbName);
+        assertTrue(writer.open());
+        assertTrue(writer.pre());
+        assertTrue(writer.write(family("FAM1", "NA001", "NA002", "NA003")));
+        assertTrue(readRows().isEmpty());
+        assertTrue(writer.close());
+        assertEquals(3, readRows().size());
+
+        // The table already exists, so rows can be appended without pre() and post()
+        writer = new PedigreePedSqliteWriter(dbName);
+        assertTrue(writer.open());
+        assertTrue(writer.write(family("FAM2", "NA011", "NA012", "NA013")));
+        assertTrue(writer.close());
+
+        assertEquals(6, readRows().size());
+    }
+
+    private static Pedigree family(String family, String fatherId, String motherId, String childId) {
+        Individual father = new Individual(fatherId, family, null, null, "1", "1", null);
+        Individual mother = new Individual(motherId, family, null, null, "2", "1", null);
+        Individual child = new Individual(childId, family, father, mother, "1", "2", null);
+        Pedigree pedigree = new Pedigree();
+        for (Individual individual : Arrays.asList(father, mother, child)) {
+            pedigree.addIndividual(individual);
+        }
+        return pedigree;
+    }
+
+    private List<String> readRows() throws Exception {
+        List<String> rows = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbName);
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(
+                     "SELECT sample, family, father, mother, sex, phenotype FROM pedigree ORDER BY sample")) {
+            while (result.next()) {
+                StringBuilder row = new StringBuilder(result.getString(1));
+                for (int i = 2; i <= 6; i++) {
+                    row.append(' ').append(result.getString(i));
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+
+}
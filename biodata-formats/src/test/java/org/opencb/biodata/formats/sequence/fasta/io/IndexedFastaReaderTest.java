@@ -0,0 +1,130 @@
+package org.opencb.biodata.formats.sequence.fasta.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fasta.Fasta;
+import org.opencb.biodata.formats.sequence.fasta.dbadaptor.IndexedFastaSequenceDBAdaptor;
+import org.opencb.biodata.models.feature.Region;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedFastaReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void buildIndex() throws IOException, FileFormatException {
+        Path file = folder.newFile("small.fa").toPath();
+        Files.write(file, (">one first sequence\nACGTA\nCGTAC\nGT\n"
+                + ">two\r\nAAAA\r\nCC\r\n"
+                + ">empty\n"
+                + ">three\nTTTTTTT").getBytes(StandardCharsets.US_ASCII));
+
+        FastaIndex index = FastaIndex.load(file);
+        assertEquals(Arrays.asList(
+                "one\t12\t20\t5\t6",
+                "two\t6\t41\t4\t6",
+                "empty\t0\t58\t0\t0",
+                "three\t7\t65\t7\t7"),
+                Arrays.asList(toStrings(index.getEntries())));
+
+        // The index is written next to the file, and read next time
+        Path fai = folder.getRoot().toPath().resolve("small.fa.fai");
+        assertTrue(Files.exists(fai));
+        assertEquals(Arrays.asList(toStrings(index.getEntries())), Files.readAllLines(fai, StandardCharsets.US_ASCII));
+        assertEquals(4, FastaIndex.read(fai).size());
+
+        IndexedFastaReader reader = new IndexedFastaReader(file);
+        Fasta one = reader.getSequence("one");
+        assertEquals("first sequence", one.getDescription());
+        assertEquals("ACGTACGTACGT", one.getSeq());
+        assertEquals("AAAACC", reader.getSequence("two").getSeq());
+        assertEquals("", reader.getSequence("empty").getSeq());
+        assertEquals("TTTTTTT", reader.getSequence("three").getSeq());
+        assertEquals("TACG", reader.getSubsequence("one", 4, 7));
+        assertEquals("AACC", reader.getSubsequence("two", 3, 100));
+        assertEquals("", reader.getSubsequence("two", 5, 4));
+        assertNull(reader.getSubsequence("four", 1, 1));
+        reader.close();
+    }
+
+    @Test
+    public void readSameAsFastaReader() throws IOException, FileFormatException {
+        Random random = new Random(13);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            int length = random.nextInt(5000);
+            int lineLength = 50 + random.nextInt(30);
+            text.append(">chr").append(i).append(i % 2 == 0 ? " description " + i : "").append('\n');
+            for (int j = 0; j < length; j++) {
+                text.append("ACGTN".charAt(random.nextInt(5)));
+                if ((j + 1) % lineLength == 0 || j == length - 1) {
+                    text.append('\n');
+                }
+            }
+        }
+        Path file = folder.newFile("random.fa").toPath();
+        Files.write(file, text.toString().getBytes(StandardCharsets.US_ASCII));
+
+        List<Fasta> expected = new FastaReader(file).readAll();
+        IndexedFastaReader reader = new IndexedFastaReader(file);
+        assertEquals(expected.size(), reader.size());
+        List<Fasta> sequences = reader.readAll();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), sequences.get(i).getId());
+            assertEquals(expected.get(i).getDescription(), sequences.get(i).getDescription());
+            assertEquals(expected.get(i).getSeq(), sequences.get(i).getSeq());
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            Fasta fasta = expected.get(random.nextInt(expected.size()));
+            int length = fasta.getSeq().length();
+            int start = 1 + random.nextInt(length + 1);
+            int end = start + random.nextInt(300);
+            String subsequence = start > length ? "" : fasta.getSeq().substring(start - 1, Math.min(end, length));
+            assertEquals(subsequence, reader.getSubsequence(fasta.getId(), start, end));
+            assertEquals(subsequence, reader.getPackedSubsequence(fasta.getId(), start, end).toString());
+        }
+        reader.close();
+
+        reader = new IndexedFastaReader(file);
+        assertEquals("chr7", reader.read("chr7").getId());
+        assertEquals(Arrays.asList("chr8", "chr10"), Arrays.asList(reader.read(2).get(0).getId(), reader.read().getId()));
+        reader.close();
+
+        IndexedFastaSequenceDBAdaptor adaptor = new IndexedFastaSequenceDBAdaptor(file);
+        adaptor.open();
+        assertEquals(expected.get(3).getSeq().substring(9, 20), adaptor.getSequence(new Region("chr3", 10, 20)));
+        assertEquals(expected.get(3).getSeq(), adaptor.getPackedSequence(new Region("chr3", 1, Integer.MAX_VALUE)).toString());
+        adaptor.close();
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void differentLineLengths() throws IOException, FileFormatException {
+        Path file = folder.newFile("wrong.fa").toPath();
+        Files.write(file, ">one\nACGT\nAC\nACGT\n".getBytes(StandardCharsets.US_ASCII));
+        FastaIndex.build(file);
+    }
+
+    private static String[] toStrings(List<FastaIndex.Entry> entries) {
+        String[] strings = new String[entries.size()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = entries.get(i).toString();
+        }
+        return strings;
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.opencb.biodata.formats.sequence.fastq.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+import org.opencb.biodata.formats.sequence.fastq.FastQSlice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FastQSliceReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readSameAsFastaQReader() throws IOException, FileFormatException {
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            int length = 1 + random.nextInt(150);
+            StringBuilder sequence = new StringBuilder();
+            StringBuilder quality = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                sequence.append("ACGTN".charAt(random.nextInt(5)));
+                quality.append((char) ('!' + random.nextInt(41)));
+            }
+            text.append("@read").append(i).append(i % 3 == 0 ? " description " + i : "").append('\n');
+            if (i % 7 == 0 && length > 10) {
+                // Split in several lines like FastaQReader expects
+                text.append(sequence, 0, 10).append('\n').append(sequence.substring(10)).append("\n+\n");
+                text.append(quality, 0, 10).append('\n').append(quality.substring(10)).append('\n');
+            } else {
+                text.append(sequence).append("\n+\n").append(quality).append('\n');
+            }
+        }
+        // Without the last new line
+        text.append("@last\nACGT\n+\nIIII");
+        Path file = folder.newFile("reads.fastq").toPath();
+        Files.write(file, text.toString().getBytes(StandardCharsets.US_ASCII));
+
+        FastaQReader expectedReader = new FastaQReader(file);
+        // A small buffer, so many sequences are split between buffers
+        FastQSliceReader reader = new FastQSliceReader(file, FastQ.SANGER_ENCODING, 1000);
+        FastQ expected;
+        int count = 0;
+        while ((expected = expectedReader.read()) != null) {
+            FastQSlice sequence = reader.read();
+            assertEquals(expected.getId(), sequence.getId());
+            assertEquals(expected.getDescription(), sequence.getDescription());
+            assertEquals(expected.getSeq(), sequence.getSeq());
+            assertEquals(expected.getQuality(), sequence.getQuality());
+            assertEquals(expected.getAverageQuality(), sequence.getAverageQuality(), 1e-9);
+            assertEquals(expected.getMinimumQuality(), sequence.getMinimumQuality());
+            assertEquals(expected.getMaximumQuality(), sequence.getMaximumQuality());
+            assertArrayEquals(expected.getQualityScoresArray(), scores(sequence));
+            count++;
+        }
+        assertEquals(501, count);
+        assertNull(reader.read());
+        reader.close();
+        expectedReader.close();
+    }
+
+    @Test
+    public void readWindowsNewLines() throws IOException, FileFormatException {
+        Path file = folder.newFile("windows.fastq").toPath();
+        Files.write(file, "@r1 desc\r\nACGT\r\n+\r\nABCD\r\n\r\n@r2\r\nGG\r\n+r2\r\n!!\r\n".getBytes(StandardCharsets.US_ASCII));
+        FastQSliceReader reader = new FastQSliceReader(file);
+        List<FastQSlice> sequences = reader.readAll();
+        assertEquals(2, sequences.size());
+        assertEquals("r1", sequences.get(0).getId());
+        assertEquals("desc", sequences.get(0).getDescription());
+        assertEquals("ACGT", sequences.get(0).getSeq());
+        assertEquals("ABCD", sequences.get(0).getQuality());
+        assertEquals("!!", sequences.get(1).getQuality());
+        reader.close();
+    }
+
+    @Test
+    public void changeEncoding() {
+        String quality = "!\"#$%&'()*+,-./0123456789:;<=>?@ABCDEFGHIJ";
+        for (int from : new int[]{FastQ.SANGER_ENCODING, FastQ.ILLUMINA_ENCODING}) {
+            String encoded = from == FastQ.SANGER_ENCODING ? quality : shift(quality, 31);
+            for (int to : new int[]{FastQ.SANGER_ENCODING, FastQ.ILLUMINA_ENCODING, FastQ.SOLEXA_ENCODING}) {
+                String sequence = sequence(quality.length());
+                FastQ fastq = new FastQ("r", "", sequence, encoded, from);
+                fastq.changeEncoding(to);
+
+                byte[] bytes = ("r\n" + sequence + "\n+\n" + encoded).getBytes(StandardCharsets.US_ASCII);
+                FastQSlice slice = new FastQSlice(bytes, 0, 1, 2, 4 + quality.length() + 1, quality.length(), from);
+                slice.changeEncoding(to);
+                assertEquals(fastq.getQuality(), slice.getQuality());
+                assertArrayEquals(fastq.getQualityScoresArray(), scores(slice));
+            }
+        }
+
+        // Phred scores below 10 are changed in the Solexa scale, and back
+        FastQ fastq = new FastQ("r", "", "AAAA", "!#*5", FastQ.SANGER_ENCODING);
+        fastq.changeEncoding(FastQ.SOLEXA_ENCODING);
+        assertArrayEquals(new int[]{-5, -2, 8, 20}, fastq.getQualityScoresArray());
+        fastq.changeEncoding(FastQ.SANGER_ENCODING);
+        assertArrayEquals(new int[]{1, 2, 9, 20}, fastq.getQualityScoresArray());
+        assertEquals(1, fastq.getMinimumQuality());
+        assertEquals(20, fastq.getMaximumQuality());
+    }
+
+    private static int[] scores(FastQSlice sequence) {
+        int[] scores = new int[sequence.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = sequence.getQualityScore(i);
+        }
+        return scores;
+    }
+
+    private static String shift(String quality, int offset) {
+        StringBuilder shifted = new StringBuilder();
+        for (int i = 0; i < quality.length(); i++) {
+            shifted.append((char) (quality.charAt(i) + offset));
+        }
+        return shifted.toString();
+    }
+
+    private static String sequence(int length) {
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sequence.append('A');
+        }
+        return sequence.toString();
+    }
+
+}
@@ -0,0 +1,221 @@
+package org.opencb.biodata.formats.sequence.fastq.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+import org.opencb.biodata.formats.sequence.fastq.FastQSlice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelFastQReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void readSameAsFastQSliceReader() throws IOException, FileFormatException {
+        byte[] text = fastq("read", 2000, new Random(5));
+        Path plain = folder.newFile("reads.fastq").toPath();
+        Files.write(plain, text);
+        Path gzip = folder.newFile("reads.fastq.gz").toPath();
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            output.write(text);
+        }
+        Path bgzip = folder.newFile("reads.bgz.fastq.gz").toPath();
+        Files.write(bgzip, bgzf(text));
+
+        List<FastQSlice> expected = new FastQSliceReader(plain).readAll();
+        assertEquals(2001, expected.size());
+        for (Path file : new Path[]{plain, gzip, bgzip}) {
+            // Small chunks, so many sequences are close to the cuts and the longest ones do not fit
+            ParallelFastQReader reader = new ParallelFastQReader(file, FastQ.SANGER_ENCODING, executor, 3, 300);
+            List<FastQSlice> sequences = new ArrayList<>();
+            List<FastQSlice> batch;
+            while (!(batch = reader.read(77)).isEmpty()) {
+                assertTrue(batch.size() <= 77);
+                sequences.addAll(batch);
+            }
+            reader.close();
+
+            assertEquals(expected.size(), sequences.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).toString(), sequences.get(i).toString());
+            }
+        }
+    }
+
+    @Test
+    public void readWindowsNewLines() throws IOException, FileFormatException {
+        Path file = folder.newFile("windows.fastq").toPath();
+        Files.write(file, "@r1 desc\r\nACGT\r\n+\r\nABCD\r\n\r\n@r2\r\nGG\r\n+r2\r\n!!".getBytes(StandardCharsets.US_ASCII));
+        ParallelFastQReader reader = new ParallelFastQReader(file, FastQ.SANGER_ENCODING, executor, 1, 20);
+        List<FastQSlice> sequences = reader.readAll();
+        assertEquals(2, sequences.size());
+        assertEquals("desc", sequences.get(0).getDescription());
+        assertEquals("ABCD", sequences.get(0).getQuality());
+        assertEquals("!!", sequences.get(1).getQuality());
+        reader.close();
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void readMultiLineSequences() throws IOException, FileFormatException {
+        Path file = folder.newFile("multiline.fastq").toPath();
+        Files.write(file, "@r1\nACGT\nAC\n+\nABCD\nAB\n".getBytes(StandardCharsets.US_ASCII));
+        ParallelFastQReader reader = new ParallelFastQReader(file, FastQ.SANGER_ENCODING, executor, 1, 1000);
+        try {
+            reader.readAll();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void readPairs() throws IOException, FileFormatException {
+        Path first = folder.newFile("reads_1.fastq").toPath();
+        Files.write(first, fastq("pair", 500, new Random(7), "/1"));
+        Path second = folder.newFile("reads_2.fastq").toPath();
+        Files.write(second, fastq("pair", 500, new Random(8), "/2"));
+
+        PairedFastQReader reader = new PairedFastQReader(
+                new ParallelFastQReader(first, FastQ.SANGER_ENCODING, executor, 2, 500),
+                new ParallelFastQReader(second, FastQ.SANGER_ENCODING, executor, 2, 700));
+        int pairs = 0;
+        PairedFastQReader.Batch batch;
+        while (!(batch = reader.read(64)).isEmpty()) {
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(batch.getFirst().get(i).getId().replace("/1", "/2"), batch.getSecond().get(i).getId());
+            }
+            pairs += batch.size();
+        }
+        reader.close();
+        assertEquals(501, pairs);
+
+        // Mates in different order
+        Files.write(second, fastq("other", 500, new Random(8), "/2"));
+        reader = new PairedFastQReader(new FastQSliceReader(first), new FastQSliceReader(second));
+        try {
+            reader.read(10);
+            fail();
+        } catch (FileFormatException e) {
+            // Expected
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void trim() {
+        byte[] bytes = "r\nACGTACGT\n+\n!!IIII#$".getBytes(StandardCharsets.US_ASCII);
+        FastQSlice slice = new FastQSlice(bytes, 0, 1, 2, 13, 8, FastQ.SANGER_ENCODING);
+        FastQ fastq = slice.toFastQ();
+        assertEquals(20.625, slice.getAverageQuality(), 1e-9);
+
+        slice.lTrim(2);
+        slice.rTrim(1);
+        slice.trimSequenceTail(4);
+        fastq.lTrim(2);
+        fastq.rTrim(1);
+        fastq.trimSequenceTail(4);
+        assertEquals(fastq.getSeq(), slice.getSeq());
+        assertEquals(fastq.getQuality(), slice.getQuality());
+        assertEquals(fastq.getAverageQuality(), slice.getAverageQuality(), 1e-9);
+        assertEquals(40, slice.getMinimumQuality());
+
+        // Shorter than the maximum size
+        slice.trimSequenceTail(10);
+        assertEquals(4, slice.size());
+    }
+
+    private static byte[] fastq(String prefix, int size, Random random) {
+        return fastq(prefix, size, random, "");
+    }
+
+    private static byte[] fastq(String prefix, int size, Random random, String suffix) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            int length = random.nextInt(10) == 0 ? 300 + random.nextInt(300) : 1 + random.nextInt(150);
+            text.append('@').append(prefix).append(i).append(suffix).append(i % 3 == 0 ? " description" : "").append('\n');
+            for (int j = 0; j < length; j++) {
+                text.append("ACGTN".charAt(random.nextInt(5)));
+            }
+            text.append('\n').append(i % 2 == 0 ? "+" : "+" + prefix + i).append('\n');
+            for (int j = 0; j < length; j++) {
+                text.append((char) ('!' + random.nextInt(41)));
+            }
+            text.append('\n');
+        }
+        // Without the last new line
+        text.append("@").append(prefix).append(size).append(suffix).append("\nACGT\n+\nIIII");
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Compresses in BGZF blocks of 1000 bytes, followed by the empty block that marks the end of the file.
+     */
+    private static byte[] bgzf(byte[] data) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (int start = 0; start < data.length; start += 1000) {
+            bgzfBlock(output, data, start, Math.min(data.length - start, 1000));
+        }
+        bgzfBlock(output, data, 0, 0);
+        return output.toByteArray();
+    }
+
+    private static void bgzfBlock(ByteArrayOutputStream output, byte[] data, int start, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, start, length);
+        deflater.finish();
+        byte[] compressed = new byte[length + 1024];
+        int compressedLength = deflater.deflate(compressed);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, start, length);
+
+        int blockSize = 18 + compressedLength + 8;
+        output.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8)}, 0, 18);
+        output.write(compressed, 0, compressedLength);
+        writeInt(output, (int) crc.getValue());
+        writeInt(output, length);
+    }
+
+    private static void writeInt(ByteArrayOutputStream output, int value) {
+        for (int i = 0; i < 4; i++) {
+            output.write(value >> (8 * i));
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.opencb.biodata.formats.sequence.fastq.stats;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+import org.opencb.biodata.formats.sequence.fastq.FastQSlice;
+import org.opencb.biodata.formats.sequence.fastq.io.FastQSliceReader;
+import org.opencb.biodata.formats.sequence.fastq.io.ParallelFastQReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FastQStatsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void add() {
+        FastQStats stats = new FastQStats();
+        stats.add(new FastQ("r1", "", "ACGT", "II#!", FastQ.SANGER_ENCODING));
+        stats.add(new FastQ("r2", "", "GGNAAA", "IIIIII", FastQ.SANGER_ENCODING));
+        stats.add(new FastQ("r3", "", "CC", "hh", FastQ.ILLUMINA_ENCODING));
+
+        assertEquals(3, stats.getNumReads());
+        assertEquals(12, stats.getNumBases());
+        assertEquals(6, stats.getMaxReadLength());
+        assertArrayEquals(new long[]{0, 0, 1, 0, 1, 0, 1}, stats.getReadLengthDistribution());
+
+        assertEquals(40, stats.getMeanQuality(0), 1e-9);
+        assertEquals((0 + 40) / 2.0, stats.getMeanQuality(3), 1e-9);
+        assertEquals(0, stats.getQualityQuantile(3, 0));
+        assertEquals(0, stats.getQualityQuantile(3, 0.5));
+        assertEquals(40, stats.getQualityQuantile(3, 1));
+        assertEquals(1, stats.getQualityHistogram(2)[2 - FastQStats.MIN_QUALITY]);
+        assertEquals(1, stats.getQualityHistogram(2)[40 - FastQStats.MIN_QUALITY]);
+
+        assertEquals(1, stats.getBaseCount(0, 'A'));
+        assertEquals(1, stats.getBaseCount(0, 'G'));
+        assertEquals(1, stats.getBaseCount(0, 'C'));
+        assertEquals(1, stats.getBaseCount(2, 'N'));
+        assertEquals(0, stats.getBaseCount(5, 'C'));
+
+        long[] gc = stats.getGcDistribution();
+        assertEquals(1, gc[50]);
+        assertEquals(1, gc[33]);
+        assertEquals(1, gc[100]);
+        long[] averages = stats.getAverageQualityDistribution();
+        assertEquals(1, averages[21 - FastQStats.MIN_QUALITY]);
+        assertEquals(2, averages[40 - FastQStats.MIN_QUALITY]);
+    }
+
+    @Test
+    public void kmers() {
+        FastQStats stats = new FastQStats(new KmerSketch(3, 1024, 4, 2));
+        stats.add(new FastQ("r1", "", "ACGACGACGNACG", "IIIIIIIIIIIII", FastQ.SANGER_ENCODING));
+        stats.add(new FastQ("r2", "", "TTTT", "IIII", FastQ.SANGER_ENCODING));
+
+        assertTrue(stats.getKmerCount("ACG") >= 4);
+        assertTrue(stats.getKmerCount("CGA") >= 2);
+        assertTrue(stats.getKmerCount("TTT") >= 2);
+        Map<String, Long> top = stats.getOverrepresentedKmers();
+        assertEquals(2, top.size());
+        assertEquals("ACG", top.keySet().iterator().next());
+    }
+
+    @Test
+    public void mergeSameAsSingle() throws IOException, FileFormatException {
+        Path file = folder.newFile("reads.fastq").toPath();
+        Files.write(file, fastq(3000, new Random(11)));
+
+        FastQStats expected = new FastQStats();
+        List<FastQSlice> sequences = new FastQSliceReader(file).readAll();
+        expected.addAll(sequences);
+
+        FastQStats merged = new FastQStats();
+        FastQStats other = new FastQStats();
+        merged.addAll(sequences.subList(0, 1000));
+        other.addAll(sequences.subList(1000, sequences.size()));
+        merged.merge(other);
+        assertSameStats(expected, merged);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            ParallelFastQReader reader = new ParallelFastQReader(file, FastQ.SANGER_ENCODING, executor, 3, 10000);
+            FastQStats parallel = FastQStats.calculate(reader, executor, 3, 100);
+            reader.close();
+            assertSameStats(expected, parallel);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertSameStats(FastQStats expected, FastQStats stats) {
+        assertEquals(expected.getNumReads(), stats.getNumReads());
+        assertEquals(expected.getNumBases(), stats.getNumBases());
+        assertArrayEquals(expected.getReadLengthDistribution(), stats.getReadLengthDistribution());
+        assertArrayEquals(expected.getGcDistribution(), stats.getGcDistribution());
+        assertArrayEquals(expected.getAverageQualityDistribution(), stats.getAverageQualityDistribution());
+        for (int i = 0; i < expected.getMaxReadLength(); i++) {
+            assertArrayEquals(expected.getQualityHistogram(i), stats.getQualityHistogram(i));
+            for (char base : "ACGTN".toCharArray()) {
+                assertEquals(expected.getBaseCount(i, base), stats.getBaseCount(i, base));
+            }
+        }
+        // The sketches add the same counts, so the estimates are the same
+        for (String kmer : expected.getOverrepresentedKmers().keySet()) {
+            assertEquals(expected.getKmerCount(kmer), stats.getKmerCount(kmer));
+        }
+        assertEquals(expected.getOverrepresentedKmers().keySet().iterator().next(),
+                stats.getOverrepresentedKmers().keySet().iterator().next());
+    }
+
+    private static byte[] fastq(int size, Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            int length = 20 + random.nextInt(130);
+            text.append("@read").append(i).append("\n");
+            for (int j = 0; j < length; j++) {
+                // An adapter at the start of some reads, so its k-mers are overrepresented
+                text.append(i % 4 == 0 && j < 12 ? "AGATCGGAAGAG".charAt(j) : "ACGTN".charAt(random.nextInt(5)));
+            }
+            text.append("\n+\n");
+            for (int j = 0; j < length; j++) {
+                text.append((char) ('!' + random.nextInt(41)));
+            }
+            text.append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
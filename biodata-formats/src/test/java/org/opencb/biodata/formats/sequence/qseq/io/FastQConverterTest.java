@@ -0,0 +1,180 @@
+package org.opencb.biodata.formats.sequence.qseq.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.io.FileFormatException;
+import org.opencb.biodata.formats.sequence.fasta.Fasta;
+import org.opencb.biodata.formats.sequence.fastq.FastQ;
+import org.opencb.biodata.formats.sequence.fastq.FastQSlice;
+import org.opencb.biodata.formats.sequence.fastq.io.FastQSliceReader;
+import org.opencb.biodata.formats.sequence.fastq.io.ParallelFastQReader;
+import org.opencb.biodata.formats.sequence.qseq.Qseq;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FastQConverterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void convertQseq() throws IOException, FileFormatException {
+        Random random = new Random(3);
+        List<Path> lanes = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        StringBuilder expectedPassing = new StringBuilder();
+        for (int tile = 1; tile <= 3; tile++) {
+            Path lane = folder.newFile("s_1_1_000" + tile + "_qseq.txt").toPath();
+            Files.write(lane, qseq(tile, 500, random, expected, expectedPassing).getBytes(StandardCharsets.US_ASCII));
+            lanes.add(lane);
+        }
+
+        // Small chunks, so many lines are cut
+        FastQConverter converter = new FastQConverter(executor, 3).setChunkSize(300);
+        Path plain = folder.getRoot().toPath().resolve("lane.fastq");
+        assertEquals(1500, converter.convertQseq(lanes, plain));
+        assertEquals(expected.toString(), new String(Files.readAllBytes(plain), StandardCharsets.US_ASCII));
+
+        Path bgzip = folder.getRoot().toPath().resolve("lane.fastq.gz");
+        long passing = converter.setPassingFilterOnly(true).convertQseq(lanes, bgzip);
+        assertEquals(expectedPassing.toString(), gunzip(bgzip));
+        assertTrue(passing < 1500);
+
+        // The BGZF blocks are read in parallel
+        ParallelFastQReader reader = new ParallelFastQReader(bgzip, FastQ.SANGER_ENCODING, executor, 2, 1000);
+        List<FastQSlice> sequences = reader.readAll();
+        reader.close();
+        assertEquals(passing, sequences.size());
+    }
+
+    @Test
+    public void convertQual() throws IOException, FileFormatException {
+        Random random = new Random(7);
+        StringBuilder fasta = new StringBuilder();
+        StringBuilder qual = new StringBuilder();
+        List<FastQ> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String sequence = bases(random, 10 + random.nextInt(50));
+            int[] scores = new int[sequence.length()];
+            StringBuilder qualLine = new StringBuilder();
+            for (int j = 0; j < scores.length; j++) {
+                scores[j] = random.nextInt(41);
+                qualLine.append(j > 0 ? " " : "").append(scores[j]);
+            }
+            fasta.append(">read").append(i).append(" sample\n").append(sequence).append('\n');
+            qual.append(">read").append(i).append(" sample\n").append(qualLine).append('\n');
+            expected.add(new FastQ(new Fasta("read" + i, "sample", sequence), scores, FastQ.SANGER_ENCODING));
+        }
+        Path fastaFile = folder.newFile("reads.fa").toPath();
+        Files.write(fastaFile, fasta.toString().getBytes(StandardCharsets.US_ASCII));
+        Path qualFile = folder.newFile("reads.qual").toPath();
+        Files.write(qualFile, qual.toString().getBytes(StandardCharsets.US_ASCII));
+
+        Path output = folder.getRoot().toPath().resolve("reads.fastq.gz");
+        FastQConverter converter = new FastQConverter(executor, 2).setBatchSize(17);
+        assertEquals(300, converter.convertQual(fastaFile, qualFile, output));
+
+        List<FastQSlice> sequences = new FastQSliceReader(output).readAll();
+        assertEquals(expected.size(), sequences.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), sequences.get(i).getId());
+            assertEquals(expected.get(i).getSeq(), sequences.get(i).getSeq());
+            assertEquals(expected.get(i).getQuality(), sequences.get(i).getQuality());
+        }
+    }
+
+    @Test
+    public void incorrectQseqLine() throws IOException {
+        Path lane = folder.newFile("s_1_1_0001_qseq.txt").toPath();
+        Files.write(lane, "M1\t1\t1\t1\t100\t200\t0\t1\tACGT\tfffff\t1\n".getBytes(StandardCharsets.US_ASCII));
+        try {
+            new FastQConverter(executor, 2).convertQseq(Arrays.asList(lane), folder.getRoot().toPath().resolve("x.fastq"));
+            fail();
+        } catch (FileFormatException e) {
+            assertTrue(e.getMessage().startsWith("Incorrect Qseq line"));
+        }
+    }
+
+    private static String qseq(int tile, int count, Random random, StringBuilder expected, StringBuilder expectedPassing) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int length = 20 + random.nextInt(200);
+            StringBuilder sequence = new StringBuilder(bases(random, length));
+            StringBuilder quality = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(30) == 0) {
+                    sequence.setCharAt(j, '.');
+                }
+                quality.append((char) (66 + random.nextInt(39)));
+            }
+            int x = random.nextInt(20000);
+            int y = random.nextInt(20000);
+            int filter = random.nextInt(4) == 0 ? 0 : 1;
+            text.append("HWI-ST" + tile).append("\t7\t1\t000").append(tile).append('\t').append(x).append('\t').append(y)
+                    .append("\t0\t1\t").append(sequence).append('\t').append(quality).append('\t').append(filter)
+                    .append(i % 2 == 0 ? "\n" : "\r\n");
+
+            FastQ fastq = new Qseq("HWI-ST" + tile, 7, 1, tile, x, y, 0, 1, sequence.toString(), quality.toString(),
+                    filter).toFastQ();
+            fastq.changeEncoding(FastQ.SANGER_ENCODING);
+            String record = "@" + fastq.getId() + "\n" + fastq.getSeq() + "\n+\n" + fastq.getQuality() + "\n";
+            expected.append(record);
+            if (filter == 1) {
+                expectedPassing.append(record);
+            }
+        }
+        return text.toString();
+    }
+
+    private static String bases(Random random, int length) {
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sequence.append("ACGT".charAt(random.nextInt(4)));
+        }
+        return sequence.toString();
+    }
+
+    private static String gunzip(Path path) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(path))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+}
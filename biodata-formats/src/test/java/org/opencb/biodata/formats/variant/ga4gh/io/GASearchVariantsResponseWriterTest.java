@@ -0,0 +1,181 @@
+package org.opencb.biodata.formats.variant.ga4gh.io;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.opencb.biodata.ga4gh.GACall;
+import org.opencb.biodata.ga4gh.GAKeyValue;
+import org.opencb.biodata.ga4gh.GASearchVariantsResponse;
+import org.opencb.biodata.ga4gh.GAVariant;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GASearchVariantsResponseWriterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void writeResponse() throws Exception {
+        List<GAVariant> variants = variants();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GASearchVariantsResponseWriter writer = new GASearchVariantsResponseWriter(output)) {
+            writer.write(new GASearchVariantsResponse(variants, "page-2"));
+        }
+
+        JsonNode response = mapper.readTree(output.toByteArray());
+        assertEquals("page-2", response.get("nextPageToken").asText());
+        JsonNode written = response.get("variants");
+        assertEquals(variants.size(), written.size());
+        for (int i = 0; i < variants.size(); i++) {
+            assertVariant(variants.get(i), written.get(i));
+        }
+    }
+
+    @Test
+    public void writePages() throws Exception {
+        List<GAVariant> variants = variants();
+        Iterator<GAVariant> iterator = variants.iterator();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GASearchVariantsResponseWriter writer = new GASearchVariantsResponseWriter(output)) {
+            assertEquals(2, writer.write(iterator, 2, "page-2"));
+            assertTrue(iterator.hasNext());
+            assertEquals(1, writer.write(iterator, 2, null));
+            assertFalse(iterator.hasNext());
+        }
+
+        try (JsonParser parser = mapper.getFactory().createParser(output.toByteArray())) {
+            JsonNode first = mapper.readTree(parser);
+            assertEquals("page-2", first.get("nextPageToken").asText());
+            assertEquals(2, first.get("variants").size());
+            assertVariant(variants.get(0), first.get("variants").get(0));
+            assertVariant(variants.get(1), first.get("variants").get(1));
+
+            JsonNode second = mapper.readTree(parser);
+            assertTrue(second.get("nextPageToken").isNull());
+            assertEquals(1, second.get("variants").size());
+            assertVariant(variants.get(2), second.get("variants").get(0));
+
+            assertNull(mapper.readTree(parser));
+        }
+    }
+
+    private static List<GAVariant> variants() {
+        Map<String, List> info = new LinkedHashMap<>();
+        info.put("DP", Arrays.asList("42"));
+        info.put("AC", Arrays.asList("1", "2"));
+        info.put("DB", null);
+        GACall[] calls = {
+                new GACall("cs1", "NA001", new int[]{0, 1}, "ps1", new double[]{-0.5, -1.25, -10.0},
+                        new GAKeyValue[]{new GAKeyValue("DP", "12"), new GAKeyValue("GQ", "99")}),
+                new GACall("cs2", "NA002", new int[]{1, 2}, null, null, null)
+        };
+        GAVariant multiallelic = new GAVariant("v1", "vs1", new String[]{"rs1", "rs2"}, 1000L, 2000L, "1",
+                100, 101, "A", new String[]{"C", "G"}, info, calls);
+        GAVariant deletion = new GAVariant("v2", "vs1", null, 3000L, 4000L, "2", 200, 203, "ACG", new String[]{""},
+                Collections.<String, List>singletonMap("END", Arrays.asList("203")), null);
+        GAVariant empty = new GAVariant("v3");
+        empty.setInfo(null);
+        return Arrays.asList(multiallelic, deletion, empty);
+    }
+
+    /**
+     * Checks every field explicitly, since GAVariant.equals ignores the id, timestamps and calls.
+     */
+    private static void assertVariant(GAVariant expected, JsonNode actual) {
+        assertText(expected.getId(), actual.get("id"));
+        assertText(expected.getVariantSetId(), actual.get("variantSetId"));
+        assertTextArray(expected.getNames(), actual.get("names"));
+        assertEquals(expected.getCreated(), actual.get("created").asLong());
+        assertEquals(expected.getUpdated(), actual.get("updated").asLong());
+        assertText(expected.getReferenceName(), actual.get("referenceName"));
+        assertEquals(expected.getStart(), actual.get("start").asLong());
+        assertEquals(expected.getEnd(), actual.get("end").asLong());
+        assertText(expected.getReferenceBases(), actual.get("referenceBases"));
+        assertTextArray(expected.getAlternateBases(), actual.get("alternateBases"));
+
+        JsonNode info = actual.get("info");
+        if (expected.getInfo() == null) {
+            assertTrue(info.isNull());
+        } else {
+            assertEquals(expected.getInfo().size(), info.size());
+            for (Map.Entry<String, List> field : expected.getInfo().entrySet()) {
+                JsonNode values = info.get(field.getKey());
+                if (field.getValue() == null) {
+                    assertTrue(values.isNull());
+                } else {
+                    assertEquals(field.getValue().size(), values.size());
+                    for (int i = 0; i < field.getValue().size(); i++) {
+                        assertText((String) field.getValue().get(i), values.get(i));
+                    }
+                }
+            }
+        }
+
+        JsonNode calls = actual.get("calls");
+        assertEquals(expected.getCalls().length, calls.size());
+        for (int i = 0; i < expected.getCalls().length; i++) {
+            assertCall(expected.getCalls()[i], calls.get(i));
+        }
+    }
+
+    private static void assertCall(GACall expected, JsonNode actual) {
+        assertText(expected.getCallSetId(), actual.get("callSetId"));
+        assertText(expected.getCallSetName(), actual.get("callSetName"));
+        assertText(expected.getPhaseset(), actual.get("phaseset"));
+
+        JsonNode genotype = actual.get("genotype");
+        assertEquals(expected.getGenotype().length, genotype.size());
+        for (int i = 0; i < expected.getGenotype().length; i++) {
+            assertEquals(expected.getGenotype()[i], genotype.get(i).asInt());
+        }
+
+        JsonNode likelihoods = actual.get("genotypeLikelihood");
+        if (expected.getGenotypeLikelihood() == null) {
+            assertTrue(likelihoods.isNull());
+        } else {
+            assertEquals(expected.getGenotypeLikelihood().length, likelihoods.size());
+            for (int i = 0; i < expected.getGenotypeLikelihood().length; i++) {
+                assertEquals(expected.getGenotypeLikelihood()[i], likelihoods.get(i).asDouble(), 0);
+            }
+        }
+
+        JsonNode info = actual.get("info");
+        if (expected.getInfo() == null) {
+            assertTrue(info.isNull());
+        } else {
+            assertEquals(expected.getInfo().length, info.size());
+            for (int i = 0; i < expected.getInfo().length; i++) {
+                assertText(expected.getInfo()[i].getKey(), info.get(i).get("key"));
+                assertText(expected.getInfo()[i].getValue(), info.get(i).get("value"));
+            }
+        }
+    }
+
+    private static void assertText(String expected, JsonNode actual) {
+        if (expected == null) {
+            assertTrue(actual.isNull());
+        } else {
+            assertEquals(expected, actual.asText());
+        }
+    }
+
+    private static void assertTextArray(String[] expected, JsonNode actual) {
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertText(expected[i], actual.get(i));
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.opencb.biodata.formats.variant.gvf.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GvfReaderTest {
+
+    private static final String GVF = "##gvf-version 1.07\n"
+            + "##individual-id Dbxref=Coriell:NA12878;Gender=female\n"
+            + "##sequence-region 1 1 248956422\n"
+            + "1\tdbSNP\tSNV\t10177\t10177\t.\t+\t.\tID=1;Variant_seq=C;Dbxref=dbSNP_150:rs367896724;Reference_seq=A;global_minor_allele_frequency=0|0.425|2130\n"
+            + "1\tdbSNP\tinsertion\t10229\t10228\t.\t+\t.\tID=2;Variant_seq=AC;Reference_seq=-\n"
+            + "1\tdbSNP\tdeletion\t10231\t10232\t.\t+\t.\tID=3;Variant_seq=-;Reference_seq=CA\n"
+            + "1\tdbSNP\tSNV\t10250\t10250\t.\t+\t.\tID=4;Variant_seq=A,C,G;Reference_seq=A;Genotype=heterozygous\n"
+            + "1\tdbSNP\tSNV\t10255\t10255\t.\t+\t.\tID=5;Variant_seq=T,C;Reference_seq=A;Zygosity=heterozygous\n"
+            + "2\tdbSNP\tsubstitution\t500\t502\t.\t+\t.\tID=6;Variant_seq=AGT;Reference_seq=ACT\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void read() throws Exception {
+        Path path = folder.newFile("variants.gvf").toPath();
+        Files.write(path, GVF.getBytes(StandardCharsets.US_ASCII));
+        List<Variant> variants = readAll(path);
+        assertEquals(8, variants.size());
+
+        Variant snv = variants.get(0);
+        assertEquals("1", snv.getChromosome());
+        assertEquals(10177, snv.getStart());
+        assertEquals("A", snv.getReference());
+        assertEquals("C", snv.getAlternate());
+        assertEquals(Variant.VariantType.SNV, snv.getType());
+        assertEquals(Collections.singleton("rs367896724"), snv.getIds());
+        VariantSourceEntry entry = snv.getSourceEntry("f", "s");
+        assertEquals("dbSNP", entry.getAttribute("source"));
+        assertEquals("0|0.425|2130", entry.getAttribute("global_minor_allele_frequency"));
+
+        Variant insertion = variants.get(1);
+        assertEquals(10229, insertion.getStart());
+        assertEquals(10230, insertion.getEnd());
+        assertEquals("", insertion.getReference());
+        assertEquals("AC", insertion.getAlternate());
+        assertEquals(Collections.singleton("2"), insertion.getIds());
+
+        Variant deletion = variants.get(2);
+        assertEquals(10231, deletion.getStart());
+        assertEquals(10232, deletion.getEnd());
+        assertEquals("CA", deletion.getReference());
+        assertEquals("", deletion.getAlternate());
+
+        // The reference allele in Variant_seq is not a variant
+        Variant c = variants.get(3);
+        Variant g = variants.get(4);
+        assertEquals("C", c.getAlternate());
+        assertEquals("G", g.getAlternate());
+        assertArrayEquals(new String[]{"G"}, c.getSourceEntry("f", "s").getSecondaryAlternates());
+        assertEquals("0/1", c.getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+        assertEquals("0/2", g.getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+        assertEquals("1/2", variants.get(5).getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+        assertEquals("2/1", variants.get(6).getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+
+        // The shared bases are removed
+        Variant substitution = variants.get(7);
+        assertEquals(501, substitution.getStart());
+        assertEquals(501, substitution.getEnd());
+        assertEquals("C", substitution.getReference());
+        assertEquals("G", substitution.getAlternate());
+
+        assertSame(variants.get(0).getChromosome(), variants.get(6).getChromosome());
+    }
+
+    @Test
+    public void readGzipInBatches() throws Exception {
+        Path path = folder.newFile("variants.gvf.gz").toPath();
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(path))) {
+            output.write(GVF.getBytes(StandardCharsets.US_ASCII));
+        }
+        VariantSource source = new VariantSource("variants.gvf.gz", "f", "s", "study");
+        GvfReader reader = new GvfReader(source, path.toString());
+        assertTrue(reader.open());
+        assertTrue(reader.pre());
+        assertEquals(Arrays.asList("NA12878"), reader.getSampleNames());
+        assertEquals("1.07", source.getMetadata().get("gvf-version"));
+        assertTrue(reader.getHeader().startsWith("##gvf-version 1.07\n"));
+
+        List<Variant> batch = reader.read(4);
+        assertEquals(5, batch.size());
+        assertEquals(3, reader.read(10).size());
+        assertNull(reader.read());
+        assertTrue(reader.read(10).isEmpty());
+        reader.post();
+        reader.close();
+    }
+
+    @Test
+    public void skipMalformedLines() throws Exception {
+        Path path = folder.newFile("malformed.gvf").toPath();
+        String gvf = "##gvf-version 1.07\n"
+                + "1\tdbSNP\tSNV\t100\t100\t.\t+\t.\tID=1;Variant_seq=C;Reference_seq=A\n"
+                + "1\tdbSNP\tSNV\t200\n"
+                + "1\tdbSNP\tSNV\tx\t300\t.\t+\t.\tID=3;Variant_seq=C;Reference_seq=A\n"
+                + "1\tdbSNP\tSNV\t400\t400\t.\t+\t.\tID=4;Reference_seq=A\n"
+                + "1\tdbSNP\tSNV\t500\t500\t.\t+\t.\tID=5;Variant_seq=C;Reference_seq=A\n";
+        Files.write(path, gvf.getBytes(StandardCharsets.US_ASCII));
+        GvfReader reader = new GvfReader(new VariantSource(path.toString(), "f", "s", "study"), path.toString());
+        assertTrue(reader.open());
+        assertTrue(reader.pre());
+        assertEquals(100, reader.read().get(0).getStart());
+        assertEquals(500, reader.read().get(0).getStart());
+        assertNull(reader.read());
+        assertEquals(3, reader.getMalformedLines());
+        reader.close();
+    }
+
+    @Test
+    public void numericGenotypes() throws Exception {
+        Path path = folder.newFile("genotypes.gvf").toPath();
+        String gvf = "##individual-id Dbxref=Coriell:NA12878\n"
+                + "1\tdbSNP\tSNV\t100\t100\t.\t+\t.\tID=1;Variant_seq=A,G;Reference_seq=C;Genotype=0:1\n"
+                + "1\tdbSNP\tSNV\t200\t200\t.\t+\t.\tID=2;Variant_seq=C,T;Reference_seq=C;Genotype=1:0\n"
+                + "1\tdbSNP\tSNV\t300\t300\t.\t+\t.\tID=3;Variant_seq=G;Reference_seq=A;Genotype=0:0\n"
+                + "1\tdbSNP\tSNV\t400\t400\t.\t+\t.\tID=4;Variant_seq=G,A;Reference_seq=A;Genotype=0|.\n"
+                + "1\tdbSNP\tSNV\t500\t500\t.\t+\t.\tID=5;Variant_seq=G,T;Reference_seq=A;Genotype=0:2\n"
+                + "1\tdbSNP\tSNV\t600\t600\t.\t+\t.\tID=6;Variant_seq=G;Reference_seq=A;Genotype=0:1\n";
+        Files.write(path, gvf.getBytes(StandardCharsets.US_ASCII));
+        GvfReader reader = new GvfReader(new VariantSource(path.toString(), "f", "s", "study"), path.toString());
+        List<Variant> variants = readAll(reader);
+        assertEquals(5, variants.size());
+
+        // Variant_seq positions are translated to allele indexes, and then renumbered for every alternate
+        assertEquals("A", variants.get(0).getAlternate());
+        assertEquals("1/2", variants.get(0).getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+        assertEquals("G", variants.get(1).getAlternate());
+        assertEquals("2/1", variants.get(1).getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+        assertEquals("T", variants.get(2).getAlternate());
+        assertEquals("1/0", variants.get(2).getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+        assertEquals("1/1", variants.get(3).getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+        assertEquals("1|.", variants.get(4).getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+        // Genotypes referring to positions not in Variant_seq make the line malformed
+        assertEquals(2, reader.getMalformedLines());
+    }
+
+    @Test
+    public void idsAreNotShared() throws Exception {
+        Path path = folder.newFile("multiallelic.gvf").toPath();
+        String gvf = "1\tdbSNP\tSNV\t100\t100\t.\t+\t.\tID=1;Variant_seq=C,G;Reference_seq=A;Dbxref=dbSNP:rs1\n";
+        Files.write(path, gvf.getBytes(StandardCharsets.US_ASCII));
+        List<Variant> variants = readAll(path);
+        assertEquals(2, variants.size());
+        variants.get(0).getIds().add("rs2");
+        assertEquals(Collections.singleton("rs1"), variants.get(1).getIds());
+    }
+
+    private static List<Variant> readAll(Path path) {
+        return readAll(new GvfReader(new VariantSource(path.toString(), "f", "s", "study"), path.toString()));
+    }
+
+    private static List<Variant> readAll(GvfReader reader) {
+        reader.open();
+        reader.pre();
+        List<Variant> variants = new ArrayList<>();
+        List<Variant> lineVariants;
+        while ((lineVariants = reader.read()) != null) {
+            variants.addAll(lineVariants);
+        }
+        reader.post();
+        reader.close();
+        return variants;
+    }
+
+}
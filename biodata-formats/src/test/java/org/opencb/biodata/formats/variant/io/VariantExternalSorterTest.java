@@ -0,0 +1,383 @@
+package org.opencb.biodata.formats.variant.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VariantExternalSorterTest {
+
+    @Test
+    public void chromosomeOrder() {
+        List<String> chromosomes = Arrays.asList("chrUn", "10", "Y", "2", "MT", "chr1", "X", "22", "GL000192.1");
+        Collections.sort(chromosomes, new ChromosomeComparator());
+        assertEquals(Arrays.asList("chr1", "2", "10", "22", "X", "Y", "MT", "GL000192.1", "chrUn"), chromosomes);
+
+        String header = "##fileformat=VCFv4.1\n##contig=<ID=X,length=155270560>\n##contig=<ID=2,length=243199373>\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n";
+        chromosomes = Arrays.asList("1", "2", "X", "3");
+        Collections.sort(chromosomes, ChromosomeComparator.fromHeader(header));
+        assertEquals(Arrays.asList("X", "2", "1", "3"), chromosomes);
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        Variant variant = new Variant("1", 1000, 1000, "A", "C");
+        variant.setIds(Collections.singleton("rs123"));
+        VariantSourceEntry file = new VariantSourceEntry("f", "s", new String[]{"G"}, "GT:DP");
+        file.addAttribute("DP", "12");
+        file.addAttribute("AF", "0.5");
+        Map<String, String> sampleData = new HashMap<>();
+        sampleData.put("GT", "0/1");
+        sampleData.put("DP", "5");
+        file.addSampleData("NA001", sampleData);
+        file.addSampleData("NA002", sampleData);
+        variant.addSourceEntry(file);
+        Variant deletion = new Variant("1", 1001, 1002, "AG", "");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (VariantBinaryWriter writer = new VariantBinaryWriter(bytes)) {
+            writer.write(variant);
+            writer.write(deletion);
+        }
+
+        try (VariantBinaryReader reader = new VariantBinaryReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Variant read = reader.read();
+            assertEquals(variant, read);
+            assertEquals(variant.getIds(), read.getIds());
+            assertEquals(variant.getHgvs(), read.getHgvs());
+            VariantSourceEntry readFile = read.getSourceEntry("f", "s");
+            assertEquals("GT:DP", readFile.getFormat());
+            assertArrayEquals(new String[]{"G"}, readFile.getSecondaryAlternates());
+            assertEquals(file.getAttributes(), readFile.getAttributes());
+            assertEquals(file.getSamplesData(), readFile.getSamplesData());
+
+            assertEquals(deletion, reader.read());
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void binaryRoundTripWithStatsAndAnnotation() throws IOException {
+        String inputFile = getClass().getResource("/variant-test-file.vcf.gz").getFile();
+        List<Variant> variants = readAll(inputFile).subList(0, 10);
+        VariantStats.calculateStatsForVariantsList(variants, null);
+        variants.get(0).getAnnotation().setId("annotated");
+        variants.get(1).setAnnotation(null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (VariantBinaryWriter writer = new VariantBinaryWriter(bytes, true)) {
+            for (Variant variant : variants) {
+                writer.write(variant);
+            }
+        }
+
+        try (VariantBinaryReader reader = new VariantBinaryReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (Variant variant : variants) {
+                Variant read = reader.read();
+                assertEquals(variant, read);
+                assertStatsAndAnnotation(variant, read);
+            }
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void sortWithSpilledRuns() throws IOException {
+        String inputFile = getClass().getResource("/variant-test-file.vcf.gz").getFile();
+        List<Variant> expected = readAll(inputFile);
+        Comparator<Variant> comparator = VariantExternalSorter.variantComparator(new ChromosomeComparator());
+        Collections.sort(expected, comparator);
+
+        // Shuffle the input so the sorter has something to do
+        List<Variant> shuffled = new ArrayList<>(expected);
+        Collections.shuffle(shuffled, new Random(7));
+
+        Path tempDirectory = Files.createTempDirectory("sorter-test");
+        try {
+            CollectingWriter writer = new CollectingWriter();
+            VariantExternalSorter sorter = new VariantExternalSorter(new ListReader(shuffled), writer, 64 * 1024, tempDirectory, 3);
+            sorter.setBatchSize(100);
+            assertEquals(expected.size(), sorter.sort());
+
+            assertEquals(expected, writer.variants);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getSourceEntries(), writer.variants.get(i).getSourceEntries());
+            }
+            assertTrue(writer.closed);
+            assertEquals(0, tempDirectory.toFile().list().length);
+        } finally {
+            Files.deleteIfExists(tempDirectory);
+        }
+    }
+
+    @Test
+    public void statsAndAnnotationsAreKept() throws IOException {
+        String inputFile = getClass().getResource("/variant-test-file.vcf.gz").getFile();
+        List<Variant> tinyBudgetOutput = sortWithStatsAndAnnotations(inputFile, 1024, false);
+        List<Variant> largeBudgetOutput = sortWithStatsAndAnnotations(inputFile, VariantExternalSorter.DEFAULT_MEMORY_BUDGET, false);
+
+        assertEquals(largeBudgetOutput, tinyBudgetOutput);
+        for (int i = 0; i < largeBudgetOutput.size(); i++) {
+            Variant large = largeBudgetOutput.get(i);
+            assertEquals("annotated", large.getAnnotation().getId());
+            for (VariantSourceEntry file : large.getSourceEntries().values()) {
+                assertFalse(file.getCohortStats().isEmpty());
+            }
+            assertStatsAndAnnotation(large, tinyBudgetOutput.get(i));
+        }
+    }
+
+    @Test
+    public void statsAndAnnotationsCanBeDiscarded() throws IOException {
+        String inputFile = getClass().getResource("/variant-test-file.vcf.gz").getFile();
+        List<Variant> tinyBudgetOutput = sortWithStatsAndAnnotations(inputFile, 1024, true);
+        List<Variant> largeBudgetOutput = sortWithStatsAndAnnotations(inputFile, VariantExternalSorter.DEFAULT_MEMORY_BUDGET, true);
+
+        assertEquals(largeBudgetOutput, tinyBudgetOutput);
+        for (int i = 0; i < largeBudgetOutput.size(); i++) {
+            Variant tiny = tinyBudgetOutput.get(i);
+            Variant large = largeBudgetOutput.get(i);
+            assertEquals(large.getSourceEntries(), tiny.getSourceEntries());
+            for (VariantSourceEntry file : large.getSourceEntries().values()) {
+                assertTrue(file.getCohortStats().isEmpty());
+                assertTrue(tiny.getSourceEntry(file.getFileId(), file.getStudyId()).getCohortStats().isEmpty());
+            }
+            assertNull(large.getAnnotation().getId());
+            assertNull(tiny.getAnnotation().getId());
+            assertEquals(large.getAnnotation().getStart(), tiny.getAnnotation().getStart());
+        }
+    }
+
+    @Test
+    public void mergeInSeveralPasses() throws IOException {
+        // Variants with the same coordinates, told apart by their IDs, check that the merge passes keep the sort stable
+        List<Variant> input = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Variant variant = new Variant("1", 1000 + (i * 7919) % 50, 1000 + (i * 7919) % 50, "A", "C");
+            variant.setIds(Collections.singleton("v" + i));
+            input.add(variant);
+        }
+        List<Variant> expected = new ArrayList<>(input);
+        Collections.sort(expected, VariantExternalSorter.variantComparator(new ChromosomeComparator()));
+
+        Path tempDirectory = Files.createTempDirectory("sorter-test");
+        try {
+            CollectingWriter writer = new CollectingWriter();
+            VariantExternalSorter sorter = new VariantExternalSorter(new ListReader(input), writer, 4096, tempDirectory, 2);
+            sorter.setBatchSize(10);
+            sorter.setMaxMergeFanIn(3);
+            assertEquals(input.size(), sorter.sort());
+
+            assertEquals(expected.size(), writer.variants.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getIds(), writer.variants.get(i).getIds());
+            }
+            assertEquals(0, tempDirectory.toFile().list().length);
+        } finally {
+            Files.deleteIfExists(tempDirectory);
+        }
+    }
+
+    @Test
+    public void failedSpillRemovesRunFile() throws IOException {
+        List<Variant> input = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            input.add(new Variant("1", 1000 + i, 1000 + i, "A", "C"));
+        }
+        input.set(10, new Variant("1", 1010, 1010, "A", "C") {
+            @Override
+            public Map<String, Set<String>> getHgvs() {
+                throw new IllegalStateException("Unexpected failure");
+            }
+        });
+
+        Path tempDirectory = Files.createTempDirectory("sorter-test");
+        try {
+            VariantExternalSorter sorter = new VariantExternalSorter(new ListReader(input), new CollectingWriter(), 1024, tempDirectory, 1);
+            try {
+                sorter.sort();
+                fail("The failure spilling a run should have been reported");
+            } catch (IOException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertEquals(0, tempDirectory.toFile().list().length);
+        } finally {
+            Files.deleteIfExists(tempDirectory);
+        }
+    }
+
+    private static List<Variant> sortWithStatsAndAnnotations(String inputFile, long memoryBudget, boolean discard) throws IOException {
+        List<Variant> variants = readAll(inputFile);
+        VariantStats.calculateStatsForVariantsList(variants, null);
+        for (Variant variant : variants) {
+            variant.getAnnotation().setId("annotated");
+        }
+        Collections.shuffle(variants, new Random(7));
+
+        Path tempDirectory = Files.createTempDirectory("sorter-test");
+        try {
+            CollectingWriter writer = new CollectingWriter();
+            VariantExternalSorter sorter = new VariantExternalSorter(new ListReader(variants), writer, memoryBudget, tempDirectory, 2);
+            sorter.setBatchSize(100);
+            sorter.setDiscardStatsAndAnnotations(discard);
+            sorter.sort();
+            return writer.variants;
+        } finally {
+            Files.deleteIfExists(tempDirectory);
+        }
+    }
+
+    /**
+     * Neither VariantStats nor VariantAnnotation define equals, so they are compared through their JSON encoding.
+     */
+    private static void assertStatsAndAnnotation(Variant expected, Variant actual) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        assertEquals(mapper.writeValueAsString(expected.getAnnotation()), mapper.writeValueAsString(actual.getAnnotation()));
+        for (VariantSourceEntry file : expected.getSourceEntries().values()) {
+            VariantSourceEntry actualFile = actual.getSourceEntry(file.getFileId(), file.getStudyId());
+            assertEquals(mapper.writeValueAsString(file.getCohortStats()), mapper.writeValueAsString(actualFile.getCohortStats()));
+        }
+    }
+
+    private static List<Variant> readAll(String inputFile) {
+        VariantReader reader = new VariantVcfReader(new VariantSource(inputFile, "test", "test", "Test file"), inputFile);
+        reader.open();
+        reader.pre();
+        List<Variant> variants = new ArrayList<>();
+        List<Variant> batch;
+        while ((batch = reader.read()) != null) {
+            variants.addAll(batch);
+        }
+        reader.post();
+        reader.close();
+        return variants;
+    }
+
+    private static class ListReader implements VariantReader {
+
+        private final List<Variant> variants;
+        private int next;
+
+        ListReader(List<Variant> variants) {
+            this.variants = variants;
+        }
+
+        @Override
+        public List<Variant> read(int batchSize) {
+            List<Variant> batch = new ArrayList<>(variants.subList(next, Math.min(next + batchSize, variants.size())));
+            next += batch.size();
+            return batch;
+        }
+
+        @Override
+        public List<Variant> read() {
+            return next < variants.size() ? Collections.singletonList(variants.get(next++)) : null;
+        }
+
+        @Override
+        public List<String> getSampleNames() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String getHeader() {
+            return "";
+        }
+
+        @Override
+        public boolean open() {
+            return true;
+        }
+
+        @Override
+        public boolean close() {
+            return true;
+        }
+
+        @Override
+        public boolean pre() {
+            return true;
+        }
+
+        @Override
+        public boolean post() {
+            return true;
+        }
+    }
+
+    private static class CollectingWriter implements VariantWriter {
+
+        private final List<Variant> variants = new ArrayList<>();
+        private boolean closed;
+
+        @Override
+        public boolean write(Variant variant) {
+            return variants.add(variant);
+        }
+
+        @Override
+        public boolean write(List<Variant> batch) {
+            return variants.addAll(batch);
+        }
+
+        @Override
+        public void includeStats(boolean stats) {
+        }
+
+        @Override
+        public void includeSamples(boolean samples) {
+        }
+
+        @Override
+        public void includeEffect(boolean effect) {
+        }
+
+        @Override
+        public boolean open() {
+            return true;
+        }
+
+        @Override
+        public boolean close() {
+            closed = true;
+            return true;
+        }
+
+        @Override
+        public boolean pre() {
+            return true;
+        }
+
+        @Override
+        public boolean post() {
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,169 @@
+package org.opencb.biodata.formats.variant.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class VariantMergeReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mergeSameFile() {
+        checkMerge(1);
+    }
+
+    @Test
+    public void mergeSameFileInParallel() {
+        checkMerge(3);
+    }
+
+    @Test
+    public void mergeDisjointAndOverlappingFiles() throws Exception {
+        checkOverlappingMerge(1);
+    }
+
+    @Test
+    public void mergeDisjointAndOverlappingFilesInParallel() throws Exception {
+        checkOverlappingMerge(3);
+    }
+
+    /**
+     * Merges three files sharing some variants, with chromosomes missing in
+     * some of them, a multiallelic line and a deletion that starts after the
+     * position of its line.
+     */
+    private void checkOverlappingMerge(int numThreads) throws Exception {
+        String f1 = writeVcf("f1.vcf",
+                "1\t100\trs1\tA\tC",
+                "1\t300\trs3\tG\tT",
+                "2\t50\trs5\tC\tA",
+                "X\t10\trsX\tT\tG");
+        String f2 = writeVcf("f2.vcf",
+                "1\t100\t.\tA\tC",
+                "1\t200\trs2\tT\tA",
+                "2\t50\trs50\tC\tA",
+                "2\t60\trs6\tAT\tA",
+                "10\t5\trs10\tG\tC");
+        String f3 = writeVcf("f3.vcf",
+                "2\t50\trs5\tC\tA,G",
+                "2\t61\trs61\tT\tC",
+                "3\t20\trs7\tA\tG",
+                "X\t10\trsX\tT\tG");
+
+        VariantReader reader = new VariantMergeReader(Arrays.asList(
+                createReader(f1, "f1"), createReader(f2, "f2"), createReader(f3, "f3")), numThreads);
+        assertTrue(reader.open());
+        assertTrue(reader.pre());
+        List<Variant> merged = new ArrayList<>();
+        List<Variant> variants;
+        while ((variants = reader.read()) != null) {
+            merged.addAll(variants);
+        }
+        assertTrue(reader.post());
+        assertTrue(reader.close());
+
+        assertEquals(10, merged.size());
+        assertMerged(merged.get(0), "1:100:A:C", set("rs1"), "f1", "f2");
+        assertMerged(merged.get(1), "1:200:T:A", set("rs2"), "f2");
+        assertMerged(merged.get(2), "1:300:G:T", set("rs3"), "f1");
+        assertMerged(merged.get(3), "2:50:C:A", set("rs5", "rs50"), "f1", "f2", "f3");
+        assertMerged(merged.get(4), "2:50:C:G", set("rs5"), "f3");
+        assertMerged(merged.get(5), "2:61:T:", set("rs6"), "f2");
+        assertMerged(merged.get(6), "2:61:T:C", set("rs61"), "f3");
+        assertMerged(merged.get(7), "3:20:A:G", set("rs7"), "f3");
+        assertMerged(merged.get(8), "10:5:G:C", set("rs10"), "f2");
+        assertMerged(merged.get(9), "X:10:T:G", set("rsX"), "f1", "f3");
+
+        // Every source entry keeps the data of its own file
+        assertArrayEquals(new String[]{"G"}, merged.get(3).getSourceEntry("f3", "s").getSecondaryAlternates());
+        assertEquals("rs5", merged.get(3).getSourceEntry("f1", "s").getAttribute("src").split("\t")[2]);
+    }
+
+    private static void assertMerged(Variant variant, String key, Set<String> ids, String... fileIds) {
+        assertEquals(key, variant.getChromosome() + ":" + variant.getStart() + ":" + variant.getReference() + ":" + variant.getAlternate());
+        assertEquals(ids, new HashSet<>(variant.getIds()));
+        Set<String> files = new HashSet<>();
+        for (VariantSourceEntry file : variant.getSourceEntries().values()) {
+            files.add(file.getFileId());
+            assertEquals("s", file.getStudyId());
+        }
+        assertEquals(set(fileIds), files);
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private String writeVcf(String name, String... lines) throws Exception {
+        File file = folder.newFile(name);
+        List<String> content = new ArrayList<>();
+        content.add("##fileformat=VCFv4.1");
+        content.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+        for (String line : lines) {
+            content.add(line + "\t.\tPASS\t.");
+        }
+        Files.write(file.toPath(), content, StandardCharsets.UTF_8);
+        return file.getPath();
+    }
+
+    private void checkMerge(int numThreads) {
+        String inputFile = getClass().getResource("/variant-test-file.vcf.gz").getFile();
+
+        Set<String> keys = new LinkedHashSet<>();
+        VariantReader single = createReader(inputFile, "f0");
+        single.open();
+        single.pre();
+        List<Variant> variants;
+        while ((variants = single.read()) != null) {
+            for (Variant variant : variants) {
+                keys.add(variant.getChromosome() + ":" + variant.getStart() + ":" + variant.getReference() + ":" + variant.getAlternate());
+            }
+        }
+        single.post();
+        single.close();
+
+        VariantReader reader = new VariantMergeReader(Arrays.asList(
+                createReader(inputFile, "f1"), createReader(inputFile, "f2"), createReader(inputFile, "f3")), numThreads);
+        assertTrue(reader.open());
+        assertTrue(reader.pre());
+
+        List<String> merged = new ArrayList<>();
+        while ((variants = reader.read()) != null) {
+            Variant variant = variants.get(0);
+            merged.add(variant.getChromosome() + ":" + variant.getStart() + ":" + variant.getReference() + ":" + variant.getAlternate());
+            assertEquals(3, variant.getSourceEntries().size());
+            assertNotNull(variant.getSourceEntry("f2", "s"));
+        }
+
+        assertTrue(reader.post());
+        assertTrue(reader.close());
+        assertEquals(keys.size(), merged.size());
+        assertEquals(keys, new LinkedHashSet<>(merged));
+    }
+
+    private static VariantReader createReader(String inputFile, String fileId) {
+        return new VariantVcfReader(new VariantSource(inputFile, fileId, "s", "Test file"), inputFile);
+    }
+
+}
@@ -0,0 +1,129 @@
+package org.opencb.biodata.formats.variant.maq.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.variant.io.ConsensusVariantReader;
+import org.opencb.biodata.models.feature.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MaqVariantReaderTest {
+
+    private static final String MAQ = "1\t1000\tA\tR\t45\t12\t1.00\t60\t38\tA\t40\tN\n"
+            + "1\t1200\tC\tC\t50\t20\t1.00\t60\t40\tT\t30\tN\n"
+            + "1\t1500\tG\tT\t99\t30\t1.10\t60\t45\tG\t50\tN\n"
+            + "2\t300\tA\tK\t30\t8\t1.00\t55\t20\tG\t10\tN\n"
+            + "2\t400\tA\tN\t0\t0\t0.00\t0\t0\tN\t0\tN\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readMaq() throws Exception {
+        Path path = write("NA12878.snp", MAQ);
+        ConsensusVariantReader reader = new MaqVariantReader(new VariantSource("NA12878.snp", "f", "s", "study"), path.toString());
+        List<Variant> variants = read(reader, 100);
+        assertEquals(Collections.singletonList("NA12878"), reader.getSampleNames());
+        assertEquals(4, variants.size());
+
+        Variant heterozygous = variants.get(0);
+        assertEquals("1", heterozygous.getChromosome());
+        assertEquals(1000, heterozygous.getStart());
+        assertEquals(1000, heterozygous.getEnd());
+        assertEquals("A", heterozygous.getReference());
+        assertEquals("G", heterozygous.getAlternate());
+        assertEquals(Variant.VariantType.SNV, heterozygous.getType());
+        VariantSourceEntry entry = heterozygous.getSourceEntry("f", "s");
+        assertEquals("GT:GQ:DP", entry.getFormat());
+        assertEquals("45", entry.getAttribute("QUAL"));
+        assertEquals("60", entry.getAttribute("MQ"));
+        assertEquals("0/1", entry.getSampleData("NA12878", "GT"));
+        assertEquals("45", entry.getSampleData("NA12878", "GQ"));
+        assertEquals("12", entry.getSampleData("NA12878", "DP"));
+
+        assertEquals("1/1", variants.get(1).getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+
+        // Both alleles of K are different from the reference
+        assertEquals("G", variants.get(2).getAlternate());
+        assertEquals("T", variants.get(3).getAlternate());
+        assertArrayEquals(new String[]{"T"}, variants.get(2).getSourceEntry("f", "s").getSecondaryAlternates());
+        assertArrayEquals(new String[]{"G"}, variants.get(3).getSourceEntry("f", "s").getSecondaryAlternates());
+        assertEquals("1/2", variants.get(3).getSourceEntry("f", "s").getSampleData("NA12878", "GT"));
+    }
+
+    @Test
+    public void readRegionsOfGzippedMaq() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("sample.snp.gz");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(path))) {
+            output.write(MAQ.getBytes(StandardCharsets.US_ASCII));
+        }
+        MaqVariantReader reader = new MaqVariantReader(new VariantSource("sample.snp.gz", "f", "s", "study"), path.toString());
+        reader.addRegions(Arrays.asList(new Region("1", 1400, 1600), new Region("2", 1, 350)));
+        List<Variant> variants = read(reader, 1);
+        assertEquals(3, variants.size());
+        assertEquals(1500, variants.get(0).getStart());
+        assertEquals(300, variants.get(1).getStart());
+        assertEquals(3, reader.getSkippedLines());
+        assertEquals(Collections.singletonList("sample"), reader.getSampleNames());
+    }
+
+    @Test
+    public void skipMalformedLines() throws Exception {
+        Path path = write("malformed.snp", "1\t1000\tA\tR\t45\t12\t1.00\t60\t38\tA\t40\tN\n"
+                + "1\t1100\tAC\tR\t45\t12\t1.00\t60\t38\tA\t40\tN\n"
+                + "1\t1200\tC\n"
+                + "1\tx\tC\tT\t50\t20\t1.00\t60\t40\tT\t30\tN\n"
+                + "1\t1500\tG\tT\t99\t30\t1.10\t60\t45\tG\t50\tN\n");
+        MaqVariantReader reader = new MaqVariantReader(new VariantSource("malformed.snp", "f", "s", "study"), path.toString());
+        assertTrue(reader.open());
+        assertTrue(reader.pre());
+        assertEquals(1000, reader.read().get(0).getStart());
+        assertEquals(1500, reader.read().get(0).getStart());
+        assertNull(reader.read());
+        assertEquals(3, reader.getMalformedLines());
+        reader.close();
+
+        reader = new MaqVariantReader(new VariantSource("malformed.snp", "f", "s", "study"), path.toString());
+        List<Variant> variants = read(reader, 1);
+        assertEquals(2, variants.size());
+        assertEquals(3, reader.getMalformedLines());
+    }
+
+    private Path write(String name, String content) throws Exception {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.US_ASCII));
+        return path;
+    }
+
+    private static List<Variant> read(ConsensusVariantReader reader, int batchSize) {
+        assertTrue(reader.open());
+        assertTrue(reader.pre());
+        List<Variant> variants = new ArrayList<>();
+        List<Variant> batch;
+        while (!(batch = reader.read(batchSize)).isEmpty()) {
+            variants.addAll(batch);
+        }
+        assertNull(reader.read());
+        assertTrue(reader.post());
+        assertTrue(reader.close());
+        return variants;
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.opencb.biodata.formats.variant.soapsnp.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.variant.io.ConsensusVariantReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SoapSnpVariantReaderTest {
+
+    private static final String SOAPSNP = "chr1\t2000\tT\tY\t25\tC\t30\t5\t5\tT\t28\t4\t4\t9\t0.8\t1.0\t1\n"
+            + "chr1\t2100\tG\tA\t70\tA\t35\t15\t15\tN\t0\t0\t0\t15\t1.0\t1.2\t0\n";
+
+    private static final String OLD_SOAPSNP = "chr1\t2000\tT\tY\t25\t30\t5\t5\t28\t4\t4\t9\t1.0\t1\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readSoapSnp() throws Exception {
+        for (String content : Arrays.asList(SOAPSNP, OLD_SOAPSNP)) {
+            Path path = write("sample.cns", content);
+            VariantSource source = new VariantSource("sample.cns", "f", "s", "study");
+            source.setSamples(Collections.singletonList("HG00096"));
+            List<Variant> variants = read(new SoapSnpVariantReader(source, path.toString()), 10);
+
+            Variant variant = variants.get(0);
+            assertEquals("chr1", variant.getChromosome());
+            assertEquals(2000, variant.getStart());
+            assertEquals("T", variant.getReference());
+            assertEquals("C", variant.getAlternate());
+            VariantSourceEntry entry = variant.getSourceEntry("f", "s");
+            assertEquals("25", entry.getAttribute("QUAL"));
+            assertEquals("1.0", entry.getAttribute("CN"));
+            assertTrue(entry.hasAttribute("DB"));
+            assertEquals("0/1", entry.getSampleData("HG00096", "GT"));
+            assertEquals("9", entry.getSampleData("HG00096", "DP"));
+        }
+    }
+
+    private Path write(String name, String content) throws Exception {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.US_ASCII));
+        return path;
+    }
+
+    private static List<Variant> read(ConsensusVariantReader reader, int batchSize) {
+        assertTrue(reader.open());
+        assertTrue(reader.pre());
+        List<Variant> variants = new ArrayList<>();
+        List<Variant> batch;
+        while (!(batch = reader.read(batchSize)).isEmpty()) {
+            variants.addAll(batch);
+        }
+        assertNull(reader.read());
+        assertTrue(reader.post());
+        assertTrue(reader.close());
+        return variants;
+    }
+
+}
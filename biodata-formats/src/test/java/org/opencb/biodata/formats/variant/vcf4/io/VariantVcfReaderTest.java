@@ -6,8 +6,11 @@ import org.opencb.biodata.formats.variant.vcf4.VcfAlternateHeader;
 import org.opencb.biodata.formats.variant.vcf4.VcfFilterHeader;
 import org.opencb.biodata.formats.variant.vcf4.VcfFormatHeader;
 import org.opencb.biodata.formats.variant.vcf4.VcfInfoHeader;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicates;
+import org.opencb.biodata.models.feature.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
 import org.opencb.biodata.models.variant.VariantVcfEVSFactory;
 
 import java.io.BufferedReader;
@@ -15,6 +18,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -178,4 +183,97 @@ public class VariantVcfReaderTest {
         assertTrue(reader.post());
         assertTrue(reader.close());
     }
+
+    @Test
+    public void readWithLinePredicates() throws Exception {
+        String inputFile = writeFilteredAndAnonymousLines(getClass().getResource("/variant-test-file.vcf.gz").getFile());
+        List<Region> regions = Arrays.asList(new Region("1", 1, 10000000), new Region("19", 1, Integer.MAX_VALUE));
+
+        List<Variant> all = readAll(new VariantVcfReader(new VariantSource(inputFile, "test", "test", "Test file"), inputFile));
+        List<Variant> expected = new ArrayList<>();
+        int notPassed = 0;
+        int withoutId = 0;
+        for (Variant variant : all) {
+            VariantSourceEntry file = variant.getSourceEntry("test", "test");
+            String quality = file.getAttribute("QUAL");
+            boolean passed = "PASS".equals(file.getAttribute("FILTER"));
+            boolean hasId = !variant.getIds().isEmpty();
+            notPassed += passed ? 0 : 1;
+            withoutId += hasId ? 0 : 1;
+            if ((regions.get(0).contains(variant.getChromosome(), variant.getStart())
+                    || regions.get(1).contains(variant.getChromosome(), variant.getStart()))
+                    && quality != null && Double.parseDouble(quality) >= 50 && passed && hasId) {
+                expected.add(variant);
+            }
+        }
+        assertTrue(notPassed > 0);
+        assertTrue(withoutId > 0);
+
+        VariantVcfReader reader = new VariantVcfReader(new VariantSource(inputFile, "test", "test", "Test file"), inputFile);
+        reader.addLinePredicate(VcfLinePredicates.inRegions(regions));
+        reader.addLinePredicate(VcfLinePredicates.minQuality(50));
+        reader.addLinePredicate(VcfLinePredicates.filterIn("PASS"));
+        reader.addLinePredicate(VcfLinePredicates.hasId());
+        List<Variant> actual = readAll(reader);
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+        assertTrue(reader.getSkippedLines() > 800);
+
+        // Each predicate on its own skips the lines it should
+        reader = new VariantVcfReader(new VariantSource(inputFile, "test", "test", "Test file"), inputFile);
+        reader.addLinePredicate(VcfLinePredicates.filterIn("PASS"));
+        assertEquals(all.size() - notPassed, readAll(reader).size());
+        assertEquals(notPassed, reader.getSkippedLines());
+
+        reader = new VariantVcfReader(new VariantSource(inputFile, "test", "test", "Test file"), inputFile);
+        reader.addLinePredicate(VcfLinePredicates.hasId());
+        assertEquals(all.size() - withoutId, readAll(reader).size());
+        assertEquals(withoutId, reader.getSkippedLines());
+    }
+
+    /**
+     * Copies a VCF file, replacing the FILTER column of one in every three
+     * lines and removing the ID of one in every five.
+     *
+     * @return The path of the copy
+     */
+    private static String writeFilteredAndAnonymousLines(String inputFile) throws Exception {
+        File tempFile = File.createTempFile("biodata.testLinePredicates", ".vcf");
+        tempFile.deleteOnExit();
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(inputFile))));
+             FileWriter output = new FileWriter(tempFile)) {
+            int dataLines = 0;
+            String line;
+            while ((line = input.readLine()) != null) {
+                if (!line.startsWith("#")) {
+                    String[] fields = line.split("\t", -1);
+                    if (dataLines % 3 == 1) {
+                        fields[6] = "q10";
+                    }
+                    if (dataLines % 5 == 2) {
+                        fields[2] = ".";
+                    }
+                    dataLines++;
+                    line = String.join("\t", fields);
+                }
+                output.write(line);
+                output.write("\n");
+            }
+        }
+        return tempFile.getPath();
+    }
+
+    private static List<Variant> readAll(VariantReader reader) {
+        assertTrue(reader.open());
+        assertTrue(reader.pre());
+        List<Variant> variants = new ArrayList<>();
+        List<Variant> batch;
+        while ((batch = reader.read()) != null) {
+            variants.addAll(batch);
+        }
+        assertTrue(reader.post());
+        assertTrue(reader.close());
+        return variants;
+    }
 }
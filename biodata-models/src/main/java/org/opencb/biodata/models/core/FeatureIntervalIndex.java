@@ -0,0 +1,677 @@
+package org.opencb.biodata.models.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Immutable index of the genes, transcripts and exons of a genome, answering
+ * which features overlap a position or region, or which are the nearest ones.
+ *
+ * Features are partitioned by type and chromosome, and every partition is kept
+ * sorted by start in primitive arrays augmented with the maximum end of an
+ * implicit binary tree, as described in cgranges (Li, H.). Queries return
+ * handles: integers that can be used to get the type, coordinates, identifier
+ * and parent of every feature. Coordinates are 1-based and closed.
+ *
+ * The whole index lives in a single buffer that can be written to a file and
+ * memory-mapped back, without parsing it again. The original Gene, Transcript
+ * and Exon objects are only available in indexes built in memory.
+ */
+public class FeatureIntervalIndex {
+
+	public enum FeatureType { GENE, TRANSCRIPT, EXON }
+
+	private static final int MAGIC = 0x42494458; // BIDX
+	private static final int VERSION = 1;
+	private static final int HEADER_INTS = 4;
+	private static final int PARTITION_INTS = 5;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int STRAND_UNKNOWN = 0;
+	private static final int STRAND_FORWARD = 1;
+	private static final int STRAND_REVERSE = 2;
+
+	private final ByteBuffer buffer;
+	private final int numFeatures;
+
+	private final FeatureType[] partitionTypes;
+	private final int[] partitionOffsets;
+	private final int[] partitionSizes;
+	private final int[] partitionRootLevels;
+	private final Map<String, int[]> partitionsByChromosome;
+	private final String[] chromosomes;
+
+	private final IntBuffer starts;
+	private final IntBuffer ends;
+	private final IntBuffer maxEnds;
+	private final IntBuffer prefixMaxEnds;
+	private final IntBuffer parents;
+	private final IntBuffer flags;
+	private final IntBuffer stringOffsets;
+	private final ByteBuffer stringBytes;
+
+	private final Object[] features;
+
+	private FeatureIntervalIndex(ByteBuffer buffer, Object[] features) {
+		this.buffer = buffer;
+		this.features = features;
+
+		IntBuffer header = slice(buffer, 0, HEADER_INTS * 4).asIntBuffer();
+		if (header.get(0) != MAGIC || header.get(1) != VERSION) {
+			throw new IllegalArgumentException("Not a feature interval index, or unsupported version");
+		}
+		numFeatures = header.get(2);
+		int numPartitions = header.get(3);
+
+		int position = HEADER_INTS * 4;
+		IntBuffer partitions = slice(buffer, position, numPartitions * PARTITION_INTS * 4).asIntBuffer();
+		position += numPartitions * PARTITION_INTS * 4;
+
+		int featureBytes = numFeatures * 4;
+		starts = slice(buffer, position, featureBytes).asIntBuffer();
+		position += featureBytes;
+		ends = slice(buffer, position, featureBytes).asIntBuffer();
+		position += featureBytes;
+		maxEnds = slice(buffer, position, featureBytes).asIntBuffer();
+		position += featureBytes;
+		prefixMaxEnds = slice(buffer, position, featureBytes).asIntBuffer();
+		position += featureBytes;
+		parents = slice(buffer, position, featureBytes).asIntBuffer();
+		position += featureBytes;
+		flags = slice(buffer, position, featureBytes).asIntBuffer();
+		position += featureBytes;
+
+		int numStrings = buffer.getInt(position);
+		position += 4;
+		stringOffsets = slice(buffer, position, (numStrings + 1) * 4).asIntBuffer();
+		position += (numStrings + 1) * 4;
+		stringBytes = slice(buffer, position, stringOffsets.get(numStrings));
+
+		chromosomes = new String[numStrings - numFeatures];
+		for (int i = 0; i < chromosomes.length; i++) {
+			chromosomes[i] = getString(numFeatures + i);
+		}
+
+		partitionTypes = new FeatureType[numPartitions];
+		partitionOffsets = new int[numPartitions];
+		partitionSizes = new int[numPartitions];
+		partitionRootLevels = new int[numPartitions];
+		partitionsByChromosome = new LinkedHashMap<>();
+		for (int p = 0; p < numPartitions; p++) {
+			int base = p * PARTITION_INTS;
+			partitionTypes[p] = FeatureType.values()[partitions.get(base)];
+			String chromosome = chromosomes[partitions.get(base + 1) - numFeatures];
+			partitionOffsets[p] = partitions.get(base + 2);
+			partitionSizes[p] = partitions.get(base + 3);
+			partitionRootLevels[p] = partitions.get(base + 4);
+
+			int[] byType = partitionsByChromosome.get(chromosome);
+			if (byType == null) {
+				byType = new int[FeatureType.values().length];
+				Arrays.fill(byType, -1);
+				partitionsByChromosome.put(chromosome, byType);
+			}
+			byType[partitionTypes[p].ordinal()] = p;
+		}
+	}
+
+	/**
+	 * Builds an index with the genes in the list, their transcripts and the
+	 * exons of those transcripts.
+	 *
+	 * @param genes Genes to index
+	 * @return The index of all the features
+	 */
+	public static FeatureIntervalIndex build(List<Gene> genes) {
+		return new Builder(genes).build();
+	}
+
+	/**
+	 * Loads an index previously saved with write, mapping the file into memory.
+	 *
+	 * @param path File where the index was saved
+	 * @return The index stored in the file
+	 * @throws IOException If the file could not be read
+	 */
+	public static FeatureIntervalIndex load(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new FeatureIntervalIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), null);
+		}
+	}
+
+	/**
+	 * Saves the index into a file that can be loaded with load.
+	 *
+	 * @param path File where the index will be saved
+	 * @throws IOException If the file could not be written
+	 */
+	public void write(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer source = buffer.duplicate();
+			source.clear();
+			while (source.hasRemaining()) {
+				channel.write(source);
+			}
+		}
+	}
+
+	public int size() {
+		return numFeatures;
+	}
+
+	public Set<String> getChromosomes() {
+		return Collections.unmodifiableSet(partitionsByChromosome.keySet());
+	}
+
+	/**
+	 * Gets the features that contain a position.
+	 *
+	 * @param chromosome Chromosome of the position
+	 * @param position Position to search
+	 * @param types Types of the features to search, all of them if none is specified
+	 * @return Handles of the features found, sorted by type and start
+	 */
+	public int[] query(String chromosome, int position, FeatureType... types) {
+		return query(chromosome, position, position, types);
+	}
+
+	/**
+	 * Gets the features that overlap a region.
+	 *
+	 * @param chromosome Chromosome of the region
+	 * @param start First position of the region
+	 * @param end Last position of the region
+	 * @param types Types of the features to search, all of them if none is specified
+	 * @return Handles of the features found, sorted by type and start
+	 */
+	public int[] query(String chromosome, int start, int end, FeatureType... types) {
+		int[] byType = partitionsByChromosome.get(chromosome);
+		IntArray hits = new IntArray();
+		if (byType != null) {
+			for (FeatureType type : (types.length == 0 ? FeatureType.values() : types)) {
+				int partition = byType[type.ordinal()];
+				if (partition >= 0) {
+					overlap(partition, start, end, hits);
+				}
+			}
+		}
+		return hits.toArray();
+	}
+
+	/**
+	 * Gets the k features closest to a position. The distance of the features
+	 * that contain the position is zero. Ties are resolved in handle order.
+	 *
+	 * @param chromosome Chromosome of the position
+	 * @param position Position to search
+	 * @param k Maximum number of features to return
+	 * @param types Types of the features to search, all of them if none is specified
+	 * @return Handles of the features found, from the closest to the farthest one
+	 */
+	public int[] nearest(String chromosome, int position, int k, FeatureType... types) {
+		int[] byType = partitionsByChromosome.get(chromosome);
+		if (byType == null || k <= 0) {
+			return new int[0];
+		}
+
+		// Distance and handle packed in a long, with the farthest feature at the head
+		PriorityQueue<Long> heap = new PriorityQueue<>(k, Collections.<Long>reverseOrder());
+		for (FeatureType type : (types.length == 0 ? FeatureType.values() : types)) {
+			int partition = byType[type.ordinal()];
+			if (partition < 0) {
+				continue;
+			}
+			int offset = partitionOffsets[partition];
+			int size = partitionSizes[partition];
+			int last = lastStartingBefore(offset, size, position);
+
+			// Features starting before the position; their ends are unsorted, so
+			// the scan can only stop when no previous feature ends close enough
+			for (int i = last; i >= 0; i--) {
+				if (heap.size() == k && position - prefixMaxEnds.get(offset + i) > worstDistance(heap)) {
+					break;
+				}
+				int end = ends.get(offset + i);
+				offer(heap, k, end >= position ? 0 : position - end, offset + i);
+			}
+
+			// Features starting after the position, sorted by distance
+			for (int i = last + 1; i < size; i++) {
+				int distance = starts.get(offset + i) - position;
+				if (heap.size() == k && distance > worstDistance(heap)) {
+					break;
+				}
+				offer(heap, k, distance, offset + i);
+			}
+		}
+
+		int[] result = new int[heap.size()];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = (int) (heap.poll() & 0xFFFFFFFFL);
+		}
+		return result;
+	}
+
+	public FeatureType getType(int handle) {
+		return FeatureType.values()[flags.get(handle) & 0x3];
+	}
+
+	public String getId(int handle) {
+		return getString(handle);
+	}
+
+	public String getChromosome(int handle) {
+		return chromosomes[flags.get(handle) >>> 4];
+	}
+
+	public int getStart(int handle) {
+		return starts.get(handle);
+	}
+
+	public int getEnd(int handle) {
+		return ends.get(handle);
+	}
+
+	/**
+	 * @return "+" or "-" for features in the forward or reverse strand, "." if unknown
+	 */
+	public String getStrand(int handle) {
+		switch ((flags.get(handle) >>> 2) & 0x3) {
+			case STRAND_FORWARD:
+				return "+";
+			case STRAND_REVERSE:
+				return "-";
+			default:
+				return ".";
+		}
+	}
+
+	/**
+	 * @return The handle of the gene of a transcript, or of the transcript of an exon; -1 for genes
+	 */
+	public int getParent(int handle) {
+		return parents.get(handle);
+	}
+
+	/**
+	 * @return The indexed gene, or null if the index was loaded from a file
+	 * @throws ClassCastException If the handle does not belong to a gene
+	 */
+	public Gene getGene(int handle) {
+		return features != null ? (Gene) features[handle] : null;
+	}
+
+	/**
+	 * @return The indexed transcript, or null if the index was loaded from a file
+	 * @throws ClassCastException If the handle does not belong to a transcript
+	 */
+	public Transcript getTranscript(int handle) {
+		return features != null ? (Transcript) features[handle] : null;
+	}
+
+	/**
+	 * @return The indexed exon, or null if the index was loaded from a file
+	 * @throws ClassCastException If the handle does not belong to an exon
+	 */
+	public Exon getExon(int handle) {
+		return features != null ? (Exon) features[handle] : null;
+	}
+
+	/**
+	 * Top-down traversal of the implicit tree of a partition, adding the
+	 * overlapping features in start order.
+	 */
+	private void overlap(int partition, int start, int end, IntArray hits) {
+		int offset = partitionOffsets[partition];
+		int size = partitionSizes[partition];
+		if (size == 0) {
+			return;
+		}
+
+		int[] stackLevels = new int[64];
+		int[] stackNodes = new int[64];
+		boolean[] stackLeftDone = new boolean[64];
+		int top = 0;
+		stackLevels[top] = partitionRootLevels[partition];
+		stackNodes[top] = (1 << partitionRootLevels[partition]) - 1;
+		stackLeftDone[top++] = false;
+
+		while (top > 0) {
+			top--;
+			int level = stackLevels[top];
+			int node = stackNodes[top];
+			boolean leftDone = stackLeftDone[top];
+			if (level <= 3) {
+				// Small subtree, all its nodes are scanned linearly
+				int first = node >> level << level;
+				int last = Math.min(first + (1 << (level + 1)) - 1, size);
+				for (int i = first; i < last && starts.get(offset + i) <= end; i++) {
+					if (ends.get(offset + i) >= start) {
+						hits.add(offset + i);
+					}
+				}
+			} else if (!leftDone) {
+				int left = node - (1 << (level - 1));
+				stackLevels[top] = level;
+				stackNodes[top] = node;
+				stackLeftDone[top++] = true;
+				if (left >= size || maxEnds.get(offset + left) >= start) {
+					stackLevels[top] = level - 1;
+					stackNodes[top] = left;
+					stackLeftDone[top++] = false;
+				}
+			} else if (node < size && starts.get(offset + node) <= end) {
+				if (ends.get(offset + node) >= start) {
+					hits.add(offset + node);
+				}
+				stackLevels[top] = level - 1;
+				stackNodes[top] = node + (1 << (level - 1));
+				stackLeftDone[top++] = false;
+			}
+		}
+	}
+
+	/**
+	 * @return The index inside the partition of the last feature starting at or before the position, -1 if none
+	 */
+	private int lastStartingBefore(int offset, int size, int position) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (starts.get(offset + middle) <= position) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low - 1;
+	}
+
+	private static void offer(PriorityQueue<Long> heap, int k, int distance, int handle) {
+		long key = ((long) distance << 32) | handle;
+		if (heap.size() < k) {
+			heap.add(key);
+		} else if (key < heap.peek()) {
+			heap.poll();
+			heap.add(key);
+		}
+	}
+
+	private static long worstDistance(PriorityQueue<Long> heap) {
+		return heap.peek() >>> 32;
+	}
+
+	private String getString(int index) {
+		int from = stringOffsets.get(index);
+		byte[] bytes = new byte[stringOffsets.get(index + 1) - from];
+		ByteBuffer view = stringBytes.duplicate();
+		view.position(from);
+		view.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(position);
+		view.limit(position + length);
+		return view.slice();
+	}
+
+	private static int strandCode(String strand) {
+		if ("+".equals(strand) || "1".equals(strand)) {
+			return STRAND_FORWARD;
+		} else if ("-".equals(strand) || "-1".equals(strand)) {
+			return STRAND_REVERSE;
+		}
+		return STRAND_UNKNOWN;
+	}
+
+	private static class IntArray {
+		private int[] values = new int[16];
+		private int size = 0;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	private static class Feature {
+		final FeatureType type;
+		final int chromosome;
+		final int start;
+		final int end;
+		final int strand;
+		final String id;
+		final Feature parent;
+		final Object source;
+		int handle;
+
+		Feature(FeatureType type, int chromosome, int start, int end, String strand, String id, Feature parent, Object source) {
+			this.type = type;
+			this.chromosome = chromosome;
+			this.start = start;
+			this.end = end;
+			this.strand = strandCode(strand);
+			this.id = id;
+			this.parent = parent;
+			this.source = source;
+		}
+	}
+
+	private static class Builder {
+
+		private static final Comparator<Feature> BY_COORDINATES = new Comparator<Feature>() {
+			@Override
+			public int compare(Feature f1, Feature f2) {
+				if (f1.start != f2.start) {
+					return f1.start < f2.start ? -1 : 1;
+				}
+				return f1.end < f2.end ? -1 : (f1.end == f2.end ? 0 : 1);
+			}
+		};
+
+		private final Map<String, Integer> chromosomeIds = new LinkedHashMap<>();
+		private final Map<Long, List<Feature>> partitions = new HashMap<>();
+
+		Builder(List<Gene> genes) {
+			for (Gene gene : genes) {
+				int chromosome = chromosomeId(gene.getChromosome());
+				Feature geneFeature = add(new Feature(FeatureType.GENE, chromosome, gene.getStart(), gene.getEnd(),
+						gene.getStrand(), gene.getId(), null, gene));
+				if (gene.getTranscripts() == null) {
+					continue;
+				}
+				for (Transcript transcript : gene.getTranscripts()) {
+					Feature transcriptFeature = add(new Feature(FeatureType.TRANSCRIPT,
+							transcript.getChromosome() != null ? chromosomeId(transcript.getChromosome()) : chromosome,
+							transcript.getStart(), transcript.getEnd(), transcript.getStrand(), transcript.getId(),
+							geneFeature, transcript));
+					if (transcript.getExons() == null) {
+						continue;
+					}
+					for (Exon exon : transcript.getExons()) {
+						add(new Feature(FeatureType.EXON,
+								exon.getChromosome() != null ? chromosomeId(exon.getChromosome()) : transcriptFeature.chromosome,
+								exon.getStart(), exon.getEnd(), exon.getStrand(), exon.getId(), transcriptFeature, exon));
+					}
+				}
+			}
+		}
+
+		private int chromosomeId(String chromosome) {
+			if (chromosome == null) {
+				throw new IllegalArgumentException("Features without chromosome can't be indexed");
+			}
+			Integer id = chromosomeIds.get(chromosome);
+			if (id == null) {
+				id = chromosomeIds.size();
+				chromosomeIds.put(chromosome, id);
+			}
+			return id;
+		}
+
+		private Feature add(Feature feature) {
+			long key = ((long) feature.type.ordinal() << 32) | feature.chromosome;
+			List<Feature> partition = partitions.get(key);
+			if (partition == null) {
+				partition = new ArrayList<>();
+				partitions.put(key, partition);
+			}
+			partition.add(feature);
+			return feature;
+		}
+
+		FeatureIntervalIndex build() {
+			// Partitions are laid out by type and then by chromosome, in order of appearance
+			List<List<Feature>> sortedPartitions = new ArrayList<>();
+			for (FeatureType type : FeatureType.values()) {
+				for (int chromosome = 0; chromosome < chromosomeIds.size(); chromosome++) {
+					List<Feature> partition = partitions.get(((long) type.ordinal() << 32) | chromosome);
+					if (partition != null) {
+						Collections.sort(partition, BY_COORDINATES);
+						sortedPartitions.add(partition);
+					}
+				}
+			}
+
+			List<Feature> all = new ArrayList<>();
+			for (List<Feature> partition : sortedPartitions) {
+				for (Feature feature : partition) {
+					feature.handle = all.size();
+					all.add(feature);
+				}
+			}
+
+			int n = all.size();
+			int[] starts = new int[n];
+			int[] ends = new int[n];
+			int[] maxEnds = new int[n];
+			int[] prefixMaxEnds = new int[n];
+			int[] parents = new int[n];
+			int[] flags = new int[n];
+			Object[] sources = new Object[n];
+			for (int i = 0; i < n; i++) {
+				Feature feature = all.get(i);
+				starts[i] = feature.start;
+				ends[i] = feature.end;
+				parents[i] = feature.parent != null ? feature.parent.handle : -1;
+				flags[i] = feature.type.ordinal() | (feature.strand << 2) | (feature.chromosome << 4);
+				sources[i] = feature.source;
+			}
+
+			int[] partitionInts = new int[sortedPartitions.size() * PARTITION_INTS];
+			int offset = 0;
+			for (int p = 0; p < sortedPartitions.size(); p++) {
+				List<Feature> partition = sortedPartitions.get(p);
+				Feature first = partition.get(0);
+				partitionInts[p * PARTITION_INTS] = first.type.ordinal();
+				partitionInts[p * PARTITION_INTS + 1] = n + first.chromosome;
+				partitionInts[p * PARTITION_INTS + 2] = offset;
+				partitionInts[p * PARTITION_INTS + 3] = partition.size();
+				partitionInts[p * PARTITION_INTS + 4] = index(ends, maxEnds, offset, partition.size());
+
+				int max = Integer.MIN_VALUE;
+				for (int i = offset; i < offset + partition.size(); i++) {
+					max = Math.max(max, ends[i]);
+					prefixMaxEnds[i] = max;
+				}
+				offset += partition.size();
+			}
+
+			// Identifiers of the features followed by the names of the chromosomes
+			List<byte[]> strings = new ArrayList<>(n + chromosomeIds.size());
+			for (Feature feature : all) {
+				strings.add(feature.id != null ? feature.id.getBytes(UTF8) : new byte[0]);
+			}
+			for (String chromosome : chromosomeIds.keySet()) {
+				strings.add(chromosome.getBytes(UTF8));
+			}
+			int[] stringOffsets = new int[strings.size() + 1];
+			for (int i = 0; i < strings.size(); i++) {
+				stringOffsets[i + 1] = stringOffsets[i] + strings.get(i).length;
+			}
+
+			int size = (HEADER_INTS + partitionInts.length + 6 * n + 1 + stringOffsets.length) * 4
+					+ stringOffsets[strings.size()];
+			ByteBuffer buffer = ByteBuffer.allocate(size);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(sortedPartitions.size());
+			putInts(buffer, partitionInts);
+			putInts(buffer, starts);
+			putInts(buffer, ends);
+			putInts(buffer, maxEnds);
+			putInts(buffer, prefixMaxEnds);
+			putInts(buffer, parents);
+			putInts(buffer, flags);
+			buffer.putInt(strings.size());
+			putInts(buffer, stringOffsets);
+			for (byte[] string : strings) {
+				buffer.put(string);
+			}
+			buffer.clear();
+
+			return new FeatureIntervalIndex(buffer, sources);
+		}
+
+		/**
+		 * Fills the maximum ends of the implicit binary tree over the sorted
+		 * features of a partition. Leaves are in even positions, and a node at
+		 * level k is in a position whose k lowest bits are set.
+		 *
+		 * @return The level of the root of the tree
+		 */
+		private static int index(int[] ends, int[] maxEnds, int offset, int n) {
+			int lastIndex = 0;
+			int last = 0;
+			for (int i = 0; i < n; i += 2) {
+				lastIndex = i;
+				last = maxEnds[offset + i] = ends[offset + i];
+			}
+			int k;
+			for (k = 1; 1L << k <= n; k++) {
+				int x = 1 << (k - 1);
+				int first = (x << 1) - 1;
+				int step = x << 2;
+				for (int i = first; i < n; i += step) {
+					int leftEnd = maxEnds[offset + i - x];
+					int rightEnd = i + x < n ? maxEnds[offset + i + x] : last;
+					maxEnds[offset + i] = Math.max(ends[offset + i], Math.max(leftEnd, rightEnd));
+				}
+				lastIndex = ((lastIndex >> k) & 1) != 0 ? lastIndex - x : lastIndex + x;
+				if (lastIndex < n && maxEnds[offset + lastIndex] > last) {
+					last = maxEnds[offset + lastIndex];
+				}
+			}
+			return k - 1;
+		}
+
+		private static void putInts(ByteBuffer buffer, int[] values) {
+			buffer.asIntBuffer().put(values);
+			buffer.position(buffer.position() + values.length * 4);
+		}
+	}
+
+}
@@ -0,0 +1,472 @@
+package org.opencb.biodata.models.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Immutable nucleotide sequence stored in 2 bits per base, 32 bases in every
+ * long, so a whole human reference takes about 800 MB instead of the 6 GB of
+ * its Strings.
+ *
+ * Chars other than A, C, G and T, like N or IUPAC codes, are kept apart as
+ * runs of the same char, which is cheap for the long runs of N of reference
+ * genomes. Bases are stored in upper case, so soft-masking is lost.
+ *
+ * Positions start at 0 and ranges exclude their end, like in String.
+ */
+public final class PackedSequence implements CharSequence, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final long GC_MASK = 0x5555555555555555L;
+	private static final char[] BASES = {'A', 'C', 'G', 'T'};
+	private static final byte[] CODES = new byte[128];
+	private static final char[] COMPLEMENTS = new char[128];
+
+	static {
+		Arrays.fill(CODES, (byte) -1);
+		for (int i = 0; i < BASES.length; i++) {
+			CODES[BASES[i]] = (byte) i;
+			CODES[Character.toLowerCase(BASES[i])] = (byte) i;
+		}
+		for (int i = 0; i < COMPLEMENTS.length; i++) {
+			COMPLEMENTS[i] = (char) i;
+		}
+		String iupac = "ATCGRYKMBVDHSSWWNN";
+		for (int i = 0; i < iupac.length(); i += 2) {
+			COMPLEMENTS[iupac.charAt(i)] = iupac.charAt(i + 1);
+			COMPLEMENTS[iupac.charAt(i + 1)] = iupac.charAt(i);
+		}
+	}
+
+	private final long[] bits;
+	private final int length;
+
+	// Runs of the same char other than A, C, G and T, sorted by start. Their bases are stored as A in the bits
+	private final int[] runStarts;
+	private final int[] runLengths;
+	private final char[] runChars;
+
+	private PackedSequence(long[] bits, int length, int[] runStarts, int[] runLengths, char[] runChars) {
+		this.bits = bits;
+		this.length = length;
+		this.runStarts = runStarts;
+		this.runLengths = runLengths;
+		this.runChars = runChars;
+	}
+
+	/**
+	 * @param sequence Sequence of ASCII chars, like those returned by Fasta.getSeq or SequenceDBAdaptor.getSequence
+	 * @return The packed sequence
+	 */
+	public static PackedSequence valueOf(CharSequence sequence) {
+		return new Builder(sequence.length()).append(sequence).build();
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		checkIndex(index);
+		int run = runAt(index);
+		if (run >= 0) {
+			return runChars[run];
+		}
+		return BASES[code(index)];
+	}
+
+	/**
+	 * @return The base in a position as 0, 1, 2 or 3 for A, C, G and T, or -1 for any other char
+	 */
+	public int getCode(int index) {
+		checkIndex(index);
+		return runAt(index) >= 0 ? -1 : code(index);
+	}
+
+	private int code(int index) {
+		return (int) (bits[index >>> 5] >>> ((index & 31) << 1)) & 3;
+	}
+
+	/**
+	 * @return The run of other chars containing a position, or -1 if it is not in any
+	 */
+	private int runAt(int index) {
+		if (runStarts.length == 0) {
+			return -1;
+		}
+		int run = lastRunStartingBefore(index + 1);
+		return run >= 0 && index < runStarts[run] + runLengths[run] ? run : -1;
+	}
+
+	/**
+	 * @return The last run starting before a position, or -1 if there is none
+	 */
+	private int lastRunStartingBefore(int position) {
+		int run = Arrays.binarySearch(runStarts, position);
+		return run >= 0 ? run - 1 : -run - 2;
+	}
+
+	/**
+	 * Copies a region without decoding it, shifting whole words.
+	 */
+	@Override
+	public PackedSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Invalid region [" + start + ", " + end + ") of a sequence of length " + length);
+		}
+		int newLength = end - start;
+		long[] newBits = new long[words(newLength)];
+		for (int i = 0; i < newBits.length; i++) {
+			newBits[i] = window((long) start + 32L * i);
+		}
+		clearTail(newBits, newLength);
+
+		int first = Math.max(0, lastRunStartingBefore(start + 1));
+		int count = 0;
+		int[] starts = new int[runStarts.length - first];
+		int[] lengths = new int[starts.length];
+		char[] chars = new char[starts.length];
+		for (int run = first; run < runStarts.length && runStarts[run] < end; run++) {
+			int runStart = Math.max(runStarts[run], start);
+			int runEnd = Math.min(runStarts[run] + runLengths[run], end);
+			if (runStart < runEnd) {
+				starts[count] = runStart - start;
+				lengths[count] = runEnd - runStart;
+				chars[count] = runChars[run];
+				count++;
+			}
+		}
+		return new PackedSequence(newBits, newLength, Arrays.copyOf(starts, count), Arrays.copyOf(lengths, count),
+				Arrays.copyOf(chars, count));
+	}
+
+	/**
+	 * Complements every base and reverses their order, 32 bases at a time. IUPAC codes are complemented too.
+	 */
+	public PackedSequence reverseComplement() {
+		long[] newBits = new long[bits.length];
+		for (int i = 0; i < newBits.length; i++) {
+			// Bases of the new word i, in the reverse order
+			long word = window((long) length - 32L * (i + 1));
+			newBits[i] = ~reverse(word);
+		}
+		clearTail(newBits, length);
+
+		int runs = runStarts.length;
+		int[] starts = new int[runs];
+		int[] lengths = new int[runs];
+		char[] chars = new char[runs];
+		for (int i = 0; i < runs; i++) {
+			int run = runs - 1 - i;
+			starts[i] = length - runStarts[run] - runLengths[run];
+			lengths[i] = runLengths[run];
+			chars[i] = runChars[run] < COMPLEMENTS.length ? COMPLEMENTS[runChars[run]] : runChars[run];
+			// The complement of the A stored for them is T, so they are cleared
+			clear(newBits, starts[i], starts[i] + lengths[i]);
+		}
+		return new PackedSequence(newBits, length, starts, lengths, chars);
+	}
+
+	/**
+	 * @return The number of G and C bases
+	 */
+	public long getGcCount() {
+		return getGcCount(0, length);
+	}
+
+	/**
+	 * @return The number of G and C bases in a region
+	 */
+	public long getGcCount(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Invalid region [" + start + ", " + end + ") of a sequence of length " + length);
+		}
+		long count = 0;
+		for (long position = start; position < end; position += 32) {
+			long word = window(position);
+			// C (01) and G (10) are the only codes with different bits
+			long gc = (word ^ (word >>> 1)) & GC_MASK;
+			if (end - position < 32) {
+				gc &= (1L << ((end - position) << 1)) - 1;
+			}
+			count += Long.bitCount(gc);
+		}
+		return count;
+	}
+
+	/**
+	 * @return The fraction of G and C among the A, C, G and T bases, NaN if there are none
+	 */
+	public double getGcContent() {
+		return getGcContent(0, length);
+	}
+
+	/**
+	 * @return The fraction of G and C among the A, C, G and T bases of a region, NaN if there are none
+	 */
+	public double getGcContent(int start, int end) {
+		long others = 0;
+		for (int run = Math.max(0, lastRunStartingBefore(start + 1)); run < runStarts.length && runStarts[run] < end; run++) {
+			others += Math.max(0, Math.min(runStarts[run] + runLengths[run], end) - Math.max(runStarts[run], start));
+		}
+		return (double) getGcCount(start, end) / (end - start - others);
+	}
+
+	/**
+	 * @return The number of chars other than A, C, G and T
+	 */
+	public long getOtherCount() {
+		long count = 0;
+		for (int runLength : runLengths) {
+			count += runLength;
+		}
+		return count;
+	}
+
+	/**
+	 * @param k Bases of every k-mer, between 1 and 32
+	 * @return An iterator over all the k-mers with only A, C, G and T, encoded as getCode in 2 bits per base
+	 */
+	public KmerIterator kmers(int k) {
+		return new KmerIterator(k);
+	}
+
+	/**
+	 * @return A k-mer returned by a KmerIterator as a String
+	 */
+	public static String decodeKmer(long kmer, int k) {
+		char[] chars = new char[k];
+		for (int i = k - 1; i >= 0; i--) {
+			chars[i] = BASES[(int) (kmer & 3)];
+			kmer >>>= 2;
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return The 32 bases starting at a position, with A outside of the sequence
+	 */
+	private long window(long start) {
+		long word = start >> 5;
+		int shift = (int) (start & 31) << 1;
+		long low = wordAt(word) >>> shift;
+		return shift == 0 ? low : low | wordAt(word + 1) << (64 - shift);
+	}
+
+	private long wordAt(long index) {
+		return index >= 0 && index < bits.length ? bits[(int) index] : 0;
+	}
+
+	/**
+	 * Reverses the order of the 32 bases of a word.
+	 */
+	private static long reverse(long word) {
+		word = ((word >>> 2) & 0x3333333333333333L) | ((word & 0x3333333333333333L) << 2);
+		word = ((word >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((word & 0x0F0F0F0F0F0F0F0FL) << 4);
+		return Long.reverseBytes(word);
+	}
+
+	private static int words(int length) {
+		return (int) (((long) length + 31) >>> 5);
+	}
+
+	/**
+	 * Sets to A the bits after the end of the sequence, so sequences with the same bases have the same bits.
+	 */
+	private static void clearTail(long[] bits, int length) {
+		if ((length & 31) != 0) {
+			bits[bits.length - 1] &= (1L << ((length & 31) << 1)) - 1;
+		}
+	}
+
+	private static void clear(long[] bits, int start, int end) {
+		for (int position = start; position < end; ) {
+			int offset = position & 31;
+			int count = Math.min(32 - offset, end - position);
+			long mask = count == 32 ? -1L : ((1L << (count << 1)) - 1) << (offset << 1);
+			bits[position >>> 5] &= ~mask;
+			position += count;
+		}
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Position " + index + " out of a sequence of length " + length);
+		}
+	}
+
+	@Override
+	public String toString() {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = BASES[code(i)];
+		}
+		for (int run = 0; run < runStarts.length; run++) {
+			Arrays.fill(chars, runStarts[run], runStarts[run] + runLengths[run], runChars[run]);
+		}
+		return new String(chars);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof PackedSequence)) {
+			return false;
+		}
+		PackedSequence other = (PackedSequence) o;
+		return length == other.length && Arrays.equals(bits, other.bits) && Arrays.equals(runStarts, other.runStarts)
+				&& Arrays.equals(runLengths, other.runLengths) && Arrays.equals(runChars, other.runChars);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(bits) + length;
+	}
+
+	/**
+	 * Iterates over the k-mers of a sequence skipping those with chars other
+	 * than A, C, G and T. Every k-mer is computed from the previous one.
+	 */
+	public class KmerIterator {
+		private final int k;
+		private final long mask;
+		private int position;
+		private int nextRun;
+		private int valid;
+		private long kmer;
+
+		private KmerIterator(int k) {
+			if (k < 1 || k > 32) {
+				throw new IllegalArgumentException("K-mers must have between 1 and 32 bases, not " + k);
+			}
+			this.k = k;
+			this.mask = k == 32 ? -1L : (1L << (k << 1)) - 1;
+		}
+
+		/**
+		 * @return Whether there was another k-mer
+		 */
+		public boolean next() {
+			while (position < length) {
+				if (nextRun < runStarts.length && position == runStarts[nextRun]) {
+					position += runLengths[nextRun++];
+					valid = 0;
+					continue;
+				}
+				kmer = ((kmer << 2) | code(position++)) & mask;
+				if (++valid >= k) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return The current k-mer, 2 bits per base with the first base in the highest bits
+		 */
+		public long getKmer() {
+			return kmer;
+		}
+
+		/**
+		 * @return Position of the first base of the current k-mer
+		 */
+		public int getPosition() {
+			return position - k;
+		}
+	}
+
+	/**
+	 * Packs a sequence as it is read, so the whole sequence is never kept as chars.
+	 */
+	public static class Builder {
+		private long[] bits;
+		private int length;
+		private int[] runStarts;
+		private int[] runLengths;
+		private char[] runChars;
+		private int runs;
+
+		public Builder() {
+			this(1024);
+		}
+
+		/**
+		 * @param capacity Expected number of bases
+		 */
+		public Builder(int capacity) {
+			this.bits = new long[Math.max(1, words(capacity))];
+			this.runStarts = new int[4];
+			this.runLengths = new int[4];
+			this.runChars = new char[4];
+		}
+
+		public Builder append(CharSequence sequence) {
+			for (int i = 0; i < sequence.length(); i++) {
+				append(sequence.charAt(i));
+			}
+			return this;
+		}
+
+		/**
+		 * Appends ASCII chars, skipping new lines, so lines of a FASTA file can be appended directly.
+		 */
+		public Builder append(byte[] bytes, int offset, int length) {
+			for (int i = offset; i < offset + length; i++) {
+				byte b = bytes[i];
+				if (b != '\n' && b != '\r') {
+					append((char) (b & 0xFF));
+				}
+			}
+			return this;
+		}
+
+		public Builder append(char c) {
+			if (length == Integer.MAX_VALUE) {
+				throw new IllegalStateException("Sequences can't be longer than " + Integer.MAX_VALUE);
+			}
+			if ((length >>> 5) == bits.length) {
+				bits = Arrays.copyOf(bits, (int) Math.min(2L * bits.length, words(Integer.MAX_VALUE)));
+			}
+			int code = c < CODES.length ? CODES[c] : -1;
+			if (code > 0) {
+				bits[length >>> 5] |= (long) code << ((length & 31) << 1);
+			} else if (code < 0) {
+				addOther(Character.toUpperCase(c));
+			}
+			length++;
+			return this;
+		}
+
+		private void addOther(char c) {
+			if (runs > 0 && runChars[runs - 1] == c && runStarts[runs - 1] + runLengths[runs - 1] == length) {
+				runLengths[runs - 1]++;
+				return;
+			}
+			if (runs == runStarts.length) {
+				runStarts = Arrays.copyOf(runStarts, 2 * runs);
+				runLengths = Arrays.copyOf(runLengths, 2 * runs);
+				runChars = Arrays.copyOf(runChars, 2 * runs);
+			}
+			runStarts[runs] = length;
+			runLengths[runs] = 1;
+			runChars[runs] = c;
+			runs++;
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public PackedSequence build() {
+			return new PackedSequence(Arrays.copyOf(bits, words(length)), length, Arrays.copyOf(runStarts, runs),
+					Arrays.copyOf(runLengths, runs), Arrays.copyOf(runChars, runs));
+		}
+	}
+
+}
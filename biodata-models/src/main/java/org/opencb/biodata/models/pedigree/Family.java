@@ -55,6 +55,10 @@ public class Family {
         this.mother = mother;
     }
 
+    public Set<Individual> getChildren() {
+        return children;
+    }
+
     public void addChild(Individual ind) {
         this.children.add(ind);
     }
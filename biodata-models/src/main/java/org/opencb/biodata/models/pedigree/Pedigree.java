@@ -84,35 +84,22 @@ public class Pedigree {
 
     public List<Family> getFamiliesTDT() {
 
-        List<Family> families = new ArrayList<>();
+        // Families are indexed by their parents so large pedigrees are not traversed once per individual
+        Map<String, Family> families = new LinkedHashMap<>();
         Individual ind;
 
         for (Map.Entry<String, Individual> entry : this.individuals.entrySet()) {
             ind = entry.getValue();
             if (ind.getFather() != null && ind.getMother() != null) {
-                addIndividualToFamily(ind, ind.getFather(), ind.getMother(), families);
-            }
-        }
-        return families;
-    }
-
-    private void addIndividualToFamily(Individual ind, Individual father, Individual mother, List<Family> families) {
-        boolean b = false;
-
-        Iterator<Family> it = families.iterator();
-        Family fam;
-
-        while (it.hasNext() && !b) {
-            fam = it.next();
-            if (fam.getFather().equals(father) && fam.getMother().equals(mother)) {
+                String parentsKey = ind.getFather().getId() + "\t" + ind.getMother().getId();
+                Family fam = families.get(parentsKey);
+                if (fam == null) {
+                    fam = new Family(ind.getFather(), ind.getMother());
+                    families.put(parentsKey, fam);
+                }
                 fam.addChild(ind);
-                b = true;
             }
         }
-        if (!b) {
-            fam = new Family(father, mother);
-            fam.addChild(ind);
-            families.add(fam);
-        }
+        return new ArrayList<>(families.values());
     }
 }
@@ -0,0 +1,192 @@
+package org.opencb.biodata.models.variant;
+
+/**
+ * Encodes the chromosome, start, reference and alternate of a variant in a
+ * single long, so variants can be compared, hashed and joined without building
+ * composite Strings.
+ *
+ * Variants in the usual chromosomes (1-22, X, Y, MT and M, with or without the
+ * "chr" prefix), starting before position 2^28 and whose alleles are made of
+ * A, C, G and T with up to 7 bases each and 11 between both, are packed
+ * without loss of information: the chromosome ordinal, start and 2-bit
+ * encoded alleles can be decoded back, and the natural order of the keys is
+ * the genomic order. Any other variant gets a 63-bit hash with the sign bit
+ * set. Hashed keys can't be decoded, and two different variants may share one
+ * with a negligible probability.
+ */
+public final class VariantKey {
+
+    private static final String[] CHROMOSOMES = {
+        "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15", "16",
+        "17", "18", "19", "20", "21", "22", "X", "Y", "MT", "M"
+    };
+    private static final int CHR_PREFIX_OFFSET = 32;
+
+    private static final long HASHED = Long.MIN_VALUE;
+    private static final int CHROMOSOME_SHIFT = 57;
+    private static final int POSITION_SHIFT = 29;
+    private static final int MAX_POSITION = (1 << 28) - 1;
+    private static final int REFERENCE_LENGTH_SHIFT = 25;
+    private static final int ALTERNATE_LENGTH_SHIFT = 22;
+    private static final int MAX_ALLELE_LENGTH = 7;
+    private static final int MAX_BASES = 11;
+    private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+    private VariantKey() { }
+
+    public static long of(Variant variant) {
+        return of(variant.getChromosome(), variant.getStart(), variant.getReference(), variant.getAlternate());
+    }
+
+    public static long of(String chromosome, int start, String reference, String alternate) {
+        int ordinal = chromosomeOrdinal(chromosome);
+        if (ordinal > 0 && start >= 0 && start <= MAX_POSITION
+                && reference.length() <= MAX_ALLELE_LENGTH && alternate.length() <= MAX_ALLELE_LENGTH
+                && reference.length() + alternate.length() <= MAX_BASES) {
+            long bases = 0;
+            int packed = packBases(reference, 0);
+            if (packed >= 0) {
+                bases = packed;
+                packed = packBases(alternate, 0);
+                if (packed >= 0) {
+                    bases = (bases << (2 * alternate.length())) | packed;
+                    // Bases are aligned to the most significant bits of their 22-bit field
+                    bases <<= 2 * (MAX_BASES - reference.length() - alternate.length());
+                    return ((long) ordinal << CHROMOSOME_SHIFT)
+                            | ((long) start << POSITION_SHIFT)
+                            | ((long) reference.length() << REFERENCE_LENGTH_SHIFT)
+                            | ((long) alternate.length() << ALTERNATE_LENGTH_SHIFT)
+                            | bases;
+                }
+            }
+        }
+        return hash(chromosome, start, reference, alternate);
+    }
+
+    /**
+     * @return Whether a key is a hash that can't be decoded
+     */
+    public static boolean isHashed(long key) {
+        return key < 0;
+    }
+
+    public static String getChromosome(long key) {
+        checkPacked(key);
+        int ordinal = (int) (key >>> CHROMOSOME_SHIFT);
+        return ordinal > CHR_PREFIX_OFFSET
+                ? "chr" + CHROMOSOMES[ordinal - CHR_PREFIX_OFFSET - 1] : CHROMOSOMES[ordinal - 1];
+    }
+
+    public static int getStart(long key) {
+        checkPacked(key);
+        return (int) ((key >>> POSITION_SHIFT) & MAX_POSITION);
+    }
+
+    public static String getReference(long key) {
+        checkPacked(key);
+        return unpackBases(key, 0, referenceLength(key));
+    }
+
+    public static String getAlternate(long key) {
+        checkPacked(key);
+        return unpackBases(key, referenceLength(key), (int) ((key >>> ALTERNATE_LENGTH_SHIFT) & 0x7));
+    }
+
+    /**
+     * @return The ordinal of a chromosome in packed keys, or 0 if it can't be packed
+     */
+    public static int chromosomeOrdinal(String chromosome) {
+        int offset = 0;
+        String name = chromosome;
+        if (chromosome.length() > 3 && chromosome.startsWith("chr")) {
+            offset = CHR_PREFIX_OFFSET;
+            name = chromosome.substring(3);
+        }
+        int length = name.length();
+        if (length == 1 || length == 2) {
+            char c0 = name.charAt(0);
+            if (c0 >= '1' && c0 <= '9') {
+                int number = c0 - '0';
+                if (length == 2) {
+                    char c1 = name.charAt(1);
+                    if (c1 < '0' || c1 > '9') {
+                        return 0;
+                    }
+                    number = number * 10 + (c1 - '0');
+                }
+                return number <= 22 ? offset + number : 0;
+            }
+            for (int i = 22; i < CHROMOSOMES.length; i++) {
+                if (CHROMOSOMES[i].equals(name)) {
+                    return offset + i + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static int referenceLength(long key) {
+        return (int) ((key >>> REFERENCE_LENGTH_SHIFT) & 0x7);
+    }
+
+    private static int packBases(String allele, int initial) {
+        int packed = initial;
+        for (int i = 0; i < allele.length(); i++) {
+            int code;
+            switch (allele.charAt(i)) {
+                case 'A': code = 0; break;
+                case 'C': code = 1; break;
+                case 'G': code = 2; break;
+                case 'T': code = 3; break;
+                default: return -1;
+            }
+            packed = (packed << 2) | code;
+        }
+        return packed;
+    }
+
+    private static String unpackBases(long key, int offset, int length) {
+        char[] bases = new char[length];
+        for (int i = 0; i < length; i++) {
+            int shift = 2 * (MAX_BASES - 1 - offset - i);
+            bases[i] = BASES[(int) ((key >>> shift) & 0x3)];
+        }
+        return new String(bases);
+    }
+
+    private static void checkPacked(long key) {
+        if (isHashed(key)) {
+            throw new IllegalArgumentException("Hashed variant keys can't be decoded");
+        }
+    }
+
+    private static long hash(String chromosome, int start, String reference, String alternate) {
+        long hash = 0xcbf29ce484222325L;
+        hash = hash(hash, chromosome);
+        hash = (hash ^ start) * 0x100000001b3L;
+        hash = hash(hash, reference);
+        hash = hash(hash, alternate);
+        return HASHED | (mix(hash) & Long.MAX_VALUE);
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        // Separator, so that ("AC", "G") and ("A", "CG") don't collide
+        return (hash ^ 0xff) * 0x100000001b3L;
+    }
+
+    /**
+     * Finalization step of MurmurHash3, spreading the entropy of the key over all the bits.
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+}
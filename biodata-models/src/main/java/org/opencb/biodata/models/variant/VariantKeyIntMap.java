@@ -0,0 +1,198 @@
+package org.opencb.biodata.models.variant;
+
+import java.util.Arrays;
+
+/**
+ * Map from variant keys (see VariantKey) to int values, stored in primitive
+ * arrays with open addressing and linear probing, so neither keys nor values
+ * are boxed.
+ *
+ * This class is not thread-safe.
+ */
+public class VariantKeyIntMap {
+
+    private static final long FREE = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final int noEntryValue;
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    // The key used to mark free slots is stored apart
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    public VariantKeyIntMap() {
+        this(16, -1);
+    }
+
+    /**
+     * @param expectedSize Number of entries the map should hold without being resized
+     * @param noEntryValue Value returned when a key is not present
+     */
+    public VariantKeyIntMap(int expectedSize, int noEntryValue) {
+        this.noEntryValue = noEntryValue;
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int get(long key) {
+        if (key == FREE) {
+            return hasFreeKey ? freeKeyValue : noEntryValue;
+        }
+        int slot = slot(key);
+        return keys[slot] == key ? values[slot] : noEntryValue;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE) {
+            return hasFreeKey;
+        }
+        return keys[slot(key)] == key;
+    }
+
+    /**
+     * @return The previous value associated to the key, or the no-entry value if there was none
+     */
+    public int put(long key, int value) {
+        if (key == FREE) {
+            int previous = hasFreeKey ? freeKeyValue : noEntryValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return previous;
+        }
+
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            int previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length * 2);
+        }
+        return noEntryValue;
+    }
+
+    /**
+     * Adds a value to the one associated to a key, which is considered 0 if not present.
+     *
+     * @return The new value associated to the key
+     */
+    public int increment(long key, int delta) {
+        int current = get(key);
+        int updated = (containsKey(key) ? current : 0) + delta;
+        put(key, updated);
+        return updated;
+    }
+
+    /**
+     * @return The value associated to the removed key, or the no-entry value if it was not present
+     */
+    public int remove(long key) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                return noEntryValue;
+            }
+            hasFreeKey = false;
+            size--;
+            return freeKeyValue;
+        }
+
+        int slot = slot(key);
+        if (keys[slot] != key) {
+            return noEntryValue;
+        }
+        int previous = values[slot];
+        shiftKeys(slot);
+        size--;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasFreeKey = false;
+        size = 0;
+    }
+
+    /**
+     * @return The slot of a key, or the free slot where it should be inserted
+     */
+    private int slot(long key) {
+        int slot = (int) VariantKey.mix(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes the entry in a slot, moving back the following entries of the
+     * same probe sequence so that no tombstones are needed.
+     */
+    private void shiftKeys(int slot) {
+        int last = slot;
+        while (true) {
+            slot = (last + 1) & mask;
+            while (true) {
+                if (keys[slot] == FREE) {
+                    keys[last] = FREE;
+                    return;
+                }
+                int ideal = (int) VariantKey.mix(keys[slot]) & mask;
+                // Move the entry only if its ideal slot is not between the freed one and its current one
+                if (last <= slot ? (last >= ideal || ideal > slot) : (last >= ideal && ideal > slot)) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[last] = keys[slot];
+            values[last] = values[slot];
+            last = slot;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int capacityFor(int expectedSize) {
+        int capacity = 16;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+}
@@ -0,0 +1,182 @@
+package org.opencb.biodata.models.variant;
+
+import java.util.Arrays;
+
+/**
+ * Map from variant keys (see VariantKey) to objects, stored in arrays with
+ * open addressing and linear probing, so the keys are never boxed.
+ *
+ * This class is not thread-safe.
+ */
+public class VariantKeyMap<V> {
+
+    private static final long FREE = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    // The key used to mark free slots is stored apart
+    private boolean hasFreeKey;
+    private V freeKeyValue;
+
+    public VariantKeyMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize Number of entries the map should hold without being resized
+     */
+    public VariantKeyMap(int expectedSize) {
+        allocate(VariantKeyIntMap.capacityFor(expectedSize));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == FREE) {
+            return hasFreeKey ? freeKeyValue : null;
+        }
+        int slot = slot(key);
+        return keys[slot] == key ? (V) values[slot] : null;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE) {
+            return hasFreeKey;
+        }
+        return keys[slot(key)] == key;
+    }
+
+    /**
+     * @return The previous value associated to the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key == FREE) {
+            V previous = hasFreeKey ? freeKeyValue : null;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return previous;
+        }
+
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return The value associated to the removed key, or null if it was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                return null;
+            }
+            V previous = freeKeyValue;
+            hasFreeKey = false;
+            freeKeyValue = null;
+            size--;
+            return previous;
+        }
+
+        int slot = slot(key);
+        if (keys[slot] != key) {
+            return null;
+        }
+        V previous = (V) values[slot];
+        shiftKeys(slot);
+        size--;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        hasFreeKey = false;
+        freeKeyValue = null;
+        size = 0;
+    }
+
+    /**
+     * @return The slot of a key, or the free slot where it should be inserted
+     */
+    private int slot(long key) {
+        int slot = (int) VariantKey.mix(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes the entry in a slot, moving back the following entries of the
+     * same probe sequence so that no tombstones are needed.
+     */
+    private void shiftKeys(int slot) {
+        int last = slot;
+        while (true) {
+            slot = (last + 1) & mask;
+            while (true) {
+                if (keys[slot] == FREE) {
+                    keys[last] = FREE;
+                    values[last] = null;
+                    return;
+                }
+                int ideal = (int) VariantKey.mix(keys[slot]) & mask;
+                // Move the entry only if its ideal slot is not between the freed one and its current one
+                if (last <= slot ? (last >= ideal || ideal > slot) : (last >= ideal && ideal > slot)) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[last] = keys[slot];
+            values[last] = values[slot];
+            last = slot;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+}
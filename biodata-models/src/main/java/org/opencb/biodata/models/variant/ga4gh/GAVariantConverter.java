@@ -0,0 +1,185 @@
+package org.opencb.biodata.models.variant.ga4gh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.opencb.biodata.ga4gh.GACall;
+import org.opencb.biodata.ga4gh.GAVariant;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+/**
+ * Converts variants into their GA4GH equivalent one at a time, so that large
+ * result sets can be paged through without keeping all of them in memory.
+ *
+ * A GAVariant is generated for every file a variant was read from. All the
+ * GAVariant objects generated by a converter share the same creation time.
+ * Unlike GAVariantFactory.create, duplicated variants are not removed.
+ *
+ * Instances reuse internal buffers, so they must not be shared between threads.
+ */
+public class GAVariantConverter {
+
+    private final long timestamp;
+    private final StringBuilder idBuilder;
+
+    public GAVariantConverter() {
+        this(System.currentTimeMillis());
+    }
+
+    public GAVariantConverter(long timestamp) {
+        this.timestamp = timestamp;
+        this.idBuilder = new StringBuilder(64);
+    }
+
+    /**
+     * Converts a variant into a GAVariant per file the variant was read from.
+     *
+     * @param variant Variant to transform
+     * @return GA4GH variants representing the same data as the internal API one
+     */
+    public List<GAVariant> convert(Variant variant) {
+        List<GAVariant> gaVariants = new ArrayList<>(variant.getSourceEntries().size());
+        String id = createId(variant);
+        String[] names = createNames(variant);
+        for (VariantSourceEntry file : variant.getSourceEntries().values()) {
+            gaVariants.add(convert(variant, file, id, names));
+        }
+        return gaVariants;
+    }
+
+    /**
+     * Lazily converts a sequence of variants. Every GAVariant is created when
+     * requested to the returned iterator, not before.
+     *
+     * @param variants Variants to transform
+     * @return An iterator over the GA4GH variants representing the same data
+     */
+    public Iterator<GAVariant> convert(final Iterator<Variant> variants) {
+        return new Iterator<GAVariant>() {
+
+            private Variant variant;
+            private Iterator<VariantSourceEntry> files = Collections.emptyIterator();
+            private String id;
+            private String[] names;
+
+            @Override
+            public boolean hasNext() {
+                while (!files.hasNext() && variants.hasNext()) {
+                    variant = variants.next();
+                    files = variant.getSourceEntries().values().iterator();
+                    id = null;
+                }
+                return files.hasNext();
+            }
+
+            @Override
+            public GAVariant next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (id == null) {
+                    id = createId(variant);
+                    names = createNames(variant);
+                }
+                return convert(variant, files.next(), id, names);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private GAVariant convert(Variant variant, VariantSourceEntry file, String id, String[] names) {
+        String[] secondaryAlternates = file.getSecondaryAlternates();
+        int numSecondaryAlternates = secondaryAlternates != null ? secondaryAlternates.length : 0;
+        String[] alternates = new String[numSecondaryAlternates + 1];
+        alternates[0] = variant.getAlternate();
+        if (numSecondaryAlternates > 0) {
+            System.arraycopy(secondaryAlternates, 0, alternates, 1, numSecondaryAlternates);
+        }
+
+        GACall[] calls = file.getSamplesData().isEmpty() ? null : createCalls(file.getSamplesData());
+        return new GAVariant(id, file.getFileId(), names, timestamp, timestamp,
+                variant.getChromosome(), variant.getStart(), variant.getEnd(), variant.getReference(), alternates,
+                createInfo(file.getAttributes()), calls);
+    }
+
+    private String createId(Variant variant) {
+        idBuilder.setLength(0);
+        idBuilder.append(variant.getChromosome()).append('_')
+                .append(variant.getStart()).append('_')
+                .append(variant.getReference()).append('_')
+                .append(variant.getAlternate());
+        return idBuilder.toString();
+    }
+
+    private static String[] createNames(Variant variant) {
+        Set<String> variantIds = variant.getIds();
+        return variantIds != null ? variantIds.toArray(new String[variantIds.size()]) : new String[0];
+    }
+
+    private static Map<String, List> createInfo(Map<String, String> attributes) {
+        Map<String, List> kvs = new HashMap<>(attributes.size() * 2);
+        for (Map.Entry<String, String> field : attributes.entrySet()) {
+            kvs.put(field.getKey(), Collections.singletonList(field.getValue()));
+        }
+        return kvs;
+    }
+
+    private static GACall[] createCalls(Map<String, Map<String, String>> samples) {
+        GACall[] calls = new GACall[samples.size()];
+        int i = 0;
+        for (Map.Entry<String, Map<String, String>> sample : samples.entrySet()) {
+            String gtField = sample.getValue().get("GT");
+            boolean phased = gtField != null && gtField.indexOf('|') >= 0;
+            calls[i++] = new GACall(sample.getKey(), sample.getKey(), parseGenotype(gtField),
+                    phased ? "phased" : "unphased", null, null);
+        }
+        return calls;
+    }
+
+    /**
+     * Transforms a genotype like 0|1 into the GA4GH style, where missing
+     * alleles are represented with -1.
+     */
+    static int[] parseGenotype(String gtField) {
+        if (gtField == null) {
+            return new int[0];
+        }
+
+        int numAlleles = 1;
+        for (int i = 0; i < gtField.length(); i++) {
+            char c = gtField.charAt(i);
+            if (c == '/' || c == '|') {
+                numAlleles++;
+            }
+        }
+
+        int[] genotype = new int[numAlleles];
+        int allele = 0;
+        int value = 0;
+        boolean missing = false;
+        for (int i = 0; i <= gtField.length(); i++) {
+            char c = i < gtField.length() ? gtField.charAt(i) : '/';
+            if (c == '/' || c == '|') {
+                genotype[allele++] = missing ? -1 : value;
+                value = 0;
+                missing = false;
+            } else if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+            } else {
+                missing = true;
+            }
+        }
+        return genotype;
+    }
+
+}
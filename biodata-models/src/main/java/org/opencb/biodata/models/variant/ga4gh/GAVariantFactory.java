@@ -1,15 +1,10 @@
 package org.opencb.biodata.models.variant.ga4gh;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import org.opencb.biodata.ga4gh.GACall;
 import org.opencb.biodata.ga4gh.GAVariant;
-import org.opencb.biodata.models.variant.VariantSourceEntry;
 import org.opencb.biodata.models.variant.Variant;
 
 /**
@@ -23,75 +18,17 @@ public class GAVariantFactory {
      * 
      * @param variants List of variants to transform
      * @return GA4GH variants representing the same data as the internal API ones
+     * @see GAVariantConverter for a streaming alternative that avoids keeping all the variants in memory
      */
     public static List<GAVariant> create(List<Variant> variants){//, Map<String, List<String>> samplesPerSource) {
         Set<GAVariant> gaVariants = new LinkedHashSet<>();
+        GAVariantConverter converter = new GAVariantConverter();
 
         for (Variant variant : variants) {
-            String id = String.format("%s_%d_%s_%s", variant.getChromosome(), variant.getStart(), variant.getReference(), variant.getAlternate());
-
-            Set<String> variantIds = variant.getIds();
-            String[] names = variantIds.toArray(new String[variantIds.size()]);
-            
-            for (VariantSourceEntry file : variant.getSourceEntries().values()) {
-                String[] alternates = new String[file.getSecondaryAlternates().length + 1];
-                alternates[0] = variant.getAlternate();
-                System.arraycopy(file.getSecondaryAlternates(), 0, alternates, 1, file.getSecondaryAlternates().length);
-                
-                GAVariant ga;
-                if (file.getSamplesData().isEmpty()) {
-                    // No genotypes, simplest case
-                    ga = new GAVariant(id, file.getFileId(), names, System.currentTimeMillis(), System.currentTimeMillis(), 
-                            variant.getChromosome(), variant.getStart(), variant.getEnd(), variant.getReference(), alternates, 
-                            parseInfo(file.getAttributes()), null);
-                } else {
-                    ga = new GAVariant(id, file.getFileId(), names, System.currentTimeMillis(), System.currentTimeMillis(), 
-                            variant.getChromosome(), variant.getStart(), variant.getEnd(), variant.getReference(), alternates, 
-                            parseInfo(file.getAttributes()), parseCalls(file.getSamplesData()));
-                }
-                
-                gaVariants.add(ga);
-            }
+            gaVariants.addAll(converter.convert(variant));
         }
 
-        
         return new ArrayList<>(gaVariants);
     }
 
-    private static Map<String, List> parseInfo(Map<String, String> attributes) {
-        Map<String, List> kvs = new HashMap<>();
-        
-        for (Map.Entry<String, String> field : attributes.entrySet()) {
-            List<String> value = new ArrayList<>();
-            value.add(field.getValue());
-            kvs.put(field.getKey(), value);
-        }
-        
-        return kvs;
-    }
-    
-    private static GACall[] parseCalls(Map<String, Map<String, String>> samples) {
-        List<GACall> calls = new LinkedList<>();
-        
-        for (Map.Entry<String, Map<String, String>> sample : samples.entrySet()) {
-            Map<String, String> attrs = sample.getValue();
-            
-            // Transform genotype with form like 0|0 to the GA4GH style
-            String gtField = attrs.get("GT");
-            String[] alleles = gtField.split("/|\\|", -1);
-            int[] genotype = new int[alleles.length];
-            for (int i = 0; i < alleles.length; i++) {
-                genotype[i] = (alleles[i].equals(".")) ? -1 : Integer.parseInt(alleles[i]);
-            }
-            
-            // Check whether it is phased depending on the allele separator
-            String phaseSet = gtField.contains("|") ? "phased" : "unphased";
-            
-            // Create the call object
-            calls.add(new GACall(sample.getKey(), sample.getKey(), genotype, phaseSet, null, null));
-        }
-        
-        return calls.toArray(new GACall[calls.size()]);
-    }
-    
 }
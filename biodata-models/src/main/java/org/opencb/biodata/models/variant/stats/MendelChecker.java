@@ -0,0 +1,217 @@
+package org.opencb.biodata.models.variant.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.opencb.biodata.models.pedigree.Family;
+import org.opencb.biodata.models.pedigree.Individual;
+import org.opencb.biodata.models.pedigree.Pedigree;
+import org.opencb.biodata.models.variant.VariantSource;
+
+/**
+ * Detects Mendelian inconsistencies in the genotypes of the trios (father,
+ * mother and child) described by a pedigree.
+ *
+ * The trios are resolved into positions in the list of samples of a file only
+ * once, so checking a variant just requires reading the genotypes of the
+ * samples involved and comparing their alleles as integers.
+ */
+public class MendelChecker {
+
+    private static final int MISSING = -1;
+    private static final int HAPLOID = -2;
+    private static final int UNDECODED = Integer.MIN_VALUE;
+
+    private final String[] sampleNames;
+    private final int[] fathers;
+    private final int[] mothers;
+    private final int[] children;
+
+    public MendelChecker(VariantSource source) {
+        this(source.getPedigree(), source.getSamples());
+    }
+
+    public MendelChecker(Pedigree pedigree, List<String> sampleNames) {
+        this.sampleNames = sampleNames.toArray(new String[sampleNames.size()]);
+
+        Map<String, Integer> positions = new HashMap<>(sampleNames.size() * 2);
+        for (int i = 0; i < this.sampleNames.length; i++) {
+            positions.put(this.sampleNames[i], i);
+        }
+
+        List<int[]> trios = new ArrayList<>();
+        if (pedigree != null) {
+            for (Family family : pedigree.getFamiliesTDT()) {
+                Integer father = positions.get(family.getFather().getId());
+                Integer mother = positions.get(family.getMother().getId());
+                if (father == null || mother == null) {
+                    continue;
+                }
+                for (Individual child : family.getChildren()) {
+                    Integer position = positions.get(child.getId());
+                    if (position != null) {
+                        trios.add(new int[]{father, mother, position});
+                    }
+                }
+            }
+        }
+
+        this.fathers = new int[trios.size()];
+        this.mothers = new int[trios.size()];
+        this.children = new int[trios.size()];
+        for (int i = 0; i < trios.size(); i++) {
+            int[] trio = trios.get(i);
+            fathers[i] = trio[0];
+            mothers[i] = trio[1];
+            children[i] = trio[2];
+        }
+    }
+
+    public int getNumTrios() {
+        return children.length;
+    }
+
+    /**
+     * Counts the trios whose genotypes are not consistent with Mendelian
+     * inheritance. Trios where any of the genotypes is missing are skipped.
+     *
+     * @param samplesData Data of the samples of a file, in the same order they were provided to this checker
+     * @return The number of trios with Mendelian errors
+     */
+    public int countErrors(Map<String, Map<String, String>> samplesData) {
+        return checkErrors(samplesData, null);
+    }
+
+    /**
+     * Counts the trios whose genotypes are not consistent with Mendelian
+     * inheritance, collecting the names of the children with errors.
+     *
+     * @param samplesData Data of the samples of a file, in the same order they were provided to this checker
+     * @param erroneousChildren Optional list where the names of the children with errors will be added
+     * @return The number of trios with Mendelian errors
+     */
+    public int checkErrors(Map<String, Map<String, String>> samplesData, List<String> erroneousChildren) {
+        if (children.length == 0) {
+            return 0;
+        }
+
+        String[] genotypes = getGenotypes(samplesData);
+        int[] alleles = new int[sampleNames.length * 2];
+        Arrays.fill(alleles, UNDECODED);
+
+        int errors = 0;
+        for (int i = 0; i < children.length; i++) {
+            int child = children[i];
+            int father = fathers[i];
+            int mother = mothers[i];
+            if (!decode(genotypes, alleles, child) || !decode(genotypes, alleles, father)
+                    || !decode(genotypes, alleles, mother)) {
+                continue;
+            }
+
+            if (isMendelianError(alleles[2 * child], alleles[2 * child + 1],
+                    alleles[2 * father], alleles[2 * father + 1],
+                    alleles[2 * mother], alleles[2 * mother + 1])) {
+                errors++;
+                if (erroneousChildren != null) {
+                    erroneousChildren.add(sampleNames[child]);
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Checks whether a child genotype can't be explained by the genotypes of
+     * its parents. The second allele of haploid genotypes must be HAPLOID, so a
+     * haploid child only needs its allele to be present in one of the parents.
+     *
+     * @return Whether the child genotype is a Mendelian error
+     */
+    static boolean isMendelianError(int child1, int child2, int father1, int father2, int mother1, int mother2) {
+        boolean child1FromFather = child1 == father1 || child1 == father2;
+        boolean child1FromMother = child1 == mother1 || child1 == mother2;
+        if (child2 == HAPLOID) {
+            return !(child1FromFather || child1FromMother);
+        } else if (child1 == child2) {
+            return !(child1FromFather && child1FromMother);
+        }
+        boolean child2FromFather = child2 == father1 || child2 == father2;
+        boolean child2FromMother = child2 == mother1 || child2 == mother2;
+        return !((child1FromFather && child2FromMother) || (child2FromFather && child1FromMother));
+    }
+
+    /**
+     * Gets the genotypes of all samples, expecting them in the same order as
+     * the sample names. If that is not the case, they are searched by name.
+     */
+    private String[] getGenotypes(Map<String, Map<String, String>> samplesData) {
+        String[] genotypes = new String[sampleNames.length];
+        Iterator<Map.Entry<String, Map<String, String>>> iterator = samplesData.entrySet().iterator();
+        for (int i = 0; i < sampleNames.length && iterator.hasNext(); i++) {
+            Map.Entry<String, Map<String, String>> sample = iterator.next();
+            if (!sampleNames[i].equals(sample.getKey())) {
+                return getGenotypesByName(samplesData);
+            }
+            genotypes[i] = sample.getValue().get("GT");
+        }
+        return genotypes;
+    }
+
+    private String[] getGenotypesByName(Map<String, Map<String, String>> samplesData) {
+        String[] genotypes = new String[sampleNames.length];
+        for (int i = 0; i < sampleNames.length; i++) {
+            Map<String, String> sampleData = samplesData.get(sampleNames[i]);
+            genotypes[i] = sampleData != null ? sampleData.get("GT") : null;
+        }
+        return genotypes;
+    }
+
+    /**
+     * Decodes the genotype of a sample into a pair of alleles, unless it was
+     * already decoded. Haploid genotypes get HAPLOID as their second allele.
+     *
+     * @return Whether the genotype is complete and diploid or haploid
+     */
+    private static boolean decode(String[] genotypes, int[] alleles, int sample) {
+        int first = 2 * sample;
+        if (alleles[first] == UNDECODED) {
+            String genotype = genotypes[sample];
+            alleles[first] = MISSING;
+            alleles[first + 1] = MISSING;
+            if (genotype == null || genotype.isEmpty()) {
+                return false;
+            }
+
+            int numAlleles = 0;
+            int value = 0;
+            boolean digits = false;
+            for (int i = 0; i <= genotype.length(); i++) {
+                char c = i < genotype.length() ? genotype.charAt(i) : '/';
+                if (c >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                    digits = true;
+                } else if (c == '/' || c == '|') {
+                    if (!digits || numAlleles == 2) {
+                        // Missing alleles and polyploid genotypes can't be checked
+                        alleles[first] = MISSING;
+                        return false;
+                    }
+                    alleles[first + numAlleles++] = value;
+                    value = 0;
+                    digits = false;
+                } else {
+                    alleles[first] = MISSING;
+                    return false;
+                }
+            }
+            if (numAlleles == 1) {
+                alleles[first + 1] = HAPLOID;
+            }
+        }
+        return alleles[first] != MISSING && alleles[first + 1] != MISSING;
+    }
+}
@@ -18,8 +18,9 @@ public class VariantAggregatedStats extends VariantStats {
     }
 
     @Override
-    public VariantStats calculate(Map<String, Map<String, String>> samplesData, Map<String, String> attributes, Pedigree pedigree) {
-        super.calculate(samplesData, attributes, pedigree);
+    public VariantStats calculate(Map<String, Map<String, String>> samplesData, Map<String, String> attributes,
+                                  Pedigree pedigree, MendelChecker mendelChecker) {
+        super.calculate(samplesData, attributes, pedigree, mendelChecker);
         
         if (attributes.containsKey("AN") && attributes.containsKey("AC")) {
             int total = Integer.parseInt(attributes.get("AN"));
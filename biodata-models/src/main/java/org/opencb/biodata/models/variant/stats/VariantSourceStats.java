@@ -21,6 +21,8 @@ public class VariantSourceStats {
     private List<String> sampleNames;
     private VariantGlobalStats fileStats;
     private Map<String, VariantSingleSampleStats> samplesStats;
+    private MendelChecker mendelChecker;
+    private Pedigree checkedPedigree;
 
     VariantSourceStats() {
         this(null, null);
@@ -84,6 +86,7 @@ public class VariantSourceStats {
     }
     
     public void updateSampleStats(List<Variant> variants, Pedigree pedigree) {
+        List<String> erroneousChildren = new ArrayList<>();
         for (Variant v : variants) {
             VariantSourceEntry file = v.getSourceEntry(fileId, studyId);
             if (file == null) {
@@ -91,6 +94,16 @@ public class VariantSourceStats {
                 continue;
             }
             
+            // Trios are resolved only once per pedigree, not once per variant
+            if (pedigree != null && pedigree != checkedPedigree) {
+                mendelChecker = new MendelChecker(pedigree, new ArrayList<>(file.getSampleNames()));
+                checkedPedigree = pedigree;
+            }
+            if (pedigree != null) {
+                erroneousChildren.clear();
+                mendelChecker.checkErrors(file.getSamplesData(), erroneousChildren);
+            }
+            
             for (Map.Entry<String, Map<String, String>> sample : file.getSamplesData().entrySet()) {
                 String sampleName = sample.getKey();
                 VariantSingleSampleStats sampleStats = samplesStats.get(sampleName);
@@ -106,19 +119,17 @@ public class VariantSourceStats {
                     sampleStats.incrementMissingGenotypes();
                 }
                 
-//                // TODO Check mendelian errors
-//                if (pedigree != null) {
-//                    Individual ind = pedigree.getIndividual(sampleName);
-//                    if (g.getCode() == AllelesCode.ALLELES_OK && isMendelianError(ind, g, record)) {
-//                        sampleStats.incrementMendelianErrors();
-//                    }
-//                }
-                
                 // Count homozygous (not haploid)
                 if (g.getCode() != AllelesCode.HAPLOID && g.getAllele(0) == g.getAllele(1)) {
                     sampleStats.incrementHomozygous();
                 }
             }
+            
+            if (pedigree != null) {
+                for (String child : erroneousChildren) {
+                    samplesStats.get(child).incrementMendelianErrors();
+                }
+            }
         }
     }
 
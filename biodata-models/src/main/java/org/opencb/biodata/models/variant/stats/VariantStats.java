@@ -1,5 +1,6 @@
 package org.opencb.biodata.models.variant.stats;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -18,8 +19,6 @@ import org.opencb.biodata.models.variant.Variant;
  * @author Alejandro Aleman Ramos &lt;aaleman@cipf.es&gt;
  * @author Cristina Yenyxe Gonzalez Garcia &lt;cyenyxe@ebi.ac.uk&gt;
  * @author Jose Miguel Mut Lopez &lt;jmmut@ebi.ac.uk&gt;
- *
- * TODO Mendelian errors must be calculated
  */
 public class VariantStats {
 
@@ -373,6 +372,23 @@ public class VariantStats {
     }
 
     public VariantStats calculate(Map<String, Map<String, String>> samplesData, Map<String, String> attributes, Pedigree pedigree) {
+        MendelChecker mendelChecker = pedigree != null ? new MendelChecker(pedigree, new ArrayList<>(samplesData.keySet())) : null;
+        return calculate(samplesData, attributes, pedigree, mendelChecker);
+    }
+
+    /**
+     * Calculates the statistics of the variant using the data of the samples
+     * in a file. The trios used for counting Mendelian errors are provided by
+     * a checker created once for all the variants of the file.
+     *
+     * @param samplesData Data of the samples in the file
+     * @param attributes Attributes of the file, such as QUAL or FILTER
+     * @param pedigree Optional pedigree information to calculate some statistics
+     * @param mendelChecker Optional checker for the trios in the pedigree
+     * @return These statistics, once calculated
+     */
+    public VariantStats calculate(Map<String, Map<String, String>> samplesData, Map<String, String> attributes,
+                                  Pedigree pedigree, MendelChecker mendelChecker) {
         int[] allelesCount = new int[2];
         int totalAllelesCount = 0, totalGenotypesCount = 0;
 
@@ -382,7 +398,7 @@ public class VariantStats {
         this.setNumSamples(samplesData.size());
         this.setMissingAlleles(0);
         this.setMissingGenotypes(0);
-        if (pedigree != null) {
+        if (pedigree != null || mendelChecker != null) {
             this.setMendelianErrors(0);
         }
 
@@ -444,9 +460,6 @@ public class VariantStats {
             if (pedigree != null) {
                 if (g.getCode() == AllelesCode.ALLELES_OK || g.getCode() == AllelesCode.HAPLOID) {
                     Individual ind = pedigree.getIndividual(sampleName);
-//                    if (MendelChecker.isMendelianError(ind, g, variant.getChromosome(), file.getSamplesData())) {
-//                        this.setMendelianErrors(this.getMendelianErrors() + 1);
-//                    }
                     if (g.getCode() == AllelesCode.ALLELES_OK) {
                         // Check inheritance models
                         if (ind.getCondition() == Condition.UNAFFECTED) {
@@ -473,6 +486,10 @@ public class VariantStats {
             } 
 
         }  // Finish all samples loop
+
+        if (mendelChecker != null) {
+            this.setMendelianErrors(mendelChecker.countErrors(samplesData));
+        }
         
         // Set counts for each allele
         this.setRefAlleleCount(allelesCount[0]);
@@ -522,9 +539,20 @@ public class VariantStats {
      * @param ped Optional pedigree information to calculate some statistics
      */
     public static void calculateStatsForVariantsList(List<Variant> variants, Pedigree ped) {
+        // Files may have different samples, or the same ones in another order
+        Map<List<String>, MendelChecker> mendelCheckers = new HashMap<>();
         for (Variant variant : variants) {
             for (VariantSourceEntry file : variant.getSourceEntries().values()) {
-                VariantStats stats = new VariantStats(variant).calculate(file.getSamplesData(), file.getAttributes(), ped);
+                MendelChecker mendelChecker = null;
+                if (ped != null) {
+                    List<String> sampleNames = new ArrayList<>(file.getSampleNames());
+                    mendelChecker = mendelCheckers.get(sampleNames);
+                    if (mendelChecker == null) {
+                        mendelChecker = new MendelChecker(ped, sampleNames);
+                        mendelCheckers.put(sampleNames, mendelChecker);
+                    }
+                }
+                VariantStats stats = new VariantStats(variant).calculate(file.getSamplesData(), file.getAttributes(), ped, mendelChecker);
                 file.setStats(stats); // TODO Correct?
             }
         }
@@ -0,0 +1,156 @@
+package org.opencb.biodata.models.core;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.core.FeatureIntervalIndex.FeatureType;
+
+public class FeatureIntervalIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Gene> genes;
+    private FeatureIntervalIndex index;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        genes = new ArrayList<>();
+        for (int g = 0; g < 2000; g++) {
+            String chromosome = random.nextBoolean() ? "1" : "X";
+            int geneStart = random.nextInt(1000000) + 1;
+            int geneEnd = geneStart + random.nextInt(50000);
+            String strand = random.nextBoolean() ? "+" : "-";
+            List<Transcript> transcripts = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                int transcriptStart = geneStart + random.nextInt(geneEnd - geneStart + 1);
+                int transcriptEnd = transcriptStart + random.nextInt(geneEnd - transcriptStart + 1);
+                ArrayList<Exon> exons = new ArrayList<>();
+                for (int e = 0; e < 4; e++) {
+                    int exonStart = transcriptStart + random.nextInt(transcriptEnd - transcriptStart + 1);
+                    int exonEnd = Math.min(transcriptEnd, exonStart + random.nextInt(500));
+                    exons.add(new Exon("E" + g + "." + t + "." + e, chromosome, exonStart, exonEnd, strand,
+                            0, 0, 0, 0, 0, 0, 0, e + 1, null));
+                }
+                transcripts.add(new Transcript("T" + g + "." + t, null, null, null, chromosome, transcriptStart, transcriptEnd,
+                        strand, 0, 0, 0, 0, 0, null, null, null, exons, null));
+            }
+            genes.add(new Gene("G" + g, null, null, null, chromosome, geneStart, geneEnd, strand, null, null, transcripts, null));
+        }
+        index = FeatureIntervalIndex.build(genes);
+    }
+
+    @Test
+    public void testQuery() {
+        assertEquals(2000 * (1 + 3 + 3 * 4), index.size());
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            int start = random.nextInt(1100000);
+            int end = start + random.nextInt(20000);
+            assertEquals(bruteForce("1", start, end), handles(index.query("1", start, end)));
+            assertEquals(bruteForce("X", start, start), handles(index.query("X", start)));
+        }
+        assertEquals(0, index.query("2", 1, 1000000).length);
+    }
+
+    @Test
+    public void testQueryByType() {
+        for (int handle : index.query("1", 500000, 600000, FeatureType.TRANSCRIPT)) {
+            assertEquals(FeatureType.TRANSCRIPT, index.getType(handle));
+            Transcript transcript = index.getTranscript(handle);
+            assertEquals(transcript.getId(), index.getId(handle));
+            assertSame(transcript, index.getGene(index.getParent(handle)).getTranscripts().get(
+                    Integer.parseInt(transcript.getId().substring(transcript.getId().indexOf('.') + 1))));
+        }
+    }
+
+    @Test
+    public void testNearest() {
+        Random random = new Random(11);
+        for (int i = 0; i < 100; i++) {
+            int position = random.nextInt(1100000);
+            int[] nearest = index.nearest("X", position, 5, FeatureType.GENE);
+            assertEquals(5, nearest.length);
+
+            List<Long> distances = new ArrayList<>();
+            for (Gene gene : genes) {
+                if (gene.getChromosome().equals("X")) {
+                    distances.add((long) distance(gene.getStart(), gene.getEnd(), position));
+                }
+            }
+            Collections.sort(distances);
+            for (int j = 0; j < nearest.length; j++) {
+                assertEquals((long) distances.get(j), distance(index.getStart(nearest[j]), index.getEnd(nearest[j]), position));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteAndLoad() throws Exception {
+        Path path = folder.newFile("genes.idx").toPath();
+        index.write(path);
+        FeatureIntervalIndex loaded = FeatureIntervalIndex.load(path);
+
+        assertEquals(index.size(), loaded.size());
+        assertEquals(index.getChromosomes(), loaded.getChromosomes());
+        int[] expected = index.query("1", 300000, 320000);
+        assertArrayEquals(expected, loaded.query("1", 300000, 320000));
+        for (int handle : expected) {
+            assertEquals(index.getId(handle), loaded.getId(handle));
+            assertEquals(index.getStrand(handle), loaded.getStrand(handle));
+            assertEquals(index.getChromosome(handle), loaded.getChromosome(handle));
+            assertEquals(index.getParent(handle), loaded.getParent(handle));
+        }
+        assertArrayEquals(index.nearest("X", 5000, 3), loaded.nearest("X", 5000, 3));
+        assertNull(loaded.getGene(0));
+    }
+
+    private List<String> handles(int[] handles) {
+        List<String> ids = new ArrayList<>();
+        for (int handle : handles) {
+            ids.add(index.getId(handle));
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private List<String> bruteForce(String chromosome, int start, int end) {
+        List<String> ids = new ArrayList<>();
+        for (Gene gene : genes) {
+            if (!gene.getChromosome().equals(chromosome)) {
+                continue;
+            }
+            if (gene.getStart() <= end && gene.getEnd() >= start) {
+                ids.add(gene.getId());
+            }
+            for (Transcript transcript : gene.getTranscripts()) {
+                if (transcript.getStart() <= end && transcript.getEnd() >= start) {
+                    ids.add(transcript.getId());
+                }
+                for (Exon exon : transcript.getExons()) {
+                    if (exon.getStart() <= end && exon.getEnd() >= start) {
+                        ids.add(exon.getId());
+                    }
+                }
+            }
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static int distance(int start, int end, int position) {
+        return position < start ? start - position : (position > end ? position - end : 0);
+    }
+}
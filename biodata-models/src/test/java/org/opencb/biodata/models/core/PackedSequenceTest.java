@@ -0,0 +1,107 @@
+package org.opencb.biodata.models.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackedSequenceTest {
+
+	@Test
+	public void pack() {
+		PackedSequence sequence = PackedSequence.valueOf("ACGTNNNNacgtRYA");
+		assertEquals(15, sequence.length());
+		assertEquals("ACGTNNNNACGTRYA", sequence.toString());
+		assertEquals('N', sequence.charAt(5));
+		assertEquals('G', sequence.charAt(10));
+		assertEquals(2, sequence.getCode(10));
+		assertEquals(-1, sequence.getCode(12));
+		assertEquals(6, sequence.getOtherCount());
+		assertEquals(4, sequence.getGcCount());
+		assertEquals(4 / 9.0, sequence.getGcContent(), 1e-9);
+		assertEquals("TRYACGTNNNNACGT", sequence.reverseComplement().toString());
+		assertEquals(PackedSequence.valueOf("TNNNNACG"), sequence.subSequence(3, 11));
+		assertEquals(0, PackedSequence.valueOf("").length());
+	}
+
+	@Test
+	public void sameAsString() {
+		Random random = new Random(17);
+		for (int i = 0; i < 200; i++) {
+			String string = randomSequence(random, random.nextInt(300));
+			PackedSequence sequence = PackedSequence.valueOf(string);
+			assertEquals(string, sequence.toString());
+			assertEquals(reverseComplement(string), sequence.reverseComplement().toString());
+			assertEquals(sequence, sequence.reverseComplement().reverseComplement());
+
+			for (int j = 0; j < 20; j++) {
+				int start = random.nextInt(string.length() + 1);
+				int end = start + random.nextInt(string.length() - start + 1);
+				PackedSequence subsequence = sequence.subSequence(start, end);
+				assertEquals(string.substring(start, end), subsequence.toString());
+				assertEquals(PackedSequence.valueOf(string.substring(start, end)), subsequence);
+				assertEquals(gcCount(string.substring(start, end)), sequence.getGcCount(start, end));
+			}
+		}
+	}
+
+	@Test
+	public void kmers() {
+		Random random = new Random(19);
+		for (int k : new int[]{1, 5, 31, 32}) {
+			String string = randomSequence(random, 500);
+			PackedSequence.KmerIterator kmers = PackedSequence.valueOf(string).kmers(k);
+			for (int i = 0; i + k <= string.length(); i++) {
+				String kmer = string.substring(i, i + k);
+				if (kmer.matches("[ACGT]+")) {
+					assertTrue(kmers.next());
+					assertEquals(i, kmers.getPosition());
+					assertEquals(kmer, PackedSequence.decodeKmer(kmers.getKmer(), k));
+				}
+			}
+			assertFalse(kmers.next());
+		}
+	}
+
+	private static String randomSequence(Random random, int length) {
+		StringBuilder sequence = new StringBuilder();
+		while (sequence.length() < length) {
+			int type = random.nextInt(50);
+			if (type == 0) {
+				// Run of N
+				for (int i = random.nextInt(40); i > 0 && sequence.length() < length; i--) {
+					sequence.append('N');
+				}
+			} else if (type == 1) {
+				sequence.append("RYKMSWBDHV".charAt(random.nextInt(10)));
+			} else {
+				sequence.append("ACGT".charAt(random.nextInt(4)));
+			}
+		}
+		return sequence.toString();
+	}
+
+	private static String reverseComplement(String sequence) {
+		String bases = "ACGTRYKMSWBDHVN";
+		String complements = "TGCAYRMKSWVHDBN";
+		StringBuilder complement = new StringBuilder();
+		for (int i = sequence.length() - 1; i >= 0; i--) {
+			complement.append(complements.charAt(bases.indexOf(sequence.charAt(i))));
+		}
+		return complement.toString();
+	}
+
+	private static long gcCount(String sequence) {
+		long count = 0;
+		for (char c : sequence.toCharArray()) {
+			if (c == 'G' || c == 'C') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.opencb.biodata.models.variant;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class VariantKeyTest {
+
+    @Test
+    public void testPackedKeys() {
+        long key = VariantKey.of("chrX", 155270560, "AC", "");
+        assertFalse(VariantKey.isHashed(key));
+        assertEquals("chrX", VariantKey.getChromosome(key));
+        assertEquals(155270560, VariantKey.getStart(key));
+        assertEquals("AC", VariantKey.getReference(key));
+        assertEquals("", VariantKey.getAlternate(key));
+
+        key = VariantKey.of(new Variant("22", 16050075, 16050075, "A", "G"));
+        assertEquals("22", VariantKey.getChromosome(key));
+        assertEquals("A", VariantKey.getReference(key));
+        assertEquals("G", VariantKey.getAlternate(key));
+
+        // Alleles are not ambiguous even if their concatenation is the same
+        assertNotEquals(VariantKey.of("1", 100, "AC", "G"), VariantKey.of("1", 100, "A", "CG"));
+    }
+
+    @Test
+    public void testGenomicOrder() {
+        assertTrue(VariantKey.of("1", 500, "T", "G") < VariantKey.of("1", 501, "A", "C"));
+        assertTrue(VariantKey.of("2", 10, "T", "G") < VariantKey.of("10", 5, "A", "C"));
+        assertTrue(VariantKey.of("22", 10, "T", "G") < VariantKey.of("X", 5, "A", "C"));
+    }
+
+    @Test
+    public void testHashedKeys() {
+        long key = VariantKey.of("1", 100, "ACGTACGTAC", "A");
+        assertTrue(VariantKey.isHashed(key));
+        assertEquals(key, VariantKey.of("1", 100, "ACGTACGTAC", "A"));
+        assertTrue(VariantKey.isHashed(VariantKey.of("GL000192.1", 100, "A", "C")));
+        assertTrue(VariantKey.isHashed(VariantKey.of("1", 100, "N", "C")));
+        assertNotEquals(key, VariantKey.of("1", 100, "ACGTACGTAC", "C"));
+    }
+
+    @Test
+    public void testIntMap() {
+        Random random = new Random(3);
+        VariantKeyIntMap map = new VariantKeyIntMap(4, -1);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(5000) - 10;
+            int operation = random.nextInt(3);
+            if (operation == 0) {
+                Integer previous = expected.put(key, i);
+                assertEquals(previous == null ? -1 : previous, map.put(key, i));
+            } else if (operation == 1) {
+                Integer previous = expected.remove(key);
+                assertEquals(previous == null ? -1 : previous, map.remove(key));
+            } else {
+                Integer value = expected.get(key);
+                assertEquals(value == null ? -1 : value, map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+
+        map.clear();
+        assertEquals(1, map.increment(7, 1));
+        assertEquals(3, map.increment(7, 2));
+    }
+
+    @Test
+    public void testObjectMap() {
+        VariantKeyMap<String> map = new VariantKeyMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.put(VariantKey.of("1", i, "A", "C"), "v" + i);
+        }
+        assertEquals(1000, map.size());
+        assertEquals("v10", map.get(VariantKey.of("1", 10, "A", "C")));
+        assertEquals("v10", map.remove(VariantKey.of("1", 10, "A", "C")));
+        assertNull(map.get(VariantKey.of("1", 10, "A", "C")));
+        assertEquals("v11", map.get(VariantKey.of("1", 11, "A", "C")));
+        assertEquals(999, map.size());
+    }
+}
@@ -0,0 +1,56 @@
+package org.opencb.biodata.models.variant.ga4gh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+import org.opencb.biodata.ga4gh.GACall;
+import org.opencb.biodata.ga4gh.GAVariant;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantVcfFactory;
+
+public class GAVariantConverterTest {
+
+    @Test
+    public void testParseGenotype() {
+        assertArrayEquals(new int[]{0, 1}, GAVariantConverter.parseGenotype("0/1"));
+        assertArrayEquals(new int[]{1, 12}, GAVariantConverter.parseGenotype("1|12"));
+        assertArrayEquals(new int[]{-1, -1}, GAVariantConverter.parseGenotype("./."));
+        assertArrayEquals(new int[]{1}, GAVariantConverter.parseGenotype("1"));
+    }
+
+    @Test
+    public void testConvert() {
+        VariantSource source = new VariantSource("filename.vcf", "fileId", "studyId", "studyName");
+        source.setSamples(Arrays.asList("NA001", "NA002"));
+        List<Variant> variants = new ArrayList<>();
+        variants.addAll(new VariantVcfFactory().create(source, "1\t100\trs1\tT\tC,G\t.\tPASS\tDP=5\tGT\t0|1\t./."));
+        variants.addAll(new VariantVcfFactory().create(source, "2\t200\t.\tA\tG\t.\tPASS\t.\tGT\t0/0\t1/1"));
+
+        GAVariantConverter converter = new GAVariantConverter(1000);
+        Iterator<GAVariant> iterator = converter.convert(variants.iterator());
+        List<GAVariant> gaVariants = new ArrayList<>();
+        while (iterator.hasNext()) {
+            gaVariants.add(iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+        assertEquals(GAVariantFactory.create(variants), gaVariants);
+
+        GAVariant first = gaVariants.get(0);
+        assertEquals("1_100_T_C", first.getId());
+        assertEquals(1000, first.getCreated());
+        assertArrayEquals(new String[]{"C", "G"}, first.getAlternateBases());
+        assertEquals(Arrays.asList(variants.get(0).getSourceEntry("fileId", "studyId").getAttribute("DP")), first.getInfo().get("DP"));
+
+        GACall[] calls = first.getCalls();
+        assertEquals("NA001", calls[0].getCallSetName());
+        assertEquals("phased", calls[0].getPhaseset());
+        assertArrayEquals(new int[]{0, 1}, calls[0].getGenotype());
+        assertArrayEquals(new int[]{-1, -1}, calls[1].getGenotype());
+    }
+}
@@ -0,0 +1,114 @@
+package org.opencb.biodata.models.variant.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.biodata.models.pedigree.Individual;
+import org.opencb.biodata.models.pedigree.Pedigree;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+import org.opencb.biodata.models.variant.VariantVcfFactory;
+
+public class MendelCheckerTest {
+
+    private VariantSource source;
+
+    @Before
+    public void setUp() {
+        Pedigree pedigree = new Pedigree();
+        Individual father = new Individual("NA001", "FAM", null, null, "1", "1", null);
+        Individual mother = new Individual("NA002", "FAM", null, null, "2", "1", null);
+        Individual son = new Individual("NA003", "FAM", father, mother, "1", "2", null);
+        Individual daughter = new Individual("NA004", "FAM", father, mother, "2", "1", null);
+        for (Individual individual : Arrays.asList(father, mother, son, daughter)) {
+            pedigree.addIndividual(individual);
+        }
+
+        source = new VariantSource("filename.vcf", "fileId", "studyId", "studyName");
+        source.setSamples(Arrays.asList("NA001", "NA002", "NA003", "NA004", "NA005"));
+        source.setPedigree(pedigree);
+    }
+
+    @Test
+    public void testTriosResolution() {
+        MendelChecker checker = new MendelChecker(source);
+        assertEquals(2, checker.getNumTrios());
+
+        // Trios whose members are not all in the file are ignored
+        MendelChecker partialChecker = new MendelChecker(source.getPedigree(), Arrays.asList("NA001", "NA003", "NA004"));
+        assertEquals(0, partialChecker.getNumTrios());
+    }
+
+    @Test
+    public void testIsMendelianError() {
+        assertFalse(MendelChecker.isMendelianError(0, 1, 0, 0, 1, 1));
+        assertFalse(MendelChecker.isMendelianError(1, 0, 0, 0, 1, 1));
+        assertTrue(MendelChecker.isMendelianError(1, 1, 0, 0, 1, 1));
+        assertTrue(MendelChecker.isMendelianError(0, 0, 1, 1, 0, 1));
+        assertFalse(MendelChecker.isMendelianError(2, 1, 0, 2, 1, 1));
+
+        // Haploid children only need the allele to be in one of the parents
+        assertFalse(MendelChecker.isMendelianError(1, -2, 0, -2, 0, 1));
+        assertTrue(MendelChecker.isMendelianError(1, -2, 0, -2, 0, 0));
+    }
+
+    @Test
+    public void testCountErrors() {
+        String line = "1\t10040\trs123\tT\tC\t10.05\tPASS\t.\tGT\t0/0\t1/1\t0/1\t1/1\t0/0";
+        Variant variant = new VariantVcfFactory().create(source, line).get(0);
+        VariantSourceEntry entry = variant.getSourceEntry(source.getFileId(), source.getStudyId());
+
+        MendelChecker checker = new MendelChecker(source);
+        List<String> erroneousChildren = new ArrayList<>();
+        assertEquals(1, checker.checkErrors(entry.getSamplesData(), erroneousChildren));
+        assertEquals(Arrays.asList("NA004"), erroneousChildren);
+
+        VariantStats stats = new VariantStats(variant).calculate(entry.getSamplesData(), entry.getAttributes(), null, checker);
+        assertEquals(1, stats.getMendelianErrors());
+    }
+
+    @Test
+    public void testMissingGenotypesAreSkipped() {
+        String line = "1\t10040\trs123\tT\tC\t10.05\tPASS\t.\tGT\t./.\t1/1\t1/1\t1/1\t0/0";
+        Variant variant = new VariantVcfFactory().create(source, line).get(0);
+        VariantSourceEntry entry = variant.getSourceEntry(source.getFileId(), source.getStudyId());
+
+        assertEquals(0, new MendelChecker(source).countErrors(entry.getSamplesData()));
+    }
+
+    @Test
+    public void testFilesWithDifferentSamples() {
+        // The first file has no complete trios, and the second one has them in another order
+        VariantSource partialSource = new VariantSource("partial.vcf", "partialId", "studyId", "studyName");
+        partialSource.setSamples(Arrays.asList("NA001", "NA003", "NA004"));
+        VariantSource reorderedSource = new VariantSource("reordered.vcf", "reorderedId", "studyId", "studyName");
+        reorderedSource.setSamples(Arrays.asList("NA004", "NA003", "NA002", "NA001"));
+
+        Variant variant = new VariantVcfFactory().create(partialSource, "1\t10040\trs123\tT\tC\t10.05\tPASS\t.\tGT\t0/0\t0/1\t1/1").get(0);
+        Variant reordered = new VariantVcfFactory().create(reorderedSource, "1\t10040\trs123\tT\tC\t10.05\tPASS\t.\tGT\t1/1\t0/1\t1/1\t0/0").get(0);
+        variant.addSourceEntry(reordered.getSourceEntry(reorderedSource.getFileId(), reorderedSource.getStudyId()));
+
+        VariantStats.calculateStatsForVariantsList(Arrays.asList(variant), source.getPedigree());
+        assertEquals(0, variant.getSourceEntry(partialSource.getFileId(), partialSource.getStudyId()).getStats().getMendelianErrors());
+        assertEquals(1, variant.getSourceEntry(reorderedSource.getFileId(), reorderedSource.getStudyId()).getStats().getMendelianErrors());
+    }
+
+    @Test
+    public void testSampleStats() {
+        List<Variant> variants = new ArrayList<>();
+        variants.addAll(new VariantVcfFactory().create(source, "1\t100\t.\tT\tC\t.\tPASS\t.\tGT\t0/0\t0/0\t0/1\t0/0\t0/0"));
+        variants.addAll(new VariantVcfFactory().create(source, "1\t200\t.\tA\tG\t.\tPASS\t.\tGT\t0/0\t0/1\t1/1\t0/1\t0/0"));
+
+        VariantSourceStats stats = new VariantSourceStats(source.getFileId(), source.getStudyId());
+        stats.updateSampleStats(variants, source.getPedigree());
+        assertEquals(2, stats.getSampleStats("NA003").getNumMendelianErrors());
+        assertEquals(0, stats.getSampleStats("NA004").getNumMendelianErrors());
+        assertEquals(0, stats.getSampleStats("NA001").getNumMendelianErrors());
+    }
+}
@@ -0,0 +1,44 @@
+package org.opencb.biodata.tools.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Bytes allocated by the current thread, as reported by HotSpot-based JVMs.
+ * The difference between two readings in the same thread estimates the
+ * memory allocated by the code run between them.
+ */
+public final class AllocationCounter {
+
+    private static final com.sun.management.ThreadMXBean THREADS;
+
+    static {
+        com.sun.management.ThreadMXBean threads = null;
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                threads = (com.sun.management.ThreadMXBean) bean;
+                if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+                    threads = null;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            threads = null;
+        }
+        THREADS = threads;
+    }
+
+    private AllocationCounter() { }
+
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * @return Bytes allocated by the current thread since it started, -1 if not supported
+     */
+    public static long currentThread() {
+        return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+}
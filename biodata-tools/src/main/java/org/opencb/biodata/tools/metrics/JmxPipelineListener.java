@@ -0,0 +1,110 @@
+package org.opencb.biodata.tools.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the metrics of every stage as an MBean while the pipeline runs,
+ * so they can be watched live with tools like JConsole or VisualVM. The
+ * names are like org.opencb.biodata:type=Pipeline,pipeline=...,index=...,stage=...
+ * where index is the position of the stage in the pipeline. When another
+ * pipeline with the same name is registered at the same time, a run key
+ * tells them apart instead of replacing its MBeans.
+ */
+public class JmxPipelineListener implements PipelineListener {
+
+    public static final String DOMAIN = "org.opencb.biodata";
+
+    private final MBeanServer server;
+    private final boolean keepRegistered;
+    private final List<ObjectName> registered;
+
+    public JmxPipelineListener() {
+        this(ManagementFactory.getPlatformMBeanServer(), false);
+    }
+
+    /**
+     * @param server Server where the MBeans are registered
+     * @param keepRegistered Whether the MBeans are kept after the pipeline finishes
+     */
+    public JmxPipelineListener(MBeanServer server, boolean keepRegistered) {
+        this.server = server;
+        this.keepRegistered = keepRegistered;
+        this.registered = new ArrayList<>();
+    }
+
+    @Override
+    public void pipelineStarted(PipelineMetrics metrics) {
+        // The MBeans of a previous run of this listener are replaced
+        unregister();
+
+        String pipeline = DOMAIN + ":type=Pipeline,pipeline=" + ObjectName.quote(metrics.getName());
+        List<StageMetrics> stages = metrics.getStages();
+        String prefix = pipeline;
+        try {
+            for (int run = 2; isRegistered(prefix, stages); run++) {
+                prefix = pipeline + ",run=" + run;
+            }
+        } catch (JMException e) {
+            Logger.getLogger(JmxPipelineListener.class.getName()).log(Level.WARNING, null, e);
+        }
+
+        for (int i = 0; i < stages.size(); i++) {
+            StageMetrics stage = stages.get(i);
+            try {
+                ObjectName name = stageName(prefix, i, stage);
+                server.registerMBean(stage, name);
+                registered.add(name);
+            } catch (JMException e) {
+                Logger.getLogger(JmxPipelineListener.class.getName()).log(Level.WARNING,
+                        "Metrics of stage " + stage.getName() + " could not be registered", e);
+            }
+        }
+    }
+
+    private boolean isRegistered(String prefix, List<StageMetrics> stages) throws JMException {
+        for (int i = 0; i < stages.size(); i++) {
+            if (server.isRegistered(stageName(prefix, i, stages.get(i)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ObjectName stageName(String prefix, int index, StageMetrics stage) throws JMException {
+        return new ObjectName(prefix + ",index=" + index + ",stage=" + ObjectName.quote(stage.getName()));
+    }
+
+    @Override
+    public void batchFinished(PipelineMetrics metrics) { }
+
+    @Override
+    public void pipelineFinished(PipelineMetrics metrics) {
+        if (!keepRegistered) {
+            unregister();
+        }
+    }
+
+    /**
+     * Removes all the MBeans registered by this listener.
+     */
+    public void unregister() {
+        for (ObjectName name : registered) {
+            try {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                Logger.getLogger(JmxPipelineListener.class.getName()).log(Level.WARNING, null, e);
+            }
+        }
+        registered.clear();
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.opencb.biodata.tools.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs the progress of a pipeline periodically, and the metrics of every
+ * stage when it finishes.
+ */
+public class LoggingPipelineListener implements PipelineListener {
+
+    private final Logger logger;
+    private final Level level;
+    private final long intervalNanos;
+    // Listener methods may be called from different threads of a pipelined run
+    private volatile long lastReportNanos;
+
+    public LoggingPipelineListener() {
+        this(Logger.getLogger(LoggingPipelineListener.class.getName()), Level.INFO, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param logger Logger the reports are written to
+     * @param level Level of the reports
+     * @param interval Minimum time between progress reports, 0 to report only at the end
+     * @param unit Unit of the interval
+     */
+    public LoggingPipelineListener(Logger logger, Level level, long interval, TimeUnit unit) {
+        this.logger = logger;
+        this.level = level;
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    @Override
+    public void pipelineStarted(PipelineMetrics metrics) {
+        lastReportNanos = System.nanoTime();
+        logger.log(level, "Pipeline {0} started", metrics.getName());
+    }
+
+    @Override
+    public void batchFinished(PipelineMetrics metrics) {
+        if (intervalNanos <= 0 || !logger.isLoggable(level)) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - lastReportNanos >= intervalNanos) {
+            lastReportNanos = now;
+            long records = metrics.getStages().isEmpty() ? 0 : metrics.getStages().get(0).getRecordsOut();
+            long elapsed = metrics.getElapsedNanos();
+            logger.log(level, String.format("Pipeline %s: %d records read in %d s (%.1f records/s)", metrics.getName(),
+                    records, TimeUnit.NANOSECONDS.toSeconds(elapsed), elapsed > 0 ? records * 1e9 / elapsed : 0));
+        }
+    }
+
+    @Override
+    public void pipelineFinished(PipelineMetrics metrics) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        long elapsed = Math.max(1, metrics.getElapsedNanos());
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Pipeline %s finished in %d ms", metrics.getName(), TimeUnit.NANOSECONDS.toMillis(elapsed)));
+        for (StageMetrics stage : metrics.getStages()) {
+            report.append(String.format("%n  %s (%.1f%% of the time)", stage, 100.0 * stage.getElapsedNanos() / elapsed));
+        }
+        logger.log(level, report.toString());
+    }
+
+}
@@ -0,0 +1,22 @@
+package org.opencb.biodata.tools.metrics;
+
+/**
+ * Listener that ignores all metrics. Runners check for it to skip
+ * measuring altogether.
+ */
+public final class NoOpPipelineListener implements PipelineListener {
+
+    public static final NoOpPipelineListener INSTANCE = new NoOpPipelineListener();
+
+    private NoOpPipelineListener() { }
+
+    @Override
+    public void pipelineStarted(PipelineMetrics metrics) { }
+
+    @Override
+    public void batchFinished(PipelineMetrics metrics) { }
+
+    @Override
+    public void pipelineFinished(PipelineMetrics metrics) { }
+
+}
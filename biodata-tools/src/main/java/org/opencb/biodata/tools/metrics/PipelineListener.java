@@ -0,0 +1,19 @@
+package org.opencb.biodata.tools.metrics;
+
+/**
+ * Receives the metrics of a pipeline while it runs. Methods may be called from
+ * different threads of the pipeline, but never at the same time, and they
+ * should return quickly.
+ */
+public interface PipelineListener {
+
+    void pipelineStarted(PipelineMetrics metrics);
+
+    /**
+     * Called every time a batch has gone through all the stages.
+     */
+    void batchFinished(PipelineMetrics metrics);
+
+    void pipelineFinished(PipelineMetrics metrics);
+
+}
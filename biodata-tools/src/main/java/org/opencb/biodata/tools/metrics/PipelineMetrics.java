@@ -0,0 +1,70 @@
+package org.opencb.biodata.tools.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Metrics of all the stages of a pipeline run, in the order records go
+ * through them.
+ */
+public class PipelineMetrics {
+
+    private final String name;
+    private final List<StageMetrics> stages;
+    private long startNanos;
+    private long endNanos;
+
+    public PipelineMetrics(String name) {
+        this.name = name;
+        this.stages = new ArrayList<>();
+    }
+
+    public StageMetrics addStage(String stageName, StageMetrics.Kind kind) {
+        // Stages with the same name, like two filters of the same class, are numbered
+        String uniqueName = stageName;
+        for (int i = 2; getStage(uniqueName) != null; i++) {
+            uniqueName = stageName + "#" + i;
+        }
+        StageMetrics stage = new StageMetrics(uniqueName, kind);
+        stages.add(stage);
+        return stage;
+    }
+
+    public StageMetrics getStage(String stageName) {
+        for (StageMetrics stage : stages) {
+            if (stage.getName().equals(stageName)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<StageMetrics> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        endNanos = 0;
+    }
+
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * @return Nanoseconds since the pipeline started, or its total duration once finished
+     */
+    public long getElapsedNanos() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        return (endNanos != 0 ? endNanos : System.nanoTime()) - startNanos;
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.opencb.biodata.tools.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a stage of a pipeline: the reader, every task or every writer.
+ * They can be updated from several threads and read at any moment.
+ */
+public class StageMetrics implements StageMetricsMXBean {
+
+    public enum Kind { READER, TASK, WRITER }
+
+    private final String name;
+    private final Kind kind;
+
+    private final AtomicLong batches;
+    private final AtomicLong recordsIn;
+    private final AtomicLong recordsOut;
+    private final AtomicInteger minBatchSize;
+    private final AtomicInteger maxBatchSize;
+    private final AtomicLong elapsedNanos;
+    private final AtomicLong waitNanos;
+    private final AtomicLong allocatedBytes;
+
+    public StageMetrics(String name, Kind kind) {
+        this.name = name;
+        this.kind = kind;
+        this.batches = new AtomicLong();
+        this.recordsIn = new AtomicLong();
+        this.recordsOut = new AtomicLong();
+        this.minBatchSize = new AtomicInteger(Integer.MAX_VALUE);
+        this.maxBatchSize = new AtomicInteger();
+        this.elapsedNanos = new AtomicLong();
+        this.waitNanos = new AtomicLong();
+        this.allocatedBytes = new AtomicLong(AllocationCounter.isSupported() ? 0 : -1);
+    }
+
+    /**
+     * Adds the processing of a batch to the counters.
+     *
+     * @param in Number of records received by the stage, 0 for readers
+     * @param out Number of records left after the stage
+     * @param elapsed Nanoseconds spent processing the batch
+     * @param wait Nanoseconds the batch waited since it was read until the stage started processing it
+     * @param allocated Bytes allocated while processing the batch, negative if unknown
+     */
+    public void record(int in, int out, long elapsed, long wait, long allocated) {
+        batches.incrementAndGet();
+        recordsIn.addAndGet(in);
+        recordsOut.addAndGet(out);
+        int size = kind == Kind.READER ? out : in;
+        int current;
+        while (size < (current = minBatchSize.get()) && !minBatchSize.compareAndSet(current, size)) { }
+        while (size > (current = maxBatchSize.get()) && !maxBatchSize.compareAndSet(current, size)) { }
+        elapsedNanos.addAndGet(elapsed);
+        waitNanos.addAndGet(wait);
+        if (allocated >= 0 && allocatedBytes.get() >= 0) {
+            allocatedBytes.addAndGet(allocated);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getKind() {
+        return kind.name();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.get();
+    }
+
+    @Override
+    public long getRecordsIn() {
+        return recordsIn.get();
+    }
+
+    @Override
+    public long getRecordsOut() {
+        return recordsOut.get();
+    }
+
+    @Override
+    public int getMinBatchSize() {
+        return batches.get() > 0 ? minBatchSize.get() : 0;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    @Override
+    public double getMeanBatchSize() {
+        long numBatches = batches.get();
+        if (numBatches == 0) {
+            return 0;
+        }
+        return (double) (kind == Kind.READER ? recordsOut.get() : recordsIn.get()) / numBatches;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos.get();
+    }
+
+    @Override
+    public long getTotalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos.get());
+    }
+
+    @Override
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    @Override
+    public double getRecordsPerSecond() {
+        long elapsed = elapsedNanos.get();
+        long records = kind == Kind.READER ? recordsOut.get() : recordsIn.get();
+        return elapsed > 0 ? records * 1e9 / elapsed : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s: %d batches, %d records in, %d records out, %.1f records/batch, %d ms, "
+                + "%d ms waiting, %s allocated", kind, name, getBatches(), getRecordsIn(), getRecordsOut(),
+                getMeanBatchSize(), getTotalMillis(), getWaitMillis(),
+                getAllocatedBytes() >= 0 ? (getAllocatedBytes() >> 20) + " MB" : "unknown");
+    }
+
+}
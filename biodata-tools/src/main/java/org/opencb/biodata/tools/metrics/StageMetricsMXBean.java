@@ -0,0 +1,36 @@
+package org.opencb.biodata.tools.metrics;
+
+/**
+ * Management interface of the metrics of a pipeline stage, as exposed
+ * through JMX by JmxPipelineListener.
+ */
+public interface StageMetricsMXBean {
+
+    String getName();
+
+    String getKind();
+
+    long getBatches();
+
+    long getRecordsIn();
+
+    long getRecordsOut();
+
+    int getMinBatchSize();
+
+    int getMaxBatchSize();
+
+    double getMeanBatchSize();
+
+    long getTotalMillis();
+
+    long getWaitMillis();
+
+    /**
+     * @return Bytes allocated by the stage, -1 if the JVM does not measure them
+     */
+    long getAllocatedBytes();
+
+    double getRecordsPerSecond();
+
+}
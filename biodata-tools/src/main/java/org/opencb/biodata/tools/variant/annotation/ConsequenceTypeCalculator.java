@@ -0,0 +1,379 @@
+package org.opencb.biodata.tools.variant.annotation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencb.biodata.formats.sequence.fasta.dbadaptor.SequenceDBAdaptor;
+import org.opencb.biodata.models.core.FeatureIntervalIndex;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+import org.opencb.biodata.models.feature.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.annotation.ConsequenceType;
+
+/**
+ * Predicts the consequence types of variants over the transcripts of a gene
+ * model, without querying any remote service.
+ *
+ * The exon structure of every transcript found near a variant is kept in a
+ * window, so that consecutive variants of a sorted stream reuse it. Transcripts
+ * are dropped from the window when the stream moves past them. The reference
+ * sequence is only retrieved for the coding transcripts hit by a variant, once
+ * per transcript, and is needed to fill codons and amino acid changes.
+ *
+ * Instances are not thread-safe; parallel annotation should use one calculator
+ * per thread over the same FeatureIntervalIndex.
+ */
+public class ConsequenceTypeCalculator {
+
+    public static final int UPSTREAM_DOWNSTREAM_DISTANCE = 5000;
+
+    private static final int MAX_WINDOW_SIZE = 10000;
+
+    /** Standard genetic code, codons sorted as TTT, TTC, TTA, TTG, TCT... */
+    private static final String GENETIC_CODE = "FFLLSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG";
+
+    private final FeatureIntervalIndex index;
+    private final SequenceDBAdaptor sequenceAdaptor;
+    private final Map<Transcript, TranscriptModel> window;
+    private String windowChromosome;
+
+    public ConsequenceTypeCalculator(List<Gene> genes, SequenceDBAdaptor sequenceAdaptor) {
+        this(FeatureIntervalIndex.build(genes), sequenceAdaptor);
+    }
+
+    /**
+     * @param index Index of the gene model, built in memory so the transcripts are available
+     * @param sequenceAdaptor Source of the reference sequence, null if codons should not be calculated
+     */
+    public ConsequenceTypeCalculator(FeatureIntervalIndex index, SequenceDBAdaptor sequenceAdaptor) {
+        this.index = index;
+        this.sequenceAdaptor = sequenceAdaptor;
+        this.window = new IdentityHashMap<>();
+    }
+
+    /**
+     * @param variant Variant to annotate
+     * @return One consequence type per transcript the variant overlaps or is close to, or a
+     * single intergenic_variant if there is none
+     */
+    public List<ConsequenceType> calculate(Variant variant) {
+        int start = variant.getStart();
+        int end = isInsertion(variant) ? variant.getStart() : variant.getEnd();
+        slideWindow(variant.getChromosome(), start);
+
+        List<ConsequenceType> consequenceTypes = new ArrayList<>();
+        int[] handles = index.query(variant.getChromosome(), start - UPSTREAM_DOWNSTREAM_DISTANCE,
+                end + UPSTREAM_DOWNSTREAM_DISTANCE, FeatureIntervalIndex.FeatureType.TRANSCRIPT);
+        for (int handle : handles) {
+            TranscriptModel model = getModel(handle);
+            if (model != null) {
+                ConsequenceType consequenceType = calculate(variant, start, end, model);
+                if (consequenceType != null) {
+                    consequenceTypes.add(consequenceType);
+                }
+            }
+        }
+
+        if (consequenceTypes.isEmpty()) {
+            consequenceTypes.add(new ConsequenceType("intergenic_variant"));
+        }
+        return consequenceTypes;
+    }
+
+    private ConsequenceType calculate(Variant variant, int start, int end, TranscriptModel model) {
+        Set<String> soNames = new LinkedHashSet<>();
+
+        if (end < model.getStart() || start > model.getEnd()) {
+            boolean before = end < model.getStart();
+            int distance = before ? model.getStart() - end : start - model.getEnd();
+            if (distance > UPSTREAM_DOWNSTREAM_DISTANCE) {
+                return null;
+            }
+            soNames.add(before != model.reverse ? "upstream_gene_variant" : "downstream_gene_variant");
+            return createConsequenceType(model, soNames, null, null, null, null, null);
+        }
+
+        int codingBases = 0;
+        for (int i = 0; i < model.exonStarts.length; i++) {
+            int overlapStart = Math.max(start, model.exonStarts[i]);
+            int overlapEnd = Math.min(end, model.exonEnds[i]);
+            if (overlapStart > overlapEnd) {
+                continue;
+            }
+            if (!model.isCoding()) {
+                soNames.add("non_coding_transcript_exon_variant");
+                continue;
+            }
+            if (overlapStart < model.codingStart) {
+                soNames.add(model.reverse ? "3_prime_UTR_variant" : "5_prime_UTR_variant");
+            }
+            if (overlapEnd > model.codingEnd) {
+                soNames.add(model.reverse ? "5_prime_UTR_variant" : "3_prime_UTR_variant");
+            }
+            int codingOverlapStart = Math.max(overlapStart, model.codingStart);
+            int codingOverlapEnd = Math.min(overlapEnd, model.codingEnd);
+            if (codingOverlapStart <= codingOverlapEnd) {
+                codingBases += codingOverlapEnd - codingOverlapStart + 1;
+            }
+        }
+
+        addIntronAndSpliceTerms(start, end, model, soNames);
+
+        // Positions of the first affected base in the orientation of the transcript
+        Integer cdnaPosition = null;
+        Integer cdsPosition = null;
+        Integer aaPosition = null;
+        int first = model.reverse ? end : start;
+        int step = model.reverse ? -1 : 1;
+        for (int position = first; position >= start && position <= end; position += step) {
+            int cdna = model.cdnaPosition(position);
+            if (cdna > 0 && cdnaPosition == null) {
+                cdnaPosition = cdna;
+            }
+            int cds = model.cdsPosition(position);
+            if (cds > 0) {
+                cdsPosition = cds;
+                aaPosition = (cds - 1) / 3 + 1;
+                break;
+            }
+        }
+
+        String aaChange = null;
+        String codon = null;
+        if (codingBases > 0) {
+            int referenceLength = variant.getReference().length();
+            int alternateLength = variant.getAlternate().length();
+            if (referenceLength == alternateLength && referenceLength > 0) {
+                String[] change = addSubstitutionTerms(variant, model, soNames);
+                if (change != null) {
+                    aaChange = change[0];
+                    codon = change[1];
+                }
+            } else {
+                int difference = referenceLength == 0 || alternateLength == 0
+                        ? (referenceLength == 0 ? alternateLength : codingBases)
+                        : Math.abs(alternateLength - referenceLength);
+                if (difference % 3 != 0) {
+                    soNames.add("frameshift_variant");
+                } else {
+                    soNames.add(alternateLength > referenceLength ? "inframe_insertion" : "inframe_deletion");
+                }
+            }
+        }
+
+        if (!model.isCoding()) {
+            soNames.add("non_coding_transcript_variant");
+        }
+        if ("nonsense_mediated_decay".equals(model.transcript.getBiotype())) {
+            soNames.add("NMD_transcript_variant");
+        }
+
+        return createConsequenceType(model, soNames, cdnaPosition, cdsPosition, aaPosition, aaChange, codon);
+    }
+
+    /**
+     * Adds the terms related to introns: splice donor and acceptor sites (the
+     * first and last 2 bases of the intron), splice regions (3 to 8 bases
+     * inside the intron, or 1 to 3 inside the exon) and the rest of the intron.
+     */
+    private void addIntronAndSpliceTerms(int start, int end, TranscriptModel model, Set<String> soNames) {
+        for (int i = 0; i < model.exonStarts.length - 1; i++) {
+            int intronStart = model.exonEnds[i] + 1;
+            int intronEnd = model.exonStarts[i + 1] - 1;
+            if (intronStart > intronEnd || end < intronStart - 3 || start > intronEnd + 3) {
+                continue;
+            }
+
+            if (overlaps(start, end, intronStart, Math.min(intronStart + 1, intronEnd))) {
+                soNames.add(model.reverse ? "splice_acceptor_variant" : "splice_donor_variant");
+            }
+            if (overlaps(start, end, Math.max(intronEnd - 1, intronStart), intronEnd)) {
+                soNames.add(model.reverse ? "splice_donor_variant" : "splice_acceptor_variant");
+            }
+            if (overlaps(start, end, intronStart + 2, intronStart + 7) || overlaps(start, end, intronEnd - 7, intronEnd - 2)
+                    || overlaps(start, end, intronStart - 3, intronStart - 1) || overlaps(start, end, intronEnd + 1, intronEnd + 3)) {
+                soNames.add("splice_region_variant");
+            }
+            if (overlaps(start, end, intronStart + 2, intronEnd - 2)) {
+                soNames.add("intron_variant");
+            }
+        }
+    }
+
+    /**
+     * Compares the reference and alternate codons of a substitution.
+     *
+     * @return The amino acid change and the codon change, or null if the coding sequence is not available
+     */
+    private String[] addSubstitutionTerms(Variant variant, TranscriptModel model, Set<String> soNames) {
+        String cds = loadCodingSequence(model);
+        if (cds == null) {
+            soNames.add("coding_sequence_variant");
+            return null;
+        }
+
+        String alternate = variant.getAlternate();
+        int firstCds = Integer.MAX_VALUE;
+        int lastCds = 0;
+        for (int position = variant.getStart(); position <= variant.getEnd(); position++) {
+            int cdsPosition = model.cdsPosition(position);
+            if (cdsPosition > 0) {
+                firstCds = Math.min(firstCds, cdsPosition);
+                lastCds = Math.max(lastCds, cdsPosition);
+            }
+        }
+
+        int firstCodon = (firstCds - 1) / 3;
+        int lastCodon = (lastCds - 1) / 3;
+        int codonsStart = firstCodon * 3;
+        int codonsEnd = Math.min((lastCodon + 1) * 3, cds.length());
+        char[] referenceCodons = cds.substring(codonsStart, codonsEnd).toLowerCase().toCharArray();
+        char[] alternateCodons = referenceCodons.clone();
+        for (int position = variant.getStart(); position <= variant.getEnd(); position++) {
+            int cdsPosition = model.cdsPosition(position);
+            if (cdsPosition > 0) {
+                char base = alternate.charAt(position - variant.getStart());
+                base = model.reverse ? TranscriptModel.complement(base) : Character.toUpperCase(base);
+                int offset = cdsPosition - 1 - codonsStart;
+                referenceCodons[offset] = Character.toUpperCase(referenceCodons[offset]);
+                alternateCodons[offset] = base;
+            }
+        }
+
+        if (referenceCodons.length % 3 != 0) {
+            soNames.add("incomplete_terminal_codon_variant");
+            return new String[]{null, new String(referenceCodons) + "/" + new String(alternateCodons)};
+        }
+
+        String referenceAminoacids = translate(referenceCodons);
+        String alternateAminoacids = translate(alternateCodons);
+        if (firstCodon == 0 && referenceAminoacids.charAt(0) == 'M' && alternateAminoacids.charAt(0) != 'M') {
+            soNames.add("initiator_codon_variant");
+        } else if (referenceAminoacids.equals(alternateAminoacids)) {
+            soNames.add(referenceAminoacids.indexOf('*') >= 0 ? "stop_retained_variant" : "synonymous_variant");
+        } else if (hasStopNotIn(alternateAminoacids, referenceAminoacids)) {
+            soNames.add("stop_gained");
+        } else if (hasStopNotIn(referenceAminoacids, alternateAminoacids)) {
+            soNames.add("stop_lost");
+        } else {
+            soNames.add("missense_variant");
+        }
+
+        String aaChange = referenceAminoacids.equals(alternateAminoacids)
+                ? referenceAminoacids : referenceAminoacids + "/" + alternateAminoacids;
+        return new String[]{aaChange, new String(referenceCodons) + "/" + new String(alternateCodons)};
+    }
+
+    private String loadCodingSequence(TranscriptModel model) {
+        if (!model.isSequenceLoaded()) {
+            String sequence = null;
+            if (sequenceAdaptor != null) {
+                try {
+                    // Adaptors are not required to be thread-safe
+                    synchronized (sequenceAdaptor) {
+                        sequence = sequenceAdaptor.getSequence(new Region(model.transcript.getChromosome() != null
+                                ? model.transcript.getChromosome() : model.gene.getChromosome(),
+                                model.codingStart, model.codingEnd));
+                    }
+                } catch (IOException e) {
+                    Logger.getLogger(ConsequenceTypeCalculator.class.getName()).log(Level.WARNING,
+                            "Sequence of transcript " + model.transcript.getId() + " not available", e);
+                }
+            }
+            model.setCodingSequence(sequence);
+        }
+        return model.getCodingSequence();
+    }
+
+    private ConsequenceType createConsequenceType(TranscriptModel model, Set<String> soNames, Integer cdnaPosition,
+            Integer cdsPosition, Integer aaPosition, String aaChange, String codon) {
+        return new ConsequenceType(model.gene.getName(), model.gene.getId(), model.transcript.getId(),
+                model.transcript.getStrand(), model.transcript.getBiotype(), cdnaPosition, cdsPosition, aaPosition,
+                aaChange, codon, null, new ArrayList<>(soNames));
+    }
+
+    private TranscriptModel getModel(int handle) {
+        Transcript transcript = index.getTranscript(handle);
+        if (transcript == null) {
+            throw new IllegalStateException("The transcripts of the index are not available, it must be built in memory");
+        }
+        TranscriptModel model = window.get(transcript);
+        if (model == null) {
+            model = new TranscriptModel(index.getGene(index.getParent(handle)), transcript);
+            window.put(transcript, model);
+        }
+        return model;
+    }
+
+    /**
+     * Drops the transcripts that can't be hit by variants from a position
+     * onwards, assuming variants are sorted. Unsorted input is still annotated
+     * correctly, at the cost of rebuilding some transcript models.
+     */
+    private void slideWindow(String chromosome, int position) {
+        if (!chromosome.equals(windowChromosome) || window.size() > MAX_WINDOW_SIZE) {
+            window.clear();
+            windowChromosome = chromosome;
+            return;
+        }
+        Iterator<TranscriptModel> iterator = window.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getEnd() + UPSTREAM_DOWNSTREAM_DISTANCE < position) {
+                iterator.remove();
+            }
+        }
+    }
+
+    static String translate(char[] codons) {
+        char[] aminoacids = new char[codons.length / 3];
+        for (int i = 0; i < aminoacids.length; i++) {
+            int code = 0;
+            for (int j = 0; j < 3; j++) {
+                int base;
+                switch (Character.toUpperCase(codons[3 * i + j])) {
+                    case 'T': base = 0; break;
+                    case 'C': base = 1; break;
+                    case 'A': base = 2; break;
+                    case 'G': base = 3; break;
+                    default: base = -1;
+                }
+                if (base < 0) {
+                    code = -1;
+                    break;
+                }
+                code = code * 4 + base;
+            }
+            aminoacids[i] = code < 0 ? 'X' : GENETIC_CODE.charAt(code);
+        }
+        return new String(aminoacids);
+    }
+
+    /**
+     * @return Whether a peptide has a stop codon in a position where the other one does not
+     */
+    private static boolean hasStopNotIn(String aminoacids, String otherAminoacids) {
+        for (int i = 0; i < aminoacids.length(); i++) {
+            if (aminoacids.charAt(i) == '*' && otherAminoacids.charAt(i) != '*') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInsertion(Variant variant) {
+        return variant.getReference().isEmpty();
+    }
+
+    private static boolean overlaps(int start, int end, int regionStart, int regionEnd) {
+        return regionStart <= regionEnd && start <= regionEnd && end >= regionStart;
+    }
+
+}
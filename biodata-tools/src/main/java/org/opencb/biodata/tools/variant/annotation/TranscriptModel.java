@@ -0,0 +1,194 @@
+package org.opencb.biodata.tools.variant.annotation;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.opencb.biodata.models.core.Exon;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+
+/**
+ * Exon structure of a transcript in primitive arrays, able to translate
+ * genomic positions into cDNA and CDS positions.
+ *
+ * Exons are sorted by genomic start. cDNA and CDS positions are 1-based and
+ * follow the orientation of the transcript. A value of 0 means that the
+ * position is not part of the cDNA or CDS.
+ */
+class TranscriptModel {
+
+    private static final Comparator<Exon> BY_START = new Comparator<Exon>() {
+        @Override
+        public int compare(Exon e1, Exon e2) {
+            return Integer.compare(e1.getStart(), e2.getStart());
+        }
+    };
+
+    final Gene gene;
+    final Transcript transcript;
+    final boolean reverse;
+    final int[] exonStarts;
+    final int[] exonEnds;
+    final int codingStart;
+    final int codingEnd;
+    final int cdsLength;
+
+    private final int[] cdnaBefore;
+    private final int cdnaCodingStart;
+
+    private boolean sequenceLoaded;
+    private String codingSequence;
+
+    TranscriptModel(Gene gene, Transcript transcript) {
+        this.gene = gene;
+        this.transcript = transcript;
+        this.reverse = "-".equals(transcript.getStrand()) || "-1".equals(transcript.getStrand());
+
+        List<Exon> exonList = transcript.getExons();
+        Exon[] exons = exonList != null ? exonList.toArray(new Exon[exonList.size()]) : new Exon[0];
+        Arrays.sort(exons, BY_START);
+        exonStarts = new int[exons.length];
+        exonEnds = new int[exons.length];
+        for (int i = 0; i < exons.length; i++) {
+            exonStarts[i] = exons[i].getStart();
+            exonEnds[i] = exons[i].getEnd();
+        }
+
+        cdnaBefore = new int[exons.length];
+        int cdnaLength = 0;
+        for (int j = 0; j < exons.length; j++) {
+            int i = reverse ? exons.length - 1 - j : j;
+            cdnaBefore[i] = cdnaLength;
+            cdnaLength += exonEnds[i] - exonStarts[i] + 1;
+        }
+
+        int start = transcript.getGenomicCodingStart();
+        int end = transcript.getGenomicCodingEnd();
+        int cdnaStart = start > 0 && end >= start ? cdnaPosition(reverse ? end : start) : 0;
+        if (cdnaStart > 0) {
+            codingStart = start;
+            codingEnd = end;
+            cdnaCodingStart = cdnaStart;
+            int length = 0;
+            for (int i = 0; i < exons.length; i++) {
+                int overlapStart = Math.max(exonStarts[i], start);
+                int overlapEnd = Math.min(exonEnds[i], end);
+                if (overlapStart <= overlapEnd) {
+                    length += overlapEnd - overlapStart + 1;
+                }
+            }
+            cdsLength = length;
+        } else {
+            codingStart = 0;
+            codingEnd = 0;
+            cdnaCodingStart = 0;
+            cdsLength = 0;
+        }
+    }
+
+    boolean isCoding() {
+        return cdsLength > 0;
+    }
+
+    int getStart() {
+        return transcript.getStart();
+    }
+
+    int getEnd() {
+        return transcript.getEnd();
+    }
+
+    /**
+     * @return The position in the cDNA of a genomic position, 0 if it is not exonic
+     */
+    int cdnaPosition(int position) {
+        int exon = exonIndex(position);
+        if (exon < 0) {
+            return 0;
+        }
+        return cdnaBefore[exon] + (reverse ? exonEnds[exon] - position + 1 : position - exonStarts[exon] + 1);
+    }
+
+    /**
+     * @return The position in the CDS of a genomic position, 0 if it is not coding
+     */
+    int cdsPosition(int position) {
+        if (!isCoding() || position < codingStart || position > codingEnd) {
+            return 0;
+        }
+        int cdna = cdnaPosition(position);
+        return cdna > 0 ? cdna - cdnaCodingStart + 1 : 0;
+    }
+
+    /**
+     * @return The index of the exon containing a genomic position, -1 if none
+     */
+    int exonIndex(int position) {
+        int low = 0;
+        int high = exonStarts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (exonEnds[middle] < position) {
+                low = middle + 1;
+            } else if (exonStarts[middle] > position) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    boolean isSequenceLoaded() {
+        return sequenceLoaded;
+    }
+
+    /**
+     * @return The coding sequence in the orientation of the transcript, null if it could not be retrieved
+     */
+    String getCodingSequence() {
+        return codingSequence;
+    }
+
+    /**
+     * Splices the coding exons from the genomic sequence between the first
+     * and last coding positions.
+     *
+     * @param genomicSequence Reference sequence from codingStart to codingEnd, null if not available
+     */
+    void setCodingSequence(String genomicSequence) {
+        sequenceLoaded = true;
+        if (genomicSequence == null || genomicSequence.length() != codingEnd - codingStart + 1) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder(cdsLength);
+        for (int i = 0; i < exonStarts.length; i++) {
+            int overlapStart = Math.max(exonStarts[i], codingStart);
+            int overlapEnd = Math.min(exonEnds[i], codingEnd);
+            if (overlapStart <= overlapEnd) {
+                builder.append(genomicSequence, overlapStart - codingStart, overlapEnd - codingStart + 1);
+            }
+        }
+        codingSequence = reverse ? reverseComplement(builder) : builder.toString().toUpperCase();
+    }
+
+    static char complement(char base) {
+        switch (base) {
+            case 'A': case 'a': return 'T';
+            case 'C': case 'c': return 'G';
+            case 'G': case 'g': return 'C';
+            case 'T': case 't': return 'A';
+            default: return 'N';
+        }
+    }
+
+    private static String reverseComplement(CharSequence sequence) {
+        char[] result = new char[sequence.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = complement(sequence.charAt(sequence.length() - 1 - i));
+        }
+        return new String(result);
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.opencb.biodata.tools.variant.annotation;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencb.biodata.formats.sequence.fasta.dbadaptor.SequenceDBAdaptor;
+import org.opencb.biodata.models.core.FeatureIntervalIndex;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.annotation.VariantAnnotation;
+
+/**
+ * Annotates variants with their consequence types, calculated locally from a
+ * gene model and a reference sequence.
+ *
+ * Batches are split into as many contiguous chunks as threads, and every chunk
+ * is always processed by the same ConsequenceTypeCalculator, so each of them
+ * still sees a sorted stream when the input is sorted. The threads are
+ * daemons, and they are stopped by close, which VariantAnnotTask calls in
+ * its post.
+ */
+@SuppressWarnings("deprecation")
+public class VariantConsequenceTypeAnnotator implements VariantAnnotator, Closeable {
+
+    private final ConsequenceTypeCalculator[] calculators;
+    private final ExecutorService executor;
+
+    public VariantConsequenceTypeAnnotator(List<Gene> genes, SequenceDBAdaptor sequenceAdaptor) {
+        this(FeatureIntervalIndex.build(genes), sequenceAdaptor, 1);
+    }
+
+    public VariantConsequenceTypeAnnotator(List<Gene> genes, SequenceDBAdaptor sequenceAdaptor, int numThreads) {
+        this(FeatureIntervalIndex.build(genes), sequenceAdaptor, numThreads);
+    }
+
+    /**
+     * @param index Index of the gene model, built in memory so the transcripts are available
+     * @param sequenceAdaptor Source of the reference sequence, null if codons should not be calculated
+     * @param numThreads Number of threads annotating every batch
+     */
+    public VariantConsequenceTypeAnnotator(FeatureIntervalIndex index, SequenceDBAdaptor sequenceAdaptor, int numThreads) {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero");
+        }
+        calculators = new ConsequenceTypeCalculator[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            calculators[i] = new ConsequenceTypeCalculator(index, sequenceAdaptor);
+        }
+        executor = numThreads > 1 ? newExecutor(numThreads) : null;
+    }
+
+    @Override
+    public synchronized void annot(List<Variant> batch) {
+        if (executor == null || batch.size() < 2 * calculators.length) {
+            annot(batch, calculators[0]);
+            return;
+        }
+
+        int chunkSize = (batch.size() + calculators.length - 1) / calculators.length;
+        List<Future<Void>> futures = new ArrayList<>(calculators.length);
+        for (int i = 0; i < calculators.length; i++) {
+            final List<Variant> chunk = batch.subList(Math.min(i * chunkSize, batch.size()),
+                    Math.min((i + 1) * chunkSize, batch.size()));
+            final ConsequenceTypeCalculator calculator = calculators[i];
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    annot(chunk, calculator);
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Logger.getLogger(VariantConsequenceTypeAnnotator.class.getName()).log(Level.SEVERE, null, e);
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void annot(Variant elem) {
+        annot(elem, calculators[0]);
+    }
+
+    /**
+     * Stops the threads used to annotate batches in parallel.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static ExecutorService newExecutor(int numThreads) {
+        return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "consequence-type-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static void annot(List<Variant> variants, ConsequenceTypeCalculator calculator) {
+        for (Variant variant : variants) {
+            annot(variant, calculator);
+        }
+    }
+
+    private static void annot(Variant variant, ConsequenceTypeCalculator calculator) {
+        VariantAnnotation annotation = variant.getAnnotation();
+        if (annotation == null) {
+            annotation = new VariantAnnotation(variant.getChromosome(), variant.getStart(), variant.getEnd(),
+                    variant.getReference(), variant.getAlternate());
+            variant.setAnnotation(annotation);
+        } else if (annotation.getAlternativeAllele() == null) {
+            annotation.setAlternativeAllele(variant.getAlternate());
+        }
+        annotation.setConsequenceTypes(calculator.calculate(variant));
+    }
+
+}
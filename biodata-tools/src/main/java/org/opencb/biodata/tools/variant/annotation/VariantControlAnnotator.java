@@ -11,6 +11,7 @@ import org.opencb.biodata.models.variant.stats.VariantStats;
 
 /**
  * @author Alejandro Aleman Ramos &lt;aaleman@cipf.es&gt;
+ * @deprecated Use {@link VariantControlMergeAnnotator} with coordinate-sorted control files
  */
 @Deprecated
 public class VariantControlAnnotator implements VariantAnnotator {
@@ -189,7 +190,7 @@ public class VariantControlAnnotator implements VariantAnnotator {
         long pid = Thread.currentThread().getId();
         Map<String, TabixReader> tabixMap;
         List<Variant> controlBatch = new ArrayList<>(batch.size());
-        Map<Variant, Integer> map = new LinkedHashMap<>(batch.size());
+        VariantKeyIntMap map = new VariantKeyIntMap(batch.size(), -1);
 
 
         if (multipleControlsTabix.containsKey(pid)) {
@@ -233,7 +234,7 @@ public class VariantControlAnnotator implements VariantAnnotator {
 
                             if (tabixRecord.getReference().equals(record.getReference()) && tabixRecord.getAlternate().equals(record.getAlternate())) {
                                 controlBatch.add(tabixRecord);
-                                map.put(record, cont++);
+                                map.put(VariantKey.of(record), cont++);
                             }
                         }
                     }
@@ -251,7 +252,7 @@ public class VariantControlAnnotator implements VariantAnnotator {
 
         for (Variant record : batch) {
 
-            if (map.containsKey(record)) {
+            if (map.containsKey(VariantKey.of(record))) {
                 VariantSourceEntry avf = record.getSourceEntry("CONTROL", null);
                 avf.addAttribute(this.prefix + "_gt", StringUtil.join(",", avf.getStats().getGenotypesCount()));
                 avf.addAttribute(this.prefix + "_maf", String.format("%.4f", avf.getStats().getMaf()));
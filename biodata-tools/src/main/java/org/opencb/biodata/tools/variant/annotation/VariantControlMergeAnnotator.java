@@ -0,0 +1,605 @@
+package org.opencb.biodata.tools.variant.annotation;
+
+import java.io.Closeable;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import org.opencb.biodata.models.feature.Genotype;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantFactory;
+import org.opencb.biodata.models.variant.VariantKey;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+import org.opencb.biodata.models.variant.VariantVcfFactory;
+import org.opencb.biodata.models.variant.exceptions.NotAVariantException;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+/**
+ * Annotates variants with the genotype counts and MAF observed in one or more
+ * control VCF files. Unlike VariantControlAnnotator, no index is queried per
+ * variant: the input and the control files must be sorted by coordinate, and
+ * all of them are traversed once, merging the control files through a heap.
+ *
+ * Control lines are only parsed when they may overlap an input variant, and
+ * the statistics of every parsed control variant are calculated once and kept
+ * in a bounded cache, so variants sharing a position do not recalculate them.
+ * The statistics of a variant present in several control files are merged.
+ *
+ * Chromosomes are ordered as listed in the ##contig lines of the control files.
+ * The chromosomes of the files without them are read before annotating, in the
+ * order they appear. The orders of all the files must not contradict each
+ * other, and the chromosomes they don't order, like the ones of different
+ * control files with one chromosome each, are ordered as in the input. When
+ * the input reaches a chromosome, the control lines of the chromosomes before
+ * it are skipped. Input variants in chromosomes of no control file are not
+ * annotated, and neither are they used to move through the controls.
+ *
+ * The annotator can be shared by several threads, which annotate one batch
+ * at a time. The variants of every batch are annotated sorted like the
+ * control files. Variants starting up to MAX_UNSORTED_DISTANCE bases before
+ * the previous one in the same chromosome are annotated from the cache,
+ * because the variants of a VCF line may start after the ones of the next line
+ * once their alleles are trimmed. Any other variant before the previous one,
+ * like the ones of a batch annotated after a later batch, makes the control
+ * files be read again from the start. Batches should therefore arrive roughly
+ * in order, as they do from the threads of a pipeline reading a sorted input.
+ */
+@SuppressWarnings("deprecation")
+public class VariantControlMergeAnnotator implements VariantAnnotator, Closeable {
+
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+    public static final int MAX_UNSORTED_DISTANCE = 1000;
+
+    private final String prefix;
+    private final List<ControlCursor> cursors;
+    private final Map<String, List<String>> chromosomePredecessors;
+    private final Map<String, Integer> chromosomeRanks;
+    private final Map<Long, ControlAnnotation> cache;
+    private PriorityQueue<ControlCursor> queue;
+
+    private int lastRank;
+    private int lastStart;
+    private int rewinds;
+
+    public VariantControlMergeAnnotator(String infoPrefix, String control) {
+        this(infoPrefix, Arrays.asList(control), DEFAULT_CACHE_SIZE);
+    }
+
+    public VariantControlMergeAnnotator(String infoPrefix, List<String> controls) {
+        this(infoPrefix, controls, DEFAULT_CACHE_SIZE);
+    }
+
+    public VariantControlMergeAnnotator(String infoPrefix, List<String> controls, final int cacheSize) {
+        this.prefix = infoPrefix;
+        this.cursors = new ArrayList<>(controls.size());
+        this.cache = new LinkedHashMap<Long, ControlAnnotation>(cacheSize, 0.75f) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ControlAnnotation> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        List<List<String>> chromosomeOrders = new ArrayList<>(controls.size());
+        for (String control : controls) {
+            ControlCursor cursor = new ControlCursor(control);
+            try {
+                cursor.open();
+                chromosomeOrders.add(cursor.contigs.isEmpty() ? cursor.scanChromosomes() : cursor.contigs);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Control file " + control + " could not be opened", e);
+            }
+            cursors.add(cursor);
+        }
+        this.chromosomePredecessors = chromosomePredecessors(chromosomeOrders);
+        this.chromosomeRanks = new HashMap<>();
+        this.lastRank = -1;
+        this.lastStart = -1;
+
+        this.queue = newQueue();
+    }
+
+    private PriorityQueue<ControlCursor> newQueue() {
+        PriorityQueue<ControlCursor> sorted = new PriorityQueue<>(Math.max(1, cursors.size()), new Comparator<ControlCursor>() {
+            @Override
+            public int compare(ControlCursor o1, ControlCursor o2) {
+                if (o1.rank != o2.rank) {
+                    return o1.rank < o2.rank ? -1 : 1;
+                }
+                return Integer.compare(o1.position, o2.position);
+            }
+        });
+        for (ControlCursor cursor : cursors) {
+            if (cursor.line != null) {
+                cursor.updateRank(chromosomeRanks);
+                sorted.add(cursor);
+            }
+        }
+        return sorted;
+    }
+
+    @Override
+    public synchronized void annot(List<Variant> batch) {
+        // Rank the chromosomes in the order of the batch before sorting it by them
+        final Map<Variant, Integer> ranks = new IdentityHashMap<>(batch.size() * 2);
+        List<Variant> sorted = new ArrayList<>(batch.size());
+        for (Variant variant : batch) {
+            Integer rank = rankOf(variant.getChromosome());
+            if (rank != null) {
+                ranks.put(variant, rank);
+                sorted.add(variant);
+            }
+        }
+        Collections.sort(sorted, new Comparator<Variant>() {
+            @Override
+            public int compare(Variant v1, Variant v2) {
+                int result = Integer.compare(ranks.get(v1), ranks.get(v2));
+                return result != 0 ? result : Integer.compare(v1.getStart(), v2.getStart());
+            }
+        });
+        for (Variant variant : sorted) {
+            join(variant);
+        }
+    }
+
+    @Override
+    public synchronized void annot(Variant elem) {
+        join(elem);
+    }
+
+    /**
+     * @return The number of times the control files were read again from the start, because of unsorted variants
+     */
+    public synchronized int getRewinds() {
+        return rewinds;
+    }
+
+    /**
+     * Closes all control files. The annotator must not be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        for (ControlCursor cursor : cursors) {
+            cursor.close();
+        }
+        queue.clear();
+    }
+
+    private void join(Variant variant) {
+        Integer rank = rankOf(variant.getChromosome());
+        if (rank == null) {
+            // No control file contains the chromosome
+            return;
+        }
+        int start = variant.getStart();
+
+        if (rank < lastRank || (rank == lastRank && start < lastStart)) {
+            if (rank == lastRank && lastStart - start <= MAX_UNSORTED_DISTANCE) {
+                // All the control lines that may generate the variant were cached
+                annotate(variant);
+                return;
+            }
+            rewind();
+        }
+        lastRank = rank;
+        lastStart = start;
+
+        // Consume all the control lines up to the position of the variant
+        while (!queue.isEmpty()) {
+            ControlCursor cursor = queue.peek();
+            if (cursor.rank > rank || (cursor.rank == rank && cursor.position > start)) {
+                break;
+            }
+            queue.poll();
+
+            // A line may only generate this variant, or one slightly unsorted, if its reference overlaps them
+            if (cursor.rank == rank && cursor.position + cursor.referenceLength >= start - MAX_UNSORTED_DISTANCE) {
+                cacheControlLine(cursor);
+            }
+            if (cursor.advance(chromosomeRanks)) {
+                queue.add(cursor);
+            }
+        }
+
+        annotate(variant);
+    }
+
+    /**
+     * Reopens the control files, so that positions already passed can be
+     * reached again. The cache is emptied, because the lines read again would
+     * be merged with the statistics they already added.
+     *
+     * @throws IllegalStateException If a control file can not be reopened
+     */
+    private void rewind() {
+        for (ControlCursor cursor : cursors) {
+            cursor.close();
+            try {
+                cursor.open();
+            } catch (IOException e) {
+                throw new IllegalStateException("Control file " + cursor.path + " could not be reopened", e);
+            }
+        }
+        cache.clear();
+        lastRank = -1;
+        lastStart = -1;
+        queue = newQueue();
+        rewinds++;
+        Logger.getLogger(VariantControlMergeAnnotator.class.getName()).log(Level.FINE,
+                "Variants not sorted like the control files, reading them again from the start");
+    }
+
+    private void annotate(Variant variant) {
+        ControlAnnotation annotation = cache.get(VariantKey.of(variant));
+        if (annotation != null) {
+            annotation.annotate(variant, prefix);
+        }
+    }
+
+    private void cacheControlLine(ControlCursor cursor) {
+        try {
+            for (Variant control : cursor.factory.create(cursor.source, cursor.line)) {
+                VariantSourceEntry entry = control.getSourceEntry(cursor.source.getFileId(), cursor.source.getStudyId());
+                VariantStats stats = new VariantStats(control).calculate(entry.getSamplesData(), entry.getAttributes(), null);
+                long key = VariantKey.of(control);
+                ControlAnnotation annotation = cache.get(key);
+                if (annotation == null) {
+                    cache.put(key, new ControlAnnotation(stats));
+                } else {
+                    // The variant was already found in another control file
+                    annotation.merge(stats);
+                }
+            }
+        } catch (NotAVariantException | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            // Reference positions and malformed control lines can't annotate anything
+        }
+    }
+
+    /**
+     * Ranks a chromosome of the input after all the chromosomes ranked before
+     * and the ones the control files sort before it.
+     *
+     * @return The rank of the chromosome, or null if it is not in any control file
+     */
+    private Integer rankOf(String chromosome) {
+        Integer rank = chromosomeRanks.get(chromosome);
+        if (rank != null || !chromosomePredecessors.containsKey(chromosome)) {
+            return rank;
+        }
+
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(chromosome);
+        while (!pending.isEmpty()) {
+            String next = pending.peek();
+            if (chromosomeRanks.containsKey(next)) {
+                pending.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (String predecessor : chromosomePredecessors.get(next)) {
+                if (!chromosomeRanks.containsKey(predecessor)) {
+                    pending.push(predecessor);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                pending.pop();
+                chromosomeRanks.put(next, chromosomeRanks.size());
+            }
+        }
+
+        // The cursors waiting in the ranked chromosomes can be consumed now
+        queue = newQueue();
+        return chromosomeRanks.get(chromosome);
+    }
+
+    /**
+     * Combines the chromosome orders of several files.
+     *
+     * @return The chromosomes that must be sorted before every chromosome
+     * @throws IllegalArgumentException If the orders contradict each other
+     */
+    static Map<String, List<String>> chromosomePredecessors(List<List<String>> orders) {
+        Map<String, List<String>> predecessors = new HashMap<>();
+        Map<String, List<String>> successors = new HashMap<>();
+        for (List<String> order : orders) {
+            String previous = null;
+            for (String chromosome : order) {
+                if (!predecessors.containsKey(chromosome)) {
+                    predecessors.put(chromosome, new ArrayList<String>());
+                    successors.put(chromosome, new ArrayList<String>());
+                }
+                if (previous != null) {
+                    predecessors.get(chromosome).add(previous);
+                    successors.get(previous).add(chromosome);
+                }
+                previous = chromosome;
+            }
+        }
+
+        // Check there are no cycles by sorting the chromosomes topologically
+        Map<String, Integer> remaining = new HashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+        for (Map.Entry<String, List<String>> chromosome : predecessors.entrySet()) {
+            remaining.put(chromosome.getKey(), chromosome.getValue().size());
+            if (chromosome.getValue().isEmpty()) {
+                ready.add(chromosome.getKey());
+            }
+        }
+        int sorted = 0;
+        while (!ready.isEmpty()) {
+            sorted++;
+            for (String successor : successors.get(ready.poll())) {
+                int count = remaining.get(successor) - 1;
+                remaining.put(successor, count);
+                if (count == 0) {
+                    ready.add(successor);
+                }
+            }
+        }
+        if (sorted < predecessors.size()) {
+            throw new IllegalArgumentException("The control files sort their chromosomes in different orders");
+        }
+        return predecessors;
+    }
+
+    /**
+     * Values to be added to the annotated variants, formatted only once per
+     * control file containing the variant.
+     */
+    private static class ControlAnnotation {
+
+        private final VariantStats stats;
+        private String gt;
+        private String maf;
+        private String amaf;
+
+        ControlAnnotation(VariantStats stats) {
+            this.stats = stats;
+            this.gt = joinGenotypes(stats.getGenotypesCount());
+            this.maf = String.format("%.4f", stats.getMaf());
+            this.amaf = stats.getMafAllele();
+        }
+
+        /**
+         * Adds the genotypes and alleles counted in another control file.
+         */
+        void merge(VariantStats other) {
+            for (Map.Entry<Genotype, Integer> genotype : other.getGenotypesCount().entrySet()) {
+                stats.addGenotype(genotype.getKey(), genotype.getValue());
+            }
+            stats.setRefAlleleCount(stats.getRefAlleleCount() + other.getRefAlleleCount());
+            stats.setAltAlleleCount(stats.getAltAlleleCount() + other.getAltAlleleCount());
+
+            // Same criteria as VariantStats.calculate
+            int totalAlleles = stats.getRefAlleleCount() + stats.getAltAlleleCount();
+            if (totalAlleles == 0) {
+                stats.setMaf(-1);
+                stats.setMafAllele(null);
+            } else if (stats.getRefAlleleCount() <= stats.getAltAlleleCount()) {
+                stats.setMaf(stats.getRefAlleleCount() / (float) totalAlleles);
+                stats.setMafAllele(stats.getRefAllele());
+            } else {
+                stats.setMaf(stats.getAltAlleleCount() / (float) totalAlleles);
+                stats.setMafAllele(stats.getAltAllele());
+            }
+
+            this.gt = joinGenotypes(stats.getGenotypesCount());
+            this.maf = String.format("%.4f", stats.getMaf());
+            this.amaf = stats.getMafAllele();
+        }
+
+        void annotate(Variant variant, String prefix) {
+            for (VariantSourceEntry entry : variant.getSourceEntries().values()) {
+                entry.addAttribute(prefix + "_gt", gt);
+                entry.addAttribute(prefix + "_maf", maf);
+                entry.addAttribute(prefix + "_amaf", amaf);
+            }
+        }
+
+        private static String joinGenotypes(Map<Genotype, Integer> genotypesCount) {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Genotype, Integer> entry : genotypesCount.entrySet()) {
+                if (sb.length() > 0) {
+                    sb.append(",");
+                }
+                sb.append(entry.getKey()).append(":").append(entry.getValue());
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Sequential reader of a control file that only extracts the fields
+     * needed to decide whether a line must be fully parsed.
+     */
+    private static class ControlCursor {
+
+        private final String path;
+        private final VariantFactory factory;
+        private VariantSource source;
+        private BufferedReader reader;
+        private List<String> contigs;
+
+        private String line;
+        private String chromosome;
+        private int position;
+        private int referenceLength;
+        private int rank;
+
+        ControlCursor(String path) {
+            this.path = path;
+            this.factory = new VariantVcfFactory();
+        }
+
+        void open() throws IOException {
+            reader = newReader();
+
+            source = new VariantSource(path, "CONTROL", "CONTROL", "CONTROL");
+            contigs = new ArrayList<>();
+            chromosome = null;
+            line = null;
+
+            String header;
+            while ((header = reader.readLine()) != null && header.startsWith("#")) {
+                if (header.startsWith("##contig")) {
+                    int idStart = header.indexOf("ID=");
+                    if (idStart >= 0) {
+                        int idEnd = idStart + 3;
+                        while (idEnd < header.length() && header.charAt(idEnd) != ',' && header.charAt(idEnd) != '>') {
+                            idEnd++;
+                        }
+                        contigs.add(header.substring(idStart + 3, idEnd));
+                    }
+                } else if (header.startsWith("#CHROM")) {
+                    String[] fields = header.split("\t");
+                    source.setSamples(Arrays.asList(fields).subList(Math.min(9, fields.length), fields.length));
+                }
+            }
+
+            if (header != null && parse(header)) {
+                line = header;
+            } else {
+                advance(null);
+            }
+        }
+
+        /**
+         * Reads the chromosomes of the file, for files without ##contig lines.
+         *
+         * @return The chromosomes in the order they appear
+         * @throws IllegalArgumentException If the lines of a chromosome are not together
+         */
+        List<String> scanChromosomes() throws IOException {
+            Set<String> chromosomes = new LinkedHashSet<>();
+            try (BufferedReader scanner = newReader()) {
+                String previous = null;
+                String next;
+                while ((next = scanner.readLine()) != null) {
+                    int chromosomeEnd = next.indexOf('\t');
+                    if (next.isEmpty() || next.charAt(0) == '#' || chromosomeEnd < 0
+                            || (previous != null && previous.length() == chromosomeEnd
+                                && next.startsWith(previous))) {
+                        continue;
+                    }
+                    previous = next.substring(0, chromosomeEnd);
+                    if (!chromosomes.add(previous)) {
+                        throw new IllegalArgumentException("Control file " + path + " is not sorted: chromosome "
+                                + previous + " appears in several places");
+                    }
+                }
+            }
+            return new ArrayList<>(chromosomes);
+        }
+
+        /**
+         * Moves the cursor to the next data line.
+         *
+         * @param ranks Position of each chromosome in the sorting order
+         * @return Whether there was another line to read
+         */
+        boolean advance(Map<String, Integer> ranks) {
+            try {
+                String next;
+                while ((next = reader.readLine()) != null) {
+                    if (parse(next)) {
+                        line = next;
+                        if (ranks != null) {
+                            updateRank(ranks);
+                        }
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+                Logger.getLogger(VariantControlMergeAnnotator.class.getName()).log(Level.SEVERE, null, e);
+            }
+            line = null;
+            close();
+            return false;
+        }
+
+        /**
+         * @param ranks Position of the chromosomes reached by the input in the sorting order
+         * @throws IllegalStateException If the chromosome is not in the ##contig lines of the file
+         */
+        void updateRank(Map<String, Integer> ranks) {
+            Integer chromosomeRank = ranks.get(chromosome);
+            if (chromosomeRank != null) {
+                rank = chromosomeRank;
+            } else if (contigs.isEmpty() || contigs.contains(chromosome)) {
+                // Waits until the input reaches the chromosome or a later one
+                rank = Integer.MAX_VALUE;
+            } else {
+                throw new IllegalStateException("Chromosome " + chromosome + " of control file " + path
+                        + " is not in its ##contig lines");
+            }
+        }
+
+        private BufferedReader newReader() throws IOException {
+            if (path.endsWith(".gz")) {
+                return new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(path))));
+            } else {
+                return Files.newBufferedReader(Paths.get(path), Charset.defaultCharset());
+            }
+        }
+
+        void close() {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                Logger.getLogger(VariantControlMergeAnnotator.class.getName()).log(Level.SEVERE, null, e);
+            }
+        }
+
+        private boolean parse(String next) {
+            if (next.isEmpty() || next.charAt(0) == '#') {
+                return false;
+            }
+            int chromosomeEnd = next.indexOf('\t');
+            int positionEnd = next.indexOf('\t', chromosomeEnd + 1);
+            int idEnd = next.indexOf('\t', positionEnd + 1);
+            int referenceEnd = next.indexOf('\t', idEnd + 1);
+            if (chromosomeEnd < 0 || positionEnd < 0 || idEnd < 0 || referenceEnd < 0) {
+                return false;
+            }
+
+            // Reuse the chromosome name while it does not change
+            if (chromosome == null || !next.regionMatches(0, chromosome, 0, chromosomeEnd)
+                    || chromosome.length() != chromosomeEnd) {
+                chromosome = next.substring(0, chromosomeEnd);
+            }
+            try {
+                position = Integer.parseInt(next.substring(chromosomeEnd + 1, positionEnd));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            referenceLength = referenceEnd - idEnd - 1;
+            return true;
+        }
+    }
+}
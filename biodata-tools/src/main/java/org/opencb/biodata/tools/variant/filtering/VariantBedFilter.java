@@ -7,6 +7,8 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicate;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicates;
 import org.opencb.biodata.models.variant.Variant;
 
 /**
@@ -72,6 +74,17 @@ public class VariantBedFilter extends VariantFilter {
         return false;
     }
 
+    @Override
+    public VcfLinePredicate getLinePredicate() {
+        VcfLinePredicates.RegionPredicate predicate = new VcfLinePredicates.RegionPredicate();
+        for (Map.Entry<String, SortedSet<Region>> entry : regions.entrySet()) {
+            for (Region region : entry.getValue()) {
+                predicate.add(entry.getKey(), region.getStart(), region.getEnd());
+            }
+        }
+        return predicate;
+    }
+
     private class Region implements Comparable<Region> {
         private long start, end;
 
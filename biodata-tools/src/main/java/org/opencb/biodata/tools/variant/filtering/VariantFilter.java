@@ -1,5 +1,6 @@
 package org.opencb.biodata.tools.variant.filtering;
 
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicate;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.commons.filters.Filter;
 
@@ -15,4 +16,15 @@ public abstract class VariantFilter extends Filter<Variant> {
     public VariantFilter(int priority) {
         super(priority);
     }
+
+    /**
+     * Condition a VCF line must meet for any of its variants to pass this
+     * filter, so the line can be skipped before it is parsed.
+     *
+     * @return The condition on the columns of the line, or null if the whole variant is needed
+     * @see org.opencb.biodata.tools.variant.tasks.VariantFilterTask#pushDown
+     */
+    public VcfLinePredicate getLinePredicate() {
+        return null;
+    }
 }
@@ -0,0 +1,46 @@
+package org.opencb.biodata.tools.variant.filtering;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicate;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicates;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+/**
+ * Keeps the variants whose FILTER column has one of some values, PASS by
+ * default, in any of the files they were read from.
+ */
+public class VariantPassFilter extends VariantFilter {
+
+    private final String[] values;
+    private final Set<String> accepted;
+
+    public VariantPassFilter() {
+        this(0, "PASS");
+    }
+
+    public VariantPassFilter(int priority, String... values) {
+        super(priority);
+        this.values = values;
+        this.accepted = new HashSet<>(Arrays.asList(values));
+    }
+
+    @Override
+    public boolean apply(Variant variant) {
+        for (VariantSourceEntry file : variant.getSourceEntries().values()) {
+            String filter = file.getAttribute("FILTER");
+            if (accepted.contains(filter != null ? filter : ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public VcfLinePredicate getLinePredicate() {
+        return VcfLinePredicates.filterIn(values);
+    }
+
+}
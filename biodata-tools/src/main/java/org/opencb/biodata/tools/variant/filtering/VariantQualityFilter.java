@@ -0,0 +1,41 @@
+package org.opencb.biodata.tools.variant.filtering;
+
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicate;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicates;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+/**
+ * Keeps the variants with a QUAL of at least a minimum value in any of the
+ * files they were read from. Variants with unknown quality are discarded.
+ */
+public class VariantQualityFilter extends VariantFilter {
+
+    private final double minQuality;
+
+    public VariantQualityFilter(double minQuality) {
+        this(minQuality, 0);
+    }
+
+    public VariantQualityFilter(double minQuality, int priority) {
+        super(priority);
+        this.minQuality = minQuality;
+    }
+
+    @Override
+    public boolean apply(Variant variant) {
+        for (VariantSourceEntry file : variant.getSourceEntries().values()) {
+            String quality = file.getAttribute("QUAL");
+            if (quality != null && Double.parseDouble(quality) >= minQuality) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public VcfLinePredicate getLinePredicate() {
+        return VcfLinePredicates.minQuality(minQuality);
+    }
+
+}
@@ -3,6 +3,8 @@ package org.opencb.biodata.tools.variant.filtering;
 
 import java.util.ArrayList;
 import java.util.List;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicate;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicates;
 import org.opencb.biodata.models.feature.Region;
 import org.opencb.biodata.models.variant.Variant;
 
@@ -55,4 +57,9 @@ public class VariantRegionFilter extends VariantFilter {
         }
         return false;
     }
+
+    @Override
+    public VcfLinePredicate getLinePredicate() {
+        return VcfLinePredicates.inRegions(regionList);
+    }
 }
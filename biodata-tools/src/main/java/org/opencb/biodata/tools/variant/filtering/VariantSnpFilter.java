@@ -1,5 +1,7 @@
 package org.opencb.biodata.tools.variant.filtering;
 
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicate;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicates;
 import org.opencb.biodata.models.variant.Variant;
 
 
@@ -19,7 +21,13 @@ public class VariantSnpFilter extends VariantFilter {
 
     @Override
     public boolean apply(Variant variant) {
-        return (!variant.getId().equalsIgnoreCase(".") && !variant.getId().equalsIgnoreCase(""));
+        String id = variant.getId();
+        return id != null && !id.equalsIgnoreCase(".") && !id.equalsIgnoreCase("");
+    }
+
+    @Override
+    public VcfLinePredicate getLinePredicate() {
+        return VcfLinePredicates.hasId();
     }
 
 }
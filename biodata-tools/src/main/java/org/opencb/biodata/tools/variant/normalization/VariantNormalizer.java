@@ -0,0 +1,171 @@
+package org.opencb.biodata.tools.variant.normalization;
+
+import java.io.IOException;
+import org.opencb.biodata.formats.sequence.fasta.dbadaptor.SequenceDBAdaptor;
+import org.opencb.biodata.models.feature.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.annotation.VariantAnnotation;
+
+/**
+ * Normalizes variants against the reference genome, so that the same change
+ * is always represented with the same coordinates and alleles:
+ * <ul>
+ *  <li>Bases shared by the end and then the beginning of both alleles are
+ *  removed, as VariantVcfFactory does</li>
+ *  <li>Insertions and deletions are moved to the leftmost position where the
+ *  resulting sequence is the same, like in a repeat</li>
+ * </ul>
+ *
+ * The coordinates follow the conventions of VariantVcfFactory: deletions span
+ * the deleted bases and insertions start at the first base after the inserted
+ * sequence. Symbolic alleles and alleles with characters other than A, C, G, T
+ * and N are not modified.
+ *
+ * The reference is read in windows that are reused by consecutive variants,
+ * so sorted input needs very few requests to the SequenceDBAdaptor. Instances
+ * keep the current window, so they must not be shared between threads.
+ */
+public class VariantNormalizer {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 16;
+
+    private final SequenceDBAdaptor sequenceAdaptor;
+    private final int windowSize;
+
+    private String windowChromosome;
+    private int windowStart;
+    private String windowSequence;
+
+    public VariantNormalizer(SequenceDBAdaptor sequenceAdaptor) {
+        this(sequenceAdaptor, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param sequenceAdaptor Source of the reference sequence
+     * @param windowSize Number of bases of the reference retrieved at once
+     */
+    public VariantNormalizer(SequenceDBAdaptor sequenceAdaptor, int windowSize) {
+        if (windowSize < 16) {
+            throw new IllegalArgumentException("The window size must be at least 16 bases");
+        }
+        this.sequenceAdaptor = sequenceAdaptor;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Trims and left-aligns a variant, updating it in place.
+     *
+     * @param variant Variant to normalize
+     * @return Whether the variant was modified
+     * @throws IOException If the reference sequence could not be retrieved
+     */
+    public boolean normalize(Variant variant) throws IOException {
+        String reference = variant.getReference();
+        String alternate = variant.getAlternate();
+        if (!isPlain(reference) || !isPlain(alternate) || reference.equals(alternate)) {
+            return false;
+        }
+
+        // Remove the trailing bases, then the leading ones
+        int suffix = 0;
+        while (suffix < reference.length() && suffix < alternate.length()
+                && reference.charAt(reference.length() - 1 - suffix) == alternate.charAt(alternate.length() - 1 - suffix)) {
+            suffix++;
+        }
+        int prefix = 0;
+        while (prefix < reference.length() - suffix && prefix < alternate.length() - suffix
+                && reference.charAt(prefix) == alternate.charAt(prefix)) {
+            prefix++;
+        }
+        int start = variant.getStart() + prefix;
+        reference = reference.substring(prefix, reference.length() - suffix);
+        alternate = alternate.substring(prefix, alternate.length() - suffix);
+
+        if (reference.isEmpty() != alternate.isEmpty()) {
+            // Move the indel leftwards while the base before it is the same as its last base
+            StringBuilder indel = new StringBuilder(reference.isEmpty() ? alternate : reference);
+            char previous;
+            while (start > 1 && (previous = base(variant.getChromosome(), start - 1)) != 0
+                    && previous == Character.toUpperCase(indel.charAt(indel.length() - 1))) {
+                indel.setLength(indel.length() - 1);
+                indel.insert(0, previous);
+                start--;
+            }
+            if (reference.isEmpty()) {
+                alternate = indel.toString();
+            } else {
+                reference = indel.toString();
+            }
+        }
+
+        if (start == variant.getStart() && reference.equals(variant.getReference())
+                && alternate.equals(variant.getAlternate())) {
+            return false;
+        }
+
+        int end = start + Math.max(reference.length(), alternate.length()) - 1;
+        variant.setStart(start);
+        variant.setEnd(end);
+        variant.setReference(reference);
+        variant.setAlternate(alternate);
+
+        VariantAnnotation annotation = variant.getAnnotation();
+        if (annotation != null) {
+            annotation.setStart(start);
+            annotation.setEnd(end);
+            annotation.setReferenceAllele(reference);
+            if (annotation.getAlternativeAllele() != null) {
+                annotation.setAlternativeAllele(alternate);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The upper-case reference base in a position, 0 if it is not available
+     */
+    private char base(String chromosome, int position) throws IOException {
+        if (!isInWindow(chromosome, position)) {
+            // Sorted input keeps moving rightwards, but indels are shifted leftwards,
+            // so the window is extended a bit before the position, or fully if moving backwards
+            int start;
+            if (chromosome.equals(windowChromosome) && position < windowStart) {
+                start = position - windowSize + 1;
+            } else {
+                start = position - windowSize / 16;
+            }
+            start = Math.max(1, start);
+            String sequence;
+            // Adaptors are not required to be thread-safe
+            synchronized (sequenceAdaptor) {
+                sequence = sequenceAdaptor.getSequence(new Region(chromosome, start, start + windowSize - 1));
+            }
+            windowChromosome = chromosome;
+            windowStart = start;
+            windowSequence = sequence != null ? sequence : "";
+            if (!isInWindow(chromosome, position)) {
+                return 0;
+            }
+        }
+        return Character.toUpperCase(windowSequence.charAt(position - windowStart));
+    }
+
+    private boolean isInWindow(String chromosome, int position) {
+        return chromosome.equals(windowChromosome) && position >= windowStart
+                && position < windowStart + windowSequence.length();
+    }
+
+    private static boolean isPlain(String allele) {
+        for (int i = 0; i < allele.length(); i++) {
+            switch (allele.charAt(i)) {
+                case 'A': case 'C': case 'G': case 'T': case 'N':
+                case 'a': case 'c': case 'g': case 't': case 'n':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+}
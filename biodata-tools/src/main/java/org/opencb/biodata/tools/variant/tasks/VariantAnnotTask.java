@@ -2,8 +2,11 @@ package org.opencb.biodata.tools.variant.tasks;
 
 import org.opencb.commons.run.Task;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.tools.variant.annotation.VariantAnnotator;
 
@@ -34,4 +37,23 @@ public class VariantAnnotTask extends Task<Variant> {
 
         return true;
     }
+
+    /**
+     * Closes the annotators that hold resources, like threads or files.
+     */
+    @Override
+    public boolean post() {
+        boolean closed = true;
+        for (VariantAnnotator annotation : annotations) {
+            if (annotation instanceof Closeable) {
+                try {
+                    ((Closeable) annotation).close();
+                } catch (IOException ex) {
+                    Logger.getLogger(VariantAnnotTask.class.getName()).log(Level.SEVERE, null, ex);
+                    closed = false;
+                }
+            }
+        }
+        return closed;
+    }
 }
@@ -5,6 +5,8 @@ import org.opencb.commons.run.Task;
 
 import java.io.IOException;
 import java.util.List;
+import org.opencb.biodata.formats.variant.vcf4.VcfLinePredicate;
+import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.tools.variant.filtering.VariantFilter;
 
@@ -31,4 +33,25 @@ public class VariantFilterTask extends Task<Variant> {
 
         return true;
     }
+
+    /**
+     * Makes a VCF reader skip the lines that can not pass the filters of this
+     * task, without parsing them. The filters are still applied to the
+     * variants read, so this only saves time. It should only be used when no
+     * task before this one changes the position or identifiers of variants.
+     *
+     * @param reader Reader of the variants this task is applied to
+     * @return The number of filters that could be checked on the lines
+     */
+    public int pushDown(VariantVcfReader reader) {
+        int pushed = 0;
+        for (VariantFilter filter : filters) {
+            VcfLinePredicate predicate = filter.getLinePredicate();
+            if (predicate != null) {
+                reader.addLinePredicate(predicate);
+                pushed++;
+            }
+        }
+        return pushed;
+    }
 }
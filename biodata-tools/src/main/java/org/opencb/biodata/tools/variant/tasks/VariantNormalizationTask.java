@@ -0,0 +1,135 @@
+package org.opencb.biodata.tools.variant.tasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.opencb.biodata.formats.sequence.fasta.dbadaptor.SequenceDBAdaptor;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.tools.variant.normalization.VariantNormalizer;
+import org.opencb.commons.run.Task;
+
+/**
+ * Trims and left-aligns the variants of every batch against the reference
+ * genome, so that equivalent indels get the same coordinates and alleles.
+ *
+ * Unsorted batches are normalized in genomic order, without changing the
+ * order of the batch, so that reference windows can be reused. When running
+ * with several threads, every thread normalizes a contiguous region.
+ */
+public class VariantNormalizationTask extends Task<Variant> {
+
+    private static final Comparator<Variant> BY_POSITION = new Comparator<Variant>() {
+        @Override
+        public int compare(Variant v1, Variant v2) {
+            int result = v1.getChromosome().compareTo(v2.getChromosome());
+            return result != 0 ? result : Integer.compare(v1.getStart(), v2.getStart());
+        }
+    };
+
+    private final VariantNormalizer[] normalizers;
+    private final ExecutorService executor;
+
+    public VariantNormalizationTask(SequenceDBAdaptor sequenceAdaptor) {
+        this(sequenceAdaptor, 1);
+    }
+
+    public VariantNormalizationTask(SequenceDBAdaptor sequenceAdaptor, int numThreads) {
+        super();
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be greater than zero");
+        }
+        normalizers = new VariantNormalizer[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            normalizers[i] = new VariantNormalizer(sequenceAdaptor);
+        }
+        executor = numThreads > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+    }
+
+    public VariantNormalizationTask(SequenceDBAdaptor sequenceAdaptor, int numThreads, int priority) {
+        this(sequenceAdaptor, numThreads);
+        setPriority(priority);
+    }
+
+    @Override
+    public boolean apply(List<Variant> batch) throws IOException {
+        List<Variant> sorted = batch;
+        if (!isSorted(batch)) {
+            sorted = new ArrayList<>(batch);
+            Collections.sort(sorted, BY_POSITION);
+        }
+
+        if (executor == null || sorted.size() < 2 * normalizers.length) {
+            normalize(sorted, normalizers[0]);
+            return true;
+        }
+
+        int chunkSize = (sorted.size() + normalizers.length - 1) / normalizers.length;
+        List<Future<Void>> futures = new ArrayList<>(normalizers.length);
+        for (int i = 0; i < normalizers.length; i++) {
+            final List<Variant> chunk = sorted.subList(Math.min(i * chunkSize, sorted.size()),
+                    Math.min((i + 1) * chunkSize, sorted.size()));
+            final VariantNormalizer normalizer = normalizers[i];
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    normalize(chunk, normalizer);
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while normalizing variants", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean post() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        return true;
+    }
+
+    private static void normalize(List<Variant> variants, VariantNormalizer normalizer) throws IOException {
+        for (Variant variant : variants) {
+            normalizer.normalize(variant);
+        }
+    }
+
+    /**
+     * @return Whether the variants of every chromosome are consecutive and sorted by position
+     */
+    private static boolean isSorted(List<Variant> batch) {
+        Set<String> chromosomes = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Variant variant = batch.get(i);
+            if (i == 0 || !variant.getChromosome().equals(batch.get(i - 1).getChromosome())) {
+                if (!chromosomes.add(variant.getChromosome())) {
+                    return false;
+                }
+            } else if (variant.getStart() < batch.get(i - 1).getStart()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
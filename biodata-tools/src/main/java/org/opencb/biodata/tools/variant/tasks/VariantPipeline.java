@@ -0,0 +1,325 @@
+package org.opencb.biodata.tools.variant.tasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.tools.metrics.AllocationCounter;
+import org.opencb.biodata.tools.metrics.PipelineListener;
+import org.opencb.biodata.tools.metrics.PipelineMetrics;
+import org.opencb.biodata.tools.metrics.StageMetrics;
+import org.opencb.commons.io.DataReader;
+import org.opencb.commons.io.DataWriter;
+import org.opencb.commons.run.Task;
+
+/**
+ * Runs the reader, every task and every writer of a VariantRunner in their own
+ * threads, connected by bounded queues of batches, so the time of a batch is
+ * that of the slowest stage instead of the sum of all of them.
+ *
+ * Tasks run with one thread unless more workers are assigned to them, which
+ * must only be done for tasks that keep no state between batches. Batches
+ * always leave a stage in the same order they were read. All the writers
+ * receive the same batches, so they must not modify them.
+ *
+ * The reader, tasks and writers must have been initialized before calling
+ * run, and must be closed after it.
+ */
+class VariantPipeline {
+
+    private static final Batch END = new Batch(-1, null, 0);
+
+    private final DataReader<Variant> reader;
+    private final List<Task<Variant>> tasks;
+    private final List<? extends DataWriter<Variant>> writers;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final Map<Task<Variant>, Integer> taskWorkers;
+    private final PipelineMetrics metrics;
+    private final PipelineListener listener;
+
+    private final List<Thread> threads;
+    private final AtomicReference<Throwable> failure;
+
+    /**
+     * @param metrics Metrics of the reader, every task and every writer, in that order, or null to measure nothing
+     * @param listener Listener notified of every batch written, only used when there are metrics
+     */
+    VariantPipeline(DataReader<Variant> reader, List<Task<Variant>> tasks, List<? extends DataWriter<Variant>> writers,
+                    int batchSize, int queueCapacity, Map<Task<Variant>, Integer> taskWorkers,
+                    PipelineMetrics metrics, PipelineListener listener) {
+        this.reader = reader;
+        this.tasks = tasks;
+        this.writers = writers;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.taskWorkers = taskWorkers;
+        this.metrics = metrics;
+        this.listener = listener;
+        this.threads = new ArrayList<>();
+        this.failure = new AtomicReference<>();
+    }
+
+    void run() throws IOException {
+        // Stages are created from the last one, so every one knows where to send its batches
+        Output output;
+        if (writers.isEmpty()) {
+            output = new Output(null);
+        } else {
+            List<BlockingQueue<Batch>> writerQueues = new ArrayList<>(writers.size());
+            for (int i = 0; i < writers.size(); i++) {
+                BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(queueCapacity);
+                writerQueues.add(queue);
+                addWriter(writers.get(i), queue, stageMetrics(1 + tasks.size() + i), i == 0);
+            }
+            output = new Output(writerQueues);
+        }
+
+        for (int i = tasks.size() - 1; i >= 0; i--) {
+            BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(queueCapacity);
+            Task<Variant> task = tasks.get(i);
+            Integer workers = taskWorkers.get(task);
+            new TaskStage(task, workers != null ? workers : 1, queue, output, stageMetrics(1 + i)).addWorkers();
+            output = new Output(Collections.singletonList(queue));
+        }
+
+        addReader(output, stageMetrics(0));
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            abort(e);
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable cause = failure.get();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else if (cause != null) {
+            throw new IOException(cause);
+        }
+    }
+
+    private StageMetrics stageMetrics(int index) {
+        return metrics != null ? metrics.getStages().get(index) : null;
+    }
+
+    private void addReader(final Output output, final StageMetrics stageMetrics) {
+        add("reader", new Stage() {
+            @Override
+            public void run() throws Exception {
+                long index = 0;
+                while (true) {
+                    long allocated = stageMetrics != null ? AllocationCounter.currentThread() : -1;
+                    long start = System.nanoTime();
+                    List<Variant> variants = reader.read(batchSize);
+                    long end = System.nanoTime();
+                    if (variants.isEmpty()) {
+                        break;
+                    }
+                    if (stageMetrics != null) {
+                        stageMetrics.record(0, variants.size(), end - start, 0, allocatedSince(allocated));
+                    }
+                    output.put(new Batch(index++, variants, end));
+                }
+                output.put(END);
+            }
+        });
+    }
+
+    private void addWriter(final DataWriter<Variant> writer, final BlockingQueue<Batch> input,
+                           final StageMetrics stageMetrics, final boolean notifyListener) {
+        add(writer.getClass().getSimpleName(), new Stage() {
+            @Override
+            public void run() throws Exception {
+                Batch batch;
+                while ((batch = input.take()) != END) {
+                    long allocated = stageMetrics != null ? AllocationCounter.currentThread() : -1;
+                    long start = System.nanoTime();
+                    writer.write(batch.variants);
+                    if (stageMetrics != null) {
+                        long end = System.nanoTime();
+                        int size = batch.variants.size();
+                        stageMetrics.record(size, size, end - start, start - batch.ready, allocatedSince(allocated));
+                        if (notifyListener) {
+                            listener.batchFinished(metrics);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void add(String name, final Stage stage) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stage.run();
+                } catch (Throwable e) {
+                    // Stages interrupted because another one failed are not the cause, so they are ignored
+                    abort(e);
+                }
+            }
+        }, "pipeline-" + name);
+        threads.add(thread);
+    }
+
+    /**
+     * Stops all the stages, keeping the first error found.
+     */
+    private void abort(Throwable cause) {
+        if (failure.compareAndSet(null, cause)) {
+            for (Thread thread : threads) {
+                if (thread != Thread.currentThread()) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    private static long allocatedSince(long allocated) {
+        return allocated >= 0 ? AllocationCounter.currentThread() - allocated : -1;
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    /**
+     * Batch of variants and its position in the input.
+     */
+    private static class Batch {
+        final long index;
+        final List<Variant> variants;
+        // When the previous stage finished with the batch
+        long ready;
+
+        Batch(long index, List<Variant> variants, long ready) {
+            this.index = index;
+            this.variants = variants;
+            this.ready = ready;
+        }
+    }
+
+    /**
+     * Queues a stage sends its batches to: the queue of the next task, the
+     * queues of all the writers, or none if there is nothing else to do.
+     */
+    private class Output {
+        private final List<BlockingQueue<Batch>> queues;
+
+        Output(List<BlockingQueue<Batch>> queues) {
+            this.queues = queues;
+        }
+
+        void put(Batch batch) throws InterruptedException {
+            if (queues == null) {
+                if (batch != END && metrics != null) {
+                    listener.batchFinished(metrics);
+                }
+                return;
+            }
+            for (BlockingQueue<Batch> queue : queues) {
+                queue.put(batch);
+            }
+        }
+    }
+
+    /**
+     * Applies a task with one or several workers. Batches may finish out of
+     * order, so they are kept until all the previous ones have been sent.
+     */
+    private class TaskStage {
+        private final Task<Variant> task;
+        private final int workers;
+        private final BlockingQueue<Batch> input;
+        private final Output output;
+        private final StageMetrics stageMetrics;
+
+        private final TreeMap<Long, Batch> finished;
+        private final Semaphore window;
+        private final AtomicInteger running;
+        private long next;
+
+        TaskStage(Task<Variant> task, int workers, BlockingQueue<Batch> input, Output output, StageMetrics stageMetrics) {
+            this.task = task;
+            this.workers = workers;
+            this.input = input;
+            this.output = output;
+            this.stageMetrics = stageMetrics;
+            this.finished = new TreeMap<>();
+            // Limits how far the workers can get ahead of a slow batch
+            this.window = new Semaphore(workers + queueCapacity);
+            this.running = new AtomicInteger(workers);
+        }
+
+        void addWorkers() {
+            for (int i = 0; i < workers; i++) {
+                add(task.getClass().getSimpleName() + "-" + i, new Stage() {
+                    @Override
+                    public void run() throws Exception {
+                        work();
+                    }
+                });
+            }
+        }
+
+        private void work() throws IOException, InterruptedException {
+            while (true) {
+                window.acquire();
+                Batch batch = input.take();
+                if (batch == END) {
+                    // Leave it for the other workers
+                    input.put(END);
+                    window.release();
+                    break;
+                }
+
+                long allocated = stageMetrics != null ? AllocationCounter.currentThread() : -1;
+                long start = System.nanoTime();
+                int size = batch.variants.size();
+                task.apply(batch.variants);
+                long end = System.nanoTime();
+                if (stageMetrics != null) {
+                    stageMetrics.record(size, batch.variants.size(), end - start, start - batch.ready, allocatedSince(allocated));
+                }
+                batch.ready = end;
+                send(batch);
+            }
+
+            if (running.decrementAndGet() == 0) {
+                output.put(END);
+            }
+        }
+
+        private void send(Batch batch) throws InterruptedException {
+            synchronized (finished) {
+                finished.put(batch.index, batch);
+                while (!finished.isEmpty() && finished.firstKey() == next) {
+                    output.put(finished.pollFirstEntry().getValue());
+                    next++;
+                    window.release();
+                }
+            }
+        }
+    }
+
+}
@@ -1,20 +1,36 @@
 package org.opencb.biodata.tools.variant.tasks;
 
+import java.io.IOException;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import org.opencb.biodata.formats.pedigree.io.PedigreeReader;
 import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.formats.variant.io.VariantWriter;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.tools.metrics.AllocationCounter;
+import org.opencb.biodata.tools.metrics.NoOpPipelineListener;
+import org.opencb.biodata.tools.metrics.PipelineListener;
+import org.opencb.biodata.tools.metrics.PipelineMetrics;
+import org.opencb.biodata.tools.metrics.StageMetrics;
 import org.opencb.commons.run.Runner;
 import org.opencb.commons.run.Task;
+
 /**
  * @author Alejandro Aleman Ramos &lt;aaleman@cipf.es&gt;
  * @author Cristina Yenyxe Gonzalez Garcia &lt;cyenyxe@ebi.ac.uk&gt;
  */
 public class VariantRunner extends Runner<Variant> {
 
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
     protected VariantSource source;
+    private PipelineListener metricsListener = NoOpPipelineListener.INSTANCE;
+    private PipelineMetrics metrics;
+    private boolean pipelined;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private final Map<Task<Variant>, Integer> taskWorkers = new IdentityHashMap<>();
 
     public VariantRunner(VariantSource study, VariantReader reader, PedigreeReader pedReader, 
             List<VariantWriter> writer, List<Task<Variant>> tasks) {
@@ -46,6 +62,166 @@ public class VariantRunner extends Runner<Variant> {
         this.source = study;
     }
 
+    public PipelineListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Measures the reader, every task and every writer while running, and
+     * reports the metrics to a listener. By default nothing is measured.
+     *
+     * @param metricsListener Listener of the metrics, NoOpPipelineListener.INSTANCE to disable them
+     */
+    public void setMetricsListener(PipelineListener metricsListener) {
+        this.metricsListener = metricsListener != null ? metricsListener : NoOpPipelineListener.INSTANCE;
+    }
+
+    /**
+     * @return The metrics of the last run, null if it was not measured
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Runs the reader, every task and every writer in their own threads,
+     * connected by queues of batches, instead of one after another. Batches
+     * are written in the same order they were read, and the pre and post
+     * methods of tasks are called as in sequential runs.
+     *
+     * @param pipelined Whether to run the stages at the same time
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity Maximum number of batches waiting to enter every stage when pipelined
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("The queue capacity must be greater than zero");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Applies a task to several batches at the same time when pipelined. Only
+     * tasks that keep no state between batches, like VariantFilterTask, can
+     * have more than one worker.
+     *
+     * @param task One of the tasks of this runner
+     * @param workers Number of threads applying the task
+     */
+    public void setTaskWorkers(Task<Variant> task, int workers) {
+        if (!tasks.contains(task)) {
+            throw new IllegalArgumentException("The task " + task.getClass().getSimpleName() + " is not run by this runner");
+        }
+        if (workers <= 0) {
+            throw new IllegalArgumentException("The number of workers must be greater than zero");
+        }
+        taskWorkers.put(task, workers);
+    }
+
+    @Override
+    public void run() throws IOException {
+        boolean measured = metricsListener != NoOpPipelineListener.INSTANCE;
+        if (!measured && !pipelined) {
+            super.run();
+            return;
+        }
+
+        metrics = measured ? createMetrics() : null;
+        if (measured) {
+            metrics.start();
+            metricsListener.pipelineStarted(metrics);
+        }
+        readerInit();
+        writerInit();
+        launchPre();
+
+        if (pipelined) {
+            new VariantPipeline(reader, tasks, writers, batchSize, queueCapacity, taskWorkers, metrics, metricsListener).run();
+        } else {
+            runMeasured();
+        }
+
+        launchPost();
+        readerClose();
+        writerClose();
+        if (measured) {
+            metrics.finish();
+            metricsListener.pipelineFinished(metrics);
+        }
+    }
+
+    /**
+     * @return Metrics of the reader, every task and every writer, in that order
+     */
+    private PipelineMetrics createMetrics() {
+        PipelineMetrics pipelineMetrics = new PipelineMetrics(source != null ? source.getFileId() : "variants");
+        pipelineMetrics.addStage(reader.getClass().getSimpleName(), StageMetrics.Kind.READER);
+        for (Task<Variant> task : tasks) {
+            pipelineMetrics.addStage(task.getClass().getSimpleName(), StageMetrics.Kind.TASK);
+        }
+        for (Object writer : writers) {
+            pipelineMetrics.addStage(writer.getClass().getSimpleName(), StageMetrics.Kind.WRITER);
+        }
+        return pipelineMetrics;
+    }
+
+    /**
+     * Same loop as Runner.run, measuring every stage.
+     */
+    private void runMeasured() throws IOException {
+        List<StageMetrics> stages = metrics.getStages();
+        while (true) {
+            long allocated = AllocationCounter.currentThread();
+            long start = System.nanoTime();
+            List<Variant> batch = reader.read(batchSize);
+            long end = System.nanoTime();
+            if (batch.isEmpty()) {
+                break;
+            }
+            stages.get(0).record(0, batch.size(), end - start, 0, allocatedSince(allocated));
+
+            // The batch waits from the moment the previous stage finished with it
+            long ready = end;
+            for (int i = 0; i < tasks.size(); i++) {
+                int in = batch.size();
+                allocated = AllocationCounter.currentThread();
+                start = System.nanoTime();
+                tasks.get(i).apply(batch);
+                end = System.nanoTime();
+                stages.get(1 + i).record(in, batch.size(), end - start, start - ready, allocatedSince(allocated));
+                ready = end;
+            }
+            for (int i = 0; i < writers.size(); i++) {
+                allocated = AllocationCounter.currentThread();
+                start = System.nanoTime();
+                writers.get(i).write(batch);
+                end = System.nanoTime();
+                stages.get(1 + tasks.size() + i).record(batch.size(), batch.size(), end - start, start - ready,
+                        allocatedSince(allocated));
+                ready = end;
+            }
+            batch.clear();
+            metricsListener.batchFinished(metrics);
+        }
+    }
+
+    private static long allocatedSince(long allocated) {
+        return allocated >= 0 ? AllocationCounter.currentThread() - allocated : -1;
+    }
+
     @Override
     protected void readerInit() {
         super.readerInit();
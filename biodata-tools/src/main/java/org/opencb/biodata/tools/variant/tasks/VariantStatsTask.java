@@ -6,6 +6,7 @@ import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.models.variant.VariantSourceEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.stats.MendelChecker;
 import org.opencb.biodata.models.variant.stats.VariantSourceStats;
 import org.opencb.biodata.models.variant.stats.VariantAggregatedStats;
 import org.opencb.biodata.models.variant.stats.VariantStats;
@@ -20,6 +21,7 @@ public class VariantStatsTask extends Task<Variant> {
     private VariantReader reader;
     private VariantSource source;
     private VariantSourceStats stats;
+    private MendelChecker mendelChecker;
 
     public VariantStatsTask(VariantReader reader, VariantSource study) {
         super();
@@ -35,6 +37,15 @@ public class VariantStatsTask extends Task<Variant> {
         stats = new VariantSourceStats(study.getFileId(), study.getStudyId());
     }
 
+    @Override
+    public boolean pre() {
+        // The samples and pedigree are already known, so the trios can be resolved once for the whole file
+        if (source.getPedigree() != null) {
+            mendelChecker = new MendelChecker(source);
+        }
+        return true;
+    }
+
     @Override
     public boolean apply(List<Variant> batch) throws IOException {
 //        VariantStats.calculateStatsForVariantsList(batch, source.getPedigree());
@@ -52,7 +63,7 @@ public class VariantStatsTask extends Task<Variant> {
                         // TODO Should create an object!
                         break;
                 }
-                file.setStats(variantStats.calculate(file.getSamplesData(), file.getAttributes(), source.getPedigree()));
+                file.setStats(variantStats.calculate(file.getSamplesData(), file.getAttributes(), source.getPedigree(), mendelChecker));
             }
         }
         
@@ -0,0 +1,107 @@
+package org.opencb.biodata.tools.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JmxPipelineListenerTest {
+
+    private MBeanServer server;
+
+    @Before
+    public void setUp() {
+        server = MBeanServerFactory.newMBeanServer();
+    }
+
+    @Test
+    public void stagesWithTheSameName() throws Exception {
+        // Stages built outside addStage are not numbered
+        final List<StageMetrics> stages = Arrays.asList(
+                new StageMetrics("reader", StageMetrics.Kind.READER),
+                new StageMetrics("writer", StageMetrics.Kind.WRITER),
+                new StageMetrics("VariantPassFilter", StageMetrics.Kind.TASK),
+                new StageMetrics("VariantPassFilter", StageMetrics.Kind.TASK));
+        PipelineMetrics metrics = new PipelineMetrics("test") {
+            @Override
+            public List<StageMetrics> getStages() {
+                return stages;
+            }
+        };
+
+        JmxPipelineListener listener = new JmxPipelineListener(server, false);
+        listener.pipelineStarted(metrics);
+        assertEquals(4, registered().size());
+        assertTrue(server.isRegistered(new ObjectName(
+                "org.opencb.biodata:type=Pipeline,pipeline=\"test\",index=2,stage=\"VariantPassFilter\"")));
+        assertTrue(server.isRegistered(new ObjectName(
+                "org.opencb.biodata:type=Pipeline,pipeline=\"test\",index=3,stage=\"VariantPassFilter\"")));
+
+        listener.pipelineFinished(metrics);
+        assertEquals(0, registered().size());
+    }
+
+    @Test
+    public void pipelinesWithTheSameName() throws Exception {
+        PipelineMetrics first = pipeline("test");
+        PipelineMetrics second = pipeline("test");
+        JmxPipelineListener firstListener = new JmxPipelineListener(server, false);
+        JmxPipelineListener secondListener = new JmxPipelineListener(server, false);
+
+        firstListener.pipelineStarted(first);
+        secondListener.pipelineStarted(second);
+        assertEquals(4, registered().size());
+        assertEquals(2, server.queryNames(new ObjectName("org.opencb.biodata:run=2,*"), null).size());
+
+        firstListener.pipelineFinished(first);
+        Set<ObjectName> names = registered();
+        assertEquals(2, names.size());
+        for (ObjectName name : names) {
+            assertEquals("2", name.getKeyProperty("run"));
+        }
+
+        secondListener.pipelineFinished(second);
+        assertEquals(0, registered().size());
+    }
+
+    @Test
+    public void keptMBeansAreReplacedInTheNextRun() throws Exception {
+        JmxPipelineListener listener = new JmxPipelineListener(server, true);
+        PipelineMetrics first = pipeline("test");
+        listener.pipelineStarted(first);
+        listener.pipelineFinished(first);
+        assertEquals(2, registered().size());
+
+        PipelineMetrics second = pipeline("test");
+        listener.pipelineStarted(second);
+        listener.pipelineFinished(second);
+        Set<ObjectName> names = registered();
+        assertEquals(2, names.size());
+        for (ObjectName name : names) {
+            assertEquals(null, name.getKeyProperty("run"));
+        }
+
+        listener.unregister();
+        assertEquals(0, registered().size());
+    }
+
+    private static PipelineMetrics pipeline(String name) {
+        PipelineMetrics metrics = new PipelineMetrics(name);
+        metrics.addStage("reader", StageMetrics.Kind.READER);
+        metrics.addStage("writer", StageMetrics.Kind.WRITER);
+        return metrics;
+    }
+
+    private Set<ObjectName> registered() throws Exception {
+        return server.queryNames(new ObjectName(JmxPipelineListener.DOMAIN + ":*"), null);
+    }
+
+}
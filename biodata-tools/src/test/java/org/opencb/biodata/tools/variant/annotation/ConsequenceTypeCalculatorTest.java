@@ -0,0 +1,287 @@
+package org.opencb.biodata.tools.variant.annotation;
+
+import org.junit.Test;
+import org.opencb.biodata.formats.sequence.fasta.dbadaptor.SequenceDBAdaptor;
+import org.opencb.biodata.models.core.Exon;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+import org.opencb.biodata.models.feature.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.annotation.ConsequenceType;
+import org.opencb.biodata.tools.variant.tasks.VariantAnnotTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsequenceTypeCalculatorTest {
+
+    /** Start, Ala, Trp, 63 Ala and a stop: 67 codons */
+    private static final String CDS;
+
+    private static final String GENOME;
+
+    static {
+        StringBuilder cds = new StringBuilder("ATGGCTTGG");
+        for (int i = 0; i < 63; i++) {
+            cds.append("GCT");
+        }
+        CDS = cds.append("TAA").toString();
+
+        char[] genome = new char[40000];
+        Arrays.fill(genome, 'C');
+        // Forward transcript: exons 1000-1100, 1201-1300 and 1401-2000, coding from 1051 to 1451
+        int k = 0;
+        for (int position = 1051; position <= 1451; position++) {
+            if (position <= 1100 || (position >= 1201 && position <= 1300) || position >= 1401) {
+                genome[position - 1] = CDS.charAt(k++);
+            }
+        }
+        // Reverse transcript: exons 30000-30100, 30201-30300 and 30401-31000, coding from 30450 down to 30050
+        k = 0;
+        for (int position = 30450; position >= 30050; position--) {
+            if (position <= 30100 || (position >= 30201 && position <= 30300) || position >= 30401) {
+                genome[position - 1] = TranscriptModel.complement(CDS.charAt(k++));
+            }
+        }
+        GENOME = new String(genome);
+    }
+
+    private final ConsequenceTypeCalculator calculator = new ConsequenceTypeCalculator(genes(), new TestSequenceAdaptor());
+
+    @Test
+    public void spliceSitesOfForwardTranscript() {
+        assertEquals(Arrays.asList("splice_donor_variant"), soNames(snv(1101, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("splice_donor_variant"), soNames(snv(1102, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("splice_region_variant", "intron_variant"), soNames(snv(1103, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("intron_variant"), soNames(snv(1150, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("splice_region_variant", "intron_variant"), soNames(snv(1198, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("splice_acceptor_variant"), soNames(snv(1199, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("splice_acceptor_variant"), soNames(snv(1200, "C", "T"), "T1"));
+        // The last base of the exon is coding and in the splice region
+        assertTrue(soNames(snv(1100, "C", "T"), "T1").contains("splice_region_variant"));
+    }
+
+    @Test
+    public void spliceSitesOfReverseTranscript() {
+        assertEquals(Arrays.asList("splice_acceptor_variant"), soNames(snv(30301, "C", "T"), "T2"));
+        assertEquals(Arrays.asList("splice_acceptor_variant"), soNames(snv(30302, "C", "T"), "T2"));
+        assertEquals(Arrays.asList("splice_donor_variant"), soNames(snv(30399, "C", "T"), "T2"));
+        assertEquals(Arrays.asList("splice_donor_variant"), soNames(snv(30400, "C", "T"), "T2"));
+        assertEquals(Arrays.asList("splice_region_variant", "intron_variant"), soNames(snv(30397, "C", "T"), "T2"));
+    }
+
+    @Test
+    public void codonsOfForwardTranscript() {
+        ConsequenceType missense = consequenceType(snv(1054, "G", "T"), "T1");
+        assertEquals(Arrays.asList("missense_variant"), soNames(missense));
+        assertEquals(Integer.valueOf(55), missense.getcDnaPosition());
+        assertEquals(Integer.valueOf(4), missense.getCdsPosition());
+        assertEquals(Integer.valueOf(2), missense.getAaPosition());
+        assertEquals("A/S", missense.getAaChange());
+        assertEquals("Gct/Tct", missense.getCodon());
+
+        ConsequenceType synonymous = consequenceType(snv(1056, "T", "C"), "T1");
+        assertEquals(Arrays.asList("synonymous_variant"), soNames(synonymous));
+        assertEquals("A", synonymous.getAaChange());
+
+        assertEquals(Arrays.asList("initiator_codon_variant"), soNames(snv(1051, "A", "G"), "T1"));
+
+        // Codons after an intron: CDS position 52 is the 2nd base of exon 2
+        ConsequenceType afterIntron = consequenceType(snv(1202, "G", "A"), "T1");
+        assertEquals(Integer.valueOf(52), afterIntron.getCdsPosition());
+        assertEquals(Integer.valueOf(18), afterIntron.getAaPosition());
+        assertEquals("Gct/Act", afterIntron.getCodon());
+        assertEquals("A/T", afterIntron.getAaChange());
+    }
+
+    @Test
+    public void stopCodonsOfForwardTranscript() {
+        ConsequenceType stopGained = consequenceType(snv(1059, "G", "A"), "T1");
+        assertEquals(Arrays.asList("stop_gained"), soNames(stopGained));
+        assertEquals("W/*", stopGained.getAaChange());
+        assertEquals("tgG/tgA", stopGained.getCodon());
+
+        ConsequenceType stopLost = consequenceType(snv(1449, "T", "C"), "T1");
+        assertEquals(Arrays.asList("stop_lost"), soNames(stopLost));
+        assertEquals(Integer.valueOf(67), stopLost.getAaPosition());
+        assertEquals("*/Q", stopLost.getAaChange());
+
+        assertEquals(Arrays.asList("stop_retained_variant"), soNames(snv(1451, "A", "G"), "T1"));
+    }
+
+    @Test
+    public void codonsOfReverseTranscript() {
+        // The alleles are in the forward strand, and the codons in the one of the transcript
+        ConsequenceType initiator = consequenceType(snv(30450, "T", "C"), "T2");
+        assertEquals(Arrays.asList("initiator_codon_variant"), soNames(initiator));
+        assertEquals(Integer.valueOf(1), initiator.getCdsPosition());
+        assertEquals(Integer.valueOf(551), initiator.getcDnaPosition());
+        assertEquals("Atg/Gtg", initiator.getCodon());
+
+        ConsequenceType stopGained = consequenceType(snv(30442, "C", "T"), "T2");
+        assertEquals(Arrays.asList("stop_gained"), soNames(stopGained));
+        assertEquals(Integer.valueOf(9), stopGained.getCdsPosition());
+        assertEquals(Integer.valueOf(3), stopGained.getAaPosition());
+        assertEquals("tgG/tgA", stopGained.getCodon());
+
+        // The first CDS base of a deletion is its last genomic base
+        ConsequenceType deletion = consequenceType(new Variant("1", 30442, 30443, "CA", ""), "T2");
+        assertEquals(Arrays.asList("frameshift_variant"), soNames(deletion));
+        assertEquals(Integer.valueOf(8), deletion.getCdsPosition());
+    }
+
+    @Test
+    public void indels() {
+        assertEquals(Arrays.asList("frameshift_variant"), soNames(new Variant("1", 1060, 1061, "GC", ""), "T1"));
+        assertEquals(Arrays.asList("inframe_deletion"), soNames(new Variant("1", 1060, 1062, "GCT", ""), "T1"));
+        assertEquals(Arrays.asList("frameshift_variant"), soNames(new Variant("1", 1061, 1061, "", "A"), "T1"));
+        assertEquals(Arrays.asList("inframe_insertion"), soNames(new Variant("1", 1061, 1061, "", "AAA"), "T1"));
+    }
+
+    @Test
+    public void untranslatedRegions() {
+        assertEquals(Arrays.asList("5_prime_UTR_variant"), soNames(snv(1020, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("3_prime_UTR_variant"), soNames(snv(1500, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("5_prime_UTR_variant"), soNames(snv(30460, "C", "T"), "T2"));
+        assertEquals(Arrays.asList("3_prime_UTR_variant"), soNames(snv(30020, "C", "T"), "T2"));
+        // A deletion from the UTR into the CDS
+        List<String> soNames = soNames(new Variant("1", 1049, 1052, "CCAT", ""), "T1");
+        assertEquals(Arrays.asList("5_prime_UTR_variant", "frameshift_variant"), soNames);
+    }
+
+    @Test
+    public void upstreamDownstreamAndIntergenic() {
+        assertEquals(Arrays.asList("upstream_gene_variant"), soNames(snv(500, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("downstream_gene_variant"), soNames(snv(2500, "C", "T"), "T1"));
+        assertEquals(Arrays.asList("upstream_gene_variant"), soNames(snv(31500, "C", "T"), "T2"));
+        assertEquals(Arrays.asList("downstream_gene_variant"), soNames(snv(29500, "C", "T"), "T2"));
+
+        List<ConsequenceType> intergenic = calculator.calculate(snv(15000, "C", "T"));
+        assertEquals(1, intergenic.size());
+        assertNull(intergenic.get(0).getEnsemblTranscriptId());
+        assertEquals(Arrays.asList("intergenic_variant"), soNames(intergenic.get(0)));
+        assertEquals(Arrays.asList("intergenic_variant"), soNames(calculator.calculate(new Variant("2", 1054, 1054, "G", "T")).get(0)));
+    }
+
+    @Test
+    public void withoutSequence() {
+        ConsequenceTypeCalculator withoutSequence = new ConsequenceTypeCalculator(genes(), null);
+        ConsequenceType consequenceType = find(withoutSequence.calculate(snv(1054, "G", "T")), "T1");
+        assertEquals(Arrays.asList("coding_sequence_variant"), soNames(consequenceType));
+        assertEquals(Integer.valueOf(4), consequenceType.getCdsPosition());
+        assertNull(consequenceType.getCodon());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void parallelAnnotator() throws Exception {
+        List<Variant> batch = new ArrayList<>();
+        for (int position = 1051; position < 1100; position += 3) {
+            batch.add(snv(position + 1, "C", "A"));
+        }
+        VariantConsequenceTypeAnnotator annotator = new VariantConsequenceTypeAnnotator(genes(), new TestSequenceAdaptor(), 3);
+        VariantAnnotTask task = new VariantAnnotTask(Collections.<VariantAnnotator>singletonList(annotator));
+        assertTrue(task.pre());
+        task.apply(batch);
+
+        for (Variant variant : batch) {
+            List<ConsequenceType> expected = calculator.calculate(variant);
+            List<ConsequenceType> annotated = variant.getAnnotation().getConsequenceTypes();
+            assertEquals(expected.size(), annotated.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(soNames(expected.get(i)), soNames(annotated.get(i)));
+                assertEquals(expected.get(i).getCodon(), annotated.get(i).getCodon());
+            }
+        }
+
+        // The threads must not keep the JVM alive, and are stopped by the task
+        boolean found = false;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("consequence-type-")) {
+                assertTrue(thread.isDaemon());
+                found = true;
+            }
+        }
+        assertTrue(found);
+        assertTrue(task.post());
+    }
+
+    private List<String> soNames(Variant variant, String transcriptId) {
+        return soNames(consequenceType(variant, transcriptId));
+    }
+
+    private ConsequenceType consequenceType(Variant variant, String transcriptId) {
+        return find(calculator.calculate(variant), transcriptId);
+    }
+
+    private static ConsequenceType find(List<ConsequenceType> consequenceTypes, String transcriptId) {
+        for (ConsequenceType consequenceType : consequenceTypes) {
+            if (transcriptId.equals(consequenceType.getEnsemblTranscriptId())) {
+                return consequenceType;
+            }
+        }
+        throw new AssertionError("No consequence type for " + transcriptId);
+    }
+
+    private static List<String> soNames(ConsequenceType consequenceType) {
+        List<String> soNames = new ArrayList<>();
+        for (ConsequenceType.ConsequenceTypeEntry entry : consequenceType.getSoTerms()) {
+            soNames.add(entry.getSoName());
+        }
+        return soNames;
+    }
+
+    private static Variant snv(int position, String reference, String alternate) {
+        return new Variant("1", position, position, reference, alternate);
+    }
+
+    private static List<Gene> genes() {
+        Transcript forward = new Transcript("T1", "GENE1-001", "protein_coding", "KNOWN", "1", 1000, 2000, "+",
+                1051, 1451, 52, 452, CDS.length(), null, null, null,
+                exons("+", 1000, 1100, 1201, 1300, 1401, 2000), null);
+        Transcript reverse = new Transcript("T2", "GENE2-001", "protein_coding", "KNOWN", "1", 30000, 31000, "-",
+                30050, 30450, 551, 751, CDS.length(), null, null, null,
+                exons("-", 30000, 30100, 30201, 30300, 30401, 31000), null);
+        return Arrays.asList(
+                new Gene("G1", "GENE1", "protein_coding", "KNOWN", "1", 1000, 2000, "+", "test", null,
+                        Collections.singletonList(forward), null),
+                new Gene("G2", "GENE2", "protein_coding", "KNOWN", "1", 30000, 31000, "-", "test", null,
+                        Collections.singletonList(reverse), null));
+    }
+
+    private static ArrayList<Exon> exons(String strand, int... bounds) {
+        ArrayList<Exon> exons = new ArrayList<>();
+        for (int i = 0; i < bounds.length; i += 2) {
+            exons.add(new Exon("E" + i, "1", bounds[i], bounds[i + 1], strand, 0, 0, 0, 0, 0, 0, 0, i / 2 + 1, null));
+        }
+        return exons;
+    }
+
+    private static class TestSequenceAdaptor extends SequenceDBAdaptor {
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getSequence(Region region) {
+            return "1".equals(region.getChromosome()) ? GENOME.substring(region.getStart() - 1, region.getEnd()) : null;
+        }
+
+        @Override
+        public String getSequence(Region region, String species) {
+            return getSequence(region);
+        }
+    }
+
+}
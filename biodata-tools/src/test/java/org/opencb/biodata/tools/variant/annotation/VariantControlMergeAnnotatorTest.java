@@ -0,0 +1,280 @@
+package org.opencb.biodata.tools.variant.annotation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VariantControlMergeAnnotatorTest {
+
+    private static final String HEADER = "##fileformat=VCFv4.1\n"
+            + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\tS2\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sortedMerge() throws Exception {
+        String control = write("control.vcf", HEADER
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "1\t200\t.\tG\tT\t.\tPASS\t.\tGT\t1/1\t0/1\n"
+                + "2\t50\t.\tC\tG\t.\tPASS\t.\tGT\t0/1\t0/1\n");
+        VariantControlMergeAnnotator annotator = new VariantControlMergeAnnotator("CTL", control);
+
+        List<Variant> variants = Arrays.asList(variant("1", 100, "A", "C"), variant("1", 150, "A", "G"),
+                variant("1", 200, "G", "T"), variant("2", 50, "C", "G"));
+        annotator.annot(variants);
+        annotator.close();
+
+        assertEquals("0.2500", attribute(variants.get(0), "CTL_maf"));
+        assertEquals("C", attribute(variants.get(0), "CTL_amaf"));
+        assertNull(attribute(variants.get(1), "CTL_maf"));
+        assertEquals("0.2500", attribute(variants.get(2), "CTL_maf"));
+        assertEquals("G", attribute(variants.get(2), "CTL_amaf"));
+        assertEquals("0.5000", attribute(variants.get(3), "CTL_maf"));
+        assertEquals("0/1:2", attribute(variants.get(3), "CTL_gt"));
+    }
+
+    @Test
+    public void chromosomesMissingInInput() throws Exception {
+        // Chromosome 3 is not in the input, and must not stop the annotation of chromosome 5
+        String control = write("control.vcf", HEADER
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "3\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "5\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/1\n");
+        VariantControlMergeAnnotator annotator = new VariantControlMergeAnnotator("CTL", control);
+
+        List<Variant> variants = Arrays.asList(variant("1", 100, "A", "C"), variant("4", 100, "A", "C"),
+                variant("5", 100, "A", "C"));
+        annotator.annot(variants);
+        annotator.close();
+
+        assertEquals("0.2500", attribute(variants.get(0), "CTL_maf"));
+        assertNull(attribute(variants.get(1), "CTL_maf"));
+        assertEquals("0.5000", attribute(variants.get(2), "CTL_maf"));
+    }
+
+    @Test
+    public void chromosomesMissingInContigs() throws Exception {
+        String control = write("control.vcf", "##fileformat=VCFv4.1\n"
+                + "##contig=<ID=1,length=1000>\n##contig=<ID=2,length=1000>\n##contig=<ID=3,length=1000>\n"
+                + HEADER.substring(HEADER.indexOf("#CHROM"))
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "3\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/1\n");
+        VariantControlMergeAnnotator annotator = new VariantControlMergeAnnotator("CTL", control);
+
+        // Chromosome X is not in the contigs, so it can't be in the control file
+        List<Variant> variants = Arrays.asList(variant("1", 100, "A", "C"), variant("X", 100, "A", "C"),
+                variant("3", 100, "A", "C"));
+        annotator.annot(variants);
+        annotator.close();
+
+        assertEquals("0.2500", attribute(variants.get(0), "CTL_maf"));
+        assertNull(attribute(variants.get(1), "CTL_maf"));
+        assertEquals("0.5000", attribute(variants.get(2), "CTL_maf"));
+    }
+
+    @Test
+    public void controlFilePerChromosome() throws Exception {
+        String chromosome2 = write("chr2.vcf", HEADER + "2\t50\t.\tC\tG\t.\tPASS\t.\tGT\t0/1\t0/1\n");
+        String chromosome1 = write("chr1.vcf", HEADER + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n");
+        VariantControlMergeAnnotator annotator = new VariantControlMergeAnnotator("CTL",
+                Arrays.asList(chromosome2, chromosome1));
+
+        List<Variant> variants = Arrays.asList(variant("1", 100, "A", "C"), variant("2", 50, "C", "G"));
+        annotator.annot(variants);
+        annotator.close();
+
+        assertEquals("0.2500", attribute(variants.get(0), "CTL_maf"));
+        assertEquals("0.5000", attribute(variants.get(1), "CTL_maf"));
+    }
+
+    @Test
+    public void severalControlFiles() throws Exception {
+        String first = write("first.vcf", HEADER
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "1\t300\t.\tT\tA\t.\tPASS\t.\tGT\t0/0\t0/0\n");
+        String second = write("second.vcf", HEADER
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t1/1\t0/1\n"
+                + "1\t200\t.\tG\tT\t.\tPASS\t.\tGT\t1/1\t0/1\n");
+        VariantControlMergeAnnotator annotator = new VariantControlMergeAnnotator("CTL", Arrays.asList(first, second));
+
+        List<Variant> variants = Arrays.asList(variant("1", 100, "A", "C"), variant("1", 200, "G", "T"),
+                variant("1", 300, "T", "A"));
+        annotator.annot(variants);
+        annotator.close();
+
+        // 4 reference and 4 alternate alleles between both files
+        assertEquals("0.5000", attribute(variants.get(0), "CTL_maf"));
+        assertEquals("A", attribute(variants.get(0), "CTL_amaf"));
+        String genotypes = attribute(variants.get(0), "CTL_gt");
+        assertTrue(genotypes, genotypes.contains("0/0:1") && genotypes.contains("0/1:2") && genotypes.contains("1/1:1"));
+        assertEquals("0.2500", attribute(variants.get(1), "CTL_maf"));
+        assertEquals("0.0000", attribute(variants.get(2), "CTL_maf"));
+    }
+
+    @Test
+    public void slightlyUnsortedBatches() throws Exception {
+        String control = write("control.vcf", HEADER
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "1\t110\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/1\n"
+                + "1\t200\t.\tG\tT\t.\tPASS\t.\tGT\t1/1\t0/1\n");
+        VariantControlMergeAnnotator annotator = new VariantControlMergeAnnotator("CTL", control);
+
+        List<Variant> first = Arrays.asList(variant("1", 110, "A", "C"), variant("1", 200, "G", "T"));
+        List<Variant> second = Arrays.asList(variant("1", 100, "A", "C"), variant("1", 105, "A", "C"));
+        annotator.annot(first);
+        annotator.annot(second);
+        annotator.close();
+
+        assertEquals("0.5000", attribute(first.get(0), "CTL_maf"));
+        assertEquals("0.2500", attribute(first.get(1), "CTL_maf"));
+        assertEquals("0.2500", attribute(second.get(0), "CTL_maf"));
+        assertNull(attribute(second.get(1), "CTL_maf"));
+    }
+
+    @Test
+    public void unsortedBatches() throws Exception {
+        String control = write("control.vcf", HEADER
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "1\t5000\t.\tG\tT\t.\tPASS\t.\tGT\t1/1\t0/1\n"
+                + "2\t50\t.\tC\tG\t.\tPASS\t.\tGT\t0/1\t0/1\n");
+        // The same variant in a second control file, whose statistics must be merged once
+        String other = write("other.vcf", HEADER
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/0\t0/0\n");
+        VariantControlMergeAnnotator annotator = new VariantControlMergeAnnotator("CTL", Arrays.asList(control, other));
+
+        Variant far = variant("1", 5000, "G", "T");
+        Variant before = variant("1", 100, "A", "C");
+        Variant laterChromosome = variant("2", 50, "C", "G");
+        Variant previousChromosome = variant("1", 5000, "G", "T");
+        annotator.annot(Collections.singletonList(far));
+        annotator.annot(Collections.singletonList(before));
+        annotator.annot(Collections.singletonList(laterChromosome));
+        annotator.annot(Collections.singletonList(previousChromosome));
+        assertEquals(2, annotator.getRewinds());
+        annotator.close();
+
+        assertEquals("0.2500", attribute(far, "CTL_maf"));
+        assertEquals("0.1250", attribute(before, "CTL_maf"));
+        assertEquals("0.5000", attribute(laterChromosome, "CTL_maf"));
+        assertEquals("0.2500", attribute(previousChromosome, "CTL_maf"));
+    }
+
+    @Test
+    public void unsortedVariantsInBatch() throws Exception {
+        String control = write("control.vcf", HEADER
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "1\t5000\t.\tG\tT\t.\tPASS\t.\tGT\t1/1\t0/1\n"
+                + "2\t50\t.\tC\tG\t.\tPASS\t.\tGT\t0/1\t0/1\n");
+        VariantControlMergeAnnotator annotator = new VariantControlMergeAnnotator("CTL", control);
+
+        List<Variant> variants = Arrays.asList(variant("2", 50, "C", "G"), variant("1", 5000, "G", "T"),
+                variant("3", 10, "A", "C"), variant("1", 100, "A", "C"));
+        annotator.annot(variants);
+        // The batch is sorted before walking through the control file
+        assertEquals(0, annotator.getRewinds());
+        annotator.close();
+
+        assertEquals("0.5000", attribute(variants.get(0), "CTL_maf"));
+        assertEquals("0.2500", attribute(variants.get(1), "CTL_maf"));
+        assertNull(attribute(variants.get(2), "CTL_maf"));
+        assertEquals("0.2500", attribute(variants.get(3), "CTL_maf"));
+    }
+
+    @Test
+    public void severalThreads() throws Exception {
+        StringBuilder content = new StringBuilder(HEADER);
+        for (String chromosome : Arrays.asList("1", "2")) {
+            for (int position = 100; position <= 20000; position += 100) {
+                String genotype = (position / 100) % 3 == 0 ? "1/1" : "0/1";
+                content.append(chromosome).append("\t").append(position).append("\t.\tA\tC\t.\tPASS\t.\tGT\t")
+                        .append(genotype).append("\t0/0\n");
+            }
+        }
+        String control = write("control.vcf", content.toString());
+
+        final List<List<Variant>> batches = new ArrayList<>();
+        for (String chromosome : Arrays.asList("1", "2")) {
+            for (int first = 100; first <= 20000; first += 1000) {
+                List<Variant> batch = new ArrayList<>();
+                for (int position = first; position < first + 1000; position += 100) {
+                    batch.add(variant(chromosome, position, "A", "C"));
+                }
+                batches.add(batch);
+            }
+        }
+
+        final VariantControlMergeAnnotator annotator = new VariantControlMergeAnnotator("CTL", control);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final List<Variant> batch : batches) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        annotator.annot(batch);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            annotator.close();
+        }
+
+        for (List<Variant> batch : batches) {
+            for (Variant variant : batch) {
+                String expected = (variant.getStart() / 100) % 3 == 0 ? "0.5000" : "0.2500";
+                assertEquals(variant.toString(), expected, attribute(variant, "CTL_maf"));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void contradictoryChromosomeOrders() throws Exception {
+        String first = write("first.vcf", HEADER
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "2\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n");
+        String second = write("second.vcf", HEADER
+                + "2\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n"
+                + "1\t100\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\t0/0\n");
+        new VariantControlMergeAnnotator("CTL", Arrays.asList(first, second));
+    }
+
+    private String write(String name, String content) throws Exception {
+        Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.US_ASCII));
+        return path.toString();
+    }
+
+    private static Variant variant(String chromosome, int start, String reference, String alternate) {
+        Variant variant = new Variant(chromosome, start, start + reference.length() - 1, reference, alternate);
+        variant.addSourceEntry(new VariantSourceEntry("f", "s"));
+        return variant;
+    }
+
+    private static String attribute(Variant variant, String key) {
+        return variant.getSourceEntry("f", "s").getAttribute(key);
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.opencb.biodata.tools.variant.filtering;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VariantPassFilterTest {
+
+    @Test
+    public void passByDefault() {
+        VariantPassFilter filter = new VariantPassFilter();
+        assertTrue(filter.apply(variant("PASS")));
+        assertFalse(filter.apply(variant("q10")));
+        assertFalse(filter.apply(variant("PASS;q10")));
+        assertFalse(filter.apply(variant(".")));
+        assertFalse(filter.apply(variant((String) null)));
+        assertFalse(filter.apply(new Variant("1", 100, 100, "A", "C")));
+    }
+
+    @Test
+    public void acceptedValues() {
+        VariantPassFilter filter = new VariantPassFilter(0, "PASS", ".");
+        assertTrue(filter.apply(variant("PASS")));
+        assertTrue(filter.apply(variant(".")));
+        // A missing FILTER attribute is the same as "."
+        assertTrue(filter.apply(variant((String) null)));
+        assertFalse(filter.apply(variant("q10")));
+    }
+
+    @Test
+    public void anyFile() {
+        VariantPassFilter filter = new VariantPassFilter();
+        assertTrue(filter.apply(variant("q10", "PASS")));
+        assertFalse(filter.apply(variant("q10", "s50")));
+    }
+
+    /**
+     * @return A variant with one source entry per FILTER value, null meaning no FILTER attribute
+     */
+    private static Variant variant(String... filters) {
+        Variant variant = new Variant("1", 100, 100, "A", "C");
+        for (int i = 0; i < filters.length; i++) {
+            VariantSourceEntry file = new VariantSourceEntry("f" + i, "s");
+            if (filters[i] != null) {
+                file.addAttribute("FILTER", filters[i]);
+            }
+            variant.addSourceEntry(file);
+        }
+        return variant;
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.opencb.biodata.tools.variant.filtering;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSourceEntry;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VariantQualityFilterTest {
+
+    @Test
+    public void minQuality() {
+        VariantQualityFilter filter = new VariantQualityFilter(30);
+        assertTrue(filter.apply(variant("60.0")));
+        assertTrue(filter.apply(variant("30.0")));
+        assertFalse(filter.apply(variant("29.99")));
+        assertFalse(filter.apply(variant("0.0")));
+    }
+
+    @Test
+    public void unknownQuality() {
+        VariantQualityFilter filter = new VariantQualityFilter(0);
+        assertFalse(filter.apply(variant((String) null)));
+        assertFalse(filter.apply(new Variant("1", 100, 100, "A", "C")));
+    }
+
+    @Test
+    public void anyFile() {
+        VariantQualityFilter filter = new VariantQualityFilter(30);
+        assertTrue(filter.apply(variant("10.0", null, "45.5")));
+        assertFalse(filter.apply(variant("10.0", null)));
+    }
+
+    /**
+     * @return A variant with one source entry per QUAL value, null meaning unknown quality
+     */
+    private static Variant variant(String... qualities) {
+        Variant variant = new Variant("1", 100, 100, "A", "C");
+        for (int i = 0; i < qualities.length; i++) {
+            VariantSourceEntry file = new VariantSourceEntry("f" + i, "s");
+            if (qualities[i] != null) {
+                file.addAttribute("QUAL", qualities[i]);
+            }
+            variant.addSourceEntry(file);
+        }
+        return variant;
+    }
+
+}
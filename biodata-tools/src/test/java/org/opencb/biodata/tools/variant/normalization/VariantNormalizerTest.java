@@ -0,0 +1,158 @@
+package org.opencb.biodata.tools.variant.normalization;
+
+import org.junit.Test;
+import org.opencb.biodata.formats.sequence.fasta.dbadaptor.SequenceDBAdaptor;
+import org.opencb.biodata.models.feature.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.models.variant.VariantVcfFactory;
+import org.opencb.biodata.tools.variant.tasks.VariantNormalizationTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VariantNormalizerTest {
+
+    private static final Map<String, String> GENOME = new HashMap<>();
+
+    static {
+        StringBuilder chromosome = new StringBuilder();
+        // 1-4 TTTT, 5 G, 6-13 CACACACA, 14 G, 15-18 TTTT, 19 C, 20-59 40 As, 60 G, 61-64 TTTT
+        chromosome.append("TTTTGCACACACAGTTTTC");
+        for (int i = 0; i < 40; i++) {
+            chromosome.append('A');
+        }
+        chromosome.append("GTTTT");
+        GENOME.put("1", chromosome.toString());
+        GENOME.put("2", "AAAACGTTTT");
+    }
+
+    private final VariantNormalizer normalizer = new VariantNormalizer(new TestSequenceAdaptor());
+
+    @Test
+    public void homopolymer() throws Exception {
+        assertNormalized(new Variant("1", 59, 59, "A", ""), 20, 20, "A", "");
+        assertNormalized(new Variant("1", 40, 41, "AA", ""), 20, 21, "AA", "");
+        assertNormalized(new Variant("1", 60, 60, "", "A"), 20, 20, "", "A");
+    }
+
+    @Test
+    public void homopolymerLongerThanWindow() throws Exception {
+        VariantNormalizer smallWindow = new VariantNormalizer(new TestSequenceAdaptor(), 16);
+        Variant deletion = new Variant("1", 59, 59, "A", "");
+        assertTrue(smallWindow.normalize(deletion));
+        assertVariant(deletion, 20, 20, "A", "");
+
+        // Going back to a previous position of the same chromosome
+        Variant insertion = new Variant("1", 14, 14, "", "CA");
+        assertTrue(smallWindow.normalize(insertion));
+        assertVariant(insertion, 6, 7, "", "CA");
+    }
+
+    @Test
+    public void tandemRepeat() throws Exception {
+        assertNormalized(new Variant("1", 12, 13, "CA", ""), 6, 7, "CA", "");
+        assertNormalized(new Variant("1", 11, 12, "AC", ""), 6, 7, "CA", "");
+        assertNormalized(new Variant("1", 10, 13, "CACA", ""), 6, 9, "CACA", "");
+        assertNormalized(new Variant("1", 14, 14, "", "CA"), 6, 7, "", "CA");
+        // Already left-aligned
+        assertFalse(normalizer.normalize(new Variant("1", 6, 7, "CA", "")));
+    }
+
+    @Test
+    public void trimSharedBases() throws Exception {
+        // Shared prefix of a substitution
+        assertNormalized(new Variant("1", 4, 6, "TGC", "TAC"), 5, 5, "G", "A");
+        // Shared suffix first, then prefix, and then left-aligned
+        assertNormalized(new Variant("1", 5, 10, "GCACAC", "GCAC"), 6, 7, "CA", "");
+        assertNormalized(new Variant("1", 13, 14, "AG", "ACAG"), 6, 7, "", "CA");
+        // A single base change is left as is
+        assertFalse(normalizer.normalize(new Variant("1", 5, 5, "G", "A")));
+    }
+
+    @Test
+    public void multiallelicLine() throws Exception {
+        VariantSource source = new VariantSource("file.vcf", "f", "s", "study");
+        source.setSamples(Collections.singletonList("S1"));
+        List<Variant> variants = new VariantVcfFactory().create(source,
+                "1\t11\t.\tACA\tA,ACACA,GCA\t.\tPASS\t.\tGT\t1/2");
+        assertEquals(3, variants.size());
+        for (Variant variant : variants) {
+            normalizer.normalize(variant);
+        }
+        assertVariant(variants.get(0), 6, 7, "CA", "");
+        assertVariant(variants.get(1), 6, 7, "", "CA");
+        assertVariant(variants.get(2), 11, 11, "A", "G");
+    }
+
+    @Test
+    public void indelAtContigStart() throws Exception {
+        assertNormalized(new Variant("2", 4, 4, "A", ""), 1, 1, "A", "");
+        assertNormalized(new Variant("2", 3, 4, "AA", ""), 1, 2, "AA", "");
+        assertNormalized(new Variant("2", 5, 5, "", "A"), 1, 1, "", "A");
+        assertFalse(normalizer.normalize(new Variant("2", 1, 1, "A", "")));
+    }
+
+    @Test
+    public void unsortedBatchInParallel() throws Exception {
+        List<Variant> batch = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            batch.add(new Variant("2", 4, 4, "A", ""));
+            batch.add(new Variant("1", 59, 59, "A", ""));
+            batch.add(new Variant("1", 12, 13, "CA", ""));
+        }
+        VariantNormalizationTask task = new VariantNormalizationTask(new TestSequenceAdaptor(), 2);
+        assertTrue(task.pre());
+        assertTrue(task.apply(batch));
+        assertTrue(task.post());
+        for (int i = 0; i < batch.size(); i += 3) {
+            assertVariant(batch.get(i), 1, 1, "A", "");
+            assertVariant(batch.get(i + 1), 20, 20, "A", "");
+            assertVariant(batch.get(i + 2), 6, 7, "CA", "");
+        }
+    }
+
+    private void assertNormalized(Variant variant, int start, int end, String reference, String alternate) throws Exception {
+        assertTrue(normalizer.normalize(variant));
+        assertVariant(variant, start, end, reference, alternate);
+    }
+
+    private static void assertVariant(Variant variant, int start, int end, String reference, String alternate) {
+        assertEquals(Arrays.asList(start, end, reference, alternate),
+                Arrays.<Object>asList(variant.getStart(), variant.getEnd(), variant.getReference(), variant.getAlternate()));
+    }
+
+    private static class TestSequenceAdaptor extends SequenceDBAdaptor {
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getSequence(Region region) {
+            String sequence = GENOME.get(region.getChromosome());
+            if (sequence == null || region.getStart() > sequence.length()) {
+                return null;
+            }
+            return sequence.substring(region.getStart() - 1, Math.min(region.getEnd(), sequence.length()));
+        }
+
+        @Override
+        public String getSequence(Region region, String species) {
+            return getSequence(region);
+        }
+    }
+
+}
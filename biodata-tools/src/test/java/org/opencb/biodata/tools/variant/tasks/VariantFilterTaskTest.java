@@ -0,0 +1,114 @@
+package org.opencb.biodata.tools.variant.tasks;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.formats.variant.vcf4.io.VariantVcfReader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.tools.variant.filtering.VariantFilter;
+import org.opencb.biodata.tools.variant.filtering.VariantPassFilter;
+import org.opencb.biodata.tools.variant.filtering.VariantQualityFilter;
+import org.opencb.biodata.tools.variant.filtering.VariantSnpFilter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VariantFilterTaskTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pushDown() throws Exception {
+        String inputFile = writeVcf(
+                "1\t100\trs1\tA\tC\t60\tPASS\t.",
+                "1\t200\t.\tA\tG\t60\tPASS\t.",
+                "1\t300\trs3\tA\tT\t10\tPASS\t.",
+                "1\t400\trs4\tC\tG\t60\tq10\t.",
+                "1\t500\trs5\tC\tT\t.\tPASS\t.",
+                "2\t100\trs6\tG\tA\t45.5\tPASS\t.",
+                "2\t200\trs7\tAT\tA\t99\tPASS\t.");
+        VariantFilterTask task = new VariantFilterTask(Arrays.asList(new VariantPassFilter(), new VariantQualityFilter(30),
+                new VariantSnpFilter(), new ChromosomeFilter("1")));
+
+        VariantVcfReader reader = new VariantVcfReader(new VariantSource(inputFile, "f", "s", "study"), inputFile);
+        List<Variant> parsed = readAll(reader);
+        assertEquals(7, parsed.size());
+        assertTrue(task.apply(parsed));
+        assertEquals(Collections.singletonList(new Variant("1", 100, 100, "A", "C")), parsed);
+
+        VariantVcfReader pushedReader = new VariantVcfReader(new VariantSource(inputFile, "f", "s", "study"), inputFile);
+        // The chromosome filter needs the whole variant
+        assertEquals(3, task.pushDown(pushedReader));
+        List<Variant> pushed = readAll(pushedReader);
+        assertEquals(Arrays.asList(new Variant("1", 100, 100, "A", "C"), new Variant("2", 100, 100, "G", "A"),
+                new Variant("2", 201, 201, "T", "")), pushed);
+        assertEquals(4, pushedReader.getSkippedLines());
+        assertTrue(task.apply(pushed));
+        assertEquals(parsed, pushed);
+    }
+
+    @Test
+    public void nothingToPushDown() throws Exception {
+        String inputFile = writeVcf("1\t100\trs1\tA\tC\t60\tPASS\t.", "2\t200\t.\tA\tG\t.\tq10\t.");
+        VariantFilterTask task = new VariantFilterTask(Collections.<VariantFilter>singletonList(new ChromosomeFilter("1")));
+
+        VariantVcfReader reader = new VariantVcfReader(new VariantSource(inputFile, "f", "s", "study"), inputFile);
+        assertEquals(0, task.pushDown(reader));
+        List<Variant> variants = readAll(reader);
+        assertEquals(2, variants.size());
+        assertEquals(0, reader.getSkippedLines());
+        assertTrue(task.apply(variants));
+        assertEquals(Collections.singletonList(new Variant("1", 100, 100, "A", "C")), variants);
+    }
+
+    private String writeVcf(String... lines) throws Exception {
+        File file = folder.newFile("variants.vcf");
+        List<String> content = new ArrayList<>();
+        content.add("##fileformat=VCFv4.1");
+        content.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+        content.addAll(Arrays.asList(lines));
+        Files.write(file.toPath(), content, StandardCharsets.UTF_8);
+        return file.getPath();
+    }
+
+    private static List<Variant> readAll(VariantVcfReader reader) {
+        assertTrue(reader.open());
+        assertTrue(reader.pre());
+        List<Variant> variants = new ArrayList<>();
+        List<Variant> batch;
+        while ((batch = reader.read()) != null) {
+            variants.addAll(batch);
+        }
+        assertTrue(reader.post());
+        assertTrue(reader.close());
+        return variants;
+    }
+
+    /**
+     * Filter without a line predicate, which can not be pushed down.
+     */
+    private static class ChromosomeFilter extends VariantFilter {
+
+        private final String chromosome;
+
+        ChromosomeFilter(String chromosome) {
+            this.chromosome = chromosome;
+        }
+
+        @Override
+        public boolean apply(Variant variant) {
+            return chromosome.equals(variant.getChromosome());
+        }
+    }
+
+}
@@ -0,0 +1,435 @@
+package org.opencb.biodata.tools.variant.tasks;
+
+import org.junit.Test;
+import org.opencb.biodata.formats.variant.io.VariantReader;
+import org.opencb.biodata.formats.variant.io.VariantWriter;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.VariantSource;
+import org.opencb.biodata.tools.metrics.LoggingPipelineListener;
+import org.opencb.biodata.tools.metrics.PipelineListener;
+import org.opencb.biodata.tools.metrics.PipelineMetrics;
+import org.opencb.biodata.tools.metrics.StageMetrics;
+import org.opencb.commons.run.Task;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VariantRunnerTest {
+
+    @Test
+    public void measuredRun() throws Exception {
+        ListReader reader = new ListReader(variants(10));
+        ListWriter writer = new ListWriter();
+        RecordingListener listener = new RecordingListener();
+        VariantRunner runner = runner(reader, Collections.<Task<Variant>>singletonList(new EvenStartTask()), writer, 3);
+        runner.setMetricsListener(listener);
+        runner.run();
+
+        assertEquals(5, writer.variants.size());
+        assertEquals(Arrays.asList("started", "batch", "batch", "batch", "batch", "finished"), listener.calls);
+
+        PipelineMetrics metrics = runner.getMetrics();
+        assertEquals(3, metrics.getStages().size());
+        assertStage(metrics.getStages().get(0), "ListReader", 4, 0, 10);
+        assertStage(metrics.getStages().get(1), "EvenStartTask", 4, 10, 5);
+        assertStage(metrics.getStages().get(2), "ListWriter", 4, 5, 5);
+        assertEquals(1, metrics.getStages().get(0).getMinBatchSize());
+        assertEquals(3, metrics.getStages().get(0).getMaxBatchSize());
+        assertTrue(metrics.getElapsedNanos() > 0);
+        assertTrue(reader.closed && writer.closed);
+    }
+
+    @Test
+    public void notMeasuredByDefault() throws Exception {
+        ListWriter writer = new ListWriter();
+        VariantRunner runner = runner(new ListReader(variants(10)), Collections.<Task<Variant>>emptyList(), writer, 3);
+        runner.run();
+        assertEquals(10, writer.variants.size());
+        assertNull(runner.getMetrics());
+    }
+
+    @Test
+    public void loggingListener() throws Exception {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        final List<String> messages = new ArrayList<>();
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                messages.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        VariantRunner runner = runner(new ListReader(variants(10)), Collections.<Task<Variant>>emptyList(), new ListWriter(), 3);
+        runner.setMetricsListener(new LoggingPipelineListener(logger, Level.INFO, 1, TimeUnit.NANOSECONDS));
+        runner.run();
+
+        assertEquals("Pipeline {0} started", messages.get(0));
+        // One progress report per batch, as the interval is always over
+        assertEquals(6, messages.size());
+        assertTrue(messages.get(4).contains("10 records read"));
+        assertTrue(messages.get(5).startsWith("Pipeline variants finished"));
+        assertTrue(messages.get(5).contains("WRITER ListWriter: 4 batches, 10 records in"));
+    }
+
+    @Test(timeout = 30000)
+    public void pipelinedKeepsOrder() throws Exception {
+        List<Variant> input = variants(200);
+        ListWriter first = new ListWriter();
+        ListWriter second = new ListWriter();
+        RecordingListener listener = new RecordingListener();
+        SlowTask slow = new SlowTask();
+        VariantRunner runner = new VariantRunner(new VariantSource("variants.vcf", "variants", "study", "study"),
+                new ListReader(input), null, Arrays.<VariantWriter>asList(first, second),
+                Arrays.<Task<Variant>>asList(slow, new EvenStartTask(), new SlowTask()), 3);
+        runner.setPipelined(true);
+        runner.setQueueCapacity(2);
+        runner.setTaskWorkers(slow, 4);
+        runner.setMetricsListener(listener);
+        runner.run();
+
+        List<Variant> expected = new ArrayList<>();
+        for (Variant variant : input) {
+            if (variant.getStart() % 2 == 0) {
+                expected.add(variant);
+            }
+        }
+        assertEquals(expected, first.variants);
+        assertEquals(expected, second.variants);
+        assertTrue(slow.maxConcurrent.get() > 1);
+
+        // 67 batches of up to 3 variants
+        assertEquals(69, listener.calls.size());
+        assertEquals("started", listener.calls.get(0));
+        assertEquals("finished", listener.calls.get(68));
+        List<StageMetrics> stages = runner.getMetrics().getStages();
+        assertStage(stages.get(0), "ListReader", 67, 0, 200);
+        assertStage(stages.get(1), "SlowTask", 67, 200, 200);
+        assertStage(stages.get(2), "EvenStartTask", 67, 200, 100);
+        assertStage(stages.get(3), "SlowTask#2", 67, 100, 100);
+        assertStage(stages.get(4), "ListWriter", 67, 100, 100);
+        assertStage(stages.get(5), "ListWriter#2", 67, 100, 100);
+    }
+
+    @Test(timeout = 30000)
+    public void pipelinedEmptyInput() throws Exception {
+        ListWriter writer = new ListWriter();
+        RecordingListener listener = new RecordingListener();
+        SlowTask task = new SlowTask();
+        VariantRunner runner = runner(new ListReader(Collections.<Variant>emptyList()),
+                Collections.<Task<Variant>>singletonList(task), writer, 3);
+        runner.setPipelined(true);
+        runner.setTaskWorkers(task, 3);
+        runner.setMetricsListener(listener);
+        runner.run();
+
+        assertTrue(writer.variants.isEmpty());
+        assertTrue(writer.closed);
+        assertEquals(Arrays.asList("started", "finished"), listener.calls);
+        assertEquals(0, runner.getMetrics().getStages().get(1).getBatches());
+    }
+
+    @Test(timeout = 30000)
+    public void pipelinedWithoutWriters() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        SlowTask task = new SlowTask();
+        VariantRunner runner = runner(new ListReader(variants(20)), Collections.<Task<Variant>>singletonList(task), null, 3);
+        runner.setPipelined(true);
+        runner.setTaskWorkers(task, 2);
+        runner.setMetricsListener(listener);
+        runner.run();
+
+        assertEquals(20, task.variants.get());
+        // The listener is notified by the last task
+        assertEquals(9, listener.calls.size());
+
+        // Without tasks either, batches are finished once read
+        listener = new RecordingListener();
+        runner = runner(new ListReader(variants(20)), Collections.<Task<Variant>>emptyList(), null, 3);
+        runner.setPipelined(true);
+        runner.setMetricsListener(listener);
+        runner.run();
+        assertEquals(9, listener.calls.size());
+        assertEquals(20, runner.getMetrics().getStages().get(0).getRecordsOut());
+    }
+
+    @Test(timeout = 30000)
+    public void pipelinedTaskFailure() throws Exception {
+        final IOException failure = new IOException("Task failure");
+        Task<Variant> failing = new Task<Variant>() {
+            @Override
+            public boolean apply(List<Variant> batch) throws IOException {
+                if (batch.get(0).getStart() > 30) {
+                    throw failure;
+                }
+                return true;
+            }
+        };
+        SlowTask slow = new SlowTask();
+        VariantRunner runner = runner(new ListReader(variants(1000)), Arrays.asList(slow, failing), new ListWriter(), 3);
+        runner.setPipelined(true);
+        runner.setTaskWorkers(slow, 3);
+        runner.setTaskWorkers(failing, 2);
+        try {
+            runner.run();
+            fail();
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void pipelinedWriterFailure() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("Writer failure");
+        ListWriter writer = new ListWriter() {
+            @Override
+            public boolean write(List<Variant> batch) {
+                throw failure;
+            }
+        };
+        SlowTask slow = new SlowTask();
+        VariantRunner runner = runner(new ListReader(variants(1000)), Collections.<Task<Variant>>singletonList(slow), writer, 3);
+        runner.setPipelined(true);
+        runner.setTaskWorkers(slow, 2);
+        try {
+            runner.run();
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void pipelinedError() throws Exception {
+        final AssertionError failure = new AssertionError("Task error");
+        Task<Variant> failing = new Task<Variant>() {
+            @Override
+            public boolean apply(List<Variant> batch) {
+                throw failure;
+            }
+        };
+        VariantRunner runner = runner(new ListReader(variants(100)), Collections.singletonList(failing), new ListWriter(), 3);
+        runner.setPipelined(true);
+        try {
+            runner.run();
+            fail();
+        } catch (AssertionError e) {
+            assertSame(failure, e);
+        }
+    }
+
+    static VariantRunner runner(VariantReader reader, List<Task<Variant>> tasks, VariantWriter writer, int batchSize) {
+        List<VariantWriter> writers = writer != null
+                ? Collections.singletonList(writer) : Collections.<VariantWriter>emptyList();
+        return new VariantRunner(new VariantSource("variants.vcf", "variants", "study", "study"), reader, null,
+                writers, tasks, batchSize);
+    }
+
+    static List<Variant> variants(int size) {
+        List<Variant> variants = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            variants.add(new Variant("1", i, i, "A", "C"));
+        }
+        return variants;
+    }
+
+    private static void assertStage(StageMetrics stage, String name, long batches, long in, long out) {
+        assertEquals(name, stage.getName());
+        assertEquals(batches, stage.getBatches());
+        assertEquals(in, stage.getRecordsIn());
+        assertEquals(out, stage.getRecordsOut());
+    }
+
+    /**
+     * Removes the variants starting in odd positions.
+     */
+    static class EvenStartTask extends Task<Variant> {
+        @Override
+        public boolean apply(List<Variant> batch) throws IOException {
+            Iterator<Variant> iterator = batch.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getStart() % 2 != 0) {
+                    iterator.remove();
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Sleeps a different time for every batch, so batches finish out of order
+     * when the task has several workers.
+     */
+    static class SlowTask extends Task<Variant> {
+        final AtomicInteger variants = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        private final AtomicInteger concurrent = new AtomicInteger();
+
+        @Override
+        public boolean apply(List<Variant> batch) throws IOException {
+            int running = concurrent.incrementAndGet();
+            int max;
+            while (running > (max = maxConcurrent.get()) && !maxConcurrent.compareAndSet(max, running)) { }
+            try {
+                if (!batch.isEmpty()) {
+                    Thread.sleep((batch.get(0).getStart() * 7) % 5);
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            variants.addAndGet(batch.size());
+            return true;
+        }
+    }
+
+    static class ListReader implements VariantReader {
+        private final Iterator<Variant> iterator;
+        volatile boolean closed;
+
+        ListReader(List<Variant> variants) {
+            this.iterator = variants.iterator();
+        }
+
+        @Override
+        public boolean open() {
+            return true;
+        }
+
+        @Override
+        public boolean close() {
+            closed = true;
+            return true;
+        }
+
+        @Override
+        public boolean pre() {
+            return true;
+        }
+
+        @Override
+        public boolean post() {
+            return true;
+        }
+
+        @Override
+        public List<Variant> read() {
+            return iterator.hasNext() ? Collections.singletonList(iterator.next()) : null;
+        }
+
+        @Override
+        public List<Variant> read(int batchSize) {
+            List<Variant> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && iterator.hasNext()) {
+                batch.add(iterator.next());
+            }
+            return batch;
+        }
+
+        @Override
+        public List<String> getSampleNames() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String getHeader() {
+            return "";
+        }
+    }
+
+    static class ListWriter implements VariantWriter {
+        final List<Variant> variants = Collections.synchronizedList(new ArrayList<Variant>());
+        volatile boolean closed;
+
+        @Override
+        public boolean open() {
+            return true;
+        }
+
+        @Override
+        public boolean close() {
+            closed = true;
+            return true;
+        }
+
+        @Override
+        public boolean pre() {
+            return true;
+        }
+
+        @Override
+        public boolean post() {
+            return true;
+        }
+
+        @Override
+        public boolean write(Variant variant) {
+            variants.add(variant);
+            return true;
+        }
+
+        @Override
+        public boolean write(List<Variant> batch) {
+            variants.addAll(batch);
+            return true;
+        }
+
+        @Override
+        public void includeStats(boolean stats) {
+        }
+
+        @Override
+        public void includeSamples(boolean samples) {
+        }
+
+        @Override
+        public void includeEffect(boolean effect) {
+        }
+    }
+
+    private static class RecordingListener implements PipelineListener {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void pipelineStarted(PipelineMetrics metrics) {
+            calls.add("started");
+        }
+
+        @Override
+        public void batchFinished(PipelineMetrics metrics) {
+            calls.add("batch");
+        }
+
+        @Override
+        public void pipelineFinished(PipelineMetrics metrics) {
+            calls.add("finished");
+        }
+    }
+
+}